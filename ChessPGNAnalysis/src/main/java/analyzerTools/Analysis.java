@@ -2,9 +2,33 @@ package analyzerTools;
 
 public class Analysis {
     private double white, black;
+    // The engine search depth that produced these values, or 0 if unknown.
+    private int searchDepth;
+    // The position of the game in the batch it was analysed with, or -1 if not known.
+    private int index = -1;
+    // Whether the engine ran out of time before analysing every move.
+    private boolean partial;
+    // Whether the values come from the built-in evaluator alone, the game having been passed over by triage.
+    private boolean triaged;
     public Analysis(double white, double black) {
+        this(white, black, 0);
+    }
+
+    public Analysis(double white, double black, int searchDepth) {
         this.white = white;
         this.black = black;
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * Copy an analysis, as for a duplicate game. The copy does not share the original's index, which is left
+     * unknown until the copy is given its own.
+     * @param other the analysis to copy
+     */
+    public Analysis(Analysis other) {
+        this(other.white, other.black, other.searchDepth);
+        this.partial = other.partial;
+        this.triaged = other.triaged;
     }
 
     public double getWhite() {
@@ -22,4 +46,53 @@ public class Analysis {
     public void setBlack(double black) {
         this.black = black;
     }
+
+    /**
+     * Return the search depth of the analysis tier that produced these values.
+     * @return the search depth
+     */
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+
+    public void setSearchDepth(int searchDepth) {
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * Return the position of the game in the batch it was analysed with.
+     * @return the index of the game, or -1 if not known
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Return whether the analysis was cut short by a time budget, so that the values cover only the moves analysed in time.
+     * @return true for a partial analysis
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * Return whether the values come from the built-in evaluator's triage alone, the game not having looked
+     * suspicious enough to be analysed with the engine.
+     * @return true for a triaged game
+     */
+    public boolean isTriaged() {
+        return triaged;
+    }
+
+    public void setTriaged(boolean triaged) {
+        this.triaged = triaged;
+    }
 }
@@ -0,0 +1,180 @@
+package analyzerTools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.IntFunction;
+
+/**
+ * Publish the analyses of a batch of games in the order they complete. Each subscription analyses
+ * the whole batch, starting a game only when the subscriber has demand for its result and fewer than
+ * the maximum number of games are in progress. Games that cannot be analysed are reported and skipped.
+ * Cancelling a subscription cancels the games in progress.
+ */
+class AnalysisPublisher implements Flow.Publisher<Analysis> {
+    // The number of games in the batch.
+    private final int count;
+    // The maximum number of games in progress at once.
+    private final int maxInProgress;
+    // Starts the analysis of the game at an index.
+    private final IntFunction<CompletableFuture<Analysis>> analyzer;
+
+    AnalysisPublisher(int count, int maxInProgress, IntFunction<CompletableFuture<Analysis>> analyzer) {
+        this.count = count;
+        this.maxInProgress = Math.max(1, maxInProgress);
+        this.analyzer = analyzer;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Analysis> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * The state of a subscription is only changed while holding its lock, but the subscriber is only
+     * called without it, by one thread at a time: whichever thread finds work to do drains it in a loop,
+     * and the others leave it to that thread. So a subscriber may request more or cancel from onNext
+     * without the calls nesting.
+     */
+    private class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Analysis> subscriber;
+        // Results requested but not yet delivered.
+        private long requested;
+        // The next game to start.
+        private int next;
+        private int inProgress;
+        // The games in progress, by index.
+        private final Map<Integer, CompletableFuture<Analysis>> running = new HashMap<>();
+        // The results of finished games, not yet delivered.
+        private final ArrayDeque<Analysis> ready = new ArrayDeque<>();
+        // An invalid request, to be reported.
+        private Throwable error;
+        // Whether onComplete or onError has been sent, or the subscription cancelled.
+        private boolean done;
+        // Whether a thread is draining the subscription.
+        private boolean draining;
+
+        Subscription(Flow.Subscriber<? super Analysis> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            List<CompletableFuture<Analysis>> games;
+            synchronized (this) {
+                done = true;
+                ready.clear();
+                games = new ArrayList<>(running.values());
+                running.clear();
+            }
+            for (CompletableFuture<Analysis> game : games) {
+                game.cancel(true);
+            }
+        }
+
+        private void finish(int index, Analysis analysis, Throwable error) {
+            synchronized (this) {
+                inProgress--;
+                running.remove(index);
+                if (done) {
+                    return;
+                }
+                if (error == null && analysis != null) {
+                    analysis.setIndex(index);
+                    ready.add(analysis);
+                }
+            }
+            if (error != null || analysis == null) {
+                System.err.println("Error analysing game " + (index + 1) + ": "
+                        + (error == null ? "no result" : error.getMessage()));
+            }
+            drain();
+        }
+
+        /**
+         * Deliver results, start as many games as the demand and the limit on games in progress
+         * allow, and complete once every game has finished, until there is nothing more to do.
+         */
+        void drain() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                Throwable failure = null;
+                Analysis analysis = null;
+                int start = -1;
+                boolean complete = false;
+                synchronized (this) {
+                    if (done) {
+                        draining = false;
+                        return;
+                    } else if (error != null) {
+                        done = true;
+                        failure = error;
+                    } else if (!ready.isEmpty()) {
+                        requested--;
+                        analysis = ready.poll();
+                    } else if (next < count && inProgress < requested && inProgress < maxInProgress) {
+                        start = next++;
+                        inProgress++;
+                    } else if (next == count && inProgress == 0) {
+                        done = true;
+                        complete = true;
+                    } else {
+                        draining = false;
+                        return;
+                    }
+                }
+                if (failure != null) {
+                    subscriber.onError(failure);
+                } else if (analysis != null) {
+                    subscriber.onNext(analysis);
+                } else if (complete) {
+                    subscriber.onComplete();
+                } else {
+                    start(start);
+                }
+            }
+        }
+
+        private void start(int index) {
+            CompletableFuture<Analysis> game = analyzer.apply(index);
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = done;
+                if (!cancelled) {
+                    running.put(index, game);
+                }
+            }
+            if (cancelled) {
+                game.cancel(true);
+            }
+            // A game that has already finished is queued here, and delivered by the loop in drain.
+            game.whenComplete((analysis, error) -> finish(index, analysis, error));
+        }
+    }
+}
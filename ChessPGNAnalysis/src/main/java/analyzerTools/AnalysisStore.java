@@ -0,0 +1,252 @@
+package analyzerTools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An on-disk set of analysed games, keyed by {@link GameHash}, holding the Analysis of each.
+ *
+ * The file is an open-addressed hash table of fixed-width records that is memory-mapped in
+ * segments, so the heap used is the same however many games are stored and the stored results
+ * persist from one run to the next. The table is rebuilt at twice the size when it becomes too full.
+ *
+ * Each record carries a checksum of its fields. A record that fails the check, as after a crash part way
+ * through writing it, reads as a miss, so the game is analysed again and the record replaced.
+ */
+public class AnalysisStore implements AutoCloseable {
+    private static final int MAGIC = 0x414e4c53;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    // Record layout: hash high (8), hash low (8), white (8), black (8), depth (4), checksum (4), padding (8).
+    private static final int RECORD_SIZE = 48;
+    // Records per mapped segment; a record never straddles two segments.
+    private static final int RECORDS_PER_SEGMENT = 1 << 22;
+    private static final long SEGMENT_SIZE = (long) RECORD_SIZE * RECORDS_PER_SEGMENT;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path filePath;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    // The number of slots; always a power of two.
+    private long capacity;
+    // The number of games stored.
+    private long count;
+
+    private AnalysisStore(Path filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * Open a store, creating it if it does not exist.
+     *
+     * @param filePath the store's file
+     * @param expectedGames the number of games the store is expected to hold when it is created
+     * @return the store
+     * @throws IOException on file error or if the file is not an analysis store
+     */
+    public static AnalysisStore open(Path filePath, long expectedGames) throws IOException {
+        AnalysisStore store = new AnalysisStore(filePath);
+        if (Files.exists(filePath)) {
+            store.map();
+        } else {
+            long capacity = Long.highestOneBit(Math.max(16, (long) (expectedGames / MAX_LOAD)) - 1) << 1;
+            create(filePath, capacity);
+            store.map();
+        }
+        return store;
+    }
+
+    /**
+     * Return the stored analysis of a game.
+     *
+     * @param hash the game's hash
+     * @return the analysis, or null if the game has not been stored or its record is damaged
+     */
+    public synchronized Analysis get(GameHash hash) {
+        long slot = find(hash);
+        MappedByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        if (segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0) {
+            return null;
+        }
+        if (!isIntact(segment, offset)) {
+            System.err.println("Damaged record in analysis store " + filePath + " for game " + hash);
+            return null;
+        }
+        return new Analysis(segment.getDouble(offset + 16), segment.getDouble(offset + 24),
+                segment.getInt(offset + 32));
+    }
+
+    /**
+     * Store, or replace, the analysis of a game.
+     *
+     * @param hash the game's hash
+     * @param analysis the game's analysis
+     * @throws IOException if the store has to grow and cannot
+     */
+    public synchronized void put(GameHash hash, Analysis analysis) throws IOException {
+        long slot = find(hash);
+        MappedByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        boolean added = segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0;
+        write(segment, offset, hash.getHigh(), hash.getLow(), analysis.getWhite(), analysis.getBlack(),
+                analysis.getSearchDepth());
+        if (added) {
+            count++;
+            header.putLong(16, count);
+            if (count > capacity * MAX_LOAD) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * Return the number of games stored.
+     *
+     * @return the number of games
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Flush the store to disk and release the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static void create(Path filePath, long capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, capacity);
+            header.putLong(16, 0);
+            header.force();
+            // Extend the file; the new records read as zero, which marks them empty.
+            channel.write(ByteBuffer.wrap(new byte[1]), HEADER_SIZE + capacity * RECORD_SIZE - 1);
+        }
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not an analysis store: " + filePath);
+        }
+        if (header.getInt(4) != VERSION) {
+            int version = header.getInt(4);
+            channel.close();
+            throw new IOException("Analysis store of unsupported version " + version + ": " + filePath);
+        }
+        capacity = header.getLong(8);
+        count = header.getLong(16);
+        int segmentCount = (int) ((capacity + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int index = 0; index < segmentCount; index++) {
+            long start = HEADER_SIZE + index * SEGMENT_SIZE;
+            long size = Math.min(SEGMENT_SIZE, HEADER_SIZE + capacity * RECORD_SIZE - start);
+            segments[index] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        }
+    }
+
+    /**
+     * Rebuild the table at twice its size.
+     */
+    private void grow() throws IOException {
+        Path grown = filePath.resolveSibling(filePath.getFileName() + ".grow");
+        Files.deleteIfExists(grown);
+        create(grown, capacity * 2);
+        AnalysisStore target = new AnalysisStore(grown);
+        target.map();
+        long copied = 0;
+        for (long slot = 0; slot < capacity; slot++) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long high = segment.getLong(offset);
+            long low = segment.getLong(offset + 8);
+            // Damaged records are dropped rather than given a valid checksum.
+            if ((high != 0 || low != 0) && isIntact(segment, offset)) {
+                long newSlot = target.find(new GameHash(high, low));
+                write(target.segment(newSlot), target.offset(newSlot), high, low,
+                        segment.getDouble(offset + 16), segment.getDouble(offset + 24), segment.getInt(offset + 32));
+                copied++;
+            }
+        }
+        count = copied;
+        target.header.putLong(16, count);
+        target.close();
+        channel.close();
+        Files.move(grown, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+    }
+
+    private void force() {
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Find the slot holding a hash, or the empty slot where it would be added.
+     */
+    private long find(GameHash hash) {
+        long mask = capacity - 1;
+        long slot = (hash.getHigh() ^ hash.getLow() * 0x9E3779B97F4A7C15L) & mask;
+        while (true) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long high = segment.getLong(offset);
+            long low = segment.getLong(offset + 8);
+            if ((high == 0 && low == 0) || (high == hash.getHigh() && low == hash.getLow())) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private MappedByteBuffer segment(long slot) {
+        return segments[(int) (slot / RECORDS_PER_SEGMENT)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+    }
+
+    private static void write(MappedByteBuffer segment, int offset, long high, long low,
+                              double white, double black, int depth) {
+        segment.putLong(offset, high);
+        segment.putLong(offset + 8, low);
+        segment.putDouble(offset + 16, white);
+        segment.putDouble(offset + 24, black);
+        segment.putInt(offset + 32, depth);
+        segment.putInt(offset + 36, checksum(high, low, white, black, depth));
+    }
+
+    private static boolean isIntact(MappedByteBuffer segment, int offset) {
+        return segment.getInt(offset + 36) == checksum(segment.getLong(offset), segment.getLong(offset + 8),
+                segment.getDouble(offset + 16), segment.getDouble(offset + 24), segment.getInt(offset + 32));
+    }
+
+    private static int checksum(long high, long low, double white, double black, int depth) {
+        long sum = high;
+        sum = sum * 0x9E3779B97F4A7C15L + low;
+        sum = sum * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(white);
+        sum = sum * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(black);
+        sum = sum * 0x9E3779B97F4A7C15L + depth;
+        return (int) (sum ^ (sum >>> 32));
+    }
+}
@@ -2,6 +2,8 @@ package analyzerTools;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 public interface Analyzer {
     enum Player {BLACK, WHITE}
@@ -74,6 +76,23 @@ public interface Analyzer {
      */
     ArrayList<Analysis> analyzeGames(ArrayList<Path> pgns);
 
+    /**
+     * analyze the Coincidence Value (CV) of both players' moves from a single String containing a PGN chess game, without waiting
+     *
+     * @param pgn a String containing the moves made in a single game in PGN format
+     * @return a CompletableFuture completed with the Analysis of the game, or exceptionally if it cannot be analysed
+     */
+    CompletableFuture<Analysis> analyzeGameAsync(String pgn);
+
+    /**
+     * analyze the Coincidence Value (CV) of both players' moves from multiple Strings containing PGN chess games, publishing
+     * each Analysis as it completes. Games are only analysed as the subscriber requests them.
+     *
+     * @param pgns String[] containing the moves made in games in PGN format
+     * @return a Publisher of the Analysis of each game, in completion order, with getIndex giving the game's position in pgns
+     */
+    Flow.Publisher<Analysis> analyzeGamesPublisher(String[] pgns);
+
     /**
      * OPTIONAL. splits a file containing multiple PGN games into multiple files containing single games
      * @param filePath a Path referencing the file containing the games
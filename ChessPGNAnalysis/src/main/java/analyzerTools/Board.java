@@ -0,0 +1,678 @@
+package analyzerTools;
+
+import java.util.Arrays;
+
+/**
+ * A chess position that moves can be played on and taken back, for analysis without an external engine.
+ *
+ * The board is held in 0x88 form: square = rank * 16 + file, with rank and file from 0, so a1 is 0 and h8 is 119,
+ * and a square is off the board when (square &amp; 0x88) != 0. A piece is its type, PAWN to KING, with BLACK added
+ * for a black piece. A move is an int holding its from and to squares, any promotion, and flags for en passant,
+ * castling and a double pawn push; the piece captured is recorded when the move is made. Moves are generated into
+ * caller-supplied arrays and made and taken back in place, so searching a position allocates nothing.
+ *
+ * Not safe for use by several threads at once.
+ */
+public class Board {
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+    // Added to a piece type for a black piece.
+    public static final int BLACK = 8;
+
+    // The most moves a position can have, with room to spare.
+    public static final int MAX_MOVES = 256;
+    // Returned by the parse methods for a move that is not legal.
+    public static final int NO_MOVE = -1;
+
+    // Move flags.
+    private static final int EN_PASSANT = 1 << 17;
+    private static final int CASTLE = 1 << 18;
+    private static final int DOUBLE_PUSH = 1 << 19;
+
+    // Castling rights.
+    private static final int WHITE_KINGSIDE = 1;
+    private static final int WHITE_QUEENSIDE = 2;
+    private static final int BLACK_KINGSIDE = 4;
+    private static final int BLACK_QUEENSIDE = 8;
+
+    private static final int[] KNIGHT_STEPS = {33, 31, 18, 14, -14, -18, -31, -33};
+    private static final int[] BISHOP_STEPS = {17, 15, -15, -17};
+    private static final int[] ROOK_STEPS = {16, 1, -1, -16};
+    private static final int[] KING_STEPS = {17, 16, 15, 1, -1, -15, -16, -17};
+    private static final int[] PROMOTIONS = {QUEEN, KNIGHT, ROOK, BISHOP};
+    private static final String PIECE_LETTERS = " PNBRQK";
+
+    // The castling rights kept when a move starts or ends on each square.
+    private static final int[] CASTLING_KEPT = new int[128];
+    // For each difference between two squares, plus 119: a bit for each piece type, 1 << type, that could
+    // attack the second square from the first, with WHITE_PAWN_ATTACK and BLACK_PAWN_ATTACK for pawns; and the
+    // step from the first towards the second, for a sliding piece.
+    private static final int[] ATTACKS = new int[239];
+    private static final int[] STEPS = new int[239];
+    private static final int WHITE_PAWN_ATTACK = 1 << 7;
+    private static final int BLACK_PAWN_ATTACK = 1 << 8;
+
+    static {
+        Arrays.fill(CASTLING_KEPT, 15);
+        CASTLING_KEPT[0] = 15 & ~WHITE_QUEENSIDE;
+        CASTLING_KEPT[4] = 15 & ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_KEPT[7] = 15 & ~WHITE_KINGSIDE;
+        CASTLING_KEPT[112] = 15 & ~BLACK_QUEENSIDE;
+        CASTLING_KEPT[116] = 15 & ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_KEPT[119] = 15 & ~BLACK_KINGSIDE;
+        for (int step : KNIGHT_STEPS) {
+            ATTACKS[step + 119] |= 1 << KNIGHT;
+        }
+        for (int step : KING_STEPS) {
+            ATTACKS[step + 119] |= 1 << KING;
+        }
+        for (int step : BISHOP_STEPS) {
+            for (int distance = 1; distance < 8; distance++) {
+                ATTACKS[step * distance + 119] |= 1 << BISHOP | 1 << QUEEN;
+                STEPS[step * distance + 119] = step;
+            }
+        }
+        for (int step : ROOK_STEPS) {
+            for (int distance = 1; distance < 8; distance++) {
+                ATTACKS[step * distance + 119] |= 1 << ROOK | 1 << QUEEN;
+                STEPS[step * distance + 119] = step;
+            }
+        }
+        ATTACKS[15 + 119] |= WHITE_PAWN_ATTACK;
+        ATTACKS[17 + 119] |= WHITE_PAWN_ATTACK;
+        ATTACKS[-15 + 119] |= BLACK_PAWN_ATTACK;
+        ATTACKS[-17 + 119] |= BLACK_PAWN_ATTACK;
+    }
+
+    private final int[] squares = new int[128];
+    // The squares occupied by each side's pieces, one bit for each square from a1 to h8, so that the pieces
+    // can be found without looking at every square.
+    private final long[] occupied = new long[2];
+    // 0 when white is to move, 1 when black is.
+    private int side;
+    private int castling;
+    // The square a pawn may be captured on en passant, or -1.
+    private int enPassant;
+    private int halfmoveClock;
+    private final int[] kings = new int[2];
+    // Whether the side to move is in check: 1 if so, 0 if not, -1 if not yet worked out.
+    private int check = -1;
+    // The state needed to take back each move made: the piece captured, castling rights, en passant square and
+    // halfmove clock, packed into one int.
+    private int[] history = new int[256];
+    private int plies;
+
+    /**
+     * Create a board with the starting position.
+     */
+    public Board() {
+        int[] backRank = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int file = 0; file < 8; file++) {
+            squares[file] = backRank[file];
+            squares[16 + file] = PAWN;
+            squares[96 + file] = PAWN | BLACK;
+            squares[112 + file] = backRank[file] | BLACK;
+        }
+        occupied[0] = 0xffffL;
+        occupied[1] = 0xffffL << 48;
+        kings[0] = 4;
+        kings[1] = 116;
+        castling = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        enPassant = -1;
+    }
+
+    /**
+     * @param square a square in 0x88 form
+     * @return the piece on the square, or EMPTY
+     */
+    public int pieceAt(int square) {
+        return squares[square];
+    }
+
+    /**
+     * @return true if white is to move
+     */
+    public boolean isWhiteToMove() {
+        return side == 0;
+    }
+
+    /**
+     * @return true if the side to move is in check
+     */
+    public boolean inCheck() {
+        if (check < 0) {
+            check = isAttacked(kings[side], side ^ 1) ? 1 : 0;
+        }
+        return check == 1;
+    }
+
+    /**
+     * @return the number of moves made on the board that have not been taken back
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Generate the legal moves of the position.
+     *
+     * @param moves where to put the moves, from offset on, with room for MAX_MOVES
+     * @param offset where to put the first move
+     * @return the index after the last move
+     */
+    public int generateLegal(int[] moves, int offset) {
+        int end = generate(moves, offset, false);
+        int kept = offset;
+        for (int index = offset; index < end; index++) {
+            if (isLegal(moves[index])) {
+                moves[kept++] = moves[index];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Generate the moves of the position that obey the rules of movement, some of which may leave the
+     * mover's king in check; isLegal tells which.
+     *
+     * @param moves where to put the moves, from offset on, with room for MAX_MOVES
+     * @param offset where to put the first move
+     * @param capturesOnly true to generate only captures and promotions
+     * @return the index after the last move
+     */
+    public int generate(int[] moves, int offset, boolean capturesOnly) {
+        int count = offset;
+        for (long pieces = occupied[side]; pieces != 0; pieces &= pieces - 1) {
+            int bit = Long.numberOfTrailingZeros(pieces);
+            int from = (bit >> 3) * 16 + (bit & 7);
+            switch (squares[from] & 7) {
+                case PAWN:
+                    count = generatePawn(from, moves, count, capturesOnly);
+                    break;
+                case KNIGHT:
+                    count = generateSteps(from, KNIGHT_STEPS, false, moves, count, capturesOnly);
+                    break;
+                case BISHOP:
+                    count = generateSteps(from, BISHOP_STEPS, true, moves, count, capturesOnly);
+                    break;
+                case ROOK:
+                    count = generateSteps(from, ROOK_STEPS, true, moves, count, capturesOnly);
+                    break;
+                case QUEEN:
+                    count = generateSteps(from, BISHOP_STEPS, true, moves, count, capturesOnly);
+                    count = generateSteps(from, ROOK_STEPS, true, moves, count, capturesOnly);
+                    break;
+                default:
+                    count = generateSteps(from, KING_STEPS, false, moves, count, capturesOnly);
+                    if (!capturesOnly) {
+                        count = generateCastling(from, moves, count);
+                    }
+                    break;
+            }
+        }
+        return count;
+    }
+
+    private int generatePawn(int from, int[] moves, int count, boolean capturesOnly) {
+        int forward = side == 0 ? 16 : -16;
+        int startRank = side == 0 ? 1 : 6;
+        int lastRank = side == 0 ? 7 : 0;
+        int to = from + forward;
+        if ((to & 0x88) == 0 && squares[to] == EMPTY) {
+            if (to >> 4 == lastRank) {
+                count = addPromotions(from, to, moves, count);
+            } else if (!capturesOnly) {
+                moves[count++] = move(from, to, 0);
+                int twice = to + forward;
+                if (from >> 4 == startRank && squares[twice] == EMPTY) {
+                    moves[count++] = move(from, twice, 0) | DOUBLE_PUSH;
+                }
+            }
+        }
+        for (int sideways = -1; sideways <= 1; sideways += 2) {
+            to = from + forward + sideways;
+            if ((to & 0x88) != 0) {
+                continue;
+            }
+            if (isEnemy(squares[to])) {
+                if (to >> 4 == lastRank) {
+                    count = addPromotions(from, to, moves, count);
+                } else {
+                    moves[count++] = move(from, to, 0);
+                }
+            } else if (to == enPassant) {
+                moves[count++] = move(from, to, 0) | EN_PASSANT;
+            }
+        }
+        return count;
+    }
+
+    private static int addPromotions(int from, int to, int[] moves, int count) {
+        for (int promotion : PROMOTIONS) {
+            moves[count++] = move(from, to, promotion);
+        }
+        return count;
+    }
+
+    private int generateSteps(int from, int[] steps, boolean slide, int[] moves, int count, boolean capturesOnly) {
+        for (int step : steps) {
+            int to = from + step;
+            while ((to & 0x88) == 0) {
+                int target = squares[to];
+                if (target == EMPTY) {
+                    if (!capturesOnly) {
+                        moves[count++] = move(from, to, 0);
+                    }
+                } else {
+                    if (isEnemy(target)) {
+                        moves[count++] = move(from, to, 0);
+                    }
+                    break;
+                }
+                if (!slide) {
+                    break;
+                }
+                to += step;
+            }
+        }
+        return count;
+    }
+
+    private int generateCastling(int from, int[] moves, int count) {
+        int home = side == 0 ? 4 : 116;
+        if (from != home) {
+            return count;
+        }
+        int enemy = side ^ 1;
+        int kingside = side == 0 ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = side == 0 ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        if ((castling & kingside) != 0 && squares[home + 1] == EMPTY && squares[home + 2] == EMPTY
+                && !isAttacked(home, enemy) && !isAttacked(home + 1, enemy) && !isAttacked(home + 2, enemy)) {
+            moves[count++] = move(home, home + 2, 0) | CASTLE;
+        }
+        if ((castling & queenside) != 0 && squares[home - 1] == EMPTY && squares[home - 2] == EMPTY
+                && squares[home - 3] == EMPTY
+                && !isAttacked(home, enemy) && !isAttacked(home - 1, enemy) && !isAttacked(home - 2, enemy)) {
+            moves[count++] = move(home, home - 2, 0) | CASTLE;
+        }
+        return count;
+    }
+
+    private boolean isEnemy(int piece) {
+        return piece != EMPTY && (piece & BLACK) != (side == 0 ? 0 : BLACK);
+    }
+
+    /**
+     * Is a square attacked by a side?
+     *
+     * @param square the square
+     * @param by 0 for white, 1 for black
+     * @return true if a piece of that side attacks the square
+     */
+    public boolean isAttacked(int square, int by) {
+        // Look at each of the side's pieces, rather than out from the square, as most can be ruled out at once.
+        for (long pieces = occupied[by]; pieces != 0; pieces &= pieces - 1) {
+            int bit = Long.numberOfTrailingZeros(pieces);
+            int from = (bit >> 3) * 16 + (bit & 7);
+            int type = squares[from] & 7;
+            int needed = type != PAWN ? 1 << type : by == 0 ? WHITE_PAWN_ATTACK : BLACK_PAWN_ATTACK;
+            int difference = square - from + 119;
+            if ((ATTACKS[difference] & needed) == 0) {
+                continue;
+            }
+            if (type == BISHOP || type == ROOK || type == QUEEN) {
+                int step = STEPS[difference];
+                int between = from + step;
+                while (between != square && squares[between] == EMPTY) {
+                    between += step;
+                }
+                if (between != square) {
+                    continue;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Does a move obey the rules of movement without leaving the mover's king in check?
+     *
+     * @param move a move generated for the position
+     * @return true if the move is legal
+     */
+    public boolean isLegal(int move) {
+        int from = from(move);
+        // A move cannot expose the king if the piece moved is not the king and was not in line with it, unless
+        // the king is already in check or the move is en passant, which takes a second piece off the board.
+        if ((squares[from] & 7) != KING && (move & EN_PASSANT) == 0 && (ATTACKS[kings[side] - from + 119] & 1 << QUEEN) == 0
+                && !inCheck()) {
+            return true;
+        }
+        make(move);
+        boolean legal = !isAttacked(kings[side ^ 1], side);
+        unmake(move);
+        return legal;
+    }
+
+    /**
+     * Make a move generated for the position.
+     *
+     * @param move the move
+     */
+    public void make(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = squares[from];
+        int captured = squares[to];
+        if ((move & EN_PASSANT) != 0) {
+            int square = to - (side == 0 ? 16 : -16);
+            captured = squares[square];
+            squares[square] = EMPTY;
+            occupied[side ^ 1] ^= bit(square);
+        } else if (captured != EMPTY) {
+            occupied[side ^ 1] ^= bit(to);
+        }
+        occupied[side] ^= bit(from) | bit(to);
+        if (plies == history.length) {
+            history = Arrays.copyOf(history, plies * 2);
+        }
+        history[plies++] = captured | castling << 4 | (enPassant + 1) << 8 | halfmoveClock << 16;
+
+        int promotion = promotion(move);
+        squares[to] = promotion == 0 ? piece : promotion | (piece & BLACK);
+        squares[from] = EMPTY;
+        if ((move & CASTLE) != 0) {
+            moveRook(to > from ? from + 3 : from - 4, to > from ? from + 1 : from - 1);
+        }
+        if ((piece & 7) == KING) {
+            kings[side] = to;
+        }
+        castling &= CASTLING_KEPT[from] & CASTLING_KEPT[to];
+        enPassant = (move & DOUBLE_PUSH) != 0 ? (from + to) / 2 : -1;
+        halfmoveClock = (piece & 7) == PAWN || captured != EMPTY ? 0 : halfmoveClock + 1;
+        side ^= 1;
+        check = -1;
+    }
+
+    /**
+     * Take back the last move made.
+     *
+     * @param move the move, as passed to make
+     */
+    public void unmake(int move) {
+        side ^= 1;
+        int state = history[--plies];
+        int captured = state & 15;
+        int from = from(move);
+        int to = to(move);
+        int piece = promotion(move) == 0 ? squares[to] : PAWN | (side == 0 ? 0 : BLACK);
+        squares[from] = piece;
+        occupied[side] ^= bit(from) | bit(to);
+        if ((move & EN_PASSANT) != 0) {
+            int square = to - (side == 0 ? 16 : -16);
+            squares[to] = EMPTY;
+            squares[square] = captured;
+            occupied[side ^ 1] ^= bit(square);
+        } else {
+            squares[to] = captured;
+            if (captured != EMPTY) {
+                occupied[side ^ 1] ^= bit(to);
+            }
+        }
+        if ((move & CASTLE) != 0) {
+            moveRook(to > from ? from + 1 : from - 1, to > from ? from + 3 : from - 4);
+        }
+        if ((piece & 7) == KING) {
+            kings[side] = from;
+        }
+        castling = (state >> 4) & 15;
+        enPassant = ((state >> 8) & 0xff) - 1;
+        halfmoveClock = state >>> 16;
+        check = -1;
+    }
+
+    /**
+     * Move a rook while castling, or back again.
+     */
+    private void moveRook(int from, int to) {
+        squares[to] = squares[from];
+        squares[from] = EMPTY;
+        occupied[(squares[to] & BLACK) == 0 ? 0 : 1] ^= bit(from) | bit(to);
+    }
+
+    /**
+     * Return the bit of a square in an occupancy mask.
+     */
+    private static long bit(int square) {
+        return 1L << ((square >> 4) * 8 + (square & 7));
+    }
+
+    /**
+     * Find the legal move given in UCI notation, such as e2e4, e1g1 or a7a8q.
+     *
+     * @param uci the move
+     * @return the move, or NO_MOVE if it is not legal
+     */
+    public int parseUCI(String uci) {
+        if (uci.length() < 4) {
+            return NO_MOVE;
+        }
+        int from = parseSquare(uci.charAt(0), uci.charAt(1));
+        int to = parseSquare(uci.charAt(2), uci.charAt(3));
+        int promotion = uci.length() > 4 ? PIECE_LETTERS.indexOf(Character.toUpperCase(uci.charAt(4))) : 0;
+        if (from < 0 || to < 0 || promotion < 0) {
+            return NO_MOVE;
+        }
+        int[] moves = new int[MAX_MOVES];
+        int count = generateLegal(moves, 0);
+        for (int index = 0; index < count; index++) {
+            int move = moves[index];
+            if (from(move) == from && to(move) == to && promotion(move) == promotion) {
+                return move;
+            }
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * Find the legal move given in Standard Algebraic Notation, such as e4, Nxf3+, exd6, O-O or e8=Q#.
+     * Check and annotation marks are ignored.
+     *
+     * @param san the move
+     * @return the move, or NO_MOVE if it is not legal or is ambiguous
+     */
+    public int parseSAN(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String text = san.substring(0, end).replace("0", "O");
+        int[] moves = new int[MAX_MOVES];
+        int count = generateLegal(moves, 0);
+        if (text.equals("O-O") || text.equals("O-O-O")) {
+            int direction = text.length() == 3 ? 2 : -2;
+            for (int index = 0; index < count; index++) {
+                int move = moves[index];
+                if ((move & CASTLE) != 0 && to(move) - from(move) == direction) {
+                    return move;
+                }
+            }
+            return NO_MOVE;
+        }
+
+        int type = PAWN;
+        int start = 0;
+        if (end > 0 && "NBRQK".indexOf(text.charAt(0)) >= 0) {
+            type = PIECE_LETTERS.indexOf(text.charAt(0));
+            start = 1;
+        }
+        int promotion = 0;
+        int equals = text.indexOf('=');
+        if (equals >= 0 && equals + 1 < text.length()) {
+            promotion = PIECE_LETTERS.indexOf(text.charAt(equals + 1));
+            text = text.substring(0, equals);
+        } else if (type == PAWN && text.length() > 2 && "NBRQ".indexOf(text.charAt(text.length() - 1)) >= 0) {
+            promotion = PIECE_LETTERS.indexOf(text.charAt(text.length() - 1));
+            text = text.substring(0, text.length() - 1);
+        }
+        if (promotion < 0 || text.length() - start < 2) {
+            return NO_MOVE;
+        }
+        int to = parseSquare(text.charAt(text.length() - 2), text.charAt(text.length() - 1));
+        if (to < 0) {
+            return NO_MOVE;
+        }
+        // Any file or rank of the from square given to tell apart moves to the same square.
+        int fromFile = -1;
+        int fromRank = -1;
+        for (int index = start; index < text.length() - 2; index++) {
+            char c = text.charAt(index);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            }
+        }
+
+        int found = NO_MOVE;
+        for (int index = 0; index < count; index++) {
+            int move = moves[index];
+            int from = from(move);
+            if ((squares[from] & 7) == type && to(move) == to && promotion(move) == promotion
+                    && (fromFile < 0 || (from & 7) == fromFile) && (fromRank < 0 || from >> 4 == fromRank)) {
+                if (found != NO_MOVE) {
+                    return NO_MOVE;
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Return a legal move of the position in Standard Algebraic Notation, with the file, rank or
+     * square of the piece moved added only when needed to tell it apart, and a check or mate mark.
+     *
+     * @param move a legal move of the position
+     * @return the move, such as e4, Nbd7, exd6, O-O or e8=Q#
+     */
+    public String toSAN(int move) {
+        int from = from(move);
+        int to = to(move);
+        int type = squares[from] & 7;
+        StringBuilder san = new StringBuilder(8);
+        int[] moves = new int[MAX_MOVES];
+        int count = generateLegal(moves, 0);
+        if ((move & CASTLE) != 0) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == PAWN) {
+            if ((from & 7) != (to & 7)) {
+                san.append((char) ('a' + (from & 7))).append('x');
+            }
+            appendSquare(san, to);
+            if (promotion(move) != 0) {
+                san.append('=').append(PIECE_LETTERS.charAt(promotion(move)));
+            }
+        } else {
+            san.append(PIECE_LETTERS.charAt(type));
+            // Other pieces of the same type that can reach the same square.
+            boolean ambiguous = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            for (int index = 0; index < count; index++) {
+                int other = from(moves[index]);
+                if (other != from && to(moves[index]) == to && (squares[other] & 7) == type) {
+                    ambiguous = true;
+                    sameFile |= (other & 7) == (from & 7);
+                    sameRank |= other >> 4 == from >> 4;
+                }
+            }
+            if (ambiguous && (!sameFile || sameRank)) {
+                san.append((char) ('a' + (from & 7)));
+            }
+            if (sameFile) {
+                san.append((char) ('1' + (from >> 4)));
+            }
+            if (squares[to] != EMPTY) {
+                san.append('x');
+            }
+            appendSquare(san, to);
+        }
+
+        make(move);
+        if (inCheck()) {
+            san.append(generateLegal(moves, 0) == 0 ? '#' : '+');
+        }
+        unmake(move);
+        return san.toString();
+    }
+
+    /**
+     * Return a move in UCI notation.
+     *
+     * @param move the move
+     * @return the move, such as e2e4 or a7a8q
+     */
+    public static String toUCI(int move) {
+        StringBuilder uci = new StringBuilder(5);
+        appendSquare(uci, from(move));
+        appendSquare(uci, to(move));
+        if (promotion(move) != 0) {
+            uci.append(Character.toLowerCase(PIECE_LETTERS.charAt(promotion(move))));
+        }
+        return uci.toString();
+    }
+
+    /**
+     * @param move a move
+     * @return the square the move starts on
+     */
+    public static int from(int move) {
+        return move & 0x7f;
+    }
+
+    /**
+     * @param move a move
+     * @return the square the move ends on
+     */
+    public static int to(int move) {
+        return (move >> 7) & 0x7f;
+    }
+
+    /**
+     * @param move a move
+     * @return the piece type promoted to, or 0 if the move is not a promotion
+     */
+    public static int promotion(int move) {
+        return (move >> 14) & 7;
+    }
+
+    /**
+     * @param move a move
+     * @return true if the move captures en passant
+     */
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    private static int move(int from, int to, int promotion) {
+        return from | to << 7 | promotion << 14;
+    }
+
+    private static int parseSquare(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 16 + (file - 'a');
+    }
+
+    private static void appendSquare(StringBuilder text, int square) {
+        text.append((char) ('a' + (square & 7))).append((char) ('1' + (square >> 4)));
+    }
+}
@@ -0,0 +1,507 @@
+package analyzerTools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Open input files that may be gzip-compressed, such as .pgn.gz and .xml.gz archives, without decompressing them to disk.
+ * Compressed files are recognised by their content rather than their name, and are decompressed ahead of the reader on a
+ * separate thread.
+ *
+ * A gzip file may hold several members, one after another, as written by bgzip, pigz --independent or by concatenating
+ * gzip files. The members of such a file are found and inflated in parallel. Each task takes a fixed span of the
+ * compressed file and inflates the members that start in it; a member is only accepted if its CRC and length check,
+ * so the gzip magic number appearing by chance inside compressed data does no harm. The output held by the tasks
+ * until the read-ahead thread needs it is limited in total, not just per task. Whatever the tasks miss, such as a
+ * member too large to hold in memory or the rest of a span once that limit is reached, is inflated in order by the
+ * read-ahead thread.
+ */
+public final class CompressedInput {
+    // The compressed bytes given to each parallel task.
+    private static final int SEGMENT_SIZE = 1 << 22;
+    // The most output a task holds before leaving the rest of its span to the read-ahead thread.
+    private static final int MAX_TASK_OUTPUT = 1 << 26;
+    // The most output all the tasks of a file hold between them.
+    private static final long MAX_PENDING_OUTPUT = 1L << 28;
+    // The size of the chunks passed from the read-ahead thread to the reader.
+    private static final int CHUNK_SIZE = 1 << 16;
+    // The number of chunks decompressed ahead of the reader.
+    private static final int READ_AHEAD = 16;
+    // Marks the end of the decompressed data.
+    private static final byte[] END = new byte[0];
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Is the file gzip-compressed?
+     *
+     * @param path the file
+     * @return true if the file starts with the gzip magic number
+     * @throws IOException on file error
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Open a file, decompressing it if it is gzip-compressed, using a thread for each processor.
+     *
+     * @param path the file
+     * @return the contents of the file
+     * @throws IOException on file error
+     */
+    public static InputStream open(Path path) throws IOException {
+        return open(path, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Open a file, decompressing it if it is gzip-compressed.
+     *
+     * @param path the file
+     * @param threads the number of threads inflating the members of a multi-member file
+     * @return the contents of the file
+     * @throws IOException on file error
+     */
+    public static InputStream open(Path path, int threads) throws IOException {
+        if (!isCompressed(path)) {
+            return Files.newInputStream(path);
+        }
+        ReadAhead stream = new ReadAhead();
+        Thread feeder;
+        long size = Files.size(path);
+        if (threads <= 1 || size <= SEGMENT_SIZE || size > Integer.MAX_VALUE) {
+            feeder = new Thread(() -> stream.feed(() -> inflateStream(path, stream)), "inflate-" + path.getFileName());
+        } else {
+            ByteBuffer data;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            feeder = new Thread(() -> stream.feed(() -> inflateParallel(data, threads, stream)),
+                    "inflate-" + path.getFileName());
+        }
+        feeder.setDaemon(true);
+        stream.feeder = feeder;
+        feeder.start();
+        return stream;
+    }
+
+    /**
+     * Read the whole of a file, decompressing it if it is gzip-compressed.
+     *
+     * @param path the file
+     * @return the contents of the file
+     * @throws IOException on file error
+     */
+    public static byte[] readAllBytes(Path path) throws IOException {
+        try (InputStream in = open(path)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Read the lines of a UTF-8 text file, decompressing it if it is gzip-compressed.
+     *
+     * @param path the file
+     * @return the lines of the file
+     * @throws IOException on file error
+     */
+    public static List<String> readAllLines(Path path) throws IOException {
+        return Arrays.asList(new String(readAllBytes(path), StandardCharsets.UTF_8).split("\\r?\\n"));
+    }
+
+    /**
+     * Inflate a file in order with GZIPInputStream, which reads every member of the file.
+     */
+    private static void inflateStream(Path path, ReadAhead out) throws IOException, InterruptedException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path), CHUNK_SIZE)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int count;
+            while ((count = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                out.put(Arrays.copyOf(buffer, count));
+            }
+        }
+    }
+
+    /**
+     * Inflate the spans of a mapped file in parallel and pass their output on in file order.
+     */
+    private static void inflateParallel(ByteBuffer data, int threads, ReadAhead out)
+            throws IOException, InterruptedException {
+        int size = data.limit();
+        int segments = (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "inflate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The output that the tasks may still hold.
+        AtomicLong budget = new AtomicLong(MAX_PENDING_OUTPUT);
+        try {
+            ArrayDeque<Future<List<Member>>> pending = new ArrayDeque<>();
+            int nextSegment = 0;
+            // The offset of the next member to pass on.
+            int expected = 0;
+            for (int segment = 0; segment < segments && expected < size; segment++) {
+                // Keep every thread busy, but do not run too far ahead of the reader.
+                while (nextSegment < segments && pending.size() < threads * 2) {
+                    int start = nextSegment * SEGMENT_SIZE;
+                    int end = (int) Math.min(size, (long) start + SEGMENT_SIZE);
+                    pending.add(pool.submit(() -> inflateSegment(data, start, end, budget)));
+                    nextSegment++;
+                }
+                List<Member> members;
+                try {
+                    members = pending.poll().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Error inflating", e.getCause());
+                }
+                for (Member member : members) {
+                    if (member.start > expected) {
+                        expected = inflateInOrder(data, expected, member.start, out);
+                    }
+                    if (member.start == expected) {
+                        out.put(member.data);
+                        expected = member.end;
+                    }
+                    budget.addAndGet(member.data.length);
+                }
+                int segmentEnd = (int) Math.min(size, (long) (segment + 1) * SEGMENT_SIZE);
+                expected = inflateInOrder(data, expected, segmentEnd, out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Inflate the members that start in a span of the file, held in memory until the read-ahead thread needs them.
+     * The output held is taken from the budget, and given back by the read-ahead thread once passed on.
+     *
+     * @return the members found, in file order
+     */
+    private static List<Member> inflateSegment(ByteBuffer data, int start, int end, AtomicLong budget) {
+        List<Member> members = new ArrayList<>();
+        int held = 0;
+        int position = start;
+        while (position < end) {
+            int header = findHeader(data, position, end);
+            if (header < 0) {
+                break;
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int memberEnd;
+            try {
+                memberEnd = inflateMember(data, header, Math.min(MAX_TASK_OUTPUT - held, budget.get()),
+                        (chunk, count) -> output.write(chunk, 0, count));
+            } catch (IOException e) {
+                memberEnd = -1;
+            }
+            if (memberEnd == TOO_LARGE) {
+                break;
+            } else if (memberEnd < 0) {
+                // Not a real member: the magic number appeared by chance.
+                position = header + 1;
+            } else if (budget.addAndGet(-output.size()) < 0) {
+                // The other tasks hold enough: leave the rest to the read-ahead thread.
+                budget.addAndGet(output.size());
+                break;
+            } else {
+                members.add(new Member(header, memberEnd, output.toByteArray()));
+                held += output.size();
+                position = memberEnd;
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Inflate members in order, passing their output straight on, until reaching a member that starts at or after
+     * limit, or the end of the file.
+     *
+     * @return the offset of the next member
+     */
+    private static int inflateInOrder(ByteBuffer data, int position, int limit, ReadAhead out)
+            throws IOException, InterruptedException {
+        while (position < limit) {
+            if (gzipDataOffset(data, position) < 0) {
+                // Ignore anything after the last member, as gzip does.
+                return data.limit();
+            }
+            int end = inflateMember(data, position, Long.MAX_VALUE, (chunk, count) -> {
+                try {
+                    out.put(Arrays.copyOf(chunk, count));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                }
+            });
+            if (end < 0) {
+                throw new ZipException("Corrupt gzip member at offset " + position);
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    // Returned by inflateMember when the member's output exceeds the limit.
+    private static final int TOO_LARGE = -2;
+
+    /**
+     * Inflate a single member and check its CRC and length.
+     *
+     * @param data the compressed file
+     * @param start the offset of the member's header
+     * @param maxOutput the most output to produce
+     * @param sink receives the output, which is only known to be correct once the member has been checked
+     * @return the offset after the member, -1 if it is not a valid member, or TOO_LARGE
+     * @throws IOException if the sink fails
+     */
+    private static int inflateMember(ByteBuffer data, int start, long maxOutput, Sink sink) throws IOException {
+        int offset = gzipDataOffset(data, start);
+        if (offset < 0) {
+            return -1;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.duplicate().position(offset));
+            byte[] buffer = new byte[CHUNK_SIZE];
+            CRC32 crc = new CRC32();
+            long total = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return -1;
+                }
+                total += count;
+                if (total > maxOutput) {
+                    return TOO_LARGE;
+                }
+                crc.update(buffer, 0, count);
+                sink.accept(buffer, count);
+            }
+            int trailer = data.limit() - inflater.getRemaining();
+            if (trailer + 8 > data.limit()
+                    || readInt(data, trailer) != (int) crc.getValue()
+                    || readInt(data, trailer + 4) != (int) total) {
+                return -1;
+            }
+            return trailer + 8;
+        } catch (DataFormatException e) {
+            return -1;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Return the offset of the compressed data of a member, skipping its header.
+     *
+     * @return the offset, or -1 if there is no valid header at start
+     */
+    private static int gzipDataOffset(ByteBuffer data, int start) {
+        int size = data.limit();
+        if (start + 10 > size || (data.get(start) & 0xff) != 0x1f || (data.get(start + 1) & 0xff) != 0x8b
+                || data.get(start + 2) != 8) {
+            return -1;
+        }
+        int flags = data.get(start + 3) & 0xff;
+        if ((flags & 0xe0) != 0) {
+            return -1;
+        }
+        int position = start + 10;
+        if ((flags & 4) != 0 && position + 2 <= size) {
+            position += 2 + ((data.get(position) & 0xff) | (data.get(position + 1) & 0xff) << 8);
+        }
+        // The file name and comment are zero-terminated.
+        for (int flag = 8; flag <= 16; flag <<= 1) {
+            if ((flags & flag) != 0) {
+                while (position < size && data.get(position) != 0) {
+                    position++;
+                }
+                position++;
+            }
+        }
+        if ((flags & 2) != 0) {
+            position += 2;
+        }
+        return position < size ? position : -1;
+    }
+
+    /**
+     * Return the offset of the first possible member header in a span.
+     *
+     * @return the offset, or -1 if there is none
+     */
+    private static int findHeader(ByteBuffer data, int start, int end) {
+        int last = Math.min(end, data.limit() - 2);
+        for (int position = start; position < last; position++) {
+            if (data.get(position) == 0x1f && (data.get(position + 1) & 0xff) == 0x8b && data.get(position + 2) == 8) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static int readInt(ByteBuffer data, int position) {
+        return (data.get(position) & 0xff) | (data.get(position + 1) & 0xff) << 8
+                | (data.get(position + 2) & 0xff) << 16 | (data.get(position + 3) & 0xff) << 24;
+    }
+
+    /**
+     * Receives inflated output.
+     */
+    private interface Sink {
+        void accept(byte[] chunk, int count) throws IOException;
+    }
+
+    /**
+     * Work done by the read-ahead thread.
+     */
+    private interface Feed {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * An inflated member held in memory.
+     */
+    private static final class Member {
+        private final int start;
+        private final int end;
+        private final byte[] data;
+
+        Member(int start, int end, byte[] data) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The stream given to the reader, fed with chunks of decompressed data by the read-ahead thread.
+     */
+    private static final class ReadAhead extends InputStream {
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(READ_AHEAD);
+        private Thread feeder;
+        // Set by the read-ahead thread if decompression fails.
+        private volatile IOException failure;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private boolean finished;
+
+        /**
+         * Run the read-ahead thread's work, then mark the end of the data.
+         */
+        void feed(Feed work) {
+            try {
+                work.run();
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // The reader has closed the stream.
+                return;
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // The reader has closed the stream.
+            }
+        }
+
+        void put(byte[] data) throws InterruptedException {
+            if (data.length <= CHUNK_SIZE) {
+                if (data.length > 0) {
+                    chunks.put(data);
+                }
+                return;
+            }
+            // Pass a large member on in chunks, so that the read-ahead holds no more than READ_AHEAD chunks.
+            for (int start = 0; start < data.length; start += CHUNK_SIZE) {
+                chunks.put(Arrays.copyOfRange(data, start, Math.min(data.length, start + CHUNK_SIZE)));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+            feeder.interrupt();
+            chunks.clear();
+        }
+
+        /**
+         * Make sure there is unread data in the current chunk.
+         *
+         * @return false at the end of the data
+         */
+        private boolean fill() throws IOException {
+            while (!finished && position == chunk.length) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading");
+                }
+                position = 0;
+                if (chunk == END) {
+                    finished = true;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return !finished;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package analyzerTools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Decide how to spend the cores and memory available for analysis: how many engines to run, and how many search
+ * threads and how much hash each engine should have.
+ *
+ * The choice depends on the demand, the number of games wanting analysis at once. Extra search threads speed up a
+ * single search by less than they add in total, so a big batch, with at least as many games as cores, is analysed
+ * fastest by a single-threaded engine per core, while a single game is analysed soonest by one engine using every
+ * core. In between, the cores are shared evenly by an engine for each game. The hash budget is shared evenly by the
+ * engines.
+ *
+ * The demand used is the highest seen recently rather than the current one, so that the plan does not flap as games
+ * finish and start in a batch; it follows a fall in demand once the batch is over.
+ */
+public class EngineScheduler {
+    // How long a peak in demand is remembered by default, in milliseconds.
+    static final long PEAK_MILLIS = 10_000;
+    // The share of physical memory used for hash when no budget is given.
+    private static final int DEFAULT_MEMORY_SHARE = 4;
+
+    // The cores and the hash budget in MB to be shared by the engines.
+    private final int cores;
+    private final long hashMB;
+    // How long a peak in demand is remembered, in milliseconds.
+    private final long peakMillis;
+    // The highest recent demand and when it was seen.
+    private int peakDemand;
+    private long peakTime;
+
+    /**
+     * The number of engines and the options of each.
+     */
+    public static final class Plan {
+        private final int engines;
+        private final int threads;
+        private final long hashMB;
+
+        Plan(int engines, int threads, long hashMB) {
+            this.engines = engines;
+            this.threads = threads;
+            this.hashMB = hashMB;
+        }
+
+        /**
+         * @return the number of engines
+         */
+        public int getEngines() {
+            return engines;
+        }
+
+        /**
+         * @return the value of each engine's Threads option
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return the value of each engine's Hash option, in MB
+         */
+        public long getHashMB() {
+            return hashMB;
+        }
+
+        @Override
+        public String toString() {
+            return engines + " engines x " + threads + " threads x " + hashMB + " MB hash";
+        }
+    }
+
+    /**
+     * Create a scheduler.
+     *
+     * @param cores the number of cores to be used by the engines
+     * @param hashMB the total hash of the engines, in MB
+     */
+    public EngineScheduler(int cores, long hashMB) {
+        this(cores, hashMB, PEAK_MILLIS);
+    }
+
+    /**
+     * Create a scheduler that remembers a peak in demand for a given time.
+     *
+     * @param cores the number of cores to be used by the engines
+     * @param hashMB the total hash of the engines, in MB
+     * @param peakMillis how long a peak in demand is remembered, in milliseconds
+     */
+    public EngineScheduler(int cores, long hashMB, long peakMillis) {
+        this.cores = Math.max(1, cores);
+        this.hashMB = Math.max(1, hashMB);
+        this.peakMillis = peakMillis;
+    }
+
+    /**
+     * Create a scheduler for every core of this machine and a quarter of its physical memory.
+     *
+     * @return the scheduler
+     */
+    public static EngineScheduler forMachine() {
+        return new EngineScheduler(Runtime.getRuntime().availableProcessors(), getDefaultHashMB());
+    }
+
+    /**
+     * Return the hash budget used when none is given: a quarter of the physical memory, if it can be found,
+     * or else the same as the JVM's own memory limit.
+     *
+     * @return the budget in MB
+     */
+    public static long getDefaultHashMB() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        long bytes;
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            bytes = ((com.sun.management.OperatingSystemMXBean) bean).getTotalMemorySize() / DEFAULT_MEMORY_SHARE;
+        } else {
+            bytes = Runtime.getRuntime().maxMemory();
+        }
+        return Math.max(1, bytes >> 20);
+    }
+
+    /**
+     * Return the plan for a demand, without regard to earlier demand.
+     *
+     * @param demand the number of games wanting analysis at once
+     * @return the plan
+     */
+    public Plan plan(int demand) {
+        int engines = Math.min(cores, Math.max(1, demand));
+        return new Plan(engines, cores / engines, Math.max(1, hashMB / engines));
+    }
+
+    /**
+     * Note the current demand and return the plan for the highest demand seen recently.
+     *
+     * @param demand the number of games wanting analysis now
+     * @return the plan
+     */
+    public synchronized Plan update(int demand) {
+        long now = System.nanoTime();
+        if (demand >= peakDemand || now - peakTime > peakMillis * 1_000_000L) {
+            peakDemand = demand;
+            peakTime = now;
+        }
+        return plan(peakDemand);
+    }
+
+    /**
+     * @return the number of cores used by the engines
+     */
+    public int getCores() {
+        return cores;
+    }
+
+    /**
+     * @return the total hash of the engines, in MB
+     */
+    public long getHashMB() {
+        return hashMB;
+    }
+}
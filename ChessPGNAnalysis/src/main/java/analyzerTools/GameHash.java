@@ -0,0 +1,98 @@
+package analyzerTools;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A 128-bit hash of a game's normalised move sequence: its moves in lower-case UCI notation,
+ * separated by single spaces. Games that differ only in their tags, comments or formatting
+ * have the same hash.
+ */
+public final class GameHash {
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    });
+
+    private final long high, low;
+
+    public GameHash(long high, long low) {
+        this.high = high;
+        // (0, 0) marks an empty slot in the analysis store.
+        this.low = (high == 0 && low == 0) ? 1 : low;
+    }
+
+    /**
+     * Hash a game's moves.
+     *
+     * @param moves the moves in UCI notation
+     * @return the hash
+     */
+    public static GameHash of(String[] moves) {
+        MessageDigest digest = DIGEST.get();
+        for (int index = 0; index < moves.length; index++) {
+            if (index > 0) {
+                digest.update((byte) ' ');
+            }
+            digest.update(moves[index].toLowerCase().getBytes(StandardCharsets.US_ASCII));
+        }
+        return fromDigest(digest.digest());
+    }
+
+    /**
+     * Hash the fields that identify a game, such as the hash of its moves and its tags.
+     * Each field is hashed as UTF-8, followed by a newline, so that moving text from one
+     * field to the next changes the hash.
+     *
+     * @param fields the fields
+     * @return the hash
+     */
+    public static GameHash identify(String... fields) {
+        MessageDigest digest = DIGEST.get();
+        for (String field : fields) {
+            digest.update(field.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return fromDigest(digest.digest());
+    }
+
+    private static GameHash fromDigest(byte[] bytes) {
+        long high = 0, low = 0;
+        for (int index = 0; index < 8; index++) {
+            high = (high << 8) | (bytes[index] & 0xff);
+            low = (low << 8) | (bytes[index + 8] & 0xff);
+        }
+        return new GameHash(high, low);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GameHash)) {
+            return false;
+        }
+        GameHash hash = (GameHash) other;
+        return high == hash.high && low == hash.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
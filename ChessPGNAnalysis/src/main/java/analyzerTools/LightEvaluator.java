@@ -0,0 +1,464 @@
+package analyzerTools;
+
+import dataextract.Evaluation;
+import dataextract.PlayedMove;
+
+/**
+ * A small chess evaluator that runs in-process, for a quick first look at games without the cost of an external
+ * engine.
+ *
+ * Every legal move of a position is scored by a shallow alpha-beta search, one ply by default, followed by a
+ * quiescence search of captures, with a static evaluation of material and piece-square tables at its leaves.
+ * That is far weaker than a real engine but is enough to tell which moves look like an engine's, at hundreds of
+ * games a second on one core. The scores are given as an engine gives them, in centipawns or "mate N" from the
+ * point of view of the side to move, so the analysis produced can be scored by Game and PlayerStats as usual.
+ *
+ * Not safe for use by several threads at once; each thread should have its own.
+ */
+public class LightEvaluator {
+    // The default search depth in plies, before the quiescence search.
+    public static final int DEFAULT_DEPTH = 1;
+    // The engine ID given to the analysis.
+    public static final String ENGINE_ID = "builtin";
+    // The score of a mate on the board; a mate n plies ahead scores MATE - n.
+    static final int MATE = 100_000;
+    private static final int INFINITY = MATE + 1;
+    // The most plies searched, and the most of them spent on captures.
+    private static final int MAX_PLY = 64;
+    private static final int MAX_QUIESCENCE = 8;
+    // Piece values, by type.
+    private static final int[] VALUES = {0, 100, 320, 330, 500, 900, 0};
+    // The non-pawn material on the board, both sides together, at or below which the endgame king table is used.
+    private static final int ENDGAME_MATERIAL = 1300;
+    // How far below alpha a capture may leave the evaluation and still be searched, for what it might lead to.
+    private static final int DELTA_MARGIN = 200;
+
+    // Piece-square tables from white's point of view, a8 first and h1 last.
+    private static final int[] PAWN_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] KNIGHT_TABLE = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+    private static final int[] BISHOP_TABLE = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+    private static final int[] ROOK_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0};
+    private static final int[] QUEEN_TABLE = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20};
+    private static final int[] KING_TABLE = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20};
+    private static final int[] KING_ENDGAME_TABLE = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+    private static final int[][] TABLES = {
+            null, PAWN_TABLE, KNIGHT_TABLE, BISHOP_TABLE, ROOK_TABLE, QUEEN_TABLE, KING_TABLE};
+
+    private final int depth;
+    // The king table of the position being searched, chosen once for the whole search.
+    private int[] kingTable;
+    // The moves of each ply being searched, MAX_MOVES to a ply, and the keys they are ordered by.
+    private final int[] moves = new int[MAX_PLY * Board.MAX_MOVES];
+    private final int[] keys = new int[MAX_PLY * Board.MAX_MOVES];
+    private Board board;
+
+    /**
+     * Create an evaluator that searches DEFAULT_DEPTH plies.
+     */
+    public LightEvaluator() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * Create an evaluator.
+     *
+     * @param depth the search depth in plies, before the quiescence search; at least 1
+     */
+    public LightEvaluator(int depth) {
+        this.depth = Math.max(1, Math.min(depth, MAX_PLY - MAX_QUIESCENCE - 2));
+    }
+
+    /**
+     * @return the search depth in plies
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Analyse a game's moves from the given ply on, adding them to its analysis. Each move is given the
+     * evaluations of the best moves of its position, best first, and its own evaluation if it is not among them.
+     * If a move is not legal, as in a game that does not start from the usual position, the analysis stops there
+     * and is marked as partial.
+     *
+     * @param moves the game's moves in UCI notation
+     * @param from the first ply to analyse
+     * @param variations the number of best moves to give for each position
+     * @param analysis the analysis to add to
+     */
+    public void analyse(String[] moves, int from, int variations, dataextract.Analysis analysis) {
+        Board board = new Board();
+        int[] rootMoves = new int[Board.MAX_MOVES];
+        int[] scores = new int[Board.MAX_MOVES];
+        for (int ply = 0; ply < moves.length; ply++) {
+            int move = board.parseUCI(moves[ply]);
+            if (move == Board.NO_MOVE) {
+                analysis.setPartial(true);
+                return;
+            }
+            if (ply >= from) {
+                PlayedMove played = new PlayedMove(moves[ply], ply % 2 == 0);
+                int count = scoreMoves(board, variations, move, rootMoves, scores);
+                for (int index = 0; index < count; index++) {
+                    if (index < variations || rootMoves[index] == move) {
+                        played.addEvaluation(new Evaluation(Board.toUCI(rootMoves[index]), format(scores[index])));
+                    }
+                }
+                analysis.addAnalysedMove(played);
+            }
+            board.make(move);
+        }
+    }
+
+    /**
+     * Score the legal moves of a position and sort them, best first. As with an engine searching several
+     * variations, only the best moves, and one other move of interest, are given exact scores: any other move
+     * is only shown to be no better than the last of the best, and is given a score no higher than that.
+     *
+     * @param board the position, which is left as it was
+     * @param variations the number of best moves to score exactly
+     * @param exact another move to score exactly, such as the move played, or Board.NO_MOVE
+     * @param rootMoves where to put the moves, with room for Board.MAX_MOVES
+     * @param scores where to put their scores, from the point of view of the side to move
+     * @return the number of legal moves
+     */
+    public int scoreMoves(Board board, int variations, int exact, int[] rootMoves, int[] scores) {
+        this.board = board;
+        kingTable = isEndgame(board) ? KING_ENDGAME_TABLE : KING_TABLE;
+        int eval = evaluate(board);
+        int count = board.generateLegal(moves, 0);
+        order(0, count);
+        // The exact move first, then the rest with the most promising first, so that a good bound is found early.
+        int next = 0;
+        for (int index = 0; index < count; index++) {
+            if (moves[index] == exact) {
+                rootMoves[next++] = exact;
+            }
+        }
+        for (int index = 0; index < count; index++) {
+            if (moves[index] != exact) {
+                rootMoves[next++] = moves[index];
+            }
+        }
+
+        for (int index = 0; index < count; index++) {
+            int move = rootMoves[index];
+            // Only a move that beats the last of the best moves so far needs an exact score.
+            int bound = index >= variations && move != exact ? scores[variations - 1] : -INFINITY;
+            int after = -(eval + gain(move));
+            board.make(move);
+            int score;
+            // A move that does not give check cannot mate, and stalemate without check is rare enough to miss.
+            if (board.inCheck() && !hasLegalMove(1)) {
+                score = MATE - 1;
+            } else {
+                score = -search(depth - 1, -INFINITY, -bound, 1, after);
+            }
+            board.unmake(move);
+            // Insert in order, after any equal scores, so a move that failed to beat the bound stays out of the best.
+            int position = index;
+            while (position > 0 && scores[position - 1] < score) {
+                rootMoves[position] = rootMoves[position - 1];
+                scores[position] = scores[position - 1];
+                position--;
+            }
+            rootMoves[position] = move;
+            scores[position] = score;
+        }
+        this.board = null;
+        return count;
+    }
+
+    /**
+     * Return a score as an engine gives it.
+     *
+     * @param score the score
+     * @return the score in centipawns, or "mate N", with N negative if the side to move is mated
+     */
+    public static String format(int score) {
+        if (score >= MATE - MAX_PLY) {
+            return "mate " + (MATE - score + 1) / 2;
+        } else if (score <= -(MATE - MAX_PLY)) {
+            return "mate -" + (MATE + score) / 2;
+        }
+        return Integer.toString(score);
+    }
+
+    /**
+     * The static evaluation of a position: material and piece-square tables.
+     *
+     * @param board the position
+     * @return the score from the point of view of the side to move
+     */
+    public static int evaluate(Board board) {
+        int score = 0;
+        int whiteKing = 0;
+        int blackKing = 0;
+        for (int square = 0; square < 120; square++) {
+            if ((square & 0x88) != 0) {
+                square += 7;
+                continue;
+            }
+            int piece = board.pieceAt(square);
+            if (piece == Board.EMPTY) {
+                continue;
+            }
+            int type = piece & 7;
+            if (type == Board.KING) {
+                if (piece == type) {
+                    whiteKing = square;
+                } else {
+                    blackKing = square;
+                }
+                continue;
+            }
+            if (piece == type) {
+                score += VALUES[type] + TABLES[type][whiteIndex(square)];
+            } else {
+                score -= VALUES[type] + TABLES[type][blackIndex(square)];
+            }
+        }
+        int[] kingTable = isEndgame(board) ? KING_ENDGAME_TABLE : KING_TABLE;
+        score += kingTable[whiteIndex(whiteKing)] - kingTable[blackIndex(blackKing)];
+        return board.isWhiteToMove() ? score : -score;
+    }
+
+    /**
+     * Is there so little material left that the king should head for the centre?
+     */
+    private static boolean isEndgame(Board board) {
+        int material = 0;
+        for (int square = 0; square < 120; square++) {
+            if ((square & 0x88) != 0) {
+                square += 7;
+                continue;
+            }
+            int type = board.pieceAt(square) & 7;
+            if (type != Board.PAWN) {
+                material += VALUES[type];
+            }
+        }
+        return material <= ENDGAME_MATERIAL;
+    }
+
+    /**
+     * Return how much a move, not yet made, changes the static evaluation from the mover's point of view, so
+     * that the evaluation is kept up to date through the search without looking at the whole board.
+     */
+    private int gain(int move) {
+        int from = Board.from(move);
+        int to = Board.to(move);
+        int piece = board.pieceAt(from);
+        int type = piece & 7;
+        int promotion = Board.promotion(move);
+        int gain = type == Board.KING
+                ? value(kingTable, piece, to) - value(kingTable, piece, from)
+                : VALUES[promotion == 0 ? type : promotion] + value(promotion == 0 ? piece : promotion | (piece & Board.BLACK), to)
+                - VALUES[type] - value(piece, from);
+        if (Board.isEnPassant(move)) {
+            int square = to + (piece == type ? -16 : 16);
+            gain += VALUES[Board.PAWN] + value(board.pieceAt(square), square);
+        } else if (board.pieceAt(to) != Board.EMPTY) {
+            int victim = board.pieceAt(to);
+            gain += VALUES[victim & 7] + value(victim, to);
+        } else if (type == Board.KING && Math.abs(to - from) == 2) {
+            // Castling: the rook moves too.
+            int rook = Board.ROOK | (piece & Board.BLACK);
+            gain += to > from ? value(rook, from + 1) - value(rook, from + 3) : value(rook, from - 1) - value(rook, from - 4);
+        }
+        return gain;
+    }
+
+    /**
+     * Return the piece-square value of a piece, from its own side's point of view.
+     */
+    private static int value(int piece, int square) {
+        return value(TABLES[piece & 7], piece, square);
+    }
+
+    private static int value(int[] table, int piece, int square) {
+        return table[(piece & Board.BLACK) == 0 ? whiteIndex(square) : blackIndex(square)];
+    }
+
+    private static int whiteIndex(int square) {
+        return (7 - (square >> 4)) * 8 + (square & 7);
+    }
+
+    private static int blackIndex(int square) {
+        return (square >> 4) * 8 + (square & 7);
+    }
+
+    /**
+     * An alpha-beta search of the board's position.
+     *
+     * @return the score from the point of view of the side to move
+     */
+    private int search(int depth, int alpha, int beta, int ply, int eval) {
+        if (depth <= 0) {
+            return quiesce(alpha, beta, ply, 0, eval);
+        }
+        int offset = ply * Board.MAX_MOVES;
+        int end = board.generateLegal(moves, offset);
+        if (end == offset) {
+            return board.inCheck() ? -(MATE - ply) : 0;
+        }
+        order(offset, end);
+        int best = -INFINITY;
+        for (int index = offset; index < end; index++) {
+            int move = moves[index];
+            int after = -(eval + gain(move));
+            board.make(move);
+            int score = -search(depth - 1, -beta, -alpha, ply + 1, after);
+            board.unmake(move);
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Search captures and promotions until the position is quiet, letting the side to move stand pat.
+     *
+     * @return the score from the point of view of the side to move
+     */
+    private int quiesce(int alpha, int beta, int ply, int captures, int standPat) {
+        if (standPat >= beta || captures >= MAX_QUIESCENCE) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+        int offset = ply * Board.MAX_MOVES;
+        int end = board.generate(moves, offset, true);
+        order(offset, end);
+        for (int index = offset; index < end; index++) {
+            int move = moves[index];
+            int gain = gain(move);
+            if (standPat + gain + DELTA_MARGIN <= alpha || losesMaterial(move)) {
+                // Too little to gain to be worth searching.
+                continue;
+            }
+            if (!board.isLegal(move)) {
+                continue;
+            }
+            board.make(move);
+            int score = -quiesce(-beta, -alpha, ply + 1, captures + 1, -(standPat + gain));
+            board.unmake(move);
+            if (score >= beta) {
+                return score;
+            }
+            alpha = Math.max(alpha, score);
+        }
+        return alpha;
+    }
+
+    /**
+     * Is a move an under-promotion, or a capture of a defended piece by a more valuable one? Either is
+     * very unlikely to be better than the alternatives, so the quiescence search passes them over.
+     */
+    private boolean losesMaterial(int move) {
+        int promotion = Board.promotion(move);
+        if (promotion != 0) {
+            return promotion != Board.QUEEN;
+        }
+        int to = Board.to(move);
+        int attacker = VALUES[board.pieceAt(Board.from(move)) & 7];
+        int victim = Board.isEnPassant(move) ? VALUES[Board.PAWN] : VALUES[board.pieceAt(to) & 7];
+        return attacker > victim && board.isAttacked(to, board.isWhiteToMove() ? 1 : 0);
+    }
+
+    /**
+     * Does the side to move have a legal move?
+     */
+    private boolean hasLegalMove(int ply) {
+        int offset = ply * Board.MAX_MOVES;
+        int end = board.generate(moves, offset, false);
+        for (int index = offset; index < end; index++) {
+            if (board.isLegal(moves[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Order moves so that the most valuable captures, by the least valuable pieces, are searched first.
+     */
+    private void order(int offset, int end) {
+        for (int index = offset; index < end; index++) {
+            int move = moves[index];
+            int victim = Board.isEnPassant(move) ? Board.PAWN : board.pieceAt(Board.to(move)) & 7;
+            int key = VALUES[victim] * 8 + VALUES[Board.promotion(move)] * 8 - (board.pieceAt(Board.from(move)) & 7);
+            // Insert in order, highest key first.
+            int position = index;
+            while (position > offset && keys[position - 1] < key) {
+                moves[position] = moves[position - 1];
+                keys[position] = keys[position - 1];
+                position--;
+            }
+            moves[position] = move;
+            keys[position] = key;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package analyzerTools;
+
+import java.util.function.Consumer;
+
+/**
+ * Pick the main-line SAN moves out of PGN text, which may be given a line at a time. Comments and
+ * variations may span lines, so their nesting is carried from one piece of text to the next.
+ */
+class MoveTextScanner {
+    // Splits the text into tokens, and remembers any comment left open.
+    private final PGNLexer lexer = new PGNLexer();
+    // How deeply nested in (...) variations the scanner is.
+    private int variationDepth;
+    // Whether any moves have been seen since the end of the last game.
+    private boolean inGame;
+
+    /**
+     * Scan some PGN text. Each main-line move is passed to the consumer; null is passed at the
+     * end of each game.
+     *
+     * @param text the text, such as a line or a whole game
+     * @param moves the consumer of moves
+     */
+    void scan(CharSequence text, Consumer<String> moves) {
+        lexer.reset(text);
+        PGNLexer.Token token;
+        while ((token = lexer.next()) != PGNLexer.Token.END) {
+            switch (token) {
+                case TAG:
+                    // A tag after movetext without a result starts a new game.
+                    if (inGame) {
+                        endGame(moves);
+                    }
+                    break;
+                case VARIATION_START:
+                    variationDepth++;
+                    break;
+                case VARIATION_END:
+                    variationDepth = Math.max(0, variationDepth - 1);
+                    break;
+                case RESULT:
+                    if (variationDepth == 0) {
+                        endGame(moves);
+                    }
+                    break;
+                case MOVE:
+                    if (variationDepth == 0) {
+                        inGame = true;
+                        moves.accept(lexer.getBareMove());
+                    }
+                    break;
+                default:
+                    // Move numbers, comments and NAGs.
+                    break;
+            }
+        }
+    }
+
+    private void endGame(Consumer<String> moves) {
+        moves.accept(null);
+        inGame = false;
+        variationDepth = 0;
+    }
+
+    /**
+     * Remove check, mate and annotation suffixes from a SAN move.
+     *
+     * @param move the move
+     * @return the bare move
+     */
+    static String normalise(String move) {
+        int end = move.length();
+        while (end > 0 && "+#!?".indexOf(move.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return end == move.length() ? move : move.substring(0, end);
+    }
+}
@@ -0,0 +1,285 @@
+package analyzerTools;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.BufferedOutputStream;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of opening lines, used to find how many plies of a game are book moves.
+ *
+ * Each distinct SAN move is given an int index. The children of every node are held in a single
+ * open-addressed hash table keyed on (parent node, move index), so a lookup is O(1) per ply and the
+ * whole trie is two primitive arrays. The saved form is those arrays as they are held in memory, so
+ * a saved trie can be memory-mapped rather than rebuilt.
+ */
+public class OpeningTrie {
+    private static final int MAGIC = 0x4f50454e;
+    private static final int VERSION = 1;
+    // The root node; every other node is numbered in order of creation.
+    private static final int ROOT = 0;
+    // Maximum table load before the table is doubled during building.
+    private static final double MAX_LOAD = 0.5;
+
+    // The SAN text of each move index.
+    private final List<String> moveNames;
+    // The index of each SAN move.
+    private final Map<String, Integer> moveIndices;
+    // Hash table keys: (parent << 32) | (move index + 1); 0 marks an empty slot.
+    private LongBuffer keys;
+    // Hash table values: the child node for the key in the same slot.
+    private IntBuffer children;
+    // Table size - 1; the table size is a power of two.
+    private int mask;
+    // The number of nodes, including the root.
+    private int nodeCount;
+
+    private OpeningTrie(List<String> moveNames, LongBuffer keys, IntBuffer children, int nodeCount) {
+        this.moveNames = moveNames;
+        this.moveIndices = new HashMap<>();
+        for (int index = 0; index < moveNames.size(); index++) {
+            moveIndices.put(moveNames.get(index), index);
+        }
+        this.keys = keys;
+        this.children = children;
+        this.mask = keys.capacity() - 1;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Build a trie from the games in a PGN file, which may be gzip-compressed.
+     *
+     * @param filePath the reference PGN file
+     * @param maxPlies the maximum number of plies of each game to add
+     * @return the trie
+     * @throws IOException on file error
+     */
+    public static OpeningTrie build(Path filePath, int maxPlies) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(CompressedInput.open(filePath), StandardCharsets.ISO_8859_1))) {
+            return build(reader, maxPlies);
+        }
+    }
+
+    /**
+     * Build a trie from the games read from a PGN source.
+     *
+     * @param reader the PGN source
+     * @param maxPlies the maximum number of plies of each game to add
+     * @return the trie
+     * @throws IOException on read error
+     */
+    public static OpeningTrie build(BufferedReader reader, int maxPlies) throws IOException {
+        OpeningTrie trie = new OpeningTrie(new ArrayList<>(), LongBuffer.allocate(1 << 12),
+                IntBuffer.allocate(1 << 12), 1);
+        MoveTextScanner scanner = new MoveTextScanner();
+        int[] node = {ROOT};
+        int[] ply = {0};
+        String line;
+        while ((line = reader.readLine()) != null) {
+            scanner.scan(line, move -> {
+                if (move == null) {
+                    // End of a game.
+                    node[0] = ROOT;
+                    ply[0] = 0;
+                } else if (ply[0] < maxPlies) {
+                    node[0] = trie.addChild(node[0], trie.moveIndex(move));
+                    ply[0]++;
+                }
+            });
+        }
+        return trie;
+    }
+
+    /**
+     * Load a trie saved by {@link #save(Path)}. The node table is memory-mapped rather than read.
+     *
+     * @param filePath the saved trie
+     * @return the trie
+     * @throws IOException on file error or if the file is not a saved trie
+     */
+    public static OpeningTrie load(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not an opening trie: " + filePath);
+            }
+            int nodeCount = buffer.getInt();
+            int moveCount = buffer.getInt();
+            int tableSize = buffer.getInt();
+            List<String> moveNames = new ArrayList<>(moveCount);
+            for (int index = 0; index < moveCount; index++) {
+                byte[] name = new byte[buffer.get()];
+                buffer.get(name);
+                moveNames.add(new String(name, StandardCharsets.US_ASCII));
+            }
+            int keysStart = align(buffer.position());
+            int childrenStart = keysStart + tableSize * Long.BYTES;
+            LongBuffer keys = buffer.slice(keysStart, tableSize * Long.BYTES).asLongBuffer();
+            IntBuffer children = buffer.slice(childrenStart, tableSize * Integer.BYTES).asIntBuffer();
+            return new OpeningTrie(moveNames, keys, children, nodeCount);
+        }
+    }
+
+    /**
+     * Save the trie in a form that can be memory-mapped by {@link #load(Path)}.
+     *
+     * @param filePath where to save the trie
+     * @throws IOException on file error
+     */
+    public void save(Path filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(moveNames.size());
+            out.writeInt(keys.capacity());
+            for (String name : moveNames) {
+                byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+                out.writeByte(bytes.length);
+                out.write(bytes);
+            }
+            while (out.size() != align(out.size())) {
+                out.writeByte(0);
+            }
+            for (int slot = 0; slot < keys.capacity(); slot++) {
+                out.writeLong(keys.get(slot));
+            }
+            for (int slot = 0; slot < children.capacity(); slot++) {
+                out.writeInt(children.get(slot));
+            }
+        }
+    }
+
+    /**
+     * Return the number of plies of a game that are found in the trie.
+     *
+     * @param moves the game's moves in SAN
+     * @return the book depth of the game
+     */
+    public int getBookDepth(String[] moves) {
+        int node = ROOT;
+        int depth = 0;
+        while (depth < moves.length) {
+            Integer move = moveIndices.get(MoveTextScanner.normalise(moves[depth]));
+            if (move == null) {
+                break;
+            }
+            node = findChild(node, move);
+            if (node < 0) {
+                break;
+            }
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Return the number of nodes in the trie, including the root.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Extract the SAN moves from a game's movetext, without move numbers, comments,
+     * NAGs, variations or the result.
+     *
+     * @param pgn a String containing a single game in PGN format
+     * @return the game's moves
+     */
+    public static String[] getMoves(String pgn) {
+        List<String> moves = new ArrayList<>();
+        new MoveTextScanner().scan(pgn, move -> {
+            if (move != null) {
+                moves.add(move);
+            }
+        });
+        return moves.toArray(new String[0]);
+    }
+
+    private int findChild(int parent, int move) {
+        long key = key(parent, move);
+        int slot = slot(key);
+        long found;
+        while ((found = keys.get(slot)) != 0) {
+            if (found == key) {
+                return children.get(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int addChild(int parent, int move) {
+        long key = key(parent, move);
+        int slot = slot(key);
+        long found;
+        while ((found = keys.get(slot)) != 0) {
+            if (found == key) {
+                return children.get(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        int child = nodeCount++;
+        keys.put(slot, key);
+        children.put(slot, child);
+        if (nodeCount > keys.capacity() * MAX_LOAD) {
+            grow();
+        }
+        return child;
+    }
+
+    private int moveIndex(String move) {
+        return moveIndices.computeIfAbsent(move, name -> {
+            moveNames.add(name);
+            return moveNames.size() - 1;
+        });
+    }
+
+    private void grow() {
+        LongBuffer oldKeys = keys;
+        IntBuffer oldChildren = children;
+        keys = LongBuffer.allocate(oldKeys.capacity() * 2);
+        children = IntBuffer.allocate(oldChildren.capacity() * 2);
+        mask = keys.capacity() - 1;
+        for (int old = 0; old < oldKeys.capacity(); old++) {
+            long key = oldKeys.get(old);
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys.get(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys.put(slot, key);
+                children.put(slot, oldChildren.get(old));
+            }
+        }
+    }
+
+    private static long key(int parent, int move) {
+        return ((long) parent << 32) | (move + 1);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static int align(int position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+}
@@ -0,0 +1,638 @@
+package analyzerTools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the games in a PGN file, so that the games matching a {@link PGNQuery} can be read without
+ * scanning the whole file.
+ *
+ * For each game the index holds its byte offset and length in the file, and its White, Black, Event, ECO,
+ * Result, Date and Elo tags. Tag strings are stored once, in a sorted dictionary, and each game refers to them
+ * by their position in it. Every column is a primitive array, and the player, event, ECO and date columns
+ * also have a copy of the game numbers sorted by that column, so that a query finds its games by binary search.
+ * The saved form is those arrays as they are held in memory, so a saved index is memory-mapped rather than read.
+ */
+public class PGNIndex {
+    private static final int MAGIC = 0x50474e49;
+    private static final int VERSION = 2;
+    // The extension added to the name of a PGN file to give the name of its index.
+    public static final String EXTENSION = ".idx";
+
+    // The file size and modification time of the PGN file when it was indexed.
+    private final long fileSize;
+    private final long fileTime;
+    private final int gameCount;
+    // The dictionary: where each string starts in the string bytes, with a final entry for the end.
+    private final IntBuffer stringStarts;
+    private final ByteBuffer stringBytes;
+    // Where each game starts in the PGN file, and its length in bytes.
+    private final LongBuffer offsets;
+    private final IntBuffer lengths;
+    // The dictionary entries of each game's White, Black, Event, ECO and Result tags.
+    private final IntBuffer white;
+    private final IntBuffer black;
+    private final IntBuffer event;
+    private final IntBuffer eco;
+    private final IntBuffer result;
+    // Each game's date as from PGNQuery.parseDate, and the players' ratings as from PGNQuery.parseElo.
+    private final IntBuffer date;
+    private final IntBuffer whiteElo;
+    private final IntBuffer blackElo;
+    // The game numbers sorted by White, Black, Event, ECO and date, then by game number.
+    private final IntBuffer byWhite;
+    private final IntBuffer byBlack;
+    private final IntBuffer byEvent;
+    private final IntBuffer byEco;
+    private final IntBuffer byDate;
+
+    private PGNIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a PGN index");
+        }
+        fileSize = buffer.getLong();
+        fileTime = buffer.getLong();
+        gameCount = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int stringLength = buffer.getInt();
+        int position = align(buffer.position());
+        stringStarts = buffer.slice(position, (stringCount + 1) * Integer.BYTES).asIntBuffer();
+        position += (stringCount + 1) * Integer.BYTES;
+        stringBytes = buffer.slice(position, stringLength);
+        position = align(position + stringLength);
+        offsets = buffer.slice(position, gameCount * Long.BYTES).asLongBuffer();
+        position += gameCount * Long.BYTES;
+        IntBuffer[] columns = new IntBuffer[14];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = buffer.slice(position, gameCount * Integer.BYTES).asIntBuffer();
+            position += gameCount * Integer.BYTES;
+        }
+        lengths = columns[0];
+        white = columns[1];
+        black = columns[2];
+        event = columns[3];
+        eco = columns[4];
+        result = columns[5];
+        date = columns[6];
+        whiteElo = columns[7];
+        blackElo = columns[8];
+        byWhite = columns[9];
+        byBlack = columns[10];
+        byEvent = columns[11];
+        byEco = columns[12];
+        byDate = columns[13];
+    }
+
+    /**
+     * Return the index of a PGN file, loading it from beside the file or, if it is missing or out of date,
+     * building and saving it.
+     *
+     * @param pgnPath the PGN file
+     * @return the index
+     * @throws IOException on file error
+     */
+    public static PGNIndex forFile(Path pgnPath) throws IOException {
+        Path indexPath = pgnPath.resolveSibling(pgnPath.getFileName() + EXTENSION);
+        if (Files.exists(indexPath)) {
+            try {
+                PGNIndex index = load(indexPath);
+                if (index.fileSize == Files.size(pgnPath)
+                        && index.fileTime == Files.getLastModifiedTime(pgnPath).toMillis()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // Damaged, or saved by another version; it is replaced below.
+            }
+        }
+        build(pgnPath, indexPath);
+        return load(indexPath);
+    }
+
+    /**
+     * Index a PGN file. Compressed files cannot be indexed, as their games cannot be read from an offset.
+     *
+     * @param pgnPath the PGN file
+     * @param indexPath where to save the index
+     * @throws IOException on file error
+     */
+    public static void build(Path pgnPath, Path indexPath) throws IOException {
+        if (CompressedInput.isCompressed(pgnPath)) {
+            throw new IOException("Cannot index a compressed file: " + pgnPath);
+        }
+        long fileSize = Files.size(pgnPath);
+        long fileTime = Files.getLastModifiedTime(pgnPath).toMillis();
+        Builder builder = new Builder();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(pgnPath), 1 << 16)) {
+            builder.scan(in);
+        }
+        Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        builder.save(temporary, fileSize, fileTime);
+        Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a saved index. The index is memory-mapped rather than read.
+     *
+     * @param indexPath the saved index
+     * @return the index
+     * @throws IOException on file error
+     */
+    public static PGNIndex load(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new PGNIndex(buffer);
+            } catch (IOException | IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IOException("Not a PGN index: " + indexPath);
+            }
+        }
+    }
+
+    /**
+     * Return the number of games in the file.
+     *
+     * @return the number of games
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Find the games that match a query.
+     *
+     * @param query the query
+     * @return the numbers of the matching games, in file order
+     */
+    public int[] find(PGNQuery query) {
+        int[] candidates = null;
+        for (PGNQuery.Term term : query.getTerms()) {
+            int[] games = find(term);
+            if (games != null) {
+                candidates = candidates == null ? games : intersect(candidates, games);
+            }
+        }
+        if (candidates == null) {
+            candidates = new int[gameCount];
+            Arrays.setAll(candidates, game -> game);
+        }
+        // Check the terms that could not be looked up, such as ratings.
+        int count = 0;
+        for (int game : candidates) {
+            int current = game;
+            if (query.matches(name -> getTag(current, name))) {
+                candidates[count++] = game;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Read the text of some games from the indexed file.
+     *
+     * @param pgnPath the PGN file
+     * @param games the game numbers
+     * @return the text of each game
+     * @throws IOException on file error
+     */
+    public List<String> readGames(Path pgnPath, int[] games) throws IOException {
+        List<String> texts = new ArrayList<>(games.length);
+        try (FileChannel channel = FileChannel.open(pgnPath, StandardOpenOption.READ)) {
+            for (int game : games) {
+                texts.add(new String(readGame(channel, game), StandardCharsets.UTF_8));
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Read the bytes of some games from the indexed file, one after another.
+     *
+     * @param pgnPath the PGN file
+     * @param games the game numbers
+     * @return the bytes of the games
+     * @throws IOException on file error
+     */
+    public byte[] readBytes(Path pgnPath, int[] games) throws IOException {
+        long total = 0;
+        for (int game : games) {
+            total += lengths.get(game);
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many games selected from " + pgnPath);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) total);
+        try (FileChannel channel = FileChannel.open(pgnPath, StandardOpenOption.READ)) {
+            for (int game : games) {
+                bytes.put(readGame(channel, game));
+            }
+        }
+        return bytes.array();
+    }
+
+    /**
+     * Return a tag of a game, as far as the index knows it.
+     *
+     * @param game the game number
+     * @param name the PGN tag name
+     * @return the tag's value, an empty String if the game has no such tag, or null if the index does not hold it
+     */
+    public String getTag(int game, String name) {
+        switch (name) {
+            case "White":
+                return getString(white.get(game));
+            case "Black":
+                return getString(black.get(game));
+            case "Event":
+                return getString(event.get(game));
+            case "ECO":
+                return getString(eco.get(game));
+            case "Result":
+                return getString(result.get(game));
+            case "Date":
+                int value = date.get(game);
+                return String.format("%04d.%02d.%02d", value / 10000, value / 100 % 100, value % 100);
+            case "WhiteElo":
+                return getElo(whiteElo.get(game));
+            case "BlackElo":
+                return getElo(blackElo.get(game));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return a rating as the tag value it was read from, or an empty String if it is unknown.
+     */
+    private static String getElo(int elo) {
+        return elo == PGNQuery.UNKNOWN_ELO ? "" : Integer.toString(elo);
+    }
+
+    private byte[] readGame(FileChannel channel, int game) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lengths.get(game));
+        long offset = offsets.get(game);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("PGN file is shorter than its index");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Look up the games matching a term in the sorted columns.
+     *
+     * @return the game numbers in file order, or null if the term cannot be looked up
+     */
+    private int[] find(PGNQuery.Term term) {
+        if (!term.operator.equals("=") && !term.field.equals(PGNQuery.DATE) && !term.field.equals(PGNQuery.YEAR)) {
+            return null;
+        }
+        switch (term.field) {
+            case PGNQuery.WHITE:
+                return findString(byWhite, white, term.value);
+            case PGNQuery.BLACK:
+                return findString(byBlack, black, term.value);
+            case PGNQuery.PLAYER:
+                int[] asWhite = findString(byWhite, white, term.value);
+                int[] asBlack = findString(byBlack, black, term.value);
+                int[] both = Arrays.copyOf(asWhite, asWhite.length + asBlack.length);
+                System.arraycopy(asBlack, 0, both, asWhite.length, asBlack.length);
+                Arrays.sort(both);
+                // A player may have played both sides of a game.
+                return Arrays.stream(both).distinct().toArray();
+            case PGNQuery.EVENT:
+                return findString(byEvent, event, term.value);
+            case PGNQuery.ECO:
+                return findString(byEco, eco, term.value);
+            case PGNQuery.DATE:
+            case PGNQuery.YEAR:
+                int[] range = term.dateRange();
+                int[] games = range(byDate, date, range[0], range[1]);
+                Arrays.sort(games);
+                return games;
+            default:
+                return null;
+        }
+    }
+
+    private int[] findString(IntBuffer sorted, IntBuffer column, String value) {
+        int id = findString(value);
+        return id < 0 ? new int[0] : range(sorted, column, id, id);
+    }
+
+    /**
+     * Return the games whose value in a column is in a range, in the order of the sorted column.
+     */
+    private int[] range(IntBuffer sorted, IntBuffer column, int from, int to) {
+        int first = lowerBound(sorted, column, from);
+        int last = to == Integer.MAX_VALUE ? gameCount : lowerBound(sorted, column, to + 1);
+        int[] games = new int[Math.max(0, last - first)];
+        for (int index = 0; index < games.length; index++) {
+            games[index] = sorted.get(first + index);
+        }
+        return games;
+    }
+
+    /**
+     * Return the position of the first game in a sorted column whose value is at least the given value.
+     */
+    private int lowerBound(IntBuffer sorted, IntBuffer column, int value) {
+        int low = 0;
+        int high = gameCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (column.get(sorted.get(middle)) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Return the position of a string in the dictionary.
+     *
+     * @return the position, or -1 if it is not there
+     */
+    private int findString(String value) {
+        int low = 0;
+        int high = stringStarts.capacity() - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = getString(middle).compareTo(value);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private String getString(int id) {
+        int start = stringStarts.get(id);
+        byte[] bytes = new byte[stringStarts.get(id + 1) - start];
+        stringBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] both = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                both[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    private static int align(int position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /**
+     * Collects the columns while a PGN file is scanned.
+     */
+    private static final class Builder {
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private long[] offsets = new long[1024];
+        private int[][] columns = new int[9][1024];
+        private int gameCount;
+
+        /**
+         * Find the games and their tags. A game starts at the first tag line after some movetext, as in
+         * StockPGNAnalyzer.splitGames.
+         */
+        void scan(InputStream in) throws IOException {
+            PGNLexer lexer = new PGNLexer();
+            long offset = 0;
+            boolean inMoves = true;
+            int consumed;
+            while ((consumed = readLine(in)) > 0) {
+                lexer.reset(line, 0, lineLength);
+                PGNLexer.Token token = lexer.next();
+                if (token == PGNLexer.Token.TAG && inMoves) {
+                    startGame(offset);
+                    inMoves = false;
+                } else if (token != PGNLexer.Token.TAG && token != PGNLexer.Token.END) {
+                    inMoves = true;
+                }
+                for (; token != PGNLexer.Token.END; token = lexer.next()) {
+                    if (token == PGNLexer.Token.TAG && gameCount > 0) {
+                        tag(lexer.getTagName(), lexer.getTagValue());
+                    }
+                }
+                offset += consumed;
+            }
+            if (gameCount > 0) {
+                // The length of each game is the distance to the next; the last runs to the end of the file.
+                columns[0][gameCount - 1] = (int) (offset - offsets[gameCount - 1]);
+            }
+        }
+
+        // The current line, without its line terminator.
+        private byte[] line = new byte[256];
+        private int lineLength;
+
+        /**
+         * Read a line into line and lineLength.
+         *
+         * @return the number of bytes consumed, including the line terminator, or 0 at the end of the input
+         */
+        private int readLine(InputStream in) throws IOException {
+            lineLength = 0;
+            int consumed = 0;
+            int ch;
+            while ((ch = in.read()) >= 0) {
+                consumed++;
+                if (ch == '\n') {
+                    break;
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = (byte) ch;
+            }
+            if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                lineLength--;
+            }
+            return consumed;
+        }
+
+        private void startGame(long offset) {
+            if (gameCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, gameCount * 2);
+                for (int column = 0; column < columns.length; column++) {
+                    columns[column] = Arrays.copyOf(columns[column], gameCount * 2);
+                }
+            }
+            if (gameCount > 0) {
+                columns[0][gameCount - 1] = (int) (offset - offsets[gameCount - 1]);
+            }
+            offsets[gameCount] = offset;
+            // Games without a tag refer to the empty string.
+            for (int column = 1; column <= 5; column++) {
+                columns[column][gameCount] = stringId("");
+            }
+            columns[7][gameCount] = PGNQuery.UNKNOWN_ELO;
+            columns[8][gameCount] = PGNQuery.UNKNOWN_ELO;
+            gameCount++;
+        }
+
+        private void tag(String name, String latin1Value) {
+            // The lexer reads bytes as ISO-8859-1; the file is UTF-8.
+            String value = new String(latin1Value.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            int game = gameCount - 1;
+            switch (name) {
+                case "White":
+                    columns[1][game] = stringId(value);
+                    break;
+                case "Black":
+                    columns[2][game] = stringId(value);
+                    break;
+                case "Event":
+                    columns[3][game] = stringId(value);
+                    break;
+                case "ECO":
+                    columns[4][game] = stringId(value);
+                    break;
+                case "Result":
+                    columns[5][game] = stringId(value);
+                    break;
+                case "Date":
+                    columns[6][game] = PGNQuery.parseDate(value);
+                    break;
+                case "WhiteElo":
+                    columns[7][game] = PGNQuery.parseElo(value);
+                    break;
+                case "BlackElo":
+                    columns[8][game] = PGNQuery.parseElo(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private int stringId(String value) {
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = strings.size();
+                strings.add(value);
+                stringIds.put(value, id);
+            }
+            return id;
+        }
+
+        void save(Path indexPath, long fileSize, long fileTime) throws IOException {
+            // Renumber the strings in sorted order, so that the sorted columns are also in string order.
+            String[] sortedStrings = strings.toArray(new String[0]);
+            Arrays.sort(sortedStrings);
+            int[] newId = new int[sortedStrings.length];
+            for (int id = 0; id < sortedStrings.length; id++) {
+                newId[stringIds.get(sortedStrings[id])] = id;
+            }
+            for (int column = 1; column <= 5; column++) {
+                for (int game = 0; game < gameCount; game++) {
+                    columns[column][game] = newId[columns[column][game]];
+                }
+            }
+            byte[][] encoded = new byte[sortedStrings.length][];
+            int stringLength = 0;
+            for (int id = 0; id < sortedStrings.length; id++) {
+                encoded[id] = sortedStrings[id].getBytes(StandardCharsets.UTF_8);
+                stringLength += encoded[id].length;
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(fileTime);
+                out.writeInt(gameCount);
+                out.writeInt(sortedStrings.length);
+                out.writeInt(stringLength);
+                pad(out);
+                int start = 0;
+                for (byte[] bytes : encoded) {
+                    out.writeInt(start);
+                    start += bytes.length;
+                }
+                out.writeInt(start);
+                for (byte[] bytes : encoded) {
+                    out.write(bytes);
+                }
+                pad(out);
+                for (int game = 0; game < gameCount; game++) {
+                    out.writeLong(offsets[game]);
+                }
+                for (int[] column : columns) {
+                    writeColumn(out, column);
+                }
+                // White, Black, Event, ECO and Date.
+                for (int column : new int[] {1, 2, 3, 4, 6}) {
+                    writeColumn(out, sortBy(columns[column]));
+                }
+            }
+        }
+
+        private void writeColumn(DataOutputStream out, int[] column) throws IOException {
+            for (int game = 0; game < gameCount; game++) {
+                out.writeInt(column[game]);
+            }
+        }
+
+        /**
+         * Return the game numbers sorted by a column, then by game number.
+         */
+        private int[] sortBy(int[] column) {
+            long[] keys = new long[gameCount];
+            for (int game = 0; game < gameCount; game++) {
+                keys[game] = (long) column[game] << 32 | game;
+            }
+            Arrays.sort(keys);
+            int[] games = new int[gameCount];
+            for (int index = 0; index < gameCount; index++) {
+                games[index] = (int) keys[index];
+            }
+            return games;
+        }
+
+        private static void pad(DataOutputStream out) throws IOException {
+            while (out.size() != align(out.size())) {
+                out.writeByte(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package analyzerTools;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Split PGN text into typed tokens in a single pass. Each token is a view of the text, given by its start and end
+ * offsets, so lexing allocates nothing; text is only copied when a caller asks for it with getText.
+ *
+ * The text may be a whole file, a single game or a single line. A {...} comment left open at the end of the text
+ * continues into the text given next to reset, so that a file can be lexed a line at a time. Escaped lines,
+ * starting with %, are skipped.
+ *
+ * Typical use:
+ * <pre>
+ *     PGNLexer lexer = new PGNLexer(pgn);
+ *     PGNLexer.Token token;
+ *     while ((token = lexer.next()) != PGNLexer.Token.END) {
+ *         if (token == PGNLexer.Token.MOVE) {
+ *             ... lexer.getStart(), lexer.getEnd() ...
+ *         }
+ *     }
+ * </pre>
+ */
+public class PGNLexer {
+
+    /**
+     * The kinds of token.
+     */
+    public enum Token {
+        // A [Name "Value"] tag pair, brackets included.
+        TAG,
+        // A move number, such as "12." or "12...".
+        MOVE_NUMBER,
+        // A move in SAN, including any check and annotation suffixes, such as "Nxe5+!"; or a move in another
+        // notation, such as the UCI moves of analysis files.
+        MOVE,
+        // The text of a {...} or ; comment, without the delimiters, such as "[%clk 0:03:00]".
+        COMMENT,
+        // A numeric annotation glyph, such as "$1".
+        NAG,
+        // The ( and ) around a variation.
+        VARIATION_START,
+        VARIATION_END,
+        // The game termination marker: 1-0, 0-1, 1/2-1/2 or *.
+        RESULT,
+        // The end of the text.
+        END
+    }
+
+    // The text being lexed.
+    private CharSequence text;
+    private int length;
+    // The offset of the next character to examine.
+    private int position;
+    // The extent of the current token.
+    private int start;
+    private int end;
+    // Whether the text ended inside a {...} comment.
+    private boolean inComment;
+
+    /**
+     * Create a lexer with no text; call reset before next.
+     */
+    public PGNLexer() {
+        this("");
+    }
+
+    /**
+     * Create a lexer for some text.
+     *
+     * @param text the PGN text
+     */
+    public PGNLexer(CharSequence text) {
+        reset(text);
+    }
+
+    /**
+     * Create a lexer for PGN bytes, without decoding them. Bytes are taken as ISO-8859-1 characters, which leaves
+     * the movetext of UTF-8 files intact.
+     *
+     * @param data the bytes
+     * @param offset the offset of the text in data
+     * @param length the length of the text
+     */
+    public PGNLexer(byte[] data, int offset, int length) {
+        this(new ByteSequence(data, offset, length));
+    }
+
+    /**
+     * Start lexing new text, keeping the state of any comment left open at the end of the previous text.
+     *
+     * @param text the PGN text
+     */
+    public void reset(CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+        this.position = 0;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Start lexing new bytes, taken as ISO-8859-1 characters, keeping the state of any comment left open at the end of
+     * the previous text.
+     *
+     * @param data the bytes
+     * @param offset the offset of the text in data
+     * @param length the length of the text
+     */
+    public void reset(byte[] data, int offset, int length) {
+        reset(new ByteSequence(data, offset, length));
+    }
+
+    /**
+     * Move to the next token.
+     *
+     * @return the kind of the token, or END at the end of the text
+     */
+    public Token next() {
+        if (inComment && position < length) {
+            start = position;
+            return braceComment();
+        }
+        while (position < length && !inComment) {
+            char ch = text.charAt(position);
+            if (ch == '%' && (position == 0 || text.charAt(position - 1) == '\n')) {
+                skipLine();
+            } else if (ch <= ' ') {
+                position++;
+            } else {
+                start = position;
+                switch (ch) {
+                    case '{':
+                        start = ++position;
+                        return braceComment();
+                    case ';':
+                        start = ++position;
+                        skipLine();
+                        end = position;
+                        if (end > start && text.charAt(end - 1) == '\r') {
+                            end--;
+                        }
+                        return Token.COMMENT;
+                    case '(':
+                        end = ++position;
+                        return Token.VARIATION_START;
+                    case ')':
+                        end = ++position;
+                        return Token.VARIATION_END;
+                    case '[':
+                        return tag();
+                    case '$':
+                        position++;
+                        skipDigits();
+                        end = position;
+                        return Token.NAG;
+                    case '*':
+                        end = ++position;
+                        return Token.RESULT;
+                    case '.':
+                    case '}':
+                        // The dots of a move number split from its digits, or a stray brace.
+                        position++;
+                        break;
+                    default:
+                        return word();
+                }
+            }
+        }
+        start = end = length;
+        return Token.END;
+    }
+
+    /**
+     * Return the offset of the current token's first character.
+     *
+     * @return the start offset
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Return the offset after the current token's last character.
+     *
+     * @return the end offset
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Return the length of the current token.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return end - start;
+    }
+
+    /**
+     * Return the text being lexed.
+     *
+     * @return the text
+     */
+    public CharSequence getSource() {
+        return text;
+    }
+
+    /**
+     * Return a copy of the current token's text.
+     *
+     * @return the text
+     */
+    public String getText() {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Return a copy of the current move without check, mate and annotation suffixes, so that "Nf3+!" gives "Nf3".
+     *
+     * @return the bare move
+     */
+    public String getBareMove() {
+        int last = end;
+        while (last > start && "+#!?".indexOf(text.charAt(last - 1)) >= 0) {
+            last--;
+        }
+        return text.subSequence(start, last).toString();
+    }
+
+    /**
+     * Does the current token's text equal the given text?
+     *
+     * @param other the text to compare with
+     * @return true if they are equal
+     */
+    public boolean tokenEquals(CharSequence other) {
+        if (other.length() != end - start) {
+            return false;
+        }
+        for (int index = 0; index < other.length(); index++) {
+            if (text.charAt(start + index) != other.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the name of the current TAG token.
+     *
+     * @return the tag name
+     */
+    public String getTagName() {
+        int first = start + 1;
+        while (first < end && text.charAt(first) <= ' ') {
+            first++;
+        }
+        int last = first;
+        while (last < end && text.charAt(last) > ' ' && text.charAt(last) != '"' && text.charAt(last) != ']') {
+            last++;
+        }
+        return text.subSequence(first, last).toString();
+    }
+
+    /**
+     * Return the value of the current TAG token, with \" and \\ escapes removed.
+     *
+     * @return the tag value, or an empty String if it has none
+     */
+    public String getTagValue() {
+        int quote = start;
+        while (quote < end && text.charAt(quote) != '"') {
+            quote++;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int index = quote + 1; index < end; index++) {
+            char ch = text.charAt(index);
+            if (ch == '\\' && index + 1 < end) {
+                ch = text.charAt(++index);
+            } else if (ch == '"') {
+                break;
+            }
+            value.append(ch);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Whether the text ended inside a {...} comment, which continues into the next text.
+     *
+     * @return true if a comment is open
+     */
+    public boolean isInComment() {
+        return inComment;
+    }
+
+    /**
+     * Lex the rest of a {...} comment, whose text starts at start.
+     */
+    private Token braceComment() {
+        while (position < length && text.charAt(position) != '}') {
+            position++;
+        }
+        end = position;
+        if (position < length) {
+            position++;
+            inComment = false;
+        } else {
+            inComment = true;
+        }
+        return Token.COMMENT;
+    }
+
+    /**
+     * Lex a tag pair, allowing for a ] inside its quoted value.
+     */
+    private Token tag() {
+        boolean quoted = false;
+        position++;
+        while (position < length) {
+            char ch = text.charAt(position++);
+            if (quoted && ch == '\\' && position < length) {
+                position++;
+            } else if (ch == '"') {
+                quoted = !quoted;
+            } else if (ch == ']' && !quoted) {
+                break;
+            } else if (ch == '\n') {
+                // An unterminated tag ends with its line.
+                position--;
+                break;
+            }
+        }
+        end = position;
+        return Token.TAG;
+    }
+
+    /**
+     * Lex a move number, result or move.
+     */
+    private Token word() {
+        if (matchesResult("1-0") || matchesResult("0-1") || matchesResult("1/2-1/2")) {
+            return Token.RESULT;
+        }
+        if (isDigit(text.charAt(position))) {
+            skipDigits();
+            if (position < length && text.charAt(position) == '.') {
+                while (position < length && text.charAt(position) == '.') {
+                    position++;
+                }
+                end = position;
+                return Token.MOVE_NUMBER;
+            }
+            if (position == length || isDelimiter(text.charAt(position))) {
+                // A move number without its dots.
+                end = position;
+                return Token.MOVE_NUMBER;
+            }
+        }
+        while (position < length && !isDelimiter(text.charAt(position))) {
+            position++;
+        }
+        end = position;
+        return Token.MOVE;
+    }
+
+    /**
+     * Is the result at the current position, followed by a delimiter? If so, it becomes the current token.
+     */
+    private boolean matchesResult(String result) {
+        int after = position + result.length();
+        if (after > length || (after < length && !isDelimiter(text.charAt(after)))) {
+            return false;
+        }
+        for (int index = 0; index < result.length(); index++) {
+            if (text.charAt(position + index) != result.charAt(index)) {
+                return false;
+            }
+        }
+        position = end = after;
+        return true;
+    }
+
+    private void skipDigits() {
+        while (position < length && isDigit(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private void skipLine() {
+        while (position < length && text.charAt(position) != '\n') {
+            position++;
+        }
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isDelimiter(char ch) {
+        return ch <= ' ' || ch == '.' || ch == '{' || ch == '}' || ch == '(' || ch == ')' || ch == ';'
+                || ch == '[' || ch == '$';
+    }
+
+    /**
+     * A view of bytes as ISO-8859-1 characters.
+     */
+    private static final class ByteSequence implements CharSequence {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        ByteSequence(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data[offset + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new ByteSequence(data, offset + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package analyzerTools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * A selection of games by their tags, such as "player=Carlsen, Magnus&amp;year=2020".
+ *
+ * A query is a list of terms separated by &amp;, all of which must match. Each term is a field, an operator
+ * and a value. The fields are white, black, player (either colour), event, eco, result, date, year,
+ * whiteelo and blackelo. Every field may be compared with =; date, year and the Elo fields may also be
+ * compared with &gt;= and &lt;=. Dates are written as in PGN, such as 2020.12.13, and may be cut short,
+ * so that date&gt;=2020.06 selects games from June 2020 onwards. A game whose rating is missing or not a
+ * number matches no term on that rating.
+ */
+public class PGNQuery {
+    static final String WHITE = "white";
+    static final String BLACK = "black";
+    static final String PLAYER = "player";
+    static final String EVENT = "event";
+    static final String ECO = "eco";
+    static final String RESULT = "result";
+    static final String DATE = "date";
+    static final String YEAR = "year";
+    static final String WHITE_ELO = "whiteelo";
+    static final String BLACK_ELO = "blackelo";
+    private static final List<String> FIELDS = List.of(WHITE, BLACK, PLAYER, EVENT, ECO, RESULT, DATE, YEAR,
+            WHITE_ELO, BLACK_ELO);
+    private static final List<String> ORDERED_FIELDS = List.of(DATE, YEAR, WHITE_ELO, BLACK_ELO);
+    // The rating of a player whose rating is not known.
+    static final int UNKNOWN_ELO = -1;
+
+    /**
+     * A single comparison.
+     */
+    static final class Term {
+        final String field;
+        // One of "=", ">=" or "<=".
+        final String operator;
+        final String value;
+
+        Term(String field, String operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        /**
+         * Return the lowest and highest dates, as numbers from parseDate, that satisfy a date or year term.
+         *
+         * @return the inclusive range
+         */
+        int[] dateRange() {
+            int from = 0;
+            int to = Integer.MAX_VALUE;
+            if (field.equals(YEAR)) {
+                int year = Integer.parseInt(value);
+                if (!operator.equals("<=")) {
+                    from = year * 10000;
+                }
+                if (!operator.equals(">=")) {
+                    to = year * 10000 + 9999;
+                }
+            } else {
+                int date = parseDate(value);
+                // A date cut short covers every day it leaves open.
+                int last = date + (date % 100 == 0 ? (date % 10000 == 0 ? 9999 : 99) : 0);
+                if (!operator.equals("<=")) {
+                    from = date;
+                }
+                if (!operator.equals(">=")) {
+                    to = last;
+                }
+            }
+            return new int[] {from, to};
+        }
+    }
+
+    private final List<Term> terms;
+
+    private PGNQuery(List<Term> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * Parse a query.
+     *
+     * @param query the text of the query
+     * @return the query
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public static PGNQuery parse(String query) {
+        List<Term> terms = new ArrayList<>();
+        for (String text : query.split("&")) {
+            if (text.isBlank()) {
+                continue;
+            }
+            int equals = text.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Missing = in query term: " + text);
+            }
+            char before = text.charAt(equals - 1);
+            int fieldEnd = before == '>' || before == '<' ? equals - 1 : equals;
+            String field = text.substring(0, fieldEnd).trim().toLowerCase(Locale.ROOT);
+            String operator = text.substring(fieldEnd, equals + 1);
+            String value = text.substring(equals + 1).trim();
+            if (!FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown query field: " + field);
+            }
+            if (!operator.equals("=") && !ORDERED_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Only = may be used with " + field);
+            }
+            if (ORDERED_FIELDS.contains(field) && !field.equals(DATE)) {
+                try {
+                    Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number in query term: " + text);
+                }
+            }
+            terms.add(new Term(field, operator, value));
+        }
+        return new PGNQuery(terms);
+    }
+
+    /**
+     * Does a game match the query?
+     *
+     * @param tags the value of each of the game's tags, given its PGN name, or null or an empty String if it has no such tag
+     * @return true if the game matches every term
+     */
+    public boolean matches(Function<String, String> tags) {
+        for (Term term : terms) {
+            if (!matches(term, tags)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the terms of the query.
+     *
+     * @return the terms
+     */
+    List<Term> getTerms() {
+        return Collections.unmodifiableList(terms);
+    }
+
+    private static boolean matches(Term term, Function<String, String> tags) {
+        switch (term.field) {
+            case WHITE:
+                return term.value.equals(tag(tags, "White"));
+            case BLACK:
+                return term.value.equals(tag(tags, "Black"));
+            case PLAYER:
+                return term.value.equals(tag(tags, "White")) || term.value.equals(tag(tags, "Black"));
+            case EVENT:
+                return term.value.equals(tag(tags, "Event"));
+            case ECO:
+                return term.value.equals(tag(tags, "ECO"));
+            case RESULT:
+                return term.value.equals(tag(tags, "Result"));
+            case DATE:
+            case YEAR:
+                int date = parseDate(tag(tags, "Date"));
+                int[] range = term.dateRange();
+                return date >= range[0] && date <= range[1];
+            case WHITE_ELO:
+                return compare(parseElo(tag(tags, "WhiteElo")), term);
+            case BLACK_ELO:
+                return compare(parseElo(tag(tags, "BlackElo")), term);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean compare(int actual, Term term) {
+        if (actual == UNKNOWN_ELO) {
+            return false;
+        }
+        int value = Integer.parseInt(term.value);
+        switch (term.operator) {
+            case ">=":
+                return actual >= value;
+            case "<=":
+                return actual <= value;
+            default:
+                return actual == value;
+        }
+    }
+
+    private static String tag(Function<String, String> tags, String name) {
+        String value = tags.apply(name);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Convert a PGN date to a number that sorts in date order, such as 20201213 for 2020.12.13.
+     * Unknown parts, written as ??, and missing parts count as 0.
+     *
+     * @param date the date
+     * @return the number, or 0 if the date is unknown
+     */
+    static int parseDate(String date) {
+        String[] parts = date.split("\\.");
+        int result = 0;
+        for (int index = 0; index < 3; index++) {
+            int part = 0;
+            if (index < parts.length) {
+                try {
+                    part = Integer.parseInt(parts[index].trim());
+                } catch (NumberFormatException e) {
+                    // Unknown.
+                }
+            }
+            result = result * (index == 0 ? 1 : 100) + part;
+        }
+        return result;
+    }
+
+    /**
+     * Convert an Elo tag to a number.
+     *
+     * @param elo the tag value
+     * @return the rating, or UNKNOWN_ELO if it is missing or not a number
+     */
+    static int parseElo(String elo) {
+        try {
+            int rating = Integer.parseInt(elo.trim());
+            return rating < 0 ? UNKNOWN_ELO : rating;
+        } catch (NumberFormatException e) {
+            return UNKNOWN_ELO;
+        }
+    }
+}
@@ -2,12 +2,79 @@ package analyzerTools;
 
 import dataextract.*;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StockPGNAnalyzer implements Analyzer, AutoCloseable {
+    // The engine command that selects the built-in evaluator in place of a UCI engine.
+    public static final String BUILTIN_ENGINE = LightEvaluator.ENGINE_ID;
+
+    // The command used to start the UCI engine.
+    private String engineCommand = "stockfish";
+    // The full search depth.
+    private int searchDepth = 20;
+    // The search depth of the first tier, or 0 to analyse every game at full depth.
+    private int shallowDepth = 0;
+    // How close to the CV and AE thresholds a shallow result must be to be re-analysed.
+    private double CVBand = 0.1;
+    private double AEBand = 10;
+    // The number of variations evaluated for each position.
+    private int variations = 5;
+    // Time and node limits for each position, and the time budget for each game; 0 for no limit.
+    private long moveTime = 0;
+    private long nodes = 0;
+    private long gameTime = 0;
+    // Source of the CV and AE thresholds.
+    private GenStats stats = new GenStats();
+    // Opening lines whose moves are not analysed, or null to analyse every move.
+    private OpeningTrie openingBook;
+    // Previously analysed games, or null to analyse every game.
+    private AnalysisStore analysisStore;
+    // The CV from the built-in evaluator that either player must reach for a game to be analysed with the engine,
+    // or 0 to analyse every game with the engine.
+    private double triageCV = 0;
+    // The search depth of the built-in evaluator.
+    private int builtinDepth = LightEvaluator.DEFAULT_DEPTH;
+    // The built-in evaluator of each thread.
+    private final ThreadLocal<LightEvaluator> evaluators =
+            ThreadLocal.withInitial(() -> new LightEvaluator(builtinDepth));
+
+    // The number of engines, each used by one thread at a time.
+    private int threads = 1;
+    // Chooses the number of engines and their Threads and Hash options from the demand, or null for a fixed
+    // number of engines with their default options.
+    private EngineScheduler scheduler;
+    // The number of threads using or waiting for an engine.
+    private final AtomicInteger demand = new AtomicInteger();
+
+    private UCIMoveConverter converter = new UCIMoveConverter("pgn-extract");
+    // Every engine started, and those not in use.
+    private final List<UCIEngine> engines = new ArrayList<>();
+    private final BlockingQueue<UCIEngine> idleEngines = new LinkedBlockingQueue<>();
+    // The Hash option given to each engine by the scheduler, in MB.
+    private final HashMap<UCIEngine, Long> engineHash = new HashMap<>();
+    // The engine in use by each thread, so that a cancelled analysis can stop its search.
+    private final ConcurrentHashMap<Thread, UCIEngine> busyEngines = new ConcurrentHashMap<>();
+    // Runs the asynchronous analyses.
+    private ExecutorService executor;
 
-public class StockPGNAnalyzer implements Analyzer {
     /**
      * analyze and return the Coincidence Value (CV) of one player's moves from a single String containing a PGN chess game
      *
@@ -17,7 +84,11 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public double analyzeGame(String pgn, Player player) {
-        return 0;
+        Analysis analysis = analyzeGame(pgn);
+        if (analysis == null) {
+            return Double.NaN;
+        }
+        return player == Player.WHITE ? analysis.getWhite() : analysis.getBlack();
     }
 
     /**
@@ -30,18 +101,7 @@ public class StockPGNAnalyzer implements Analyzer {
     @Override
     public double analyzeGame(Path filePath, Player player) {
         try {
-            ArrayList<String> lines = Files.lines(filePath)
-                    .filter(w -> !w.startsWith("["))
-                    .filter(w -> !w.equals(""))
-                    .collect(Collectors.toCollection(ArrayList::new));
-            String pgn = "";
-            for(String line : lines) {
-                pgn += line;
-                if(line.contains("1-0") || line.contains("0-0") || line.contains("0-1")) break;
-            }
-            Game game = new Game(Player.BLACK, pgn, new dataextract.Analysis());
-            PlayerStats playerStats = new PlayerStats(game, "aaronshawcsh", 0.0, false);
-            return playerStats.getCV();
+            return analyzeGame(readGames(filePath).get(0), player);
         } catch(Exception e) {
             e.printStackTrace();
             System.exit(1);
@@ -57,7 +117,7 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public Analysis analyzeGame(String pgn) {
-        return null;
+        return analyzeGames(new String[] {pgn}).get(0);
     }
 
     /**
@@ -68,7 +128,12 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public Analysis analyzeGame(Path filePath) {
-        return null;
+        try {
+            return analyzeGame(readGames(filePath).get(0));
+        } catch(IOException e) {
+            System.err.println("Error reading: " + filePath);
+            return null;
+        }
     }
 
     /**
@@ -80,7 +145,21 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public ArrayList<Double> analyzeGames(String[] pgns, String playerName) {
-        return null;
+        ArrayList<Analysis> analyses = analyzeGames(pgns);
+        ArrayList<Double> result = new ArrayList<>();
+        for (int index = 0; index < pgns.length; index++) {
+            Analysis analysis = analyses.get(index);
+            if (analysis == null) {
+                continue;
+            }
+            // Games in which the player did not take part are skipped.
+            if (playerName.equalsIgnoreCase(getTagValue(pgns[index], "White"))) {
+                result.add(analysis.getWhite());
+            } else if (playerName.equalsIgnoreCase(getTagValue(pgns[index], "Black"))) {
+                result.add(analysis.getBlack());
+            }
+        }
+        return result;
     }
 
     /**
@@ -92,18 +171,69 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public ArrayList<Double> analyzeGames(ArrayList<Path> pgns, String playerName) {
-        return null;
+        return analyzeGames(readGames(pgns), playerName);
     }
 
     /**
-     * analyze and return the Coincidence Value (CV) of both players' moves from multiple Strings containing PGN chess games
+     * analyze and return the Coincidence Value (CV) of both players' moves from multiple Strings containing PGN chess games.
+     * In tiered mode every game is first analysed at the shallow depth and only those games with a CV or AE close to the
+     * thresholds are analysed again at full depth; analyzeGameDetails and analyzeGameAsync do the same. Games with the
+     * same moves as a game already analysed, in this batch or in the analysis store, are not analysed again. With triage,
+     * games that do not look suspicious to the built-in evaluator are not analysed with the engine at all, and are given
+     * the built-in evaluator's CV instead.
      *
      * @param pgns String[] containing the moves made in games in PGN format
-     * @return an ArrayList of type Double containing the CV of the games as given by Stockfish
+     * @return an ArrayList of type Double containing the CV of the games as given by Stockfish; null for a game that
+     *         could not be analysed
      */
     @Override
     public ArrayList<Analysis> analyzeGames(String[] pgns) {
-        return null;
+        ArrayList<Analysis> results = new ArrayList<>(pgns.length);
+        // The first game in the batch with each move sequence.
+        HashMap<GameHash, Integer> firstWithMoves = new HashMap<>();
+        int[] duplicateOf = new int[pgns.length];
+        for (int index = 0; index < pgns.length; index++) {
+            Analysis result = null;
+            duplicateOf[index] = -1;
+            try {
+                String[] moves = convert(pgns[index]);
+                GameHash hash = GameHash.of(moves);
+                Integer first = firstWithMoves.putIfAbsent(hash, index);
+                if (first != null) {
+                    duplicateOf[index] = first;
+                    results.add(null);
+                    continue;
+                }
+                result = analyzeTiered(pgns[index], moves, hash);
+            } catch (IOException e) {
+                System.err.println("Error analysing game " + (index + 1) + ": " + e.getMessage());
+            }
+            results.add(result);
+        }
+
+        for (int index = 0; index < pgns.length; index++) {
+            if (duplicateOf[index] >= 0) {
+                Analysis original = results.get(duplicateOf[index]);
+                results.set(index, original == null ? null : new Analysis(original));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * analyze and return the Coincidence Value (CV) of both players' moves from the games in a pgn file that match a query.
+     * Only the matching games are read from the file, using its index, which is built beside the file if it is missing
+     * or out of date.
+     *
+     * @param filePath a file containing games in PGN format
+     * @param query    a PGNQuery such as "player=Carlsen, Magnus&amp;year=2020"
+     * @return an ArrayList of the Analysis of each matching game, in file order; null for a game that could not be analysed
+     * @throws IOException if the file cannot be indexed or read
+     */
+    public ArrayList<Analysis> analyzeGames(Path filePath, String query) throws IOException {
+        PGNIndex index = PGNIndex.forFile(filePath);
+        List<String> games = index.readGames(filePath, index.find(PGNQuery.parse(query)));
+        return analyzeGames(games.toArray(new String[0]));
     }
 
     /**
@@ -114,7 +244,60 @@ public class StockPGNAnalyzer implements Analyzer {
      */
     @Override
     public ArrayList<Analysis> analyzeGames(ArrayList<Path> pgns) {
-        return null;
+        return analyzeGames(readGames(pgns));
+    }
+
+    /**
+     * analyze the Coincidence Value (CV) of both players' moves from a single String containing a PGN chess game,
+     * without waiting
+     *
+     * @param pgn a String containing the moves made in a single game in PGN format
+     * @return a CompletableFuture completed with the Analysis of the game, or exceptionally if it cannot be analysed;
+     *         cancelling it stops the engine's search
+     */
+    @Override
+    public CompletableFuture<Analysis> analyzeGameAsync(String pgn) {
+        CompletableFuture<Analysis> result = new CompletableFuture<>();
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        Future<?> task = getExecutor().submit(() -> {
+            runner.set(Thread.currentThread());
+            try {
+                if (!result.isDone()) {
+                    result.complete(analyzeTiered(pgn));
+                }
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(new CompletionException(e));
+            } finally {
+                runner.set(null);
+                // Do not leave a cancellation to be seen by the next game.
+                Thread.interrupted();
+            }
+        });
+        result.whenComplete((analysis, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+                Thread thread = runner.get();
+                UCIEngine engine = thread == null ? null : busyEngines.get(thread);
+                if (engine != null) {
+                    engine.stop();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * analyze the Coincidence Value (CV) of both players' moves from multiple Strings containing PGN chess games,
+     * publishing each Analysis as it completes. No more games are analysed at once than the subscriber has requested or
+     * there are engines.
+     *
+     * @param pgns String[] containing the moves made in games in PGN format
+     * @return a Publisher of the Analysis of each game, in completion order, with getIndex giving the game's position
+     *         in pgns
+     */
+    @Override
+    public Flow.Publisher<Analysis> analyzeGamesPublisher(String[] pgns) {
+        return new AnalysisPublisher(pgns.length, threads, index -> analyzeGameAsync(pgns[index]));
     }
 
     /**
@@ -138,4 +321,811 @@ public class StockPGNAnalyzer implements Analyzer {
     public ArrayList<ArrayList<Path>> splitFiles(ArrayList<Path> filePath) {
         return null;
     }
+
+    /**
+     * Analyse a single game and return it with its tags and the analysis of each move, from which PlayerStats can be
+     * produced. In tiered mode the game is analysed at the shallow depth, and again at full depth only if its CV or AE
+     * is close to the thresholds, as analyzeGames does.
+     *
+     * @param pgn a String containing the moves made in a single game in PGN format
+     * @return the analysed game
+     * @throws IOException if the game cannot be converted or analysed
+     */
+    public Game analyzeGameDetails(String pgn) throws IOException {
+        String[] moves = convert(pgn);
+        int bookDepth = openingBook == null ? 0 : openingBook.getBookDepth(OpeningTrie.getMoves(pgn));
+        Game game = analyseTiered(moves, bookDepth);
+        return new Game(Player.BLACK, moves, game.getAnalysis(), getTags(pgn));
+    }
+
+    /**
+     * Analyse the moves of a game in progress that have been played since it was last analysed, adding them
+     * to its analysis. Only the positions after the moves already analysed are sent to the engine, so a game
+     * can be followed move by move without analysing it again from the start. The game's time budget does
+     * not apply.
+     *
+     * @param moves all of the game's moves so far, in UCI notation
+     * @param analysis the analysis so far, whose book depth has been set
+     * @return the number of moves analysed
+     * @throws IOException on engine error
+     */
+    public int analyzeNewMoves(String[] moves, dataextract.Analysis analysis) throws IOException {
+        int analysed = analysis.getAnalysedMoves().size();
+        int from = Math.max(0, analysis.getBookDepth()) + analysed;
+        if (from >= moves.length) {
+            return 0;
+        }
+        if (isBuiltin()) {
+            LightEvaluator evaluator = evaluators.get();
+            analysis.setEngineID(LightEvaluator.ENGINE_ID);
+            analysis.setSearchDepth(Integer.toString(evaluator.getDepth()));
+            evaluator.analyse(moves, from, variations, analysis);
+            return analysis.getAnalysedMoves().size() - analysed;
+        }
+        return withEngine(engine -> {
+            engine.setSearchLimits(moveTime, nodes);
+            engine.newGame();
+            analysis.setEngineID(engine.getEngineID());
+            analysis.setSearchDepth(Integer.toString(searchDepth));
+            analyse(engine, moves, from, searchDepth, 0, analysis);
+            return analysis.getAnalysedMoves().size() - analysed;
+        });
+    }
+
+    /**
+     * Convert the SAN moves of a PGN game into UCI notation.
+     *
+     * @param pgn a String containing a single game in PGN format
+     * @return the game's moves in UCI notation
+     * @throws IOException if the game cannot be converted
+     */
+    public String[] convertMoves(String pgn) throws IOException {
+        return convert(pgn);
+    }
+
+    /**
+     * Triage a game with the built-in evaluator, as is done before analysing a game with the engine:
+     * does either player's CV from the built-in evaluator reach the triage threshold?
+     *
+     * @param pgn a String containing a single game in PGN format
+     * @return true if the game should be analysed with the engine, as is every game when triage is off
+     * @throws IOException if the game cannot be converted
+     */
+    public boolean isSuspicious(String pgn) throws IOException {
+        return triageCV <= 0 || triage(convertOnBoard(pgn), getBookDepth(pgn)) == null;
+    }
+
+    /**
+     * Return the number of plies of a game that are in the opening book.
+     *
+     * @param pgn a String containing a single game in PGN format
+     * @return the book depth, 0 if there is no opening book
+     */
+    public int getBookDepth(String pgn) {
+        return openingBook == null ? 0 : openingBook.getBookDepth(OpeningTrie.getMoves(pgn));
+    }
+
+    /**
+     * Start the engines now rather than when games are analysed.
+     *
+     * @throws IOException if an engine cannot be started
+     */
+    public void start() throws IOException {
+        if (isBuiltin()) {
+            return;
+        }
+        int count = scheduler == null ? threads : scheduler.update(threads).getEngines();
+        List<UCIEngine> started = new ArrayList<>();
+        try {
+            while (started.size() < count) {
+                started.add(borrowEngine(count));
+            }
+        } finally {
+            idleEngines.addAll(started);
+        }
+    }
+
+    /**
+     * Shut down the engines, if any have been started.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        for (UCIEngine engine : engines) {
+            engine.close();
+        }
+        engines.clear();
+        idleEngines.clear();
+        engineHash.clear();
+    }
+
+    /**
+     * Set the command used to start the UCI engine, or BUILTIN_ENGINE to analyse with the built-in evaluator
+     * instead, without starting any process.
+     *
+     * @param engineCommand the command
+     */
+    public void setEngineCommand(String engineCommand) {
+        this.engineCommand = engineCommand;
+    }
+
+    public void setConverterCommand(String converterCommand) {
+        this.converter = new UCIMoveConverter(converterCommand);
+    }
+
+    /**
+     * Let a scheduler choose the number of engines and their Threads and Hash options from the number of games
+     * being analysed at once.
+     *
+     * @param scheduler the scheduler, or null for a fixed number of engines with their default options
+     */
+    public void setScheduler(EngineScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Set the number of engines, and so the number of games that can be analysed at once.
+     *
+     * @param threads the number of engines
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+
+    public void setSearchDepth(int searchDepth) {
+        this.searchDepth = searchDepth;
+    }
+
+    public int getShallowDepth() {
+        return shallowDepth;
+    }
+
+    /**
+     * Enable tiered analysis by setting a first-tier search depth below the full search depth. Tiered analysis
+     * also needs a CV or AE threshold, set with setStats, or every game is analysed at full depth.
+     *
+     * @param shallowDepth the first-tier depth, or 0 to disable tiered analysis
+     */
+    public void setShallowDepth(int shallowDepth) {
+        this.shallowDepth = shallowDepth;
+    }
+
+    public void setCVBand(double CVBand) {
+        this.CVBand = CVBand;
+    }
+
+    public void setAEBand(double AEBand) {
+        this.AEBand = AEBand;
+    }
+
+    public void setVariations(int variations) {
+        this.variations = variations;
+    }
+
+    /**
+     * Limit the time the engine spends on each position. The engine stops at this limit or the search depth,
+     * whichever comes first, and is sent "stop" if it overruns.
+     *
+     * @param moveTime the time for each position in milliseconds, or 0 for no limit
+     */
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    /**
+     * Limit the number of nodes the engine searches for each position.
+     *
+     * @param nodes the number of nodes, or 0 for no limit
+     */
+    public void setNodes(long nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Set a time budget for each game. When it runs out, the search in progress is stopped and the remaining
+     * moves are not analysed; the result is then marked as partial, and is not put in the analysis store.
+     *
+     * @param gameTime the time for each game in milliseconds, or 0 for no limit
+     */
+    public void setGameTime(long gameTime) {
+        this.gameTime = gameTime;
+    }
+
+    /**
+     * Triage games with the built-in evaluator before analysing them with the engine. Only games in which
+     * either player's CV from the built-in evaluator reaches the threshold are analysed with the engine.
+     *
+     * @param triageCV the CV threshold, or 0 to analyse every game with the engine
+     */
+    public void setTriageCV(double triageCV) {
+        this.triageCV = triageCV;
+    }
+
+    /**
+     * Set the search depth of the built-in evaluator, used for triage and as the built-in engine.
+     * It must be set before any game is analysed.
+     *
+     * @param builtinDepth the depth in plies, before the quiescence search
+     */
+    public void setBuiltinDepth(int builtinDepth) {
+        this.builtinDepth = builtinDepth;
+    }
+
+    /**
+     * Set the opening book. Book moves are not analysed and do not count towards the CV and AE.
+     *
+     * @param openingBook the opening lines, or null to analyse every move
+     */
+    public void setOpeningBook(OpeningTrie openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Set the store of previously analysed games. Games found in the store are not analysed again
+     * and newly analysed games are added to it. A store should only be shared between runs with the same settings.
+     *
+     * @param analysisStore the store, or null to analyse every game
+     */
+    public void setAnalysisStore(AnalysisStore analysisStore) {
+        this.analysisStore = analysisStore;
+    }
+
+    /**
+     * Set the source of the CV and AE thresholds used to select games for full-depth analysis.
+     *
+     * @param stats the configured statistics settings
+     */
+    public void setStats(GenStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Is tiered analysis on? It needs a shallow depth below the full depth, an engine rather than the built-in
+     * evaluator, which has a single depth of its own, and a CV or AE threshold for results to be close to;
+     * without one every game is analysed at full depth.
+     */
+    private boolean isTiered() {
+        return !isBuiltin() && shallowDepth > 0 && shallowDepth < searchDepth
+                && (stats.getCVThresholdPercentage() != 0 || stats.isAEThresholdSet());
+    }
+
+    /**
+     * Analyse a game at the depth of the first tier and, in tiered analysis, again at full depth if either
+     * player's result is close to a threshold. The search depth of the game's analysis is that of the tier
+     * that produced it.
+     *
+     * @param moves the game's moves in UCI notation
+     * @param bookDepth the number of book plies, which are not analysed
+     * @return the game with its analysis
+     * @throws IOException on engine error
+     */
+    private Game analyseTiered(String[] moves, int bookDepth) throws IOException {
+        if (!isTiered()) {
+            return analyse(moves, bookDepth, searchDepth);
+        }
+        Game game = analyse(moves, bookDepth, shallowDepth);
+        if (nearThreshold(new PlayerStats(game, Player.WHITE.toString(), true, 0.0, false))
+                || nearThreshold(new PlayerStats(game, Player.BLACK.toString(), false, 0.0, false))) {
+            game = analyse(moves, bookDepth, searchDepth);
+        }
+        return game;
+    }
+
+    /**
+     * Return the CVs of both players of an analysed game.
+     *
+     * @param game the game
+     * @return its Analysis, with the search depth of the game's analysis
+     */
+    private static Analysis summarise(Game game) {
+        PlayerStats white = new PlayerStats(game, Player.WHITE.toString(), true, 0.0, false);
+        PlayerStats black = new PlayerStats(game, Player.BLACK.toString(), false, 0.0, false);
+        Analysis result = new Analysis(white.getCV(), black.getCV(),
+                Integer.parseInt(game.getAnalysis().getSearchDepth()));
+        result.setPartial(game.getAnalysis().isPartial());
+        return result;
+    }
+
+    /**
+     * Is a shallow result close enough to the CV or AE threshold that it could fall either side at full depth?
+     *
+     * @param playerStats one player's statistics from the shallow pass
+     * @return true if the game should be analysed again at full depth
+     */
+    private boolean nearThreshold(PlayerStats playerStats) {
+        if (playerStats.getNumScores() == 0) {
+            return false;
+        }
+        if (stats.getCVThresholdPercentage() != 0
+                && Math.abs(playerStats.getCV() - stats.getCVThresholdPercentage()) <= CVBand) {
+            return true;
+        }
+        return stats.isAEThresholdSet()
+                && Math.abs(playerStats.getAE() - stats.getLowAEThreshold()) <= AEBand;
+    }
+
+    /**
+     * Analyse every non-book move of a game with the engine.
+     *
+     * @param moves the game's moves in UCI notation
+     * @param bookDepth the number of book plies, which are not analysed
+     * @param depth the search depth
+     * @return the game with its analysis
+     * @throws IOException on engine error
+     */
+    private Game analyse(String[] moves, int bookDepth, int depth) throws IOException {
+        if (isBuiltin()) {
+            return analyseBuiltin(moves, bookDepth);
+        }
+        return withEngine(engine -> analyse(engine, moves, bookDepth, depth));
+    }
+
+    /**
+     * Analyse every non-book move of a game with the built-in evaluator, at its own depth.
+     *
+     * @param moves the game's moves in UCI notation
+     * @param bookDepth the number of book plies, which are not analysed
+     * @return the game with its analysis
+     */
+    private Game analyseBuiltin(String[] moves, int bookDepth) {
+        LightEvaluator evaluator = evaluators.get();
+        dataextract.Analysis analysis = new dataextract.Analysis();
+        analysis.setEngineID(LightEvaluator.ENGINE_ID);
+        analysis.setSearchDepth(Integer.toString(evaluator.getDepth()));
+        analysis.setBookDepth(Integer.toString(bookDepth));
+        evaluator.analyse(moves, bookDepth, variations, analysis);
+        return new Game(Player.BLACK, moves, analysis);
+    }
+
+    /**
+     * Triage a game with the built-in evaluator, if triage is on.
+     *
+     * @param moves the game's moves in UCI notation
+     * @param bookDepth the number of book plies, which are not analysed
+     * @return the built-in evaluator's CVs if the game need not be analysed with the engine, or null if it must be
+     */
+    private Analysis triage(String[] moves, int bookDepth) {
+        if (triageCV <= 0 || isBuiltin()) {
+            return null;
+        }
+        Game game = analyseBuiltin(moves, bookDepth);
+        PlayerStats white = new PlayerStats(game, Player.WHITE.toString(), true, 0.0, false);
+        PlayerStats black = new PlayerStats(game, Player.BLACK.toString(), false, 0.0, false);
+        if (reachesTriage(white) || reachesTriage(black)) {
+            return null;
+        }
+        Analysis result = new Analysis(white.getCV(), black.getCV(), 0);
+        result.setPartial(game.getAnalysis().isPartial());
+        result.setTriaged(true);
+        return result;
+    }
+
+    private boolean reachesTriage(PlayerStats playerStats) {
+        return playerStats.getNumScores() > 0 && playerStats.getCV() >= triageCV;
+    }
+
+    private boolean isBuiltin() {
+        return BUILTIN_ENGINE.equals(engineCommand);
+    }
+
+    /**
+     * Convert the SAN moves of a PGN game into UCI notation, on the built-in board when the built-in evaluator
+     * is the engine, so that no process is started at all.
+     */
+    private String[] convert(String pgn) throws IOException {
+        return isBuiltin() ? convertOnBoard(pgn) : converter.convert(pgn);
+    }
+
+    /**
+     * Convert the SAN moves of a PGN game into UCI notation by playing them on the built-in board, leaving
+     * games that do not start from the usual position, or that it cannot read, to pgn-extract.
+     */
+    private String[] convertOnBoard(String pgn) throws IOException {
+        if (!getTagValue(pgn, "FEN").isEmpty()) {
+            return converter.convert(pgn);
+        }
+        String[] moves = OpeningTrie.getMoves(pgn);
+        Board board = new Board();
+        for (int ply = 0; ply < moves.length; ply++) {
+            int move = board.parseSAN(moves[ply]);
+            if (move == Board.NO_MOVE) {
+                return converter.convert(pgn);
+            }
+            moves[ply] = Board.toUCI(move);
+            board.make(move);
+        }
+        return moves;
+    }
+
+    /**
+     * Work done with an engine borrowed for the purpose.
+     */
+    private interface EngineTask<T> {
+        T run(UCIEngine engine) throws IOException;
+    }
+
+    /**
+     * Borrow an engine for a task, returning it afterwards, or discarding it if the task fails.
+     *
+     * @param task the task
+     * @return the task's result
+     * @throws IOException on engine error
+     */
+    private <T> T withEngine(EngineTask<T> task) throws IOException {
+        EngineScheduler.Plan plan = scheduler == null ? null : scheduler.update(demand.incrementAndGet());
+        UCIEngine engine;
+        try {
+            if (plan != null) {
+                trimIdle(plan.getEngines());
+            }
+            engine = borrowEngine(plan == null ? threads : plan.getEngines());
+        } catch (IOException e) {
+            demand.decrementAndGet();
+            throw e;
+        }
+        boolean healthy = false;
+        busyEngines.put(Thread.currentThread(), engine);
+        try {
+            if (plan != null) {
+                engine.setOption("Threads", Integer.toString(plan.getThreads()));
+                engine.setOption("Hash", Long.toString(assignHash(engine, plan.getHashMB())));
+            }
+            T result = task.run(engine);
+            healthy = true;
+            return result;
+        } finally {
+            busyEngines.remove(Thread.currentThread());
+            if (plan != null) {
+                plan = scheduler.update(demand.decrementAndGet());
+            }
+            if (!healthy) {
+                discardEngine(engine);
+            } else {
+                idleEngines.add(engine);
+                if (plan != null) {
+                    trimIdle(plan.getEngines());
+                }
+            }
+        }
+    }
+
+    /**
+     * Shut down idle engines while more engines are running than planned, as when fewer, wider engines now serve
+     * the demand.
+     *
+     * @param planned the number of engines planned
+     */
+    private synchronized void trimIdle(int planned) {
+        while (engines.size() > planned) {
+            UCIEngine engine = idleEngines.poll();
+            if (engine == null) {
+                return;
+            }
+            engines.remove(engine);
+            engineHash.remove(engine);
+            engine.close();
+        }
+    }
+
+    /**
+     * Choose the Hash option of an engine about to be used: the plan's share, but no more than the scheduler's
+     * budget leaves after the other engines, which may still have the larger share of an earlier plan.
+     *
+     * @param engine the engine
+     * @param planned the plan's hash for each engine, in MB
+     * @return the hash in MB, at least 1, the least an engine accepts
+     */
+    private synchronized long assignHash(UCIEngine engine, long planned) {
+        long others = 0;
+        for (Map.Entry<UCIEngine, Long> entry : engineHash.entrySet()) {
+            if (entry.getKey() != engine) {
+                others += entry.getValue();
+            }
+        }
+        long hash = Math.max(1, Math.min(planned, scheduler.getHashMB() - others));
+        engineHash.put(engine, hash);
+        return hash;
+    }
+
+    /**
+     * Return the number of engines running, busy or idle.
+     *
+     * @return the number of engines
+     */
+    public synchronized int getRunningEngines() {
+        return engines.size();
+    }
+
+    /**
+     * Return the total of the Hash options the scheduler has given the running engines.
+     *
+     * @return the total in MB
+     */
+    public synchronized long getEngineHashMB() {
+        long total = 0;
+        for (long hash : engineHash.values()) {
+            total += hash;
+        }
+        return total;
+    }
+
+    /**
+     * Analyse the moves of a game with the given engine, within the time budget for the game.
+     * If the budget runs out, the move being analysed and those after it are left out and the analysis is marked as partial.
+     *
+     * @throws IOException on engine error, or if the analysis is cancelled
+     */
+    private Game analyse(UCIEngine engine, String[] moves, int bookDepth, int depth) throws IOException {
+        long deadline = gameTime > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gameTime) : 0;
+        engine.setSearchLimits(moveTime, nodes);
+        engine.newGame();
+        dataextract.Analysis analysis = new dataextract.Analysis();
+        analysis.setEngineID(engine.getEngineID());
+        analysis.setSearchDepth(Integer.toString(depth));
+        analysis.setBookDepth(Integer.toString(bookDepth));
+        analyse(engine, moves, bookDepth, depth, deadline, analysis);
+        return new Game(Player.BLACK, moves, analysis);
+    }
+
+    /**
+     * Analyse a game's moves from the given ply on, adding them to its analysis, until the moves or the
+     * time budget run out.
+     *
+     * @param deadline the System.nanoTime at which the game's budget runs out, or 0 for none
+     * @throws IOException on engine error, or if the analysis is cancelled
+     */
+    private void analyse(UCIEngine engine, String[] moves, int from, int depth, long deadline,
+                         dataextract.Analysis analysis) throws IOException {
+        for (int ply = from; ply < moves.length; ply++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IOException("Analysis cancelled");
+            }
+            PlayedMove played = new PlayedMove(moves[ply], ply % 2 == 0);
+            List<Evaluation> evaluations = engine.evaluate(moves, ply, depth, null, stopAfter(deadline));
+            boolean found = false;
+            for (Evaluation evaluation : evaluations) {
+                played.addEvaluation(evaluation);
+                found |= evaluation.getMove().equals(moves[ply]);
+            }
+            if (!found && !cutShort(engine, deadline)) {
+                // Evaluate the played move on its own.
+                for (Evaluation evaluation : engine.evaluate(moves, ply, depth, moves[ply], stopAfter(deadline))) {
+                    played.addEvaluation(evaluation);
+                }
+            }
+            if (cutShort(engine, deadline)) {
+                analysis.setPartial(true);
+                break;
+            }
+            analysis.addAnalysedMove(played);
+            if (deadline != 0 && System.nanoTime() - deadline >= 0 && ply + 1 < moves.length) {
+                analysis.setPartial(true);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return how long a search may run before it is stopped: the rest of the game's budget, or the time
+     * for each position with some grace for the engine to finish, whichever is sooner.
+     *
+     * @param deadline the System.nanoTime at which the game's budget runs out, or 0 for none
+     * @return the time limit in milliseconds, or 0 for none
+     */
+    private long stopAfter(long deadline) {
+        long limit = moveTime > 0 ? moveTime + UCIEngine.STOP_GRACE_MILLIS : 0;
+        if (deadline != 0) {
+            long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            limit = limit == 0 ? remaining : Math.min(limit, remaining);
+        }
+        return limit;
+    }
+
+    /**
+     * Was the last search stopped because the game's budget ran out?
+     */
+    private static boolean cutShort(UCIEngine engine, long deadline) {
+        return deadline != 0 && engine.wasStopped() && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Analyse a single game, using the analysis store and tiers as analyzeGames does.
+     *
+     * @param pgn a String containing the moves made in a single game in PGN format
+     * @return the analysis of the game
+     * @throws IOException if the game cannot be converted or analysed
+     */
+    private Analysis analyzeTiered(String pgn) throws IOException {
+        String[] moves = convert(pgn);
+        return analyzeTiered(pgn, moves, GameHash.of(moves));
+    }
+
+    /**
+     * Analyse a single converted game: look it up in the analysis store, then triage it, then analyse it in tiers
+     * and store the result. analyzeGames and analyzeGameAsync both analyse each game with this.
+     *
+     * @param pgn the game in PGN format, for its opening moves
+     * @param moves the game's moves in UCI format
+     * @param hash the hash of the moves
+     * @return the analysis of the game
+     * @throws IOException if the game cannot be analysed
+     */
+    private Analysis analyzeTiered(String pgn, String[] moves, GameHash hash) throws IOException {
+        Analysis result;
+        if (analysisStore != null && (result = analysisStore.get(hash)) != null) {
+            return result;
+        }
+        int bookDepth = openingBook == null ? 0 : openingBook.getBookDepth(OpeningTrie.getMoves(pgn));
+        if ((result = triage(moves, bookDepth)) != null) {
+            return result;
+        }
+        result = summarise(analyseTiered(moves, bookDepth));
+        if (analysisStore != null && !result.isPartial()) {
+            try {
+                analysisStore.put(hash, result);
+            } catch (IOException e) {
+                // The analysis is still good; it is only not kept for next time.
+                System.err.println("Error storing the analysis of a game: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Take an idle engine, starting a new one if fewer than the given number have been started.
+     *
+     * @param limit the most engines to run
+     * @return an engine for the sole use of the caller until it is returned to idleEngines
+     * @throws IOException if an engine cannot be started
+     */
+    private UCIEngine borrowEngine(int limit) throws IOException {
+        UCIEngine engine = idleEngines.poll();
+        if (engine != null) {
+            return engine;
+        }
+        synchronized (this) {
+            if (engines.size() < limit) {
+                engine = new UCIEngine(engineCommand);
+                engine.setOption("MultiPV", Integer.toString(variations));
+                engines.add(engine);
+                return engine;
+            }
+        }
+        try {
+            return idleEngines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an engine");
+        }
+    }
+
+    /**
+     * Shut down an engine that has failed, so that a new one is started in its place.
+     *
+     * @param engine the failed engine
+     */
+    private synchronized void discardEngine(UCIEngine engine) {
+        engines.remove(engine);
+        engineHash.remove(engine);
+        engine.close();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "analyzer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Return the value of a tag in a PGN game.
+     *
+     * @param pgn the game
+     * @param name the tag name
+     * @return the tag's value, or an empty String if the tag is not present
+     */
+    private static String getTagValue(String pgn, String name) {
+        String prefix = "[" + name + " \"";
+        int start = pgn.indexOf(prefix);
+        if (start < 0) {
+            return "";
+        }
+        start += prefix.length();
+        int end = pgn.indexOf('"', start);
+        return end < 0 ? "" : pgn.substring(start, end);
+    }
+
+    /**
+     * Read all of the games in a list of PGN files.
+     *
+     * @param pgns the files
+     * @return the games, in file order
+     */
+    private static String[] readGames(ArrayList<Path> pgns) {
+        ArrayList<String> games = new ArrayList<>();
+        for (Path path : pgns) {
+            try {
+                games.addAll(readGames(path));
+            } catch (IOException e) {
+                System.err.println("Error reading: " + path);
+            }
+        }
+        return games.toArray(new String[0]);
+    }
+
+    /**
+     * Split a PGN file, which may be gzip-compressed, into its games.
+     *
+     * @param filePath the file
+     * @return the text of each game
+     * @throws IOException on file error
+     */
+    private static ArrayList<String> readGames(Path filePath) throws IOException {
+        return splitGames(CompressedInput.readAllLines(filePath));
+    }
+
+    /**
+     * Split PGN text into its games. A new game starts at the first tag line after some movetext;
+     * lines starting with [ inside a multi-line comment are not tags.
+     *
+     * @param lines the lines of PGN text
+     * @return the text of each game
+     */
+    public static ArrayList<String> splitGames(List<String> lines) {
+        ArrayList<String> games = new ArrayList<>();
+        StringBuilder game = new StringBuilder();
+        boolean inMoves = false;
+        PGNLexer lexer = new PGNLexer();
+        for (String line : lines) {
+            lexer.reset(line);
+            PGNLexer.Token token = lexer.next();
+            if (token == PGNLexer.Token.TAG) {
+                if (inMoves) {
+                    games.add(game.toString());
+                    game.setLength(0);
+                    inMoves = false;
+                }
+            } else if (token != PGNLexer.Token.END) {
+                inMoves = true;
+            }
+            // Follow the line to its end, in case it leaves a comment open.
+            while (token != PGNLexer.Token.END) {
+                token = lexer.next();
+            }
+            game.append(line).append('\n');
+        }
+        if (inMoves) {
+            games.add(game.toString());
+        }
+        return games;
+    }
+
+    /**
+     * Return the tags of a PGN game.
+     *
+     * @param pgn the game
+     * @return the tags, in order
+     */
+    public static List<PGNTag> getTags(String pgn) {
+        List<PGNTag> tags = new ArrayList<>();
+        PGNLexer lexer = new PGNLexer(pgn);
+        PGNLexer.Token token;
+        while ((token = lexer.next()) == PGNLexer.Token.TAG || token == PGNLexer.Token.COMMENT) {
+            if (token == PGNLexer.Token.TAG && !lexer.getTagName().isEmpty()) {
+                tags.add(new PGNTag(lexer.getTagName(), lexer.getTagValue()));
+            }
+        }
+        return tags;
+    }
 }
@@ -0,0 +1,325 @@
+package analyzerTools;
+
+import dataextract.Evaluation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drive a single UCI-compatible chess engine process, such as Stockfish.
+ * Positions are given as the list of UCI moves played from the starting position.
+ * A search that runs past its time limit is sent "stop", and an engine that does not
+ * answer "stop" promptly is killed.
+ */
+public class UCIEngine implements AutoCloseable {
+    // How long an engine has to answer "stop" before it is killed, in milliseconds.
+    public static final long STOP_GRACE_MILLIS = 1000;
+    // Stops and kills the searches of every engine that overrun.
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The engine process.
+    private final Process process;
+    // Commands sent to the engine.
+    private final BufferedWriter toEngine;
+    // Output read from the engine.
+    private final UCIInfoParser fromEngine;
+    // The engine's name, as reported by "id name".
+    private String engineID;
+    // The number of principal variations currently requested.
+    private int multiPV;
+    // The most recent score and first move of each variation of the current search, reused from one search to
+    // the next so that reading info lines allocates nothing.
+    private boolean[] found;
+    private boolean[] mates;
+    private int[] scores;
+    private byte[][] firstMoves;
+    private int[] firstMoveLengths;
+    // The options set, so that an option is only sent again when its value changes.
+    private final Map<String, String> options = new HashMap<>();
+    // The time and node limits added to each search, or 0 for none.
+    private long moveTime;
+    private long nodes;
+    // Counts the searches started, so that a late stop is not applied to a later search.
+    private long searchCount;
+    // Whether a search is in progress, and whether it has been told to stop.
+    private boolean searching;
+    private boolean stopped;
+
+    /**
+     * Start an engine and complete the UCI handshake.
+     *
+     * @param command the command used to start the engine
+     * @throws IOException if the engine cannot be started or does not respond
+     */
+    public UCIEngine(String command) throws IOException {
+        process = new ProcessBuilder(command.split("\\s+"))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        toEngine = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII));
+        fromEngine = new UCIInfoParser(process.getInputStream());
+        engineID = "unknown";
+        setMultiPV(1);
+
+        send("uci");
+        while (fromEngine.next() && !fromEngine.lineEquals("uciok")) {
+            if (fromEngine.lineStartsWith("id name ")) {
+                engineID = fromEngine.getLine().substring("id name ".length()).trim();
+            }
+        }
+        waitReady();
+    }
+
+    /**
+     * Return the engine's name.
+     *
+     * @return the name reported by the engine
+     */
+    public String getEngineID() {
+        return engineID;
+    }
+
+    /**
+     * Set a UCI option on the engine, unless it already has the value.
+     *
+     * @param name the option name
+     * @param value the option value
+     * @throws IOException on communication error
+     */
+    public void setOption(String name, String value) throws IOException {
+        if (value.equals(options.put(name, value))) {
+            return;
+        }
+        send("setoption name " + name + " value " + value);
+        if (name.equals("MultiPV")) {
+            setMultiPV(Integer.parseInt(value));
+        }
+    }
+
+    /**
+     * Size the record of each variation for the number requested.
+     */
+    private void setMultiPV(int multiPV) {
+        this.multiPV = multiPV;
+        found = new boolean[multiPV];
+        mates = new boolean[multiPV];
+        scores = new int[multiPV];
+        firstMoves = new byte[multiPV][8];
+        firstMoveLengths = new int[multiPV];
+    }
+
+    /**
+     * Limit the time or nodes of each search, in addition to its depth.
+     * The engine stops at whichever limit it reaches first.
+     *
+     * @param moveTime the time for each search in milliseconds, or 0 for no limit
+     * @param nodes the number of nodes for each search, or 0 for no limit
+     */
+    public void setSearchLimits(long moveTime, long nodes) {
+        this.moveTime = moveTime;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Tell the engine that the following positions belong to a different game.
+     *
+     * @throws IOException on communication error
+     */
+    public void newGame() throws IOException {
+        send("ucinewgame");
+        waitReady();
+    }
+
+    /**
+     * Search a position to a fixed depth and return the evaluation of each principal variation,
+     * best first. Evaluations are given from the point of view of the side to move, either as a
+     * centipawn value or as "mate N".
+     *
+     * @param moves the UCI moves leading to the position from the start
+     * @param plies the number of those moves to play
+     * @param depth the search depth
+     * @param searchMove if not null, restrict the search to this move
+     * @return the evaluations, best first
+     * @throws IOException on communication error
+     */
+    public List<Evaluation> evaluate(String[] moves, int plies, int depth, String searchMove) throws IOException {
+        return evaluate(moves, plies, depth, searchMove, 0);
+    }
+
+    /**
+     * Search a position as evaluate does, but stop the search if it has not finished within a time limit.
+     * The evaluations of a stopped search are those reached when it stopped; wasStopped tells whether this happened.
+     *
+     * @param moves the UCI moves leading to the position from the start
+     * @param plies the number of those moves to play
+     * @param depth the search depth
+     * @param searchMove if not null, restrict the search to this move
+     * @param stopAfter the time limit in milliseconds, or 0 for none
+     * @return the evaluations, best first
+     * @throws IOException on communication error, or if the engine had to be killed
+     */
+    public List<Evaluation> evaluate(String[] moves, int plies, int depth, String searchMove, long stopAfter)
+            throws IOException {
+        StringBuilder position = new StringBuilder("position startpos");
+        if (plies > 0) {
+            position.append(" moves");
+            for (int ply = 0; ply < plies; ply++) {
+                position.append(' ').append(moves[ply]);
+            }
+        }
+        send(position.toString());
+        StringBuilder go = new StringBuilder("go depth ").append(depth);
+        if (moveTime > 0) {
+            go.append(" movetime ").append(moveTime);
+        }
+        if (nodes > 0) {
+            go.append(" nodes ").append(nodes);
+        }
+        if (searchMove != null) {
+            go.append(" searchmoves ").append(searchMove);
+        }
+        long search;
+        synchronized (this) {
+            search = ++searchCount;
+            searching = true;
+            stopped = false;
+        }
+        send(go.toString());
+        ScheduledFuture<?> watchdog = stopAfter > 0
+                ? WATCHDOG.schedule(() -> stop(search), stopAfter, TimeUnit.MILLISECONDS) : null;
+
+        Arrays.fill(found, false);
+        boolean more;
+        try {
+            while ((more = fromEngine.next()) && !fromEngine.lineStartsWith("bestmove")) {
+                int pv = fromEngine.getMultiPV() - 1;
+                if (fromEngine.isVariation() && pv >= 0 && pv < multiPV) {
+                    // The most recent evaluation of each variation.
+                    found[pv] = true;
+                    mates[pv] = fromEngine.isMate();
+                    scores[pv] = fromEngine.getScore();
+                    if (fromEngine.getMoveLength() > firstMoves[pv].length) {
+                        firstMoves[pv] = new byte[fromEngine.getMoveLength()];
+                    }
+                    firstMoveLengths[pv] = fromEngine.copyMove(firstMoves[pv]);
+                }
+            }
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            synchronized (this) {
+                searching = false;
+            }
+        }
+        if (!more) {
+            throw new IOException(wasStopped() ? "Engine did not stop in time" : "Engine terminated during search");
+        }
+
+        List<Evaluation> evaluations = new ArrayList<>(multiPV);
+        for (int pv = 0; pv < multiPV; pv++) {
+            if (found[pv]) {
+                String move = new String(firstMoves[pv], 0, firstMoveLengths[pv], StandardCharsets.US_ASCII);
+                evaluations.add(new Evaluation(move, mates[pv] ? "mate " + scores[pv] : Integer.toString(scores[pv])));
+            }
+        }
+        return evaluations;
+    }
+
+    /**
+     * Whether the most recent search was stopped before reaching its limits.
+     *
+     * @return true if the search was stopped
+     */
+    public synchronized boolean wasStopped() {
+        return stopped;
+    }
+
+    /**
+     * Stop the search in progress, if any. The search returns the evaluations reached so far.
+     * This may be called from any thread.
+     */
+    public void stop() {
+        long search;
+        synchronized (this) {
+            search = searchCount;
+        }
+        stop(search);
+    }
+
+    /**
+     * Stop a search if it is still in progress, and kill the engine if it has not answered
+     * within STOP_GRACE_MILLIS.
+     *
+     * @param search the number of the search to stop
+     */
+    private synchronized void stop(long search) {
+        if (!searching || stopped || search != searchCount) {
+            return;
+        }
+        stopped = true;
+        try {
+            send("stop");
+        } catch (IOException e) {
+            // The engine has already gone.
+        }
+        WATCHDOG.schedule(() -> {
+            synchronized (this) {
+                if (searching && search == searchCount) {
+                    process.destroyForcibly();
+                }
+            }
+        }, STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ask the engine to quit and release the process.
+     */
+    @Override
+    public void close() {
+        try {
+            send("quit");
+        } catch (IOException e) {
+            // The engine has already gone.
+        }
+        process.destroy();
+    }
+
+    /**
+     * Wait until the engine has processed all previous commands.
+     *
+     * @throws IOException on communication error
+     */
+    private void waitReady() throws IOException {
+        send("isready");
+        boolean more;
+        while ((more = fromEngine.next()) && !fromEngine.lineEquals("readyok")) {
+            // Skip anything else.
+        }
+        if (!more) {
+            throw new IOException("Engine terminated");
+        }
+    }
+
+    private void send(String command) throws IOException {
+        synchronized (toEngine) {
+            toEngine.write(command);
+            toEngine.newLine();
+            toEngine.flush();
+        }
+    }
+}
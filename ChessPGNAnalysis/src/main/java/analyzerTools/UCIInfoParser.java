@@ -0,0 +1,327 @@
+package analyzerTools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read the output of a UCI engine a line at a time, straight from the bytes of its standard output, and pick out
+ * the fields of its info lines.
+ *
+ * A deep multi-PV search produces thousands of info lines for each position, so they are parsed in place in a
+ * reusable buffer: the depth, variation number, score, bound and first move of the variation are read into
+ * primitive fields, and nothing is allocated for each line. Info lines without a variation, such as "info string"
+ * and "info currmove", are passed over. Other lines, which are few, can be compared with text without allocating,
+ * or returned as a String.
+ */
+public class UCIInfoParser {
+    // The bound of a score: exact, or only a lower or upper bound because the search failed high or low.
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private static final byte[] INFO = bytes("info");
+    private static final byte[] DEPTH = bytes("depth");
+    private static final byte[] MULTIPV = bytes("multipv");
+    private static final byte[] SCORE = bytes("score");
+    private static final byte[] CP = bytes("cp");
+    private static final byte[] MATE = bytes("mate");
+    private static final byte[] LOWERBOUND = bytes("lowerbound");
+    private static final byte[] UPPERBOUND = bytes("upperbound");
+    private static final byte[] PV = bytes("pv");
+    private static final byte[] STRING = bytes("string");
+
+    private final InputStream in;
+    // The bytes read but not yet consumed are buffer[position, limit); those before scanned hold no newline.
+    private byte[] buffer = new byte[8192];
+    private int position;
+    private int scanned;
+    private int limit;
+    // The current line, without surrounding white space.
+    private int lineStart;
+    private int lineEnd;
+    // The fields of the current line, if it is an info line with a scored variation.
+    private boolean variation;
+    private int depth;
+    private int multiPV;
+    private boolean mate;
+    private int score;
+    private int bound;
+    private int moveStart;
+    private int moveLength;
+    // The end of the token found by nextToken.
+    private int tokenEnd;
+
+    /**
+     * Create a parser.
+     *
+     * @param in the engine's standard output
+     */
+    public UCIInfoParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next line.
+     *
+     * @return false at the end of the output
+     * @throws IOException on error reading the output
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            for (int index = scanned; index < limit; index++) {
+                if (buffer[index] == '\n') {
+                    setLine(position, index);
+                    position = index + 1;
+                    scanned = position;
+                    return true;
+                }
+            }
+            scanned = limit;
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                scanned -= position;
+                position = 0;
+            } else if (limit == buffer.length) {
+                // A line longer than the buffer.
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int count = in.read(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                if (position == limit) {
+                    return false;
+                }
+                // A last line without a newline.
+                setLine(position, limit);
+                position = limit;
+                scanned = limit;
+                return true;
+            }
+            limit += count;
+        }
+    }
+
+    /**
+     * Is the current line an info line giving the score and first move of a variation?
+     *
+     * @return true if the line gives a variation
+     */
+    public boolean isVariation() {
+        return variation;
+    }
+
+    /**
+     * @return the search depth of the variation, or 0 if not given
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the number of the variation, from 1; 1 if not given
+     */
+    public int getMultiPV() {
+        return multiPV;
+    }
+
+    /**
+     * @return true if the score is a number of moves to mate rather than centipawns
+     */
+    public boolean isMate() {
+        return mate;
+    }
+
+    /**
+     * @return the score, in centipawns or moves to mate, from the point of view of the side to move
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the bound of the score: EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public int getBound() {
+        return bound;
+    }
+
+    /**
+     * @return the length of the first move of the variation
+     */
+    public int getMoveLength() {
+        return moveLength;
+    }
+
+    /**
+     * Copy the first move of the variation.
+     *
+     * @param into where to copy the move, which must have room for getMoveLength bytes
+     * @return the length of the move
+     */
+    public int copyMove(byte[] into) {
+        System.arraycopy(buffer, moveStart, into, 0, moveLength);
+        return moveLength;
+    }
+
+    /**
+     * Is the current line the given text?
+     *
+     * @param text the text, in ASCII
+     * @return true if the line is the text
+     */
+    public boolean lineEquals(String text) {
+        return lineEnd - lineStart == text.length() && lineStartsWith(text);
+    }
+
+    /**
+     * Does the current line start with the given text?
+     *
+     * @param text the text, in ASCII
+     * @return true if the line starts with the text
+     */
+    public boolean lineStartsWith(String text) {
+        if (lineEnd - lineStart < text.length()) {
+            return false;
+        }
+        for (int index = 0; index < text.length(); index++) {
+            if (buffer[lineStart + index] != text.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the current line. Unlike the other methods, this allocates.
+     *
+     * @return the line, without surrounding white space
+     */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Make a line the current one, and parse it if it is an info line.
+     */
+    private void setLine(int start, int end) {
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        variation = false;
+        depth = 0;
+        multiPV = 1;
+        mate = false;
+        score = 0;
+        bound = EXACT;
+        moveLength = 0;
+
+        int token = nextToken(start);
+        if (token < 0 || !tokenIs(token, INFO)) {
+            return;
+        }
+        boolean scored = false;
+        while ((token = nextToken(tokenEnd)) >= 0) {
+            if (tokenIs(token, DEPTH)) {
+                if ((token = nextToken(tokenEnd)) < 0) {
+                    return;
+                }
+                depth = parseInt(token);
+            } else if (tokenIs(token, MULTIPV)) {
+                if ((token = nextToken(tokenEnd)) < 0) {
+                    return;
+                }
+                multiPV = parseInt(token);
+            } else if (tokenIs(token, SCORE)) {
+                if ((token = nextToken(tokenEnd)) < 0) {
+                    return;
+                }
+                if (tokenIs(token, MATE)) {
+                    mate = true;
+                } else if (!tokenIs(token, CP)) {
+                    continue;
+                }
+                if ((token = nextToken(tokenEnd)) < 0) {
+                    return;
+                }
+                score = parseInt(token);
+                scored = true;
+            } else if (tokenIs(token, LOWERBOUND)) {
+                bound = LOWER_BOUND;
+            } else if (tokenIs(token, UPPERBOUND)) {
+                bound = UPPER_BOUND;
+            } else if (tokenIs(token, PV)) {
+                if ((token = nextToken(tokenEnd)) < 0) {
+                    return;
+                }
+                moveStart = token;
+                moveLength = tokenEnd - token;
+                // The rest of the variation is not needed.
+                variation = scored;
+                return;
+            } else if (tokenIs(token, STRING)) {
+                // Free text to the end of the line.
+                return;
+            }
+            // Anything else is a field that is not needed, or its value.
+        }
+    }
+
+    /**
+     * Find the next token of the current line at or after an offset, setting tokenEnd to its end.
+     *
+     * @return the start of the token, or -1 at the end of the line
+     */
+    private int nextToken(int from) {
+        while (from < lineEnd && buffer[from] <= ' ') {
+            from++;
+        }
+        if (from == lineEnd) {
+            return -1;
+        }
+        tokenEnd = from;
+        while (tokenEnd < lineEnd && buffer[tokenEnd] > ' ') {
+            tokenEnd++;
+        }
+        return from;
+    }
+
+    /**
+     * Is the token from start to tokenEnd the given keyword?
+     */
+    private boolean tokenIs(int start, byte[] keyword) {
+        if (tokenEnd - start != keyword.length) {
+            return false;
+        }
+        for (int index = 0; index < keyword.length; index++) {
+            if (buffer[start + index] != keyword[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the token from start to tokenEnd as a decimal integer, ignoring anything after its digits.
+     */
+    private int parseInt(int start) {
+        boolean negative = buffer[start] == '-';
+        int index = negative || buffer[start] == '+' ? start + 1 : start;
+        int value = 0;
+        while (index < tokenEnd && buffer[index] >= '0' && buffer[index] <= '9') {
+            value = value * 10 + buffer[index] - '0';
+            index++;
+        }
+        return negative ? -value : value;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,75 @@
+package analyzerTools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Convert the SAN moves of a PGN game into UCI long-algebraic moves using pgn-extract
+ * (see src/main/resources/pgn-extract) with its -Wuci output format.
+ */
+public class UCIMoveConverter {
+    // The command used to run pgn-extract.
+    private final String command;
+
+    /**
+     * Create a converter.
+     *
+     * @param command the command used to run pgn-extract
+     */
+    public UCIMoveConverter(String command) {
+        this.command = command;
+    }
+
+    /**
+     * Convert a single game.
+     *
+     * @param pgn a String containing a single game in PGN format
+     * @return the game's moves in UCI notation
+     * @throws IOException if pgn-extract cannot be run or rejects the game
+     */
+    public String[] convert(String pgn) throws IOException {
+        ArrayList<String> arguments = new ArrayList<>();
+        for (String part : command.split("\\s+")) {
+            arguments.add(part);
+        }
+        arguments.add("-Wuci");
+        arguments.add("--notags");
+        arguments.add("--noresults");
+        arguments.add("--quiet");
+        Process process = new ProcessBuilder(arguments)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try (OutputStream in = process.getOutputStream()) {
+            in.write(pgn.getBytes(StandardCharsets.UTF_8));
+        }
+        String output;
+        try (InputStream out = process.getInputStream()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            out.transferTo(buffer);
+            output = buffer.toString(StandardCharsets.US_ASCII);
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting moves");
+        }
+
+        // -Wuci puts the whole game on a single line.
+        for (String line : output.split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                String[] moves = line.split("\\s+");
+                for (int index = 0; index < moves.length; index++) {
+                    moves[index] = moves[index].toLowerCase();
+                }
+                return moves;
+            }
+        }
+        throw new IOException("No moves found by " + command);
+    }
+}
@@ -39,6 +39,9 @@ public class Analysis {
     // The book depth of the game. These moves will not
     // have been analysed.
     private int bookDepth;
+    // Whether analysis stopped before the end of the game
+    // because its time ran out.
+    private boolean partial;
 
     public Analysis() {
         this.analysedMoves = new ArrayList<>();
@@ -109,6 +112,22 @@ public class Analysis {
         return builder.toString();
     }
 
+    /**
+     * Whether the analysis stopped before the end of the game.
+     * @return true if later moves were not analysed.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Record whether the analysis stopped before the end of the game.
+     * @param partial true if later moves were not analysed.
+     */
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
     /**
      * Return the book depth of this game.
      * @return The book depth.
@@ -0,0 +1,147 @@
+package dataextract;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Bootstrap confidence intervals for the AE and CV of a player's moves.
+ *
+ * The scores are resampled with replacement many times, the AE and CV
+ * of each resample are recorded, and the intervals are read off as
+ * percentiles. Resamples are drawn in fixed-size chunks in parallel,
+ * each chunk with its own SplittableRandom split in turn from a single
+ * seeded generator, so the intervals depend only on the seed and not on
+ * the number of threads. Each resample is drawn straight from the array
+ * of scores, without allocating.
+ */
+public class Bootstrap {
+    // The number of resamples in each chunk.
+    private static final int CHUNK = 256;
+
+    // The number of resamples.
+    private final int resamples;
+    // The seed of the generator.
+    private final long seed;
+    // The coverage of the intervals, such as 0.95.
+    private final double confidence;
+
+    /**
+     * Confidence intervals for AE and CV.
+     */
+    public static final class Interval {
+        private final double AELow;
+        private final double AEHigh;
+        private final double CVLow;
+        private final double CVHigh;
+
+        Interval(double AELow, double AEHigh, double CVLow, double CVHigh) {
+            this.AELow = AELow;
+            this.AEHigh = AEHigh;
+            this.CVLow = CVLow;
+            this.CVHigh = CVHigh;
+        }
+
+        /**
+         * @return The lower bound of the AE.
+         */
+        public double getAELow() {
+            return AELow;
+        }
+
+        /**
+         * @return The upper bound of the AE.
+         */
+        public double getAEHigh() {
+            return AEHigh;
+        }
+
+        /**
+         * @return The lower bound of the CV.
+         */
+        public double getCVLow() {
+            return CVLow;
+        }
+
+        /**
+         * @return The upper bound of the CV.
+         */
+        public double getCVHigh() {
+            return CVHigh;
+        }
+
+        /**
+         * Return the intervals in the format AElo:AEhi:CVlo:CVhi
+         * @return The intervals.
+         */
+        @Override
+        public String toString() {
+            return String.format("%8.2f:%8.2f:%5.2f:%5.2f", AELow, AEHigh, CVLow, CVHigh);
+        }
+    }
+
+    /**
+     * Create a bootstrap.
+     * @param resamples The number of resamples.
+     * @param seed The seed, which determines the resamples.
+     * @param confidence The coverage of the intervals, such as 0.95.
+     */
+    public Bootstrap(int resamples, long seed, double confidence) {
+        this.resamples = Math.max(1, resamples);
+        this.seed = seed;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Return confidence intervals for the AE and CV of some scores.
+     * @param scores The scores of the moves.
+     * @param lowThreshold Scores at least this high count towards the CV.
+     * @return The intervals, which are NaN if there are no scores.
+     */
+    public Interval resample(int[] scores, double lowThreshold) {
+        if (scores.length == 0) {
+            return new Interval(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        double[] AEs = new double[resamples];
+        double[] CVs = new double[resamples];
+        int chunks = (resamples + CHUNK - 1) / CHUNK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            randoms[chunk] = root.split();
+        }
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            SplittableRandom random = randoms[chunk];
+            int end = Math.min(resamples, (chunk + 1) * CHUNK);
+            for (int sample = chunk * CHUNK; sample < end; sample++) {
+                long sum = 0;
+                int within = 0;
+                for (int draw = 0; draw < scores.length; draw++) {
+                    int score = scores[random.nextInt(scores.length)];
+                    sum += score;
+                    if (score >= lowThreshold) {
+                        within++;
+                    }
+                }
+                AEs[sample] = (double) sum / scores.length;
+                CVs[sample] = (double) within / scores.length;
+            }
+        });
+        Arrays.sort(AEs);
+        Arrays.sort(CVs);
+        double tail = (1 - confidence) / 2;
+        return new Interval(percentile(AEs, tail), percentile(AEs, 1 - tail),
+                percentile(CVs, tail), percentile(CVs, 1 - tail));
+    }
+
+    /**
+     * Return a percentile of sorted values, interpolating between the
+     * nearest two.
+     */
+    private static double percentile(double[] sorted, double fraction) {
+        double position = fraction * (sorted.length - 1);
+        int below = (int) Math.floor(position);
+        int above = Math.min(below + 1, sorted.length - 1);
+        return sorted[below] + (sorted[above] - sorted[below]) * (position - below);
+    }
+}
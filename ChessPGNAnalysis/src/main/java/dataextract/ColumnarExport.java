@@ -0,0 +1,247 @@
+package dataextract;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Write the stats of players and the scores of individual moves as typed
+ * binary columns, for loading into dataframes without parsing text.
+ *
+ * The file holds two tables: stats, with a row for each line that
+ * DataExtract writes to standard output, and moves, with a row for each
+ * analysed move of the same games. Rows are buffered a column at a time
+ * and written in row groups, so memory use is bounded by the row group
+ * size rather than by the number of games.
+ *
+ * All numbers are big-endian. The file starts with the schema:
+ * <pre>
+ *     int magic ("PGNC"), int version, byte table count, then for each table:
+ *         UTF name, byte column count, then for each column: UTF name, byte type
+ * </pre>
+ * followed by any number of row groups:
+ * <pre>
+ *     byte table, int row count, then for each column: int byte count, bytes
+ * </pre>
+ * and ends with a byte of -1. UTF is a short byte count followed by
+ * modified UTF-8, as written by DataOutputStream.writeUTF. The data of an
+ * INT8, INT16, INT32, INT64 or FLOAT64 column is its values; that of a
+ * STRING column is an int byte count for each value followed by the
+ * UTF-8 bytes of all of the values.
+ *
+ * ColumnarReader reads the files.
+ */
+public class ColumnarExport implements Closeable {
+    static final int MAGIC = 0x50474e43;
+    static final int VERSION = 1;
+    static final byte END = -1;
+    static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    /**
+     * The types of column.
+     */
+    public enum ColumnType {
+        INT8, INT16, INT32, INT64, FLOAT64, STRING
+    }
+
+    static final String STATS = "stats";
+    static final String MOVES = "moves";
+    static final String[] STATS_COLUMNS = {
+        "game", "year", "player", "white", "bookdepth", "moves", "depth", "ae", "sd", "cv", "result", "hashcode"
+    };
+    static final ColumnType[] STATS_TYPES = {
+        ColumnType.INT32, ColumnType.INT16, ColumnType.STRING, ColumnType.INT8, ColumnType.INT16,
+        ColumnType.INT16, ColumnType.INT16, ColumnType.FLOAT64, ColumnType.FLOAT64, ColumnType.FLOAT64,
+        ColumnType.STRING, ColumnType.STRING
+    };
+    static final String[] MOVES_COLUMNS = {
+        "game", "ply", "white", "played", "best", "delta", "bestmate", "playedmate", "scored"
+    };
+    static final ColumnType[] MOVES_TYPES = {
+        ColumnType.INT32, ColumnType.INT16, ColumnType.INT8, ColumnType.STRING, ColumnType.STRING,
+        ColumnType.INT32, ColumnType.INT8, ColumnType.INT8, ColumnType.INT8
+    };
+
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final Table stats;
+    private final Table moves;
+    // The number of games exported, which numbers them.
+    private int gameCount;
+
+    /**
+     * Create an export file.
+     *
+     * @param file The file.
+     * @param rowGroupSize The most rows in each row group.
+     * @throws IOException on failure to create the file.
+     */
+    public ColumnarExport(Path file, int rowGroupSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.rowGroupSize = Math.max(1, rowGroupSize);
+        stats = new Table(0, STATS_TYPES);
+        moves = new Table(1, MOVES_TYPES);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(2);
+        writeSchema(STATS, STATS_COLUMNS, STATS_TYPES);
+        writeSchema(MOVES, MOVES_COLUMNS, MOVES_TYPES);
+    }
+
+    /**
+     * Export the stats of the matching players in a game and the scores
+     * of all of its analysed moves.
+     *
+     * @param game The game.
+     * @param playerStats The stats of its matching players.
+     * @throws IOException on output error.
+     */
+    public void add(Game game, List<PlayerStats> playerStats) throws IOException {
+        int id = gameCount++;
+        String result = game.getTagValue("Result");
+        String date = game.getTagValue("Date");
+        int year = parseNumber(date.length() >= 4 ? date.substring(0, 4) : "");
+        Analysis analysis = game.getAnalysis();
+        int depth = analysis != null ? parseNumber(analysis.getSearchDepth()) : 0;
+        for (PlayerStats player : playerStats) {
+            stats.column(0).writeInt(id);
+            stats.column(1).writeShort(year);
+            stats.string(2, player.getPlayerName());
+            stats.column(3).writeByte(player.isWhite() ? 1 : 0);
+            stats.column(4).writeShort(game.getBookDepth());
+            stats.column(5).writeShort(player.getNumScores());
+            stats.column(6).writeShort(depth);
+            stats.column(7).writeDouble(player.getAE());
+            stats.column(8).writeDouble(player.getSD());
+            stats.column(9).writeDouble(player.getCV());
+            stats.string(10, result.equals("1/2-1/2") ? "1/2" : result);
+            stats.string(11, game.getTagValue("HashCode"));
+            endRow(stats);
+        }
+        if (analysis == null || game.getBookDepth() < 0) {
+            return;
+        }
+        int ply = game.getBookDepth() + 1;
+        for (PlayedMove played : analysis.getAnalysedMoves()) {
+            PlayedMoveScore score = null;
+            try {
+                score = game.getEvaluation(played);
+            } catch (IllegalStateException e) {
+                // Exported as unscored.
+            }
+            List<Evaluation> evaluations = played.getEvaluations();
+            moves.column(0).writeInt(id);
+            moves.column(1).writeShort(ply++);
+            moves.column(2).writeByte(played.isWhiteMove() ? 1 : 0);
+            moves.string(3, played.getMove());
+            moves.string(4, evaluations.isEmpty() ? "" : evaluations.get(0).getMove());
+            moves.column(5).writeInt(score != null ? score.getValue() : 0);
+            moves.column(6).writeByte(score != null && score.bestIsMate() ? 1 : 0);
+            moves.column(7).writeByte(score != null && score.playedIsMate() ? 1 : 0);
+            moves.column(8).writeByte(score != null ? 1 : 0);
+            endRow(moves);
+        }
+    }
+
+    /**
+     * Write any buffered rows and close the file.
+     *
+     * @throws IOException on output error.
+     */
+    @Override
+    public void close() throws IOException {
+        stats.flush();
+        moves.flush();
+        out.writeByte(END);
+        out.close();
+    }
+
+    private void writeSchema(String name, String[] columns, ColumnType[] types) throws IOException {
+        out.writeUTF(name);
+        out.writeByte(columns.length);
+        for (int index = 0; index < columns.length; index++) {
+            out.writeUTF(columns[index]);
+            out.writeByte(types[index].ordinal());
+        }
+    }
+
+    private void endRow(Table table) throws IOException {
+        if (++table.rows >= rowGroupSize) {
+            table.flush();
+        }
+    }
+
+    private static int parseNumber(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The buffered rows of a table.
+     */
+    private final class Table {
+        private final int index;
+        private final ColumnType[] types;
+        private final ByteArrayOutputStream[] buffers;
+        private final DataOutputStream[] columns;
+        // The bytes of the values of STRING columns, whose lengths are in buffers.
+        private final ByteArrayOutputStream[] strings;
+        private int rows;
+
+        Table(int index, ColumnType[] types) {
+            this.index = index;
+            this.types = types;
+            buffers = new ByteArrayOutputStream[types.length];
+            columns = new DataOutputStream[types.length];
+            strings = new ByteArrayOutputStream[types.length];
+            for (int column = 0; column < types.length; column++) {
+                buffers[column] = new ByteArrayOutputStream();
+                columns[column] = new DataOutputStream(buffers[column]);
+                if (types[column] == ColumnType.STRING) {
+                    strings[column] = new ByteArrayOutputStream();
+                }
+            }
+        }
+
+        DataOutputStream column(int column) {
+            return columns[column];
+        }
+
+        void string(int column, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            columns[column].writeInt(bytes.length);
+            strings[column].write(bytes);
+        }
+
+        /**
+         * Write the buffered rows as a row group.
+         */
+        void flush() throws IOException {
+            if (rows == 0) {
+                return;
+            }
+            out.writeByte(index);
+            out.writeInt(rows);
+            for (int column = 0; column < types.length; column++) {
+                int stringBytes = strings[column] != null ? strings[column].size() : 0;
+                out.writeInt(buffers[column].size() + stringBytes);
+                buffers[column].writeTo(out);
+                buffers[column].reset();
+                if (strings[column] != null) {
+                    strings[column].writeTo(out);
+                    strings[column].reset();
+                }
+            }
+            rows = 0;
+        }
+    }
+}
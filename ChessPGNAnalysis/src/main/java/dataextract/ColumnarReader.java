@@ -0,0 +1,348 @@
+package dataextract;
+
+import dataextract.ColumnarExport.ColumnType;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read a file written by ColumnarExport a row group at a time.
+ *
+ * Typical use:
+ * <pre>
+ *     try (ColumnarReader reader = new ColumnarReader(path)) {
+ *         ColumnarReader.RowGroup group;
+ *         while ((group = reader.next()) != null) {
+ *             if (group.getTable().equals("moves")) {
+ *                 int[] deltas = group.getInts("delta");
+ *                 ...
+ *             }
+ *         }
+ *     }
+ * </pre>
+ *
+ * Run as a program, it writes a table as CSV:
+ * java dataextract.ColumnarReader file table
+ */
+public class ColumnarReader implements AutoCloseable {
+    private final DataInputStream in;
+    private final List<String> tableNames = new ArrayList<>();
+    private final List<List<String>> columnNames = new ArrayList<>();
+    private final List<List<ColumnType>> columnTypes = new ArrayList<>();
+    private boolean ended;
+
+    /**
+     * A row group of a table.
+     */
+    public final class RowGroup {
+        private final int table;
+        private final int rows;
+        private final ByteBuffer[] columns;
+
+        private RowGroup(int table, int rows, ByteBuffer[] columns) {
+            this.table = table;
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        /**
+         * Return the name of the group's table.
+         * @return The table name.
+         */
+        public String getTable() {
+            return tableNames.get(table);
+        }
+
+        /**
+         * Return the number of rows in the group.
+         * @return The number of rows.
+         */
+        public int getRowCount() {
+            return rows;
+        }
+
+        /**
+         * Return the values of an INT8, INT16 or INT32 column.
+         * @param column The column name.
+         * @return The values.
+         */
+        public int[] getInts(String column) {
+            int index = columnIndex(column);
+            ByteBuffer data = columns[index].duplicate();
+            ColumnType type = columnTypes.get(table).get(index);
+            int[] values = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                switch (type) {
+                    case INT8:
+                        values[row] = data.get();
+                        break;
+                    case INT16:
+                        values[row] = data.getShort();
+                        break;
+                    case INT32:
+                        values[row] = data.getInt();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Not an int column: " + column);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Return the values of an INT64 column.
+         * @param column The column name.
+         * @return The values.
+         */
+        public long[] getLongs(String column) {
+            int index = columnIndex(column, ColumnType.INT64);
+            ByteBuffer data = columns[index].duplicate();
+            long[] values = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                values[row] = data.getLong();
+            }
+            return values;
+        }
+
+        /**
+         * Return the values of a FLOAT64 column.
+         * @param column The column name.
+         * @return The values.
+         */
+        public double[] getDoubles(String column) {
+            int index = columnIndex(column, ColumnType.FLOAT64);
+            ByteBuffer data = columns[index].duplicate();
+            double[] values = new double[rows];
+            for (int row = 0; row < rows; row++) {
+                values[row] = data.getDouble();
+            }
+            return values;
+        }
+
+        /**
+         * Return the values of a STRING column.
+         * @param column The column name.
+         * @return The values.
+         */
+        public String[] getStrings(String column) {
+            int index = columnIndex(column, ColumnType.STRING);
+            ByteBuffer data = columns[index].duplicate();
+            String[] values = new String[rows];
+            int offset = data.position() + rows * 4;
+            for (int row = 0; row < rows; row++) {
+                int length = data.getInt();
+                values[row] = new String(data.array(), data.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+                offset += length;
+            }
+            return values;
+        }
+
+        /**
+         * Return the text of a value, for any type of column.
+         */
+        private String[] getText(String column) {
+            switch (columnTypes.get(table).get(columnIndex(column))) {
+                case INT64:
+                    String[] longs = new String[rows];
+                    long[] longValues = getLongs(column);
+                    for (int row = 0; row < rows; row++) {
+                        longs[row] = String.valueOf(longValues[row]);
+                    }
+                    return longs;
+                case FLOAT64:
+                    String[] doubles = new String[rows];
+                    double[] doubleValues = getDoubles(column);
+                    for (int row = 0; row < rows; row++) {
+                        doubles[row] = String.valueOf(doubleValues[row]);
+                    }
+                    return doubles;
+                case STRING:
+                    return getStrings(column);
+                default:
+                    String[] ints = new String[rows];
+                    int[] intValues = getInts(column);
+                    for (int row = 0; row < rows; row++) {
+                        ints[row] = String.valueOf(intValues[row]);
+                    }
+                    return ints;
+            }
+        }
+
+        private int columnIndex(String column, ColumnType type) {
+            int index = columnIndex(column);
+            if (columnTypes.get(table).get(index) != type) {
+                throw new IllegalArgumentException("Not a " + type + " column: " + column);
+            }
+            return index;
+        }
+
+        private int columnIndex(String column) {
+            int index = columnNames.get(table).indexOf(column);
+            if (index < 0) {
+                throw new IllegalArgumentException("No column " + column + " in " + getTable());
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Open a file and read its schema.
+     *
+     * @param file The file.
+     * @throws IOException if the file cannot be read or was not written by ColumnarExport.
+     */
+    public ColumnarReader(Path file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != ColumnarExport.MAGIC || in.readInt() != ColumnarExport.VERSION) {
+                throw new IOException("Not a columnar export: " + file);
+            }
+            int tables = in.readUnsignedByte();
+            for (int table = 0; table < tables; table++) {
+                tableNames.add(in.readUTF());
+                int columns = in.readUnsignedByte();
+                List<String> names = new ArrayList<>(columns);
+                List<ColumnType> types = new ArrayList<>(columns);
+                for (int column = 0; column < columns; column++) {
+                    names.add(in.readUTF());
+                    types.add(ColumnType.values()[in.readUnsignedByte()]);
+                }
+                columnNames.add(names);
+                columnTypes.add(types);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return the names of the tables.
+     * @return The table names.
+     */
+    public List<String> getTableNames() {
+        return Collections.unmodifiableList(tableNames);
+    }
+
+    /**
+     * Return the names of the columns of a table.
+     * @param table The table name.
+     * @return The column names.
+     */
+    public List<String> getColumnNames(String table) {
+        return Collections.unmodifiableList(columnNames.get(tableIndex(table)));
+    }
+
+    /**
+     * Return the types of the columns of a table.
+     * @param table The table name.
+     * @return The column types.
+     */
+    public List<ColumnType> getColumnTypes(String table) {
+        return Collections.unmodifiableList(columnTypes.get(tableIndex(table)));
+    }
+
+    /**
+     * Read the next row group.
+     *
+     * @return The row group, or null at the end of the file.
+     * @throws IOException on error reading the file, or if it ends without its end marker.
+     */
+    public RowGroup next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        int table;
+        try {
+            table = in.readByte();
+        } catch (EOFException e) {
+            throw new IOException("Columnar export is incomplete");
+        }
+        if (table == ColumnarExport.END) {
+            ended = true;
+            return null;
+        }
+        if (table < 0 || table >= tableNames.size()) {
+            throw new IOException("Unknown table number: " + table);
+        }
+        int rows = in.readInt();
+        ByteBuffer[] columns = new ByteBuffer[columnNames.get(table).size()];
+        for (int column = 0; column < columns.length; column++) {
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            columns[column] = ByteBuffer.wrap(data);
+        }
+        return new RowGroup(table, rows, columns);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int tableIndex(String table) {
+        int index = tableNames.indexOf(table);
+        if (index < 0) {
+            throw new IllegalArgumentException("No table " + table);
+        }
+        return index;
+    }
+
+    /**
+     * Write a table of an export file as CSV to standard output.
+     *
+     * @param args file table
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: file stats|moves");
+            return;
+        }
+        PrintStream output = System.out;
+        try (ColumnarReader reader = new ColumnarReader(Paths.get(args[0]))) {
+            List<String> columns = reader.getColumnNames(args[1]);
+            output.println(String.join(",", columns));
+            RowGroup group;
+            while ((group = reader.next()) != null) {
+                if (!group.getTable().equals(args[1])) {
+                    continue;
+                }
+                String[][] values = new String[columns.size()][];
+                for (int column = 0; column < values.length; column++) {
+                    values[column] = group.getText(columns.get(column));
+                }
+                StringBuilder line = new StringBuilder();
+                for (int row = 0; row < group.getRowCount(); row++) {
+                    line.setLength(0);
+                    for (int column = 0; column < values.length; column++) {
+                        if (column > 0) {
+                            line.append(',');
+                        }
+                        line.append(csv(values[column][row]));
+                    }
+                    output.println(line);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error reading " + args[0] + ": " + e.getMessage());
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,476 @@
+package dataextract;
+
+import analyzerTools.Board;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generate synthetic databases of games for load testing, either as PGN or as
+ * analysis XML in the form written by the analyser.
+ *
+ * The games are legal games played at random, with captures preferred so that
+ * they end in a reasonable mix of material. Their lengths are drawn from a
+ * normal distribution. Players are drawn from a pool of a given size, a few of
+ * them much more often than the rest, and each has a fixed chance of playing
+ * the engine's first choice. The analysis gives the requested number of
+ * variations for each move after the book, with the played move ranked by that
+ * chance, and a mate score for the given fraction of positions.
+ *
+ * The same seed and settings produce the same games in either format, so that a
+ * PGN database and its analysis can be generated separately.
+ */
+public class CorpusGenerator {
+    // The most plies in a game.
+    private static final int MAX_PLIES = 600;
+    // How much more likely a capture is to be played than a quiet move.
+    private static final int CAPTURE_WEIGHT = 4;
+    // The width of the output lines of PGN movetext.
+    private static final int LINE_WIDTH = 79;
+    private static final String ENGINE_ID = "synthetic";
+    // The results of games that do not end in mate or stalemate.
+    private static final String[] RESULTS = {"1-0", "0-1", "1/2-1/2"};
+
+    private int games = 1000;
+    private double meanPlies = 80;
+    private double pliesSD = 30;
+    private int multiPV = 5;
+    private double mateFraction = 0.02;
+    private int players = 100;
+    private int bookDepth = 8;
+    private int searchDepth = 20;
+    private long seed = 1;
+
+    // Counts the plies of the games written.
+    private long pliesWritten;
+
+    /**
+     * Generate a PGN or analysis XML file.
+     *
+     * @param args [--games N] [--plies N] [--pliessd N] [--multipv N] [--mates F]
+     *             [--players N] [--book N] [--seed S] [--xml] file
+     */
+    public static void main(String[] args) {
+        CorpusGenerator generator = new CorpusGenerator();
+        boolean xml = false;
+        int argnum = 0;
+        try {
+            while (argnum < args.length - 1 && args[argnum].startsWith("--")) {
+                String arg = args[argnum++];
+                if (arg.equals("--xml")) {
+                    xml = true;
+                    continue;
+                }
+                String value = args[argnum++];
+                switch (arg) {
+                    case "--games":
+                        generator.setGames(Integer.parseInt(value));
+                        break;
+                    case "--plies":
+                        generator.setMeanPlies(Double.parseDouble(value));
+                        break;
+                    case "--pliessd":
+                        generator.setPliesSD(Double.parseDouble(value));
+                        break;
+                    case "--multipv":
+                        generator.setMultiPV(Integer.parseInt(value));
+                        break;
+                    case "--mates":
+                        generator.setMateFraction(Double.parseDouble(value));
+                        break;
+                    case "--players":
+                        generator.setPlayers(Integer.parseInt(value));
+                        break;
+                    case "--book":
+                        generator.setBookDepth(Integer.parseInt(value));
+                        break;
+                    case "--seed":
+                        generator.setSeed(Long.parseLong(value));
+                        break;
+                    default:
+                        System.err.println("Unknown flag: " + arg);
+                        usage();
+                        return;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing or invalid value after: " + args[argnum - 1]);
+            usage();
+            return;
+        }
+        if (argnum != args.length - 1) {
+            usage();
+            return;
+        }
+        Path path = Paths.get(args[argnum]);
+        try {
+            if (xml) {
+                generator.writeXML(path);
+            } else {
+                generator.writePGN(path);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: --generate [--games N] [--plies N] [--pliessd N] [--multipv N] [--mates F] "
+                + "[--players N] [--book N] [--seed S] [--xml] file");
+    }
+
+    /**
+     * @param games the number of games to generate
+     */
+    public void setGames(int games) {
+        this.games = games;
+    }
+
+    /**
+     * @param meanPlies the mean length of the games in plies
+     */
+    public void setMeanPlies(double meanPlies) {
+        this.meanPlies = meanPlies;
+    }
+
+    /**
+     * @param pliesSD the standard deviation of the length of the games in plies
+     */
+    public void setPliesSD(double pliesSD) {
+        this.pliesSD = pliesSD;
+    }
+
+    /**
+     * @param multiPV the number of variations evaluated for each analysed move
+     */
+    public void setMultiPV(int multiPV) {
+        this.multiPV = multiPV;
+    }
+
+    /**
+     * @param mateFraction the fraction of analysed positions whose best move is scored as a mate
+     */
+    public void setMateFraction(double mateFraction) {
+        this.mateFraction = mateFraction;
+    }
+
+    /**
+     * @param players the number of different players
+     */
+    public void setPlayers(int players) {
+        this.players = players;
+    }
+
+    /**
+     * @param bookDepth the number of plies at the start of each game that are not analysed
+     */
+    public void setBookDepth(int bookDepth) {
+        this.bookDepth = bookDepth;
+    }
+
+    /**
+     * @param seed the seed from which the games are generated
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the number of plies in the games of the last file written
+     */
+    public long getPliesWritten() {
+        return pliesWritten;
+    }
+
+    /**
+     * Write the games as PGN, gzip-compressed if the file name ends in .gz.
+     *
+     * @param path the file to write
+     * @throws IOException on error writing the file
+     */
+    public void writePGN(Path path) throws IOException {
+        write(path, false);
+    }
+
+    /**
+     * Write the games with their analysis as XML, gzip-compressed if the file name ends in .gz.
+     *
+     * @param path the file to write
+     * @throws IOException on error writing the file
+     */
+    public void writeXML(Path path) throws IOException {
+        write(path, true);
+    }
+
+    private void write(Path path, boolean xml) throws IOException {
+        pliesWritten = 0;
+        OutputStream stream = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, 1 << 16);
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+            if (xml) {
+                out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gamelist>\n");
+            }
+            Random random = new Random(seed);
+            double[] matchRates = matchRates();
+            int[] moves = new int[MAX_PLIES];
+            for (int index = 0; index < games; index++) {
+                int white = pickPlayer(random);
+                int black = pickPlayer(random);
+                Board board = new Board();
+                int plies = playGame(board, moves, random);
+                pliesWritten += plies;
+                String result = RESULTS[random.nextInt(RESULTS.length)];
+                // Each game's analysis has its own generator, so that PGN and XML hold the same games.
+                long analysisSeed = random.nextLong();
+                if (xml) {
+                    writeXMLGame(out, index, white, black, result, moves, plies, matchRates,
+                            new Random(analysisSeed));
+                } else {
+                    writePGNGame(out, index, white, black, result, moves, plies, matchRates);
+                }
+            }
+            if (xml) {
+                out.write("</gamelist>\n");
+            }
+        }
+    }
+
+    /**
+     * Give each player a fixed chance of playing the first choice, between 0.3 and 0.7.
+     */
+    private double[] matchRates() {
+        Random random = new Random(~seed);
+        double[] rates = new double[players];
+        for (int player = 0; player < players; player++) {
+            rates[player] = 0.3 + 0.4 * random.nextDouble();
+        }
+        return rates;
+    }
+
+    /**
+     * Pick a player, with the number of the player log-uniformly distributed so that the
+     * first few players appear in many more games than the rest.
+     */
+    private int pickPlayer(Random random) {
+        return Math.min(players - 1, (int) Math.pow(players, random.nextDouble()) - 1);
+    }
+
+    /**
+     * Play a random game of about the chosen length on the board, stopping early at mate
+     * or stalemate.
+     *
+     * @return the number of plies played
+     */
+    private int playGame(Board board, int[] moves, Random random) {
+        int length = (int) Math.round(meanPlies + pliesSD * random.nextGaussian());
+        length = Math.max(1, Math.min(MAX_PLIES, length));
+        int[] legal = new int[Board.MAX_MOVES];
+        int plies = 0;
+        while (plies < length) {
+            int count = board.generateLegal(legal, 0);
+            if (count == 0) {
+                break;
+            }
+            int weight = 0;
+            for (int index = 0; index < count; index++) {
+                weight += isCapture(board, legal[index]) ? CAPTURE_WEIGHT : 1;
+            }
+            int pick = random.nextInt(weight);
+            int index = 0;
+            while ((pick -= isCapture(board, legal[index]) ? CAPTURE_WEIGHT : 1) >= 0) {
+                index++;
+            }
+            moves[plies++] = legal[index];
+            board.make(legal[index]);
+        }
+        // Leave the board at the start so that the moves can be replayed.
+        for (int ply = plies - 1; ply >= 0; ply--) {
+            board.unmake(moves[ply]);
+        }
+        return plies;
+    }
+
+    private static boolean isCapture(Board board, int move) {
+        return board.pieceAt(Board.to(move)) != Board.EMPTY || Board.isEnPassant(move);
+    }
+
+    private void writePGNGame(Writer out, int index, int white, int black, String result,
+                              int[] moves, int plies, double[] matchRates) throws IOException {
+        Board board = new Board();
+        String ending = ending(board, moves, plies, result);
+        writeTag(out, "Event", "Synthetic");
+        writeTag(out, "Site", "?");
+        writeTag(out, "Date", date(index));
+        writeTag(out, "Round", Integer.toString(index + 1));
+        writeTag(out, "White", playerName(white));
+        writeTag(out, "Black", playerName(black));
+        writeTag(out, "Result", ending);
+        writeTag(out, "WhiteElo", Integer.toString(elo(matchRates[white])));
+        writeTag(out, "BlackElo", Integer.toString(elo(matchRates[black])));
+        out.write('\n');
+
+        StringBuilder line = new StringBuilder(LINE_WIDTH + 16);
+        for (int ply = 0; ply < plies; ply++) {
+            String san = board.toSAN(moves[ply]);
+            String token = ply % 2 == 0 ? (ply / 2 + 1) + ". " + san : san;
+            appendWrapped(out, line, token);
+            board.make(moves[ply]);
+        }
+        appendWrapped(out, line, ending);
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    private static void appendWrapped(Writer out, StringBuilder line, String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_WIDTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private void writeXMLGame(Writer out, int index, int white, int black, String result,
+                              int[] moves, int plies, double[] matchRates, Random random) throws IOException {
+        Board board = new Board();
+        String ending = ending(board, moves, plies, result);
+        out.write("<game>\n<tags>");
+        writeXMLTag(out, "Event", "Synthetic");
+        writeXMLTag(out, "Site", "?");
+        writeXMLTag(out, "Date", date(index));
+        writeXMLTag(out, "Round", Integer.toString(index + 1));
+        writeXMLTag(out, "White", playerName(white));
+        writeXMLTag(out, "Black", playerName(black));
+        writeXMLTag(out, "Result", ending);
+        writeXMLTag(out, "WhiteElo", Integer.toString(elo(matchRates[white])));
+        writeXMLTag(out, "BlackElo", Integer.toString(elo(matchRates[black])));
+        out.write("</tags>\n<moves>\n");
+        for (int ply = 0; ply < plies; ply++) {
+            out.write(Board.toUCI(moves[ply]));
+            out.write(' ');
+        }
+        out.write(ending);
+        out.write("\n</moves>\n");
+
+        out.write("<analysis engine=\"" + ENGINE_ID + "\" searchDepth=\"" + searchDepth
+                + "\" bookDepth=\"" + bookDepth + "\">\n");
+        int[] legal = new int[Board.MAX_MOVES];
+        // The evaluation of the position for white, which drifts as the game goes on.
+        int balance = 0;
+        for (int ply = 0; ply < plies; ply++) {
+            balance += (int) Math.round(random.nextGaussian() * 20);
+            if (ply >= bookDepth) {
+                boolean whiteToMove = ply % 2 == 0;
+                double matchRate = matchRates[whiteToMove ? white : black];
+                writeXMLMove(out, board, moves[ply], whiteToMove ? balance : -balance, matchRate, legal, random);
+            }
+            board.make(moves[ply]);
+        }
+        out.write("</analysis>\n</game>\n");
+    }
+
+    /**
+     * Write the analysis of a move: the variations, best first, from the point of view of the
+     * side to move, with the played move among them or added after them.
+     */
+    private void writeXMLMove(Writer out, Board board, int played, int best, double matchRate,
+                              int[] legal, Random random) throws IOException {
+        int count = board.generateLegal(legal, 0);
+        int variations = Math.min(multiPV, count);
+        // Where the played move is ranked, or variations if it is not among them.
+        int rank = 0;
+        if (random.nextDouble() >= matchRate) {
+            rank = 1 + random.nextInt(Math.max(1, count - 1));
+            rank = Math.min(rank, Math.min(variations, count - 1));
+        }
+        // Move the played move to its rank, and the others into the remaining places in a random order.
+        for (int index = 0; index < count; index++) {
+            if (legal[index] == played) {
+                legal[index] = legal[0];
+                legal[0] = played;
+                break;
+            }
+        }
+        for (int index = 1; index < count; index++) {
+            int other = index + random.nextInt(count - index);
+            int move = legal[index];
+            legal[index] = legal[other];
+            legal[other] = move;
+        }
+        if (rank < count) {
+            legal[0] = legal[rank];
+            legal[rank] = played;
+        }
+
+        boolean mate = random.nextDouble() < mateFraction;
+        int score = best;
+        out.write(board.isWhiteToMove() ? "<move player=\"white\">" : "<move player=\"black\">");
+        out.write("<played>" + Board.toUCI(played) + "</played>");
+        for (int index = 0; index < variations; index++) {
+            String value = index == 0 && mate ? "mate " + (1 + random.nextInt(10)) : Integer.toString(score);
+            out.write("<evaluation move=\"" + Board.toUCI(legal[index]) + "\" value=\"" + value + "\"/>");
+            score -= (int) Math.round(-Math.log(1 - random.nextDouble()) * 20);
+        }
+        if (rank >= variations) {
+            out.write("<evaluation move=\"" + Board.toUCI(played) + "\" value=\"" + score + "\"/>");
+        }
+        out.write("</move>\n");
+    }
+
+    /**
+     * The result to record: the winner of a game ending in mate, a draw for stalemate,
+     * and otherwise the result drawn at random.
+     */
+    private static String ending(Board board, int[] moves, int plies, String result) {
+        for (int ply = 0; ply < plies; ply++) {
+            board.make(moves[ply]);
+        }
+        int[] legal = new int[Board.MAX_MOVES];
+        String ending = result;
+        if (board.generateLegal(legal, 0) == 0) {
+            ending = !board.inCheck() ? "1/2-1/2" : board.isWhiteToMove() ? "0-1" : "1-0";
+        }
+        for (int ply = plies - 1; ply >= 0; ply--) {
+            board.unmake(moves[ply]);
+        }
+        return ending;
+    }
+
+    private static String playerName(int player) {
+        return String.format("Player%05d", player);
+    }
+
+    private static int elo(double matchRate) {
+        return 1000 + (int) Math.round((matchRate - 0.3) * 4000);
+    }
+
+    private static String date(int index) {
+        return String.format("%04d.%02d.%02d", 2000 + index / 336 % 25, index / 28 % 12 + 1, index % 28 + 1);
+    }
+
+    private static void writeTag(Writer out, String name, String value) throws IOException {
+        out.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    private static void writeXMLTag(Writer out, String name, String value) throws IOException {
+        out.write("<tag name=\"" + name + "\" value=\"" + escapeXML(value) + "\"/>");
+    }
+
+    private static String escapeXML(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+}
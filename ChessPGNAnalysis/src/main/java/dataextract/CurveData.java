@@ -0,0 +1,223 @@
+package dataextract;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Data for fitting the curve of expected score against engine evaluation.
+ *
+ * The evaluation of each analysed move, from white's point of view, is
+ * mapped through a lookup table to the win probability given by the
+ * logistic curve 1 / (1 + 10^(-cp/400)), and counted in a histogram of
+ * probability bins for the game's rating band and result. Comparing the
+ * score actually achieved in each bin with the bin's probability shows
+ * how well the curve fits games of each rating.
+ *
+ * Games are not kept, so a corpus of any size can be processed in one
+ * pass. Each worker thread fills its own CurveData; the results are
+ * combined with merge.
+ */
+public class CurveData {
+    // Evaluations are clamped to this many centipawns either way; mates count as the limit.
+    static final int MAX_CENTIPAWNS = 2000;
+    // The number of probability bins.
+    static final int BINS = 50;
+    // The width of each rating band, by the mean rating of the players.
+    static final int BAND_WIDTH = 200;
+    // Band 0 holds games whose ratings are not known; the last band holds all higher ratings.
+    static final int BANDS = 18;
+    // Result indexes.
+    private static final int WHITE_WIN = 0;
+    private static final int DRAW = 1;
+    private static final int BLACK_WIN = 2;
+    private static final int RESULTS = 3;
+
+    // The win probability for white, and its bin, for each evaluation from -MAX_CENTIPAWNS to MAX_CENTIPAWNS.
+    private static final double[] WIN_PROBABILITY = new double[2 * MAX_CENTIPAWNS + 1];
+    private static final int[] BIN = new int[WIN_PROBABILITY.length];
+
+    static {
+        for (int index = 0; index < WIN_PROBABILITY.length; index++) {
+            double probability = 1 / (1 + Math.pow(10, -(index - MAX_CENTIPAWNS) / 400.0));
+            WIN_PROBABILITY[index] = probability;
+            BIN[index] = Math.min((int) (probability * BINS), BINS - 1);
+        }
+    }
+
+    // The number of evaluations in each band, result and bin, indexed by (band * RESULTS + result) * BINS + bin.
+    private final long[] counts = new long[BANDS * RESULTS * BINS];
+    private long games;
+
+    /**
+     * Return the win probability for white of an evaluation.
+     * @param centipawns The evaluation from white's point of view.
+     * @return The probability, between 0 and 1.
+     */
+    public static double winProbability(int centipawns) {
+        return WIN_PROBABILITY[clamp(centipawns) + MAX_CENTIPAWNS];
+    }
+
+    /**
+     * Count the evaluations of a game's analysed moves. Games without
+     * a decisive or drawn result are ignored.
+     * @param game The game.
+     */
+    public void add(Game game) {
+        int result;
+        switch (game.getTagValue("Result")) {
+            case "1-0":
+                result = WHITE_WIN;
+                break;
+            case "1/2-1/2":
+                result = DRAW;
+                break;
+            case "0-1":
+                result = BLACK_WIN;
+                break;
+            default:
+                return;
+        }
+        Analysis analysis = game.getAnalysis();
+        if (analysis == null) {
+            return;
+        }
+        int base = (band(game) * RESULTS + result) * BINS;
+        for (PlayedMove played : analysis.getAnalysedMoves()) {
+            Evaluation evaluation = played.getEvaluationForMove();
+            if (evaluation == null) {
+                continue;
+            }
+            int centipawns = parseEvaluation(evaluation.getEvaluation());
+            if (centipawns == Integer.MIN_VALUE) {
+                continue;
+            }
+            // Engine scores are from the point of view of the side to move.
+            if (!played.isWhiteMove()) {
+                centipawns = -centipawns;
+            }
+            counts[base + BIN[clamp(centipawns) + MAX_CENTIPAWNS]]++;
+        }
+        games++;
+    }
+
+    /**
+     * Add the counts of another CurveData to these.
+     * @param other The other counts.
+     */
+    public void merge(CurveData other) {
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] += other.counts[index];
+        }
+        games += other.games;
+    }
+
+    /**
+     * Combine the counts of several CurveData.
+     * @param parts The counts to combine.
+     * @return The combined counts.
+     */
+    public static CurveData merge(List<CurveData> parts) {
+        CurveData total = new CurveData();
+        for (CurveData part : parts) {
+            total.merge(part);
+        }
+        return total;
+    }
+
+    /**
+     * Return the number of games counted.
+     * @return The number of games.
+     */
+    public long getGameCount() {
+        return games;
+    }
+
+    /**
+     * Write a line for each rating band and probability bin holding
+     * any evaluations, in the format:
+     * Elo:P:Wins:Draws:Losses:Score
+     * where P is the probability at the middle of the bin and Score
+     * is white's actual score from those positions.
+     * @param output Where to write the data.
+     */
+    public void write(PrintStream output) {
+        output.println("# Games: " + games);
+        output.println("# Elo:P:Wins:Draws:Losses:Score");
+        for (int band = 0; band < BANDS; band++) {
+            String elo = band == 0 ? "?" : band == BANDS - 1 ? (band - 1) * BAND_WIDTH + "+"
+                    : (band - 1) * BAND_WIDTH + "-" + (band * BAND_WIDTH - 1);
+            for (int bin = 0; bin < BINS; bin++) {
+                long wins = counts[(band * RESULTS + WHITE_WIN) * BINS + bin];
+                long draws = counts[(band * RESULTS + DRAW) * BINS + bin];
+                long losses = counts[(band * RESULTS + BLACK_WIN) * BINS + bin];
+                long total = wins + draws + losses;
+                if (total > 0) {
+                    output.println(String.format("%s:%.2f:%d:%d:%d:%.3f", elo, (bin + 0.5) / BINS,
+                            wins, draws, losses, (wins + draws / 2.0) / total));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the rating band of a game, by the mean of the players'
+     * ratings, or 0 if either is not known.
+     */
+    private static int band(Game game) {
+        int white = parseRating(game.getTagValue("WhiteElo"));
+        int black = parseRating(game.getTagValue("BlackElo"));
+        if (white <= 0 || black <= 0) {
+            return 0;
+        }
+        return Math.min(1 + (white + black) / 2 / BAND_WIDTH, BANDS - 1);
+    }
+
+    private static int parseRating(String rating) {
+        try {
+            return Integer.parseInt(rating.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parse an evaluation such as "35", "-120 upperbound" or "mate -3"
+     * without splitting it. A mate counts as the largest evaluation.
+     * @return The evaluation, or Integer.MIN_VALUE if it is not valid.
+     */
+    static int parseEvaluation(String evaluation) {
+        int index = 0;
+        int length = evaluation.length();
+        while (index < length && evaluation.charAt(index) == ' ') {
+            index++;
+        }
+        boolean mate = evaluation.startsWith("mate", index);
+        if (mate) {
+            index += 4;
+            while (index < length && evaluation.charAt(index) == ' ') {
+                index++;
+            }
+        }
+        boolean negative = index < length && evaluation.charAt(index) == '-';
+        if (negative) {
+            index++;
+        }
+        int start = index;
+        int value = 0;
+        while (index < length && Character.isDigit(evaluation.charAt(index))) {
+            value = Math.min(value * 10 + (evaluation.charAt(index) - '0'), 1_000_000);
+            index++;
+        }
+        if (index == start) {
+            return Integer.MIN_VALUE;
+        }
+        if (mate) {
+            value = MAX_CENTIPAWNS;
+        }
+        return negative ? -value : value;
+    }
+
+    private static int clamp(int centipawns) {
+        return Math.max(-MAX_CENTIPAWNS, Math.min(MAX_CENTIPAWNS, centipawns));
+    }
+}
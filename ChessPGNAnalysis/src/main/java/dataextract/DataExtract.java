@@ -20,13 +20,34 @@ package dataextract;
  *  https://www.cs.kent.ac.uk/people/staff/djb/
  */
 
+import analyzerTools.CompressedInput;
+import analyzerTools.EngineScheduler;
+import analyzerTools.PGNIndex;
+import analyzerTools.PGNQuery;
+import analyzerTools.StockPGNAnalyzer;
+
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Main class for the process of extracting game data from the XML format
@@ -35,6 +56,11 @@ import javax.xml.parsers.ParserConfigurationException;
  * @author David J. Barnes (d.j.barnes@kent.ac.uk)
  */
 public class DataExtract {
+    // The flags honoured in a server request. The others choose the engine, which is set up when the server
+    // starts, or name files, which would be those of the server rather than the client.
+    static final Set<String> SERVER_FLAGS = new HashSet<>(Arrays.asList("--AEthreshold", "--CVthreshold",
+            "--accuracy", "--bootstrap", "--confidence", "--seed", "--curvedata", "--fullstats", "--help", "--id",
+            "--minlength", "--player", "--random", "--sample", "--groupbyplayer", "--runsize", "--stats", "--query"));
 
     private int argnum;
     // Whether to annotate the game score.
@@ -47,9 +73,93 @@ public class DataExtract {
     private boolean outputMatchingDetails;
     // Whether to output data for the win probability curve.
     private boolean outputCurveData;
+    // Selects the games to process by their tags, or null for all games.
+    private PGNQuery query;
     
     private String annotationFile = "annotated.txt";
     private final GenStats stats;
+    // Where the stats are written.
+    private final PrintStream output;
+    // Whether running on behalf of a client of the server, which must not exit and may only use SERVER_FLAGS.
+    private final boolean serverMode;
+
+    private FileWriter gameFile;
+    private FileWriter detailsFile;
+    private FileWriter annotatedFile;
+
+    // Reads the analysis XML for every thread of the parse stage.
+    private final XMLProcessor xmlProcessor = new XMLProcessor();
+    // Worker threads for each stage of the pipeline, by stage name.
+    private final Map<String, Integer> stageThreads = new HashMap<>();
+    // Capacity of the queue in front of each stage.
+    private int queueDepth = 64;
+    // How often to report the queue depths, in milliseconds; 0 for never.
+    private long progressMillis = 0;
+    // Settings for analysing PGN games.
+    private String engineCommand;
+    private String converterCommand;
+    private int searchDepth;
+    // Time limits in milliseconds for each position and game, and the node limit for each position; 0 for none.
+    private long moveTime;
+    private long gameTime;
+    private long nodes;
+    private StockPGNAnalyzer analyzer;
+    // Whether a scheduler chooses the engines' number, Threads and Hash, with the cores and hash budget in MB
+    // it shares between them; 0 for every core and a quarter of the physical memory.
+    private boolean schedule;
+    private int cores;
+    private long hashMB;
+    // The CV from the built-in evaluator that a PGN game needs to be analysed with the engine, 0 to analyse
+    // every game, and the built-in evaluator's search depth, 0 for its default.
+    private double triageCV;
+    private int builtinDepth;
+    // The search depth of the first tier of analysis, 0 for a single tier at full depth, and how close
+    // to the CV and AE thresholds a first-tier result must be for the game to be analysed at full depth.
+    private int shallowDepth;
+    private double CVBand = -1;
+    private double AEBand = -1;
+    // The number of bootstrap resamples for confidence intervals, 0 for none, their seed and coverage.
+    private int resamples;
+    private long seed;
+    private double confidence = 0.95;
+    // The results log to which the stats are appended, and the one to be read instead of analysis files; null for none.
+    private String resultsLogFile;
+    private String readResultsFile;
+    private ResultsLog resultsLog;
+    // The file to which stats and move scores are exported as columns, and its row group size; null for none.
+    private String exportFile;
+    private int rowGroupSize = ColumnarExport.DEFAULT_ROW_GROUP_SIZE;
+    private ColumnarExport export;
+    // Whether to output the stats grouped by player, the most records sorted in memory by each thread, and
+    // where to write the sorted runs; null for the default temporary directory.
+    private boolean groupByPlayer;
+    private int runSize = PlayerGrouper.DEFAULT_RUN_SIZE;
+    private String tempDirectory;
+    private PlayerGrouper grouper;
+    // The number of best ranked stats to output, 0 for all, and whether they are ranked by AE rather than CV.
+    private int top;
+    private boolean rankByAE;
+    // The best ranked stats found by each thread.
+    private final List<TopK<PlayerStats>> topParts = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<TopK<PlayerStats>> topHeap = ThreadLocal.withInitial(() -> {
+        TopK<PlayerStats> heap = new TopK<>(top);
+        topParts.add(heap);
+        return heap;
+    });
+    // The directory watched for new files, null for none, and how long a file must be unchanged to be complete.
+    private String watchDirectory;
+    private long settleMillis = DirectoryWatcher.DEFAULT_SETTLE_MILLIS;
+    // The growing PGN file followed in tail mode, null for none.
+    private String tailFile;
+    // The input files, whose positions identify them in references to games.
+    private List<String> inputFiles = Collections.emptyList();
+    // The curve data counted by each thread, merged once every game has been counted.
+    private final List<CurveData> curveParts = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<CurveData> curveData = ThreadLocal.withInitial(() -> {
+        CurveData part = new CurveData();
+        curveParts.add(part);
+        return part;
+    });
 
     /**
      * Program starting point.
@@ -57,10 +167,32 @@ public class DataExtract {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
-        DataExtract extractor = new DataExtract();
+        if (args.length > 0 && args[0].equals("--server")) {
+            DataExtractServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--client")) {
+            DataExtractClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            CorpusGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--throughput")) {
+            ThroughputHarness.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        DataExtract extractor = new DataExtract(System.out, false);
         if (extractor.processFlags(args)) {
             if (extractor.getArgnum() < args.length) {
                 extractor.processFiles(args);
+            } else if (extractor.tailFile != null) {
+                extractor.tail();
+            } else if (extractor.watchDirectory != null) {
+                extractor.watch();
+            } else if (extractor.readResultsFile != null) {
+                extractor.showStoredResults();
             } else {
                 System.err.println("Missing analysis files.");
                 extractor.usage();
@@ -72,8 +204,13 @@ public class DataExtract {
 
     /**
      * Create an extractor.
+     *
+     * @param output Where to write the stats.
+     * @param serverMode Whether running on behalf of a client of the server.
      */
-    private DataExtract() {
+    DataExtract(PrintStream output, boolean serverMode) {
+        this.output = output;
+        this.serverMode = serverMode;
         argnum = 0;
         showStats = false;
         saveMatching = false;
@@ -90,10 +227,17 @@ public class DataExtract {
      * @param args Command-line arguments containing any flag settings.
      * @return true if everything was ok, false otherwise.
      */
-    private boolean processFlags(String[] args) {
+    boolean processFlags(String[] args) {
         boolean ok = true;
         while (argnum < args.length && args[argnum].startsWith("-")) {
             final String arg = args[argnum];
+            if (serverMode && !SERVER_FLAGS.contains(arg)) {
+                // Written to the output, which is all that reaches the client.
+                output.println("Not available in a server request: " + arg);
+                argnum = args.length;
+                ok = false;
+                break;
+            }
             switch (args[argnum]) {
                 case "--AEthreshold":
                     argnum++;
@@ -119,6 +263,16 @@ public class DataExtract {
                     argnum++;
                     stats.setShowAccuracy(true);
                     break;
+                case "--aeband":
+                    argnum++;
+                    if (argnum < args.length) {
+                        AEBand = Double.parseDouble(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing band after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--annotate":
                     argnum++;
                     if(argnum < args.length) {
@@ -135,19 +289,121 @@ public class DataExtract {
                     argnum++;
                     appendToMatching = true;
                     break;
+                case "--bootstrap":
+                    argnum++;
+                    if (argnum < args.length) {
+                        resamples = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing number of resamples after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--confidence":
+                    argnum++;
+                    if (argnum < args.length) {
+                        confidence = Double.parseDouble(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing confidence after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--builtindepth":
+                    argnum++;
+                    if (argnum < args.length) {
+                        builtinDepth = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing search depth after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--by":
+                    argnum++;
+                    if (argnum < args.length && (args[argnum].equals("cv") || args[argnum].equals("ae"))) {
+                        rankByAE = args[argnum].equals("ae");
+                        argnum++;
+                    } else {
+                        System.err.println("Missing cv or ae after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--cores":
+                    argnum++;
+                    if (argnum < args.length) {
+                        cores = Integer.parseInt(args[argnum]);
+                        schedule = true;
+                        argnum++;
+                    } else {
+                        System.err.println("Missing number after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--curvedata":
                     argnum++;
                     outputCurveData = true;
                     break;
+                case "--cvband":
+                    argnum++;
+                    if (argnum < args.length) {
+                        CVBand = Double.parseDouble(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing band after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--depth":
+                    argnum++;
+                    if (argnum < args.length) {
+                        searchDepth = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing search depth after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--details":
                     argnum++;
                     outputMatchingDetails = true;
                     break;
+                case "--engine":
+                    argnum++;
+                    if (argnum < args.length) {
+                        engineCommand = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing engine command after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--export":
+                    argnum++;
+                    if (argnum < args.length) {
+                        exportFile = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing filename after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--fullstats":
                     argnum++;
                     stats.setFull(true);
                     showStats = true;
                     break;
+                case "--hash":
+                    argnum++;
+                    if (argnum < args.length) {
+                        hashMB = Long.parseLong(args[argnum]);
+                        schedule = true;
+                        argnum++;
+                    } else {
+                        System.err.println("Missing size after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--hashfile":
                     argnum++;
                     if (argnum < args.length) {
@@ -158,10 +414,28 @@ public class DataExtract {
                         ok = false;
                     }
                     break;
+                case "--gametime":
+                    argnum++;
+                    if (argnum < args.length) {
+                        gameTime = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing time after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--groupbyplayer":
+                    argnum++;
+                    groupByPlayer = true;
+                    break;
                 case "--help":
                     argnum++;
                     usage();
-                    System.exit(0);
+                    if (serverMode) {
+                        ok = false;
+                    } else {
+                        System.exit(0);
+                    }
                     break;
                 case "--id":
                     argnum++;
@@ -197,6 +471,36 @@ public class DataExtract {
                         ok = false;
                     }
                     break;
+                case "--movetime":
+                    argnum++;
+                    if (argnum < args.length) {
+                        moveTime = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing time after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--nodes":
+                    argnum++;
+                    if (argnum < args.length) {
+                        nodes = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing node count after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--pgnextract":
+                    argnum++;
+                    if (argnum < args.length) {
+                        converterCommand = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing pgn-extract command after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--player":
                     argnum++;
                     if (argnum < args.length) {
@@ -207,6 +511,41 @@ public class DataExtract {
                         ok = false;
                     }
                     break;
+                case "--progress":
+                    argnum++;
+                    if (argnum < args.length) {
+                        progressMillis = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing interval after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--query":
+                    argnum++;
+                    if (argnum < args.length) {
+                        try {
+                            query = PGNQuery.parse(args[argnum]);
+                        } catch (IllegalArgumentException ex) {
+                            System.err.println(ex.getMessage());
+                            ok = false;
+                        }
+                        argnum++;
+                    } else {
+                        System.err.println("Missing query after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--queuedepth":
+                    argnum++;
+                    if (argnum < args.length) {
+                        queueDepth = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing queue depth after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--random":
                     argnum++;
                     if (argnum < args.length) {
@@ -217,10 +556,154 @@ public class DataExtract {
                         ok = false;
                     }
                     break;
+                case "--readresults":
+                    argnum++;
+                    if (argnum < args.length) {
+                        readResultsFile = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing filename after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--resultslog":
+                    argnum++;
+                    if (argnum < args.length) {
+                        resultsLogFile = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing filename after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--rowgroup":
+                    argnum++;
+                    if (argnum < args.length) {
+                        rowGroupSize = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing row count after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--runsize":
+                    argnum++;
+                    if (argnum < args.length) {
+                        runSize = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing run size after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--sample":
+                    argnum++;
+                    if (argnum < args.length) {
+                        stats.setSampleSize(Integer.parseInt(args[argnum]));
+                        argnum++;
+                    } else {
+                        System.err.println("Missing sample size after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--schedule":
+                    argnum++;
+                    schedule = true;
+                    break;
+                case "--seed":
+                    argnum++;
+                    if (argnum < args.length) {
+                        seed = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing seed after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--shallowdepth":
+                    argnum++;
+                    if (argnum < args.length) {
+                        shallowDepth = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing search depth after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--stage":
+                    argnum++;
+                    if (argnum + 1 < args.length) {
+                        stageThreads.put(args[argnum], Integer.parseInt(args[argnum + 1]));
+                        argnum += 2;
+                    } else {
+                        System.err.println("Missing stage name and threads after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--top":
+                    argnum++;
+                    if (argnum < args.length) {
+                        top = Integer.parseInt(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing number of games after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--tail":
+                    argnum++;
+                    if (argnum < args.length) {
+                        tailFile = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing filename after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--triage":
+                    argnum++;
+                    if (argnum < args.length) {
+                        triageCV = Double.parseDouble(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing CV after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--tmpdir":
+                    argnum++;
+                    if (argnum < args.length) {
+                        tempDirectory = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing directory after: " + arg);
+                        ok = false;
+                    }
+                    break;
+                case "--settle":
+                    argnum++;
+                    if (argnum < args.length) {
+                        settleMillis = Long.parseLong(args[argnum]);
+                        argnum++;
+                    } else {
+                        System.err.println("Missing time after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 case "--stats":
                     argnum++;
                     showStats = true;
                     break;
+                case "--watch":
+                    argnum++;
+                    if (argnum < args.length) {
+                        watchDirectory = args[argnum];
+                        argnum++;
+                    } else {
+                        System.err.println("Missing directory after: " + arg);
+                        ok = false;
+                    }
+                    break;
                 default:
                     argnum++;
                     System.err.println("Unrecognised argument: " + arg);
@@ -228,104 +711,782 @@ public class DataExtract {
                     break;
             }
         }
+        if (resamples > 0) {
+            stats.setBootstrap(new Bootstrap(resamples, seed, confidence));
+        }
+        stats.setSeed(seed);
+        if (shallowDepth > 0 && stats.getCVThresholdPercentage() == 0 && !stats.isAEThresholdSet()) {
+            System.err.println("--shallowdepth needs --CVthreshold or --AEthreshold; every game is analysed at full depth.");
+        }
         return ok;
     }
 
     /**
-     * Process any files containing analysed games.
+     * Process any files containing analysed games, or PGN games to be
+     * analysed. Files pass through the stages read, parse, analyse,
+     * score and write, which are connected by bounded queues.
      *
      * @param args Command-line arguments containing file names.
      */
-    private void processFiles(String[] args) {
-        XMLProcessor processor = new XMLProcessor();
-        if(!annotate) {
-            // Show the configuration.
-            System.out.println("# " + stats.getConfiguration());
-            System.out.println("# Date:Player:W/B:BD:EM:Depth:AE:sd:CV:Res:Hash:");
-        }
+    void processFiles(String[] args) {
+        showConfiguration();
         try {
-            FileWriter gameFile = null;
-            FileWriter detailsFile = null;
-            FileWriter annotatedFile = null;
-            
-            if (annotate) {
-                annotatedFile = new FileWriter(annotationFile, appendToMatching);
+            openOutputFiles();
+            inputFiles = Arrays.asList(args).subList(argnum, args.length);
+            createPipeline().run(inputFiles.iterator(), progressMillis);
+            argnum = args.length;
+            writeTop();
+            writeGroups();
+            writeSample();
+            writeCurveData();
+            closeOutputFiles();
+        } catch (IOException ex) {
+            System.err.println("Fatal IO error.");
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted.");
+        } catch (ExecutionException ex) {
+            System.err.println("Fatal error: " + ex.getCause());
+        } finally {
+            if (analyzer != null) {
+                analyzer.close();
             }
-            if (outputMatchingDetails) {
-                detailsFile = new FileWriter("details.txt", appendToMatching);
+        }
+    }
+
+    /**
+     * Watch a directory, passing each new analysis or PGN file through
+     * the pipeline once it has been written, until interrupted. Each
+     * file is recorded in the watcher's ledger once it has been passed
+     * through without error, so a file that failed is tried again by
+     * the next watcher. The
+     * stats are output as each file is processed, and the output files
+     * and any results log are appended to as each game is written.
+     */
+    private void watch() {
+        if (top > 0 || groupByPlayer || stats.getSampleSize() > 0 || outputCurveData) {
+            System.err.println("--top, --groupbyplayer, --sample and --curvedata cannot be used with --watch.");
+            return;
+        }
+        showConfiguration();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(Paths.get(watchDirectory), settleMillis)) {
+            openOutputFiles();
+            // On shutdown, stop watching and wait for the file already taken to be finished.
+            Thread main = Thread.currentThread();
+            Thread shutdown = new Thread(() -> {
+                try {
+                    watcher.stop();
+                    main.join();
+                } catch (IOException ex) {
+                    System.err.println("Error closing watcher: " + ex.getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdown);
+            while (watcher.hasNext()) {
+                String file = watcher.next();
+                // A file is recorded as processed only once every one of its games has been written.
+                long skipped = createPipeline().run(Collections.singletonList(file).iterator(), progressMillis);
+                if (skipped == 0) {
+                    watcher.markProcessed(file);
+                } else {
+                    System.err.println("Not recording " + file + " as processed: " + skipped
+                            + " item(s) failed. It will be processed again when the directory is next watched.");
+                }
             }
-            if (saveMatching) {
-                gameFile = new FileWriter("matching.pgn", appendToMatching);
+            closeOutputFiles();
+        } catch (IOException ex) {
+            System.err.println("Fatal IO error: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted.");
+        } catch (ExecutionException ex) {
+            System.err.println("Fatal error: " + ex.getCause());
+        } finally {
+            if (analyzer != null) {
+                analyzer.close();
             }
+        }
+    }
 
-            List<Game> gameList = null;
-            while (argnum < args.length) {
+    /**
+     * Follow a PGN file that grows as games are played, outputting the
+     * running stats of the matching players each time their games grow,
+     * until interrupted.
+     */
+    private void tail() {
+        if (annotate || outputCurveData) {
+            System.err.println("--annotate and --curvedata cannot be used with --tail.");
+            return;
+        }
+        showConfiguration();
+        StockPGNAnalyzer analyzer = getAnalyzer();
+        try (PGNTail tail = new PGNTail(Paths.get(tailFile), analyzer, getStageThreads("analyse"), stats, output)) {
+            // On shutdown, stop following and wait for the games being analysed.
+            Thread main = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
-                    processor.processXMLFile(args[argnum]);
-                    gameList = processor.getGameList();
-                    // Show the stats and save the matching games.
-                    for (Game game : gameList) {
-                        if (annotate) {
-                            game.annotate(annotatedFile);
-                            annotatedFile.write('\n');
-                        }
-                        else if(outputCurveData) {
-                            /*game.outputCurveData();
-                            if(saveMatching && stats.hashCodeMatches(game.getTagValue("HashCode"))) {
-                                gameFile.write(game.toString());
-                                gameFile.write("\n");                                
-                            }*/
-                        } else {
-                            /*List<PlayerStats> ps = stats.getStats(game);
-                            for (PlayerStats s : ps) {
-                                System.out.println(s);
-                                if (outputMatchingDetails) {
-                                    detailsFile.write(game.getAnalysis().toString());
-                                    detailsFile.write("\n");
-                                }
-                                if (saveMatching) {
-                                    gameFile.write(game.toString());
-                                    gameFile.write("\n");
-                                }
-                            }*/
-                        }
-                    }
-                } catch (FileNotFoundException ex) {
-                    System.err.println("File not found: " + args[argnum]);
-                    System.exit(1);
+                    tail.stop();
+                    main.join();
                 } catch (IOException ex) {
-                    System.err.println("Error processing: " + args[argnum]);
+                    System.err.println("Error closing " + tailFile + ": " + ex.getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            tail.follow();
+        } catch (IOException ex) {
+            System.err.println("Fatal IO error: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted.");
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    /**
+     * Create the pipeline through which files are passed.
+     *
+     * @return The pipeline.
+     */
+    private StagedPipeline createPipeline() {
+        return new StagedPipeline(queueDepth)
+                .addStage("read", getStageThreads("read"), this::readFile)
+                .addStage("parse", getStageThreads("parse"), this::parseFile)
+                .addStage("analyse", getStageThreads("analyse"), this::analyseGame)
+                .addStage("score", getStageThreads("score"), this::scoreGame)
+                // The output files are not shared between threads.
+                .addStage("write", 1,
+                        (ScoredGame scored, Consumer<Object> next) -> {
+                            writeGame(scored.game, scored.stats);
+                            if (watchDirectory != null) {
+                                flushOutputFiles();
+                            }
+                        });
+    }
+
+    /**
+     * The read stage: read the whole of a file, decompressing it if it
+     * is gzip-compressed. With a query, only the matching games of a
+     * plain PGN file are read, using the file's index.
+     *
+     * @param filename The file.
+     * @param next Receives the file's contents.
+     * @throws IOException on error reading the file.
+     */
+    private void readFile(String filename, Consumer<InputFile> next) throws IOException {
+        Path path = Paths.get(filename);
+        try {
+            if (query != null && isPlainPGN(path)) {
+                PGNIndex index = PGNIndex.forFile(path);
+                next.accept(new InputFile(filename, inputFiles.indexOf(filename),
+                        index.readBytes(path, index.find(query))));
+            } else {
+                next.accept(new InputFile(filename, inputFiles.indexOf(filename), CompressedInput.readAllBytes(path)));
+            }
+        } catch (NoSuchFileException ex) {
+            System.err.println("File not found: " + filename);
+            // A watched file may have been removed again; carry on watching.
+            if (watchDirectory == null) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * The parse stage: extract the games from a file. Games from
+     * analysis XML are passed on as Games; those from PGN as the
+     * text of each game, to be analysed. Each game records its
+     * position in the file.
+     *
+     * @param file The file.
+     * @param next Receives the games.
+     */
+    private void parseFile(InputFile file, Consumer<Object> next) {
+        if (isXML(file.content)) {
+            // Pass on each game as soon as it has been read.
+            int[] index = {0};
+            xmlProcessor.readGames(new ByteArrayInputStream(file.content), file.name, game -> {
+                if (isSelected(game)) {
+                    game.setSource(file.index, index[0]);
+                    next.accept(game);
+                }
+                index[0]++;
+            });
+        } else {
+            List<String> pgns = splitGames(file);
+            for (int index = 0; index < pgns.size(); index++) {
+                if (isSelected(pgns.get(index))) {
+                    next.accept(new PGNGame(file.index, index, pgns.get(index)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Split a PGN file into the text of each game.
+     *
+     * @param file The file.
+     * @return The games.
+     */
+    private static List<String> splitGames(InputFile file) {
+        return StockPGNAnalyzer.splitGames(Arrays.asList(
+                new String(file.content, StandardCharsets.UTF_8).split("\r?\n")));
+    }
+
+    /**
+     * Does an analysed game match the query, if any?
+     *
+     * @param game The game.
+     * @return true if the game should be processed.
+     */
+    boolean isSelected(Game game) {
+        return query == null || query.matches(game::getTagValue);
+    }
+
+    /**
+     * Does a PGN game match the query, if any?
+     *
+     * @param pgn The text of the game.
+     * @return true if the game should be processed.
+     */
+    boolean isSelected(String pgn) {
+        if (query == null) {
+            return true;
+        }
+        List<PGNTag> tags = StockPGNAnalyzer.getTags(pgn);
+        return query.matches(name -> {
+            for (PGNTag tag : tags) {
+                if (tag.getName().equals(name)) {
+                    return tag.getValue();
                 }
-                // The game list is shared between files so it must be cleared
-                // each time.
-                if(gameList != null) {
-                    gameList.clear();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Is a file uncompressed PGN, which can be indexed?
+     *
+     * @param path The file.
+     * @return true for uncompressed PGN.
+     * @throws IOException on error reading the file.
+     */
+    private static boolean isPlainPGN(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] start = in.readNBytes(256);
+            boolean compressed = start.length >= 2 && (start[0] & 0xff) == 0x1f && (start[1] & 0xff) == 0x8b;
+            return !compressed && !isXML(start);
+        }
+    }
+
+    /**
+     * The analyse stage: analyse PGN games with the engines. Games
+     * that have already been analysed are passed straight on.
+     *
+     * @param item A Game or a PGNGame.
+     * @param next Receives the analysed game.
+     * @throws IOException if the game cannot be analysed.
+     */
+    private void analyseGame(Object item, Consumer<Game> next) throws IOException {
+        if (item instanceof Game) {
+            next.accept((Game) item);
+        } else {
+            PGNGame pgn = (PGNGame) item;
+            if (!getAnalyzer().isSuspicious(pgn.text)) {
+                // Passed over by triage.
+                return;
+            }
+            Game game = getAnalyzer().analyzeGameDetails(pgn.text);
+            game.setSource(pgn.file, pgn.index);
+            next.accept(game);
+        }
+    }
+
+    /**
+     * The score stage: find the stats of the game's matching players or,
+     * when outputting curve data, count the game's evaluations. When
+     * only the best ranked stats are wanted, they are ranked without
+     * confidence intervals and only the best are kept.
+     *
+     * @param game The game.
+     * @param next Receives the game and its stats.
+     * @throws IOException on failure to group the stats by player.
+     */
+    private void scoreGame(Game game, Consumer<ScoredGame> next) throws IOException {
+        if (outputCurveData) {
+            curveData.get().add(game);
+            // The game itself is only needed if it is to be saved.
+            if (saveMatching && stats.hashCodeMatches(game.getTagValue("HashCode"))) {
+                next.accept(new ScoredGame(game, Collections.emptyList()));
+            }
+        } else if (top > 0) {
+            // The intervals of the best ranked stats are added by writeTop.
+            TopK<PlayerStats> heap = topHeap.get();
+            for (PlayerStats s : stats.getMatchingStats(game)) {
+                heap.offer(rank(s), reference(game.getSourceFile(), game.getSourceIndex(), s.isWhite()), s);
+            }
+        } else {
+            List<PlayerStats> ps = getGameStats(game);
+            if (grouper != null) {
+                // Sorted runs are written by the score threads in parallel.
+                for (PlayerStats s : ps) {
+                    grouper.add(s);
                 }
-                argnum++;
             }
-            if (annotatedFile != null) {
-                annotatedFile.close();
+            next.accept(new ScoredGame(game, ps));
+        }
+    }
+
+    /**
+     * Return the analyzer used for PGN games, creating it on first use.
+     *
+     * @return The analyzer.
+     */
+    private synchronized StockPGNAnalyzer getAnalyzer() {
+        if (analyzer == null) {
+            analyzer = new StockPGNAnalyzer();
+            if (engineCommand != null) {
+                analyzer.setEngineCommand(engineCommand);
+            }
+            if (converterCommand != null) {
+                analyzer.setConverterCommand(converterCommand);
+            }
+            if (searchDepth > 0) {
+                analyzer.setSearchDepth(searchDepth);
+            }
+            analyzer.setMoveTime(moveTime);
+            analyzer.setNodes(nodes);
+            analyzer.setGameTime(gameTime);
+            analyzer.setTriageCV(triageCV);
+            analyzer.setShallowDepth(shallowDepth);
+            if (CVBand >= 0) {
+                analyzer.setCVBand(CVBand);
+            }
+            if (AEBand >= 0) {
+                analyzer.setAEBand(AEBand);
+            }
+            analyzer.setStats(stats);
+            if (builtinDepth > 0) {
+                analyzer.setBuiltinDepth(builtinDepth);
+            }
+            analyzer.setThreads(getStageThreads("analyse"));
+            if (schedule) {
+                analyzer.setScheduler(getScheduler());
+            }
+        }
+        return analyzer;
+    }
+
+    /**
+     * Return the scheduler of the engines' resources.
+     *
+     * @return The scheduler.
+     */
+    private EngineScheduler getScheduler() {
+        return new EngineScheduler(getCores(), hashMB > 0 ? hashMB : EngineScheduler.getDefaultHashMB());
+    }
+
+    /**
+     * Return the number of cores to be used by the engines.
+     *
+     * @return The number of cores.
+     */
+    private int getCores() {
+        return cores > 0 ? cores : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Return the number of threads for a stage of the pipeline. When
+     * the engines are scheduled, games are analysed by a thread per
+     * core unless told otherwise, so that a batch can use a
+     * single-threaded engine on each.
+     *
+     * @param stage The name of the stage.
+     * @return The number of threads.
+     */
+    private int getStageThreads(String stage) {
+        if (schedule && stage.equals("analyse") && !stageThreads.containsKey(stage)) {
+            return getCores();
+        }
+        return stageThreads.getOrDefault(stage, 1);
+    }
+
+    /**
+     * Does the content look like analysis XML rather than PGN?
+     *
+     * @param content The file contents.
+     * @return true for XML.
+     */
+    static boolean isXML(byte[] content) {
+        for (byte b : content) {
+            if (!Character.isWhitespace(b)) {
+                return b == '<';
             }
-            if (gameFile != null) {
-                gameFile.close();
+        }
+        return false;
+    }
+
+    /**
+     * Show the configuration and the format of the stats, unless
+     * annotating.
+     */
+    void showConfiguration() {
+        if(!annotate) {
+            output.println("# " + stats.getConfiguration());
+            if (!outputCurveData) {
+                output.println("# Date:Player:W/B:BD:EM:Depth:AE:sd:CV:Res:Hash:"
+                        + (stats.getBootstrap() != null ? "AElo:AEhi:CVlo:CVhi:" : ""));
             }
-            if (detailsFile != null) {
-                detailsFile.close();
+        }
+    }
+
+    /**
+     * Open the files for annotated, matching and detailed output, as required.
+     *
+     * @throws IOException on failure to open a file.
+     */
+    void openOutputFiles() throws IOException {
+        if (annotate) {
+            annotatedFile = new FileWriter(annotationFile, appendToMatching);
+        }
+        if (outputMatchingDetails) {
+            detailsFile = new FileWriter("details.txt", appendToMatching);
+        }
+        if (saveMatching) {
+            gameFile = new FileWriter("matching.pgn", appendToMatching);
+        }
+        if (resultsLogFile != null) {
+            resultsLog = ResultsLog.open(Paths.get(resultsLogFile));
+        }
+        if (exportFile != null) {
+            export = new ColumnarExport(Paths.get(exportFile), rowGroupSize);
+        }
+        if (groupByPlayer && !annotate && !outputCurveData) {
+            grouper = new PlayerGrouper(Paths.get(tempDirectory != null ? tempDirectory
+                    : System.getProperty("java.io.tmpdir")), runSize);
+        }
+    }
+
+    /**
+     * Flush the output and any files opened by openOutputFiles, so that
+     * what has been written so far can be read.
+     *
+     * @throws IOException on failure to flush a file.
+     */
+    private void flushOutputFiles() throws IOException {
+        output.flush();
+        if (annotatedFile != null) {
+            annotatedFile.flush();
+        }
+        if (gameFile != null) {
+            gameFile.flush();
+        }
+        if (detailsFile != null) {
+            detailsFile.flush();
+        }
+    }
+
+    /**
+     * Close any files opened by openOutputFiles.
+     *
+     * @throws IOException on failure to close a file.
+     */
+    void closeOutputFiles() throws IOException {
+        if (annotatedFile != null) {
+            annotatedFile.close();
+        }
+        if (gameFile != null) {
+            gameFile.close();
+        }
+        if (detailsFile != null) {
+            detailsFile.close();
+        }
+        if (resultsLog != null) {
+            resultsLog.close();
+            resultsLog = null;
+        }
+        if (export != null) {
+            export.close();
+            export = null;
+        }
+    }
+
+    /**
+     * Show the current results stored in a results log, rather than
+     * those of analysis files, restricted to any players given with
+     * --player and to games of at least the minimum length.
+     */
+    private void showStoredResults() {
+        showConfiguration();
+        try (ResultsLog log = ResultsLog.open(Paths.get(readResultsFile))) {
+            List<String> players = stats.getPlayers();
+            if (!players.isEmpty() && players.stream().noneMatch(GenStats::isPlayerPattern)) {
+                // Only the named players' records need be read.
+                for (String player : players) {
+                    for (ResultsLog.Result result : log.findPlayer(player)) {
+                        if (result.getMoveCount() >= stats.getMinLength()) {
+                            output.println(result);
+                        }
+                    }
+                }
+            } else {
+                log.forEach(result -> {
+                    if ((players.isEmpty() || stats.playerMatches(result.getPlayerName(), result.isWhite()))
+                            && result.getMoveCount() >= stats.getMinLength()) {
+                        output.println(result);
+                    }
+                });
             }
-        } catch (ParserConfigurationException ex) {
-            System.err.println("Parser configuration: " + args[argnum]);
         } catch (IOException ex) {
-            System.err.println("Fatal IO error.");
+            System.err.println("Error reading results log: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Show the stats and save the matching games.
+     *
+     * @param gameList The games to process.
+     * @throws IOException on output error.
+     */
+    void processGames(List<Game> gameList) throws IOException {
+        if (top > 0 && !annotate && !outputCurveData) {
+            TopK<PlayerStats> heap = new TopK<>(top);
+            for (int index = 0; index < gameList.size(); index++) {
+                Game game = gameList.get(index);
+                if (isSelected(game)) {
+                    for (PlayerStats s : stats.getMatchingStats(game)) {
+                        heap.offer(rank(s), reference(0, index, s.isWhite()), s);
+                    }
+                }
+            }
+            for (PlayerStats s : heap.getValues()) {
+                writeRanked(s);
+            }
+            return;
+        }
+        for (Game game : gameList) {
+            if (isSelected(game)) {
+                if (outputCurveData) {
+                    curveData.get().add(game);
+                }
+                List<PlayerStats> ps = getGameStats(game);
+                if (grouper != null) {
+                    for (PlayerStats s : ps) {
+                        grouper.add(s);
+                    }
+                }
+                writeGame(game, ps);
+            }
+        }
+    }
+
+    /**
+     * Return the rank of some stats: the CV, or the AE, which is closer
+     * to zero for more accurate play.
+     *
+     * @param s The stats.
+     * @return The rank, higher for more suspicious play.
+     */
+    private double rank(PlayerStats s) {
+        return rankByAE ? s.getAE() : s.getCV();
+    }
+
+    /**
+     * Return a reference to a player in a game of an input file.
+     *
+     * @param file The number of the file.
+     * @param index The position of the game in the file.
+     * @param white Whether the player is white.
+     * @return The reference.
+     */
+    private static long reference(int file, int index, boolean white) {
+        return ((long) file << 33) | ((long) index << 1) | (white ? 0 : 1);
+    }
+
+    /**
+     * Write the best ranked stats found by all threads, if required.
+     *
+     * @throws IOException on output error.
+     */
+    void writeTop() throws IOException {
+        if (top == 0 || annotate || outputCurveData) {
+            return;
+        }
+        TopK<PlayerStats> merged = new TopK<>(top);
+        synchronized (topParts) {
+            for (TopK<PlayerStats> heap : topParts) {
+                merged.merge(heap);
+            }
+        }
+        for (PlayerStats s : merged.getValues()) {
+            writeRanked(s);
+        }
+    }
+
+    /**
+     * Write one of the best ranked stats, with any confidence intervals.
+     *
+     * @param s The stats, as ranked.
+     * @throws IOException on output error.
+     */
+    private void writeRanked(PlayerStats s) throws IOException {
+        stats.addInterval(s);
+        if (grouper != null) {
+            grouper.add(s);
+        }
+        writeGame(s.getGame(), Collections.singletonList(s));
+    }
+
+    /**
+     * Write the stats collected by the grouper, grouped by player, if
+     * required.
+     *
+     * @throws IOException on failure to read the sorted runs.
+     */
+    void writeGroups() throws IOException {
+        if (grouper != null) {
+            grouper.finish(output::println);
+            grouper = null;
+        }
+    }
+
+    /**
+     * Write the stats of the sample of players that did not match the
+     * score settings, if required. Called after writeGroups.
+     *
+     * @throws IOException on output error.
+     */
+    void writeSample() throws IOException {
+        if (stats.getSampleSize() > 0 && !annotate && !outputCurveData) {
+            output.println("# Sample of " + stats.getSampleSize());
+            // Any groups have been written, so writeGame outputs the stats itself.
+            for (PlayerStats s : stats.getSample()) {
+                writeGame(s.getGame(), Collections.singletonList(s));
+            }
+        }
+    }
+
+    /**
+     * Write the curve data counted by all threads, if required.
+     */
+    void writeCurveData() {
+        if (outputCurveData) {
+            CurveData.merge(curveParts).write(output);
+        }
+    }
+
+    /**
+     * Return the stats of the players in a game that match the
+     * search criteria.
+     *
+     * @param game The game.
+     * @return The matching stats, or none if annotating or
+     *         outputting curve data.
+     */
+    private List<PlayerStats> getGameStats(Game game) {
+        if (annotate || outputCurveData) {
+            return Collections.emptyList();
+        }
+        return stats.getStats(game);
+    }
+
+    /**
+     * Write the output for a single game.
+     *
+     * @param game The game.
+     * @param ps The stats of the game's matching players.
+     * @throws IOException on output error.
+     */
+    private void writeGame(Game game, List<PlayerStats> ps) throws IOException {
+        if (annotate) {
+            game.annotate(annotatedFile);
+            annotatedFile.write('\n');
+        }
+        else if(outputCurveData) {
+            // The game's evaluations were counted when it was scored.
+            if(saveMatching && stats.hashCodeMatches(game.getTagValue("HashCode"))) {
+                gameFile.write(game.toString());
+                gameFile.write("\n");
+            }
+        } else {
+            if (export != null && !ps.isEmpty()) {
+                export.add(game, ps);
+            }
+            for (PlayerStats s : ps) {
+                // When grouping by player, the stats are output by writeGroups.
+                if (grouper == null) {
+                    output.println(s);
+                }
+                if (resultsLog != null) {
+                    resultsLog.append(s);
+                }
+                if (outputMatchingDetails) {
+                    detailsFile.write(game.getAnalysis().toString());
+                    detailsFile.write("\n");
+                }
+                if (saveMatching) {
+                    gameFile.write(game.toString());
+                    gameFile.write("\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * The name and contents of an input file.
+     */
+    private static final class InputFile {
+        private final String name;
+        // The position of the file among the input files.
+        private final int index;
+        private final byte[] content;
+
+        InputFile(String name, int index, byte[] content) {
+            this.name = name;
+            this.index = index;
+            this.content = content;
+        }
+    }
+
+    /**
+     * The text of a PGN game and where it was read from.
+     */
+    private static final class PGNGame {
+        private final int file;
+        private final int index;
+        private final String text;
+
+        PGNGame(int file, int index, String text) {
+            this.file = file;
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A game and the stats of its matching players.
+     */
+    private static final class ScoredGame {
+        private final Game game;
+        private final List<PlayerStats> stats;
+
+        ScoredGame(Game game, List<PlayerStats> stats) {
+            this.game = game;
+            this.stats = stats;
         }
     }
     
     /**
      * Print a usage message to standard output.
      */
-    private void usage() {
-        System.out.println("Usage: "
+    void usage() {
+        output.println("Usage: "
                 + "[--AEthreshold D] "
                 + "[--CVthreshold D] "
+                + "[--bootstrap N] "
+                + "[--confidence C] "
+                + "[--seed S] "
+                + "[--curvedata] "
                 + "[--fullstats] "
                 + "[--help] "
                 + "[--id id-string] "
@@ -334,8 +1495,43 @@ public class DataExtract {
                 + "[--minlength N] "
                 + "[--player name] "
                 + "[--random probability] "
+                + "[--sample N] "
+                + "[--groupbyplayer] "
+                + "[--top K] "
+                + "[--by cv|ae] "
+                + "[--runsize N] "
+                + "[--tmpdir dir] "
                 + "[--stats] "
+                + "[--engine command] "
+                + "[--pgnextract command] "
+                + "[--depth D] "
+                + "[--shallowdepth D] "
+                + "[--cvband F] "
+                + "[--aeband F] "
+                + "[--movetime millis] "
+                + "[--nodes N] "
+                + "[--gametime millis] "
+                + "[--schedule] "
+                + "[--cores N] "
+                + "[--hash MB] "
+                + "[--triage CV] "
+                + "[--builtindepth D] "
+                + "[--stage read|parse|analyse|score threads] "
+                + "[--queuedepth N] "
+                + "[--query query] "
+                + "[--progress millis] "
+                + "[--resultslog file] "
+                + "[--readresults file] "
+                + "[--watch dir] "
+                + "[--tail file] "
+                + "[--settle millis] "
+                + "[--export file] "
+                + "[--rowgroup N] "
                 + " file ...");
+        output.println("       --server port [server-options] [flags ...]");
+        output.println("       --client [host:]port [flags ...] file ...");
+        output.println("       --generate [generator-options] file");
+        output.println("       --throughput [generator-options] [--engine command] [--depth D] [--runs N] [--dir directory] [--store file] [flags ...]");
     }
 
     /**
@@ -395,7 +1591,7 @@ public class DataExtract {
      *
      * @return The value of argnum.
      */
-    private int getArgnum() {
+    int getArgnum() {
         return argnum;
     }
 }
@@ -0,0 +1,89 @@
+package dataextract;
+
+import analyzerTools.CompressedInput;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+/**
+ * A thin client for DataExtractServer. It takes the same flags and files
+ * as DataExtract, sends them to the server and prints the server's output.
+ */
+public class DataExtractClient {
+
+    /**
+     * Send a request to the server.
+     *
+     * @param args [host:]port followed by DataExtract flags and files.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: --client [host:]port [flags ...] file ...");
+            return;
+        }
+        String address = args[0];
+        String host = null;
+        int colon = address.lastIndexOf(':');
+        if (colon >= 0) {
+            host = address.substring(0, colon);
+            address = address.substring(colon + 1);
+        }
+        int port = Integer.parseInt(address);
+
+        String[] rest = new String[args.length - 1];
+        System.arraycopy(args, 1, rest, 0, rest.length);
+        // Find where the flags end, reporting any that the server would refuse.
+        DataExtract checker = new DataExtract(System.err, true);
+        if (!checker.processFlags(rest)) {
+            new DataExtract(System.out, true).usage();
+            System.exit(1);
+        }
+        int fileStart = checker.getArgnum();
+        if (fileStart == rest.length) {
+            System.err.println("Missing analysis files.");
+            System.exit(1);
+        }
+
+        byte[][] contents = new byte[rest.length - fileStart][];
+        for (int index = fileStart; index < rest.length; index++) {
+            try {
+                contents[index - fileStart] = CompressedInput.readAllBytes(Paths.get(rest[index]));
+            } catch (IOException e) {
+                System.err.println("File not found: " + rest[index]);
+                System.exit(1);
+            }
+        }
+
+        try (Socket socket = new Socket(host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host), port);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            out.writeInt(fileStart);
+            for (int index = 0; index < fileStart; index++) {
+                out.writeUTF(rest[index]);
+            }
+            out.writeInt(rest.length - fileStart);
+            for (int index = fileStart; index < rest.length; index++) {
+                byte[] content = contents[index - fileStart];
+                out.writeUTF(rest[index]);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            out.flush();
+
+            byte[] result = new byte[in.readInt()];
+            in.readFully(result);
+            System.out.write(result);
+            System.out.flush();
+            System.exit(in.readInt());
+        } catch (IOException e) {
+            System.err.println("Error communicating with server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
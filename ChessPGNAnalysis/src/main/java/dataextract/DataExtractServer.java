@@ -0,0 +1,347 @@
+package dataextract;
+
+import analyzerTools.OpeningTrie;
+import analyzerTools.StockPGNAnalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running server that keeps the JVM, the opening book and a pool of
+ * engines warm between requests from DataExtractClient.
+ *
+ * The server listens on a TCP port on the loopback interface only. Each request
+ * carries DataExtract flags and the contents of analysis XML or PGN files; PGN
+ * games are analysed with the engine pool. The response is the text that
+ * DataExtract would have written to standard output.
+ *
+ * Only the flags in DataExtract.SERVER_FLAGS may be given, with the server or
+ * in a request: those that choose the engine are server options, and those that
+ * name files would name the server's files rather than the client's. A request
+ * with any other flag is refused.
+ *
+ * Request: int flag count, UTF flags, int file count, then for each file
+ * UTF name, int length and the bytes of the file.
+ * Response: int length and the UTF-8 bytes of the output, then an int status,
+ * 0 for success. A request with more flags or files, or more bytes of files,
+ * than the limits below is refused with status 1.
+ */
+public class DataExtractServer {
+    private static final List<String> SERVER_OPTIONS =
+            Arrays.asList("--engines", "--engine", "--pgnextract", "--depth", "--movetime", "--nodes", "--gametime", "--book");
+    // The most flags in a request.
+    private static final int MAX_FLAGS = 1 << 10;
+    // The most files in a request.
+    private static final int MAX_FILES = 1 << 16;
+    // The most bytes of files in a request.
+    private static final long MAX_REQUEST_BYTES = 1L << 30;
+    // Flags applied before those of each request.
+    private final String[] defaultFlags;
+    // Analyses PGN games with its pool of engines.
+    private final StockPGNAnalyzer analyzer;
+    // Reads the analysis XML of every request.
+    private final XMLProcessor xmlProcessor = new XMLProcessor();
+
+    /**
+     * Start the server.
+     *
+     * @param args port [--engines N] [--engine command] [--pgnextract command]
+     *             [--depth D] [--movetime millis] [--nodes N] [--gametime millis]
+     *             [--book file] [DataExtract flags ...]
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int engineCount = 1;
+        String engineCommand = null;
+        String converterCommand = null;
+        int depth = 0;
+        long moveTime = 0;
+        long nodes = 0;
+        long gameTime = 0;
+        OpeningTrie book = null;
+        int argnum = 1;
+        try {
+            // Server options come first; the remaining arguments are DataExtract flags.
+            while (argnum + 1 < args.length && SERVER_OPTIONS.contains(args[argnum])) {
+                String value = args[argnum + 1];
+                switch (args[argnum]) {
+                    case "--engines":
+                        engineCount = Integer.parseInt(value);
+                        break;
+                    case "--engine":
+                        engineCommand = value;
+                        break;
+                    case "--pgnextract":
+                        converterCommand = value;
+                        break;
+                    case "--depth":
+                        depth = Integer.parseInt(value);
+                        break;
+                    case "--movetime":
+                        moveTime = Long.parseLong(value);
+                        break;
+                    case "--nodes":
+                        nodes = Long.parseLong(value);
+                        break;
+                    case "--gametime":
+                        gameTime = Long.parseLong(value);
+                        break;
+                    case "--book":
+                        book = value.endsWith(".pgn") ? OpeningTrie.build(Paths.get(value), 40)
+                                : OpeningTrie.load(Paths.get(value));
+                        break;
+                    default:
+                        break;
+                }
+                argnum += 2;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading opening book: " + e.getMessage());
+            System.exit(1);
+        }
+
+        String[] defaultFlags = Arrays.copyOfRange(args, argnum, args.length);
+        if (!new DataExtract(System.err, true).processFlags(defaultFlags)) {
+            System.exit(1);
+        }
+
+        StockPGNAnalyzer analyzer = new StockPGNAnalyzer();
+        if (engineCommand != null) {
+            analyzer.setEngineCommand(engineCommand);
+        }
+        if (converterCommand != null) {
+            analyzer.setConverterCommand(converterCommand);
+        }
+        if (depth > 0) {
+            analyzer.setSearchDepth(depth);
+        }
+        analyzer.setMoveTime(moveTime);
+        analyzer.setNodes(nodes);
+        analyzer.setGameTime(gameTime);
+        analyzer.setOpeningBook(book);
+        analyzer.setThreads(engineCount);
+        try {
+            analyzer.start();
+        } catch (IOException e) {
+            System.err.println("Error starting engine: " + e.getMessage());
+            System.exit(1);
+        }
+        DataExtractServer server = new DataExtractServer(defaultFlags, analyzer);
+        try {
+            server.serve(port, engineCount * 2);
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create a server.
+     *
+     * @param defaultFlags Flags applied before those of each request.
+     * @param analyzer The analyzer of PGN games.
+     */
+    private DataExtractServer(String[] defaultFlags, StockPGNAnalyzer analyzer) {
+        this.defaultFlags = defaultFlags;
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Accept and handle requests until the process is stopped.
+     *
+     * @param port The port to listen on.
+     * @param threads The number of requests handled at once.
+     * @throws IOException if the port cannot be used.
+     */
+    private void serve(int port, int threads) throws IOException {
+        ExecutorService handlers = Executors.newFixedThreadPool(threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(analyzer::close));
+        try (ServerSocket listener = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + listener.getLocalSocketAddress());
+            while (true) {
+                Socket client = listener.accept();
+                handlers.execute(() -> handle(client));
+            }
+        }
+    }
+
+    /**
+     * Handle a single request.
+     *
+     * @param client The connection to the client.
+     */
+    private void handle(Socket client) {
+        try (Socket socket = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            String[] flags;
+            List<String> names = new ArrayList<>();
+            List<byte[]> contents = new ArrayList<>();
+            try {
+                flags = new String[readCount(in, MAX_FLAGS, "flags")];
+                for (int index = 0; index < flags.length; index++) {
+                    flags[index] = in.readUTF();
+                }
+                int fileCount = readCount(in, MAX_FILES, "files");
+                long total = 0;
+                for (int index = 0; index < fileCount; index++) {
+                    names.add(in.readUTF());
+                    int length = readCount(in, Integer.MAX_VALUE, "bytes");
+                    total += length;
+                    if (total > MAX_REQUEST_BYTES) {
+                        throw new ProtocolException("More than " + MAX_REQUEST_BYTES + " bytes of files");
+                    }
+                    byte[] content = new byte[length];
+                    in.readFully(content);
+                    contents.add(content);
+                }
+            } catch (ProtocolException e) {
+                System.err.println("Invalid request: " + e.getMessage());
+                respond(out, ("Invalid request: " + e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8), 1);
+                return;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int status;
+            try (PrintStream output = new PrintStream(buffer, true, StandardCharsets.UTF_8)) {
+                status = process(flags, names, contents, output);
+            } catch (RuntimeException e) {
+                System.err.println("Error processing request: " + e);
+                status = 1;
+            }
+            respond(out, buffer.toByteArray(), status);
+        } catch (IOException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read a count from a request, refusing one that is negative or over a limit.
+     *
+     * @param in The request.
+     * @param limit The largest count allowed.
+     * @param what What is counted, for the error message.
+     * @return The count.
+     * @throws IOException if the count cannot be read or is not allowed.
+     */
+    private static int readCount(DataInputStream in, int limit, String what) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > limit) {
+            throw new ProtocolException("Invalid number of " + what + ": " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Send the response to a request.
+     *
+     * @param out The connection to the client.
+     * @param result The output.
+     * @param status 0 for success, 1 otherwise.
+     * @throws IOException if the response cannot be sent.
+     */
+    private static void respond(DataOutputStream out, byte[] result, int status) throws IOException {
+        out.writeInt(result.length);
+        out.write(result);
+        out.writeInt(status);
+    }
+
+    /**
+     * Process the files of a request.
+     *
+     * @param flags The request's DataExtract flags.
+     * @param names The names of the files.
+     * @param contents The contents of the files.
+     * @param output Where to write the stats.
+     * @return 0 on success, 1 otherwise.
+     */
+    private int process(String[] flags, List<String> names, List<byte[]> contents, PrintStream output) {
+        String[] allFlags = new String[defaultFlags.length + flags.length];
+        System.arraycopy(defaultFlags, 0, allFlags, 0, defaultFlags.length);
+        System.arraycopy(flags, 0, allFlags, defaultFlags.length, flags.length);
+        DataExtract extractor = new DataExtract(output, true);
+        if (!extractor.processFlags(allFlags) || extractor.getArgnum() < allFlags.length) {
+            extractor.usage();
+            return 1;
+        }
+        extractor.showConfiguration();
+        try {
+            extractor.openOutputFiles();
+            for (int index = 0; index < names.size(); index++) {
+                byte[] content = contents.get(index);
+                if (DataExtract.isXML(content)) {
+                    extractor.processGames(xmlProcessor.readGames(new ByteArrayInputStream(content), names.get(index)));
+                } else {
+                    extractor.processGames(analyse(extractor, names.get(index), content));
+                }
+            }
+            extractor.writeGroups();
+            extractor.writeSample();
+            extractor.writeCurveData();
+            extractor.closeOutputFiles();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error processing request: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Analyse the games of a PGN file selected by the request with the engine pool.
+     *
+     * @param extractor Selects the games.
+     * @param name The name of the file.
+     * @param content The contents of the file.
+     * @return The analysed games.
+     */
+    private List<Game> analyse(DataExtract extractor, String name, byte[] content) {
+        List<String> pgns = StockPGNAnalyzer.splitGames(
+                Arrays.asList(new String(content, StandardCharsets.UTF_8).split("\r?\n")));
+        List<Game> games = new ArrayList<>(pgns.size());
+        for (int index = 0; index < pgns.size(); index++) {
+            if (!extractor.isSelected(pgns.get(index))) {
+                continue;
+            }
+            try {
+                games.add(analyzer.analyzeGameDetails(pgns.get(index)));
+            } catch (IOException e) {
+                System.err.println("Error analysing game " + (index + 1) + " of " + name + ": " + e.getMessage());
+            }
+        }
+        return games;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: --server port "
+                + "[--engines N] "
+                + "[--engine command] "
+                + "[--pgnextract command] "
+                + "[--depth D] "
+                + "[--movetime millis] "
+                + "[--nodes N] "
+                + "[--gametime millis] "
+                + "[--book file] "
+                + "[flags ...]");
+    }
+}
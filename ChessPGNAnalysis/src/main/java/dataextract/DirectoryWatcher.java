@@ -0,0 +1,269 @@
+package dataextract;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * The analysis and PGN files that arrive in a directory, each returned
+ * once writing it has finished, for as long as the directory is watched.
+ *
+ * New and changed files are reported by a WatchService. Since a file's
+ * writer cannot be seen to close it, a file is taken to be complete once
+ * its size and modification time have not changed for a settling time;
+ * a file moved into the directory when complete is returned after that
+ * time too. No file is returned twice by a watcher. The names of the
+ * files processed successfully, as reported by markProcessed, are
+ * recorded in a ledger in the directory, so that a later watcher of the
+ * same directory does not return them either; files that arrived while
+ * the directory was not watched, or whose processing failed, are
+ * returned when watching starts.
+ *
+ * hasNext blocks until a file is complete, and returns false only once
+ * the watching thread has been interrupted or the watcher stopped.
+ */
+public class DirectoryWatcher implements Iterator<String>, AutoCloseable {
+    // The name of the ledger of the files returned, within the directory.
+    static final String LEDGER = ".dataextract-processed";
+    static final long DEFAULT_SETTLE_MILLIS = 2000;
+    // The endings of the names of files to be returned.
+    private static final String[] ENDINGS = { ".xml", ".pgn", ".xml.gz", ".pgn.gz" };
+
+    private final Path directory;
+    private final long settleMillis;
+    private final WatchService watcher;
+    // The names of the files returned so far or recorded in the ledger, and the ledger of those processed.
+    private final Set<String> processed = new HashSet<>();
+    private final BufferedWriter ledger;
+    // The files still being written, with their size and time when last seen.
+    private final Map<Path, Sighting> pending = new HashMap<>();
+    // The files that are complete but not yet returned, in order of completion.
+    private final Queue<Path> ready = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * The size and modification time of a file, and when they were
+     * first seen with those values.
+     */
+    private static final class Sighting {
+        private final long size;
+        private final long modified;
+        private final long since;
+
+        Sighting(long size, long modified, long since) {
+            this.size = size;
+            this.modified = modified;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Start watching a directory.
+     * @param directory The directory.
+     * @param settleMillis How long a file must be unchanged to be taken
+     *                     as complete.
+     * @throws IOException on failure to watch the directory or to read
+     *                     its ledger.
+     */
+    public DirectoryWatcher(Path directory, long settleMillis) throws IOException {
+        this.directory = directory;
+        this.settleMillis = settleMillis;
+        Path ledgerFile = directory.resolve(LEDGER);
+        if (Files.exists(ledgerFile)) {
+            for (String name : Files.readAllLines(ledgerFile, StandardCharsets.UTF_8)) {
+                if (!name.isEmpty()) {
+                    processed.add(name);
+                }
+            }
+        }
+        // Register before scanning, so that no file can arrive unseen in between.
+        watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        ledger = Files.newBufferedWriter(ledgerFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        scan();
+    }
+
+    /**
+     * Wait until a file is complete.
+     * @return true when a file is complete, false if the watcher has
+     *         been closed or the thread interrupted.
+     */
+    @Override
+    public boolean hasNext() {
+        try {
+            while (ready.isEmpty() && !closed) {
+                // Poll often enough to notice files settling, but sleep while nothing is pending.
+                WatchKey key = pending.isEmpty() ? watcher.take()
+                        : watcher.poll(Math.max(1, settleMillis / 4), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            scan();
+                        } else {
+                            see(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                settle();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException | ClosedWatchServiceException e) {
+            if (!closed) {
+                System.err.println("Error watching " + directory + ": " + e.getMessage());
+            }
+            return false;
+        }
+        return !ready.isEmpty();
+    }
+
+    /**
+     * Return the next complete file. It is not returned again by this
+     * watcher, but it is only recorded in the ledger by markProcessed.
+     * @return The file's path.
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Path file = ready.remove();
+        processed.add(file.getFileName().toString());
+        return file.toString();
+    }
+
+    /**
+     * Record in the ledger that a file returned by next has been
+     * processed, so that later watchers do not return it.
+     * @param file The file's path, as returned by next.
+     */
+    public void markProcessed(String file) {
+        try {
+            ledger.write(Path.of(file).getFileName().toString());
+            ledger.newLine();
+            ledger.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing " + directory.resolve(LEDGER) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching, leaving the ledger open for the files already
+     * returned. A thread waiting in hasNext returns false.
+     * @throws IOException on failure to stop the watch service.
+     */
+    public void stop() throws IOException {
+        closed = true;
+        watcher.close();
+    }
+
+    /**
+     * Stop watching and close the ledger.
+     * @throws IOException on failure to close the ledger.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        ledger.close();
+    }
+
+    /**
+     * Is a file one to be returned?
+     * @param name The file's name.
+     * @return true if the name has the ending of an analysis or PGN file.
+     */
+    static boolean isInputName(String name) {
+        if (name.startsWith(".")) {
+            return false;
+        }
+        String lower = name.toLowerCase();
+        for (String ending : ENDINGS) {
+            if (lower.endsWith(ending)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look at every file in the directory, for those that arrived
+     * unwatched or whose events were lost.
+     */
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                see(file);
+            }
+        }
+    }
+
+    /**
+     * Note the current size and time of a file that may still be
+     * being written.
+     */
+    private void see(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (!isInputName(name) || processed.contains(name) || ready.contains(file)) {
+            return;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Gone again, such as a temporary file renamed.
+            pending.remove(file);
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            return;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        Sighting last = pending.get(file);
+        if (last == null || last.size != attributes.size() || last.modified != modified) {
+            pending.put(file, new Sighting(attributes.size(), modified, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Move the pending files that have not changed for the settling
+     * time to those ready to be returned.
+     */
+    private void settle() throws IOException {
+        long now = System.currentTimeMillis();
+        for (Path file : pending.keySet().toArray(new Path[0])) {
+            // Check the file directly too, as a write need not be reported at once.
+            see(file);
+            Sighting sighting = pending.get(file);
+            if (sighting != null && now - sighting.since >= settleMillis) {
+                pending.remove(file);
+                ready.add(file);
+            }
+        }
+    }
+}
@@ -45,17 +45,64 @@ public class Game {
     private final String[] moves;
     private final Analysis analysis;
     private final int bookDepth;
+    private final List<PGNTag> tags;
+    // Where the game was read from: the number of its input file and
+    // its position in the file; -1 if not known.
+    private int sourceFile = -1;
+    private int sourceIndex = -1;
 
     /**
-     * Create a game given its tags, moves and analysis.
+     * Create a game given its moves and analysis.
      * @param moveList The game's moves.
      * @param analysis The analysis of the game.
      */
     public Game(Analyzer.Player player, String moveList, Analysis analysis) {
+        this(player, moveList, analysis, new ArrayList<>());
+    }
+
+    /**
+     * Create a game given its tags, moves and analysis.
+     * @param moveList The game's moves.
+     * @param analysis The analysis of the game.
+     * @param tags The game's tags.
+     */
+    public Game(Analyzer.Player player, String moveList, Analysis analysis, List<PGNTag> tags) {
         this.player = player;
-        String[] movesAndResult = moveList.split("\\s+");
-        this.moves = new String[movesAndResult.length - 2];
-        System.arraycopy(movesAndResult, 1, this.moves, 0, this.moves.length);
+        this.tags = tags;
+        List<String> moveTokens = new ArrayList<>();
+        PGNLexer lexer = new PGNLexer(moveList);
+        PGNLexer.Token token;
+        while ((token = lexer.next()) != PGNLexer.Token.END) {
+            if (token == PGNLexer.Token.MOVE) {
+                moveTokens.add(lexer.getText());
+            }
+        }
+        this.moves = moveTokens.toArray(new String[0]);
+        this.analysis = analysis;
+        this.bookDepth = analysis.getBookDepth();
+    }
+
+    /**
+     * Create a game given its moves, already split, and analysis.
+     * @param player The player of interest.
+     * @param moves The game's moves.
+     * @param analysis The analysis of the game.
+     */
+    public Game(Analyzer.Player player, String[] moves, Analysis analysis) {
+        this(player, moves, analysis, new ArrayList<>());
+    }
+
+    /**
+     * Create a game given its tags, moves, already split, and analysis.
+     * @param player The player of interest.
+     * @param moves The game's moves.
+     * @param analysis The analysis of the game.
+     * @param tags The game's tags.
+     */
+    public Game(Analyzer.Player player, String[] moves, Analysis analysis, List<PGNTag> tags) {
+        this.player = player;
+        this.tags = tags;
+        this.moves = moves;
         this.analysis = analysis;
         this.bookDepth = analysis.getBookDepth();
     }
@@ -64,13 +111,12 @@ public class Game {
      * Return the score differences for the given player as text. Scores
      * involving mate are return as "?".
      *
-     * @param player The player of interest.
+     * @param playerIsWhite Whether the player of interest is white.
      * @return An array of score differences.
      */
-    public String[] getScoresAsText(String player) {
+    public String[] getScoresAsText(boolean playerIsWhite) {
         String[] result;
         List<String> scores = new ArrayList<>();
-        boolean playerIsWhite = player.equals(Analyzer.Player.WHITE + "");
         if (bookDepth >= 0) {
             List<PlayedMove> played = analysis.getAnalysedMoves();
             int ply = bookDepth + 1;
@@ -110,14 +156,12 @@ public class Game {
      * Return the score differences for the given player as text.
      * Scores involving mate are return as "?".
      *
-     * @param player The player of interest.
+     * @param playerIsWhite Whether the player of interest is white.
      * @return An array of non-mating scores.
      */
-    public int[] getNonMateScores(String player) {
+    public int[] getNonMateScores(boolean playerIsWhite) {
         int[] result;
         List<Integer> scores = new ArrayList<>();
-        // Find out whether the player is black or white.
-        boolean playerIsWhite = player.equals(Analyzer.Player.WHITE + "");
         if (bookDepth >= 0) {
             List<PlayedMove> played = analysis.getAnalysedMoves();
             boolean errorInGame = false;
@@ -152,6 +196,28 @@ public class Game {
         return result;
     }
     
+    /**
+     * Return the value of the given tag.
+     * @param tagName The name of the tag.
+     * @return The tag's value, or an empty string if it is not present.
+     */
+    public String getTagValue(String tagName) {
+        for (PGNTag tag : tags) {
+            if (tag.getName().equals(tagName)) {
+                return tag.getValue();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Return the game's tags.
+     * @return The tags.
+     */
+    public List<PGNTag> getTags() {
+        return tags;
+    }
+
     /**
      * Return the book depth of this game
      * @return The games book depth.
@@ -169,6 +235,67 @@ public class Game {
         return moves;
     }
 
+    /**
+     * Record where the game was read from, so that it can be read again.
+     * @param file The number of the input file.
+     * @param index The position of the game in the file.
+     */
+    public void setSource(int file, int index) {
+        this.sourceFile = file;
+        this.sourceIndex = index;
+    }
+
+    /**
+     * Return the number of the input file the game was read from.
+     * @return The file number, or -1 if not known.
+     */
+    public int getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Return the position of the game in its input file.
+     * @return The position, or -1 if not known.
+     */
+    public int getSourceIndex() {
+        return sourceIndex;
+    }
+
+    /**
+     * Return a hash of the game's moves alone. It identifies the move
+     * sequence rather than the game: different games with the same moves,
+     * such as a short draw played by other players, have the same hash.
+     * Use getIdentity to tell games apart.
+     * @return The hash.
+     */
+    public long getMoveHash() {
+        // 64-bit FNV-1a.
+        long hash = 0xcbf29ce484222325L;
+        for (String move : moves) {
+            for (int index = 0; index < move.length(); index++) {
+                hash = (hash ^ move.charAt(index)) * 0x100000001b3L;
+            }
+            hash = (hash ^ ' ') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Return a hash that identifies the game: its HashCode tag if it has one,
+     * otherwise the hash of its moves together with its White, Black, Date
+     * and Round tags, so that different games with the same moves, such as a
+     * short draw played by other players, are told apart.
+     * @return The hash.
+     */
+    public GameHash getIdentity() {
+        String hashCode = getTagValue("HashCode");
+        if (!hashCode.isEmpty()) {
+            return GameHash.identify("HashCode", hashCode);
+        }
+        return GameHash.identify(GameHash.of(moves).toString(), getTagValue("White"), getTagValue("Black"),
+                getTagValue("Date"), getTagValue("Round"));
+    }
+
     /**
      * Return the analysis of the game.
      * @return The game's analysis.
@@ -327,6 +454,25 @@ public class Game {
         annotatedFile.write(builder.toString());
     }
 
+    /**
+     * Return the game in PGN format.
+     * @return The game's tags and moves.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (PGNTag tag : tags) {
+            builder.append(tag).append('\n');
+        }
+        builder.append('\n');
+        for (String move : moves) {
+            builder.append(move).append(' ');
+        }
+        String result = getTagValue("Result");
+        builder.append(result.isEmpty() ? "*" : result).append('\n');
+        return builder.toString();
+    }
+
     public Analyzer.Player getPlayer() {
         return player;
     }
@@ -337,7 +483,7 @@ public class Game {
      * @return The AE, CV and MM values.
      */
     private String getAnnotationStats(String player) {
-        PlayerStats stats = new PlayerStats(this, player, 0.0, false);
+        PlayerStats stats = new PlayerStats(this, player, player.equals(Analyzer.Player.WHITE + ""), 0.0, false);
         StringBuilder builder = new StringBuilder();
         builder.append(player).append(": ");
         builder.append("AE = ").append(stats.getAE()).append(", ");
@@ -20,9 +20,12 @@ package dataextract;
  *  https://www.cs.kent.ac.uk/people/staff/djb/
  */
 
+import analyzerTools.Analyzer;
+import analyzerTools.GameHash;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Generate statistics for games.
@@ -64,7 +67,19 @@ public class GenStats {
     private double AEThreshold = 0;
     
     private double randomThreshold = 0;
-    private final Random rand = new Random();
+    // Gives confidence intervals for the stats, or null for none.
+    private Bootstrap bootstrap;
+    // The seed for random matching and sampling.
+    private long seed = 0;
+    // The size of the sample of stats that do not match the score settings; 0 for no sample.
+    private int sampleSize = 0;
+    // The samples drawn by each thread, merged by getSample.
+    private final List<Reservoir<PlayerStats>> samples = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<Reservoir<PlayerStats>> sample = ThreadLocal.withInitial(() -> {
+        Reservoir<PlayerStats> reservoir = new Reservoir<>(sampleSize);
+        samples.add(reservoir);
+        return reservoir;
+    });
 
     public GenStats() {
         players = new ArrayList<>();
@@ -78,30 +93,60 @@ public class GenStats {
      * @return A list of up to 2-elements containing the stats on
      *         the players in the game, if required.
      */
-    /*
     public List<PlayerStats> getStats(Game game) {
+        List<PlayerStats> stats = getMatchingStats(game);
+        for (PlayerStats pstats : stats) {
+            addInterval(pstats);
+        }
+        return stats;
+    }
+
+    /**
+     * Return the stats of the players in a game that match the search
+     * criteria, without confidence intervals, so that they can be
+     * ranked without the cost of resampling.
+     * @param game The game.
+     * @return The stats of up to two players.
+     */
+    public List<PlayerStats> getMatchingStats(Game game) {
         List<PlayerStats> stats = new ArrayList<>(2);
         
-        String white = game.getTagValue("White");
-        String black = game.getTagValue("Black");
-        String[] playerNames = { 
-            white,
-            black
-        };
-        for(String playerName : playerNames) {
-            PlayerStats pstats = new PlayerStats(game, playerName, AEThreshold, showFullScores);
-            if (playerMatches(playerName, playerName.equals(white)) || 
+        for(int index = 0; index < 2; index++) {
+            String playerName = getPlayerName(game, index == 0);
+            PlayerStats pstats = new PlayerStats(game, playerName, index == 0, AEThreshold, showFullScores);
+            if (playerMatches(playerName, index == 0) || 
                     idMatches(pstats) ||
                     hashCodeMatches(game.getTagValue("HashCode"))) {
-                double percentageWithinThreshold = pstats.getCV();
                 if (scoreSettingsMatch(pstats)) {
                     stats.add(pstats);
                 }
             }
         }
         return stats;
-    }*/
-    
+    }
+
+    /**
+     * Set the confidence intervals of some stats, if bootstrapping.
+     * @param pstats The stats.
+     */
+    public void addInterval(PlayerStats pstats) {
+        if (bootstrap != null) {
+            pstats.setInterval(bootstrap.resample(pstats.getScores(), AEThreshold));
+        }
+    }
+
+    /**
+     * Return the name of a player from the game's tags, falling back on
+     * the colour when the name is not known.
+     */
+    static String getPlayerName(Game game, boolean white) {
+        String name = game.getTagValue(white ? "White" : "Black");
+        if (name.isEmpty()) {
+            return (white ? Analyzer.Player.WHITE : Analyzer.Player.BLACK).toString();
+        }
+        return name;
+    }
+
     /**
      * Return the number of player names we are interested in.
      * @return The number of player names.
@@ -110,6 +155,26 @@ public class GenStats {
         return players.size();
     }
 
+    /**
+     * Return the player names to be matched.
+     * @return The player names.
+     */
+    public List<String> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    /**
+     * Return whether a player name to be matched stands for any
+     * player of a colour, rather than a single player.
+     * @param player The player name.
+     * @return true if the name matches any player.
+     */
+    public static boolean isPlayerPattern(String player) {
+        return player.equalsIgnoreCase(MATCH_ANY_PLAYER)
+                || player.equalsIgnoreCase(Game.MATCH_ANY_WHITE_PLAYER)
+                || player.equalsIgnoreCase(Game.MATCH_ANY_BLACK_PLAYER);
+    }
+
     /**
      * Add a player to the list of those to be matched.
      * @param player A player to be matched
@@ -190,6 +255,14 @@ public class GenStats {
         thresholdSet = true;
     }
 
+    /**
+     * Return whether a lower threshold for the AE value has been set.
+     * @return Whether the AE threshold has been set.
+     */
+    public boolean isAEThresholdSet() {
+        return thresholdSet;
+    }
+
     /**
      * Return whether the accuracy is to be shown.
      * @return Whether to show the accuracy.
@@ -232,9 +305,15 @@ public class GenStats {
                 // Require a percentage to match within the threshold.
                 matches = stats.getCV() >= CVThreshold;
             }
-            // Support random matching.
+            // Support random matching. The choice depends only on the seed and
+            // the player's game and colour, so it is the same in every run.
+            long identity = matches ? 0 : identify(stats);
             if(!matches && randomThreshold != 0) {
-                matches = rand.nextDouble() <= randomThreshold;
+                long bits = Reservoir.mix(seed ^ Reservoir.mix(identity));
+                matches = (bits >>> 11) * 0x1.0p-53 < randomThreshold;
+            }
+            if(!matches && sampleSize > 0) {
+                sample.get().offer(stats, seed ^ identity, 1.0);
             }
         }
         else {
@@ -244,6 +323,68 @@ public class GenStats {
         return matches;
     }
 
+    /**
+     * Return a number that identifies a player in a game: the game's
+     * identity and the player's colour. It does not depend on the order
+     * in which games are read, so the same players are matched and
+     * sampled in every run, and different games with the same moves are
+     * told apart.
+     * @param stats The player's stats.
+     * @return The number.
+     */
+    private static long identify(PlayerStats stats) {
+        GameHash identity = stats.getGame().getIdentity();
+        return Reservoir.mix(identity.getHigh() ^ Reservoir.mix(identity.getLow())) * 2 + (stats.isWhite() ? 0 : 1);
+    }
+
+    /**
+     * Return the sample of stats that did not match the score settings,
+     * drawn from those found by every thread, with any confidence
+     * intervals. The sample is the same in every run with the same seed.
+     * @return The sample.
+     */
+    public List<PlayerStats> getSample() {
+        Reservoir<PlayerStats> combined = new Reservoir<>(sampleSize);
+        synchronized (samples) {
+            for (Reservoir<PlayerStats> reservoir : samples) {
+                combined.merge(reservoir);
+            }
+        }
+        List<PlayerStats> sampled = combined.getItems();
+        if (bootstrap != null) {
+            for (PlayerStats pstats : sampled) {
+                pstats.setInterval(bootstrap.resample(pstats.getScores(), AEThreshold));
+            }
+        }
+        return sampled;
+    }
+
+    /**
+     * Return the size of the sample of stats that do not match the
+     * score settings.
+     * @return The sample size, or 0 for no sample.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Set the size of the sample of stats that do not match the score
+     * settings.
+     * @param sampleSize The sample size, or 0 for no sample.
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Set the seed for random matching and sampling.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     /**
      * Return the random threshold setting.
      * @return The random threshold setting.
@@ -288,6 +429,22 @@ public class GenStats {
         return false;
     }
     
+    /**
+     * Return the bootstrap that gives confidence intervals for the stats.
+     * @return The bootstrap, or null for no intervals.
+     */
+    public Bootstrap getBootstrap() {
+        return bootstrap;
+    }
+
+    /**
+     * Set the bootstrap that gives confidence intervals for the stats.
+     * @param bootstrap The bootstrap, or null for no intervals.
+     */
+    public void setBootstrap(Bootstrap bootstrap) {
+        this.bootstrap = bootstrap;
+    }
+
     /**
      * Return the current stats configuration.
      * @return The configuration as a string.
@@ -308,7 +465,6 @@ public class GenStats {
      * @param stats The stats to be checked.
      * @return Whether the ID matches.
      */
-    /*
     private boolean idMatches(PlayerStats stats)
     {
         String playerID = stats.buildID();
@@ -318,7 +474,7 @@ public class GenStats {
             }
         }
         return false;
-    }*/
+    }
 
     void addHashCode(String hashCode) {
         hashCodes.add(hashCode);
@@ -0,0 +1,163 @@
+package dataextract;
+
+/**
+ * The stats of a player's moves, built up a move at a time, for games
+ * that are followed as they are played.
+ *
+ * Rather than the scores themselves, only their count, sum, sum of
+ * squares and the number within the threshold are kept, so adding a move
+ * takes constant time and space however long the game, and AE, sd and CV
+ * can be read at any time from a snapshot. The stats are those that
+ * PlayerStats gives for the same moves: moves involving a mate that was
+ * not played are left out, and sd is the population standard deviation.
+ * As with Game.getNonMateScores, a player with a move that cannot be
+ * scored has no scores at all.
+ *
+ * Not safe for use by several threads at once.
+ */
+public class IncrementalPlayerStats {
+    // Scores at least this high count towards the CV.
+    private final double lowThreshold;
+    private int count;
+    private long sum;
+    private long sumOfSquares;
+    private int within;
+    // Whether a move could not be scored, so that no scores are kept.
+    private boolean invalid;
+
+    /**
+     * The stats at one moment, which do not change as moves are added.
+     */
+    public static final class Snapshot {
+        private final int count;
+        private final double AE;
+        private final double SD;
+        private final double CV;
+
+        Snapshot(int count, double AE, double SD, double CV) {
+            this.count = count;
+            this.AE = AE;
+            this.SD = SD;
+            this.CV = CV;
+        }
+
+        /**
+         * @return The number of scores.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The average error (AE), NaN if there are no scores.
+         */
+        public double getAE() {
+            return AE;
+        }
+
+        /**
+         * @return The standard deviation of the scores, NaN if there are none.
+         */
+        public double getSD() {
+            return SD;
+        }
+
+        /**
+         * @return The coincidence value (CV), NaN if there are no scores.
+         */
+        public double getCV() {
+            return CV;
+        }
+    }
+
+    /**
+     * Create stats with no moves.
+     * @param lowThreshold Scores at least this high count towards the CV.
+     */
+    public IncrementalPlayerStats(double lowThreshold) {
+        this.lowThreshold = lowThreshold;
+    }
+
+    /**
+     * Add the score of a move, unless it involves a mate that was not
+     * played.
+     * @param score The score.
+     */
+    public void addMove(PlayedMoveScore score) {
+        if (!score.bestIsMate() && !score.playedIsMate()) {
+            addScore(score.getValue());
+        } else if (score.bestIsMate() && score.playedIsMate() && score.getValue() == 0) {
+            // The same mate.
+            addScore(0);
+        } else {
+            // Can't add anything.
+        }
+    }
+
+    /**
+     * Add a score.
+     * @param score The score.
+     */
+    public void addScore(int score) {
+        if (invalid) {
+            return;
+        }
+        count++;
+        sum += score;
+        sumOfSquares += (long) score * score;
+        if (score >= lowThreshold) {
+            within++;
+        }
+    }
+
+    /**
+     * Record that a move could not be scored: every score is removed and
+     * later scores are ignored, until the stats are cleared.
+     */
+    public void invalidate() {
+        clear();
+        invalid = true;
+    }
+
+    /**
+     * Return whether a move could not be scored since the stats were
+     * last cleared.
+     * @return true if the stats have been invalidated.
+     */
+    public boolean isInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Remove every score, so that the stats can be built up again.
+     */
+    public void clear() {
+        count = 0;
+        sum = 0;
+        sumOfSquares = 0;
+        within = 0;
+        invalid = false;
+    }
+
+    /**
+     * Return the number of scores.
+     * @return The number of scores.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Return the stats of the scores added so far.
+     * @return The stats.
+     */
+    public Snapshot snapshot() {
+        if (count == 0) {
+            return new Snapshot(0, Double.NaN, Double.NaN, Double.NaN);
+        }
+        double AE = (double) sum / count;
+        // The sum of squared deviations from the mean, which rounding could make slightly negative.
+        double deviations = Math.max(0, sumOfSquares - (double) sum * sum / count);
+        return new Snapshot(count, AE, Math.sqrt(deviations / count), (double) within / count);
+    }
+}
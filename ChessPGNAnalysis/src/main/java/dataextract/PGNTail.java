@@ -0,0 +1,397 @@
+package dataextract;
+
+import analyzerTools.Analyzer;
+import analyzerTools.PGNLexer;
+import analyzerTools.StockPGNAnalyzer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Follow a PGN file to which a live broadcast appends the moves of its
+ * games as they are played, and output the stats of the matching players
+ * each time their games grow.
+ *
+ * Only the bytes appended since the file was last read are read, up to the
+ * last complete line, a chunk at a time. A game's text is complete once
+ * the tags of the next game follow it; only the text of the last game is
+ * kept to be split again when more is read. Each game keeps its own state:
+ * its moves, its analysis and the IncrementalPlayerStats of its players.
+ * When a game grows, only the positions after the moves already analysed
+ * are sent to the engine, and the scores of the new moves are added to the
+ * players' stats, from which AE, sd and CV are read without scoring the
+ * whole game again. If a game's moves no longer extend those analysed, as
+ * when a relay corrects a move, it is analysed again from the start.
+ *
+ * A file that shrinks has been rewritten and is read again from the
+ * start; its games are matched to those already seen by their tags, and
+ * carry on from where they were. Games are analysed in parallel, by as
+ * many threads as the analyser has engines.
+ */
+public class PGNTail implements AutoCloseable {
+    // How often the file is checked when no change has been reported.
+    private static final long POLL_MILLIS = 1000;
+    // The bytes read from the file at a time, unless a line is longer.
+    private static final int READ_CHUNK = 1 << 20;
+    // The tags that identify a game.
+    private static final String[] KEY_TAGS = { "Event", "Site", "Date", "Round", "White", "Black" };
+
+    private final Path file;
+    private final StockPGNAnalyzer analyzer;
+    private final GenStats stats;
+    private final PrintStream output;
+    private final ExecutorService executor;
+    private final WatchService watcher;
+    // How much of the file has been read.
+    private long offset;
+    // The lines of the last game, which may still be growing.
+    private final List<String> pending = new ArrayList<>();
+    // The state of each game, by its identifying tags.
+    private final Map<String, LiveGame> games = new HashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Start following a file.
+     * @param file The file.
+     * @param analyzer Analyses the moves, with an engine for each thread.
+     * @param threads The number of games analysed at once.
+     * @param stats Selects the players and the threshold for the CV.
+     * @param output Where to write the stats.
+     * @throws IOException on failure to watch the file's directory.
+     */
+    public PGNTail(Path file, StockPGNAnalyzer analyzer, int threads, GenStats stats, PrintStream output)
+            throws IOException {
+        this.file = file;
+        this.analyzer = analyzer;
+        this.stats = stats;
+        this.output = output;
+        Path directory = file.toAbsolutePath().getParent();
+        watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, ENTRY_MODIFY);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "tail");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Read the file whenever it changes, until closed or interrupted.
+     * @throws IOException on failure to read the file.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void follow() throws IOException, InterruptedException {
+        read();
+        try {
+            while (!closed) {
+                // Changes to other files in the directory wake the loop too; they are harmless.
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                read();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting.
+        }
+    }
+
+    /**
+     * Read whatever has been appended to the file and update its games.
+     * @throws IOException on failure to read the file.
+     * @throws InterruptedException if interrupted while games are analysed.
+     */
+    public void read() throws IOException, InterruptedException {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            // Not yet created, or being replaced.
+            return;
+        }
+        if (size < offset) {
+            offset = 0;
+            pending.clear();
+        }
+        if (size == offset) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, READ_CHUNK));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            // Whether the last game has been left until more of it is read.
+            boolean deferred = false;
+            while (true) {
+                int count = channel.read(buffer, position);
+                if (count > 0) {
+                    position += count;
+                    if (buffer.hasRemaining()) {
+                        continue;
+                    }
+                }
+                // The buffer is full, or the end of the file has been reached.
+                int end = buffer.position();
+                while (end > 0 && buffer.get(end - 1) != '\n') {
+                    end--;
+                }
+                if (end > 0 || (deferred && count <= 0)) {
+                    offset += end;
+                    addLines(new String(buffer.array(), 0, end, StandardCharsets.UTF_8), count <= 0);
+                    deferred = count > 0;
+                    // Keep the start of the next line.
+                    buffer.flip().position(end);
+                    buffer.compact();
+                } else if (!buffer.hasRemaining()) {
+                    // A line longer than the buffer.
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                }
+                if (count <= 0) {
+                    // Leave a partly written line for next time.
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add complete lines read from the file to those of the last game, and
+     * update the games whose text they hold.
+     * @param text The lines.
+     * @param atEnd Whether the end of the file has been reached. If not, the
+     *              last game is left until more of it has been read.
+     */
+    private void addLines(String text, boolean atEnd) throws InterruptedException {
+        if (!text.isEmpty()) {
+            Collections.addAll(pending, text.split("\r?\n"));
+        }
+
+        List<String> texts = StockPGNAnalyzer.splitGames(pending);
+        int used = 0;
+        for (String game : texts) {
+            for (int index = 0; index < game.length(); index++) {
+                if (game.charAt(index) == '\n') {
+                    used++;
+                }
+            }
+        }
+        // Any lines left over are the tags of a game whose moves have not started,
+        // which also shows that the last game's text is complete.
+        List<String> rest = new ArrayList<>(pending.subList(used, pending.size()));
+        pending.clear();
+        if (rest.isEmpty() && !texts.isEmpty()) {
+            Collections.addAll(pending, texts.get(texts.size() - 1).split("\n"));
+            if (!atEnd) {
+                texts = texts.subList(0, texts.size() - 1);
+            }
+        } else {
+            pending.addAll(rest);
+        }
+        update(texts);
+    }
+
+    /**
+     * Update the games whose text has been read, analysing them in
+     * parallel, and output their players' stats in file order.
+     */
+    private void update(List<String> texts) throws InterruptedException {
+        Map<LiveGame, String> latest = new LinkedHashMap<>();
+        for (String text : texts) {
+            List<PGNTag> tags = StockPGNAnalyzer.getTags(text);
+            latest.put(games.computeIfAbsent(getKey(tags), key -> new LiveGame(tags)), text);
+        }
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (Map.Entry<LiveGame, String> entry : latest.entrySet()) {
+            Callable<List<String>> task = () -> entry.getKey().update(entry.getValue());
+            results.add(executor.submit(task));
+        }
+        for (Future<List<String>> result : results) {
+            try {
+                for (String line : result.get()) {
+                    output.println(line);
+                }
+            } catch (ExecutionException e) {
+                System.err.println("Error analysing game: " + e.getCause().getMessage());
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Stop following the file, letting the games being analysed finish.
+     * A thread waiting in follow returns once they have.
+     * @throws IOException on failure to stop watching.
+     */
+    public void stop() throws IOException {
+        closed = true;
+        watcher.close();
+    }
+
+    /**
+     * Stop following the file and the analysis of its games.
+     * @throws IOException on failure to stop watching.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Return the key that identifies a game.
+     */
+    private static String getKey(List<PGNTag> tags) {
+        StringBuilder key = new StringBuilder();
+        for (String name : KEY_TAGS) {
+            for (PGNTag tag : tags) {
+                if (tag.getName().equals(name)) {
+                    key.append(tag.getValue());
+                }
+            }
+            key.append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * The state of a game being followed.
+     */
+    private final class LiveGame {
+        private final List<PGNTag> tags;
+        // The text last seen, and the moves analysed from it.
+        private String text = "";
+        private String[] moves = new String[0];
+        // The analysis so far, null until the game leaves the book.
+        private Analysis analysis;
+        // How many of the analysed moves have been scored.
+        private int scored;
+        private final IncrementalPlayerStats white = new IncrementalPlayerStats(stats.getLowAEThreshold());
+        private final IncrementalPlayerStats black = new IncrementalPlayerStats(stats.getLowAEThreshold());
+        // Whether the game's result has been seen.
+        private boolean finished;
+
+        LiveGame(List<PGNTag> tags) {
+            this.tags = tags;
+        }
+
+        /**
+         * Bring the game up to date with its latest text.
+         * @return The stats of its matching players, if it has changed.
+         */
+        synchronized List<String> update(String latest) throws IOException {
+            if (finished || latest.equals(text)) {
+                return Collections.emptyList();
+            }
+            text = latest;
+            String result = null;
+            boolean hasMoves = false;
+            boolean terminated = false;
+            PGNLexer lexer = new PGNLexer(latest);
+            PGNLexer.Token token;
+            int variationDepth = 0;
+            while ((token = lexer.next()) != PGNLexer.Token.END) {
+                if (token == PGNLexer.Token.VARIATION_START) {
+                    variationDepth++;
+                } else if (token == PGNLexer.Token.VARIATION_END) {
+                    variationDepth = Math.max(0, variationDepth - 1);
+                } else if (token == PGNLexer.Token.MOVE) {
+                    hasMoves = true;
+                } else if (token == PGNLexer.Token.RESULT && variationDepth == 0) {
+                    terminated = true;
+                    if (!lexer.tokenEquals("*")) {
+                        result = lexer.getText();
+                    }
+                }
+            }
+            if (!hasMoves) {
+                return Collections.emptyList();
+            }
+            // pgn-extract needs the game to be terminated.
+            String[] latestMoves = analyzer.convertMoves(terminated ? latest : latest + "*\n");
+            if (!extend(latestMoves)) {
+                // A move already analysed has changed.
+                analysis = null;
+                scored = 0;
+                white.clear();
+                black.clear();
+            }
+            moves = latestMoves;
+            if (analysis == null) {
+                int bookDepth = analyzer.getBookDepth(latest);
+                if (bookDepth >= moves.length && result == null) {
+                    // Still in the book.
+                    return Collections.emptyList();
+                }
+                analysis = new Analysis();
+                analysis.setBookDepth(Integer.toString(bookDepth));
+            }
+            analyzer.analyzeNewMoves(moves, analysis);
+            finished = result != null;
+
+            Game game = new Game(Analyzer.Player.BLACK, moves, analysis, tags);
+            List<PlayedMove> analysed = analysis.getAnalysedMoves();
+            for (; scored < analysed.size(); scored++) {
+                PlayedMove played = analysed.get(scored);
+                IncrementalPlayerStats player = played.isWhiteMove() ? white : black;
+                try {
+                    player.addMove(game.getEvaluation(played));
+                } catch (IllegalStateException e) {
+                    if (!player.isInvalid()) {
+                        System.err.println("Warning: " + e.getMessage());
+                    }
+                    player.invalidate();
+                }
+            }
+            List<String> lines = new ArrayList<>(2);
+            for (IncrementalPlayerStats player : new IncrementalPlayerStats[] { white, black }) {
+                boolean isWhite = player == white;
+                String name = GenStats.getPlayerName(game, isWhite);
+                IncrementalPlayerStats.Snapshot snapshot = player.snapshot();
+                if (snapshot.getCount() > 0 && stats.playerMatches(name, isWhite)) {
+                    lines.add(PlayerStats.format(game, name, isWhite, snapshot.getCount(),
+                            snapshot.getAE(), snapshot.getSD(), snapshot.getCV(), finished ? result : "*"));
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * Do the latest moves extend those already analysed?
+         */
+        private boolean extend(String[] latest) {
+            if (latest.length < moves.length) {
+                return false;
+            }
+            for (int index = 0; index < moves.length; index++) {
+                if (!latest[index].equals(moves[index])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
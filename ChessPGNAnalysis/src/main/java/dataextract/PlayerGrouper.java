@@ -0,0 +1,247 @@
+package dataextract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Group the stats of players' games by player, for a corpus of any size,
+ * with an external merge sort.
+ *
+ * Each thread that adds stats buffers them as compact records of player
+ * name, game hash and stats line. When a thread's buffer is full it sorts
+ * it and spills it to a run file, so runs are generated in parallel and
+ * memory use is bounded by the buffer size. finish merges the runs, at
+ * most MERGE_FAN_IN at a time, so that each player's lines are emitted
+ * together, in order of name and then of the lines themselves, which
+ * start with the year.
+ */
+public class PlayerGrouper {
+    // The most runs merged at once, which bounds the number of open files.
+    static final int MERGE_FAN_IN = 64;
+    static final int DEFAULT_RUN_SIZE = 100_000;
+    private static final Comparator<Record> ORDER = Comparator.<Record, String>comparing(record -> record.player)
+            .thenComparing(record -> record.line)
+            .thenComparingLong(record -> record.gameHash);
+
+    // Where runs are written.
+    private final Path directory;
+    // The most records buffered by each thread.
+    private final int runSize;
+    // The runs written so far.
+    private final List<Path> runs = Collections.synchronizedList(new ArrayList<>());
+    // The buffers of all threads, spilled by finish.
+    private final List<List<Record>> buffers = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<List<Record>> buffer = ThreadLocal.withInitial(() -> {
+        List<Record> records = new ArrayList<>();
+        buffers.add(records);
+        return records;
+    });
+
+    /**
+     * The stats of a player in a game.
+     */
+    private static final class Record {
+        private final String player;
+        private final long gameHash;
+        private final String line;
+
+        Record(String player, long gameHash, String line) {
+            this.player = player;
+            this.gameHash = gameHash;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Create a grouper.
+     * @param directory Where to write the temporary run files.
+     * @param runSize The most records held in memory by each thread.
+     */
+    public PlayerGrouper(Path directory, int runSize) {
+        this.directory = directory;
+        this.runSize = Math.max(1, runSize);
+    }
+
+    /**
+     * Add the stats of a player in a game. May be called by several
+     * threads at once.
+     * @param stats The stats.
+     * @throws IOException on failure to write a run.
+     */
+    public void add(PlayerStats stats) throws IOException {
+        List<Record> records = buffer.get();
+        synchronized (records) {
+            records.add(new Record(stats.getPlayerName(), stats.getGame().getMoveHash(), stats.toString()));
+            if (records.size() >= runSize) {
+                spill(records);
+            }
+        }
+    }
+
+    /**
+     * Merge everything added, passing each line to an action, grouped
+     * by player. The run files are deleted.
+     * @param action Receives the lines.
+     * @throws IOException on failure to read or write a run.
+     */
+    public void finish(Consumer<String> action) throws IOException {
+        synchronized (buffers) {
+            for (List<Record> records : buffers) {
+                synchronized (records) {
+                    if (!records.isEmpty()) {
+                        spill(records);
+                    }
+                }
+            }
+        }
+        List<Path> remaining = new ArrayList<>(runs);
+        runs.clear();
+        try {
+            // Merge in passes until few enough runs are left to merge at once.
+            while (remaining.size() > MERGE_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int start = 0; start < remaining.size(); start += MERGE_FAN_IN) {
+                    List<Path> group = remaining.subList(start, Math.min(remaining.size(), start + MERGE_FAN_IN));
+                    Path run = newRun();
+                    merged.add(run);
+                    try (DataOutputStream out = openRun(run)) {
+                        merge(group, record -> {
+                            try {
+                                write(out, record);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    delete(group);
+                }
+                remaining = merged;
+            }
+            merge(remaining, record -> action.accept(record.line));
+        } finally {
+            delete(remaining);
+        }
+    }
+
+    /**
+     * Sort a full buffer and write it as a run.
+     */
+    private void spill(List<Record> records) throws IOException {
+        records.sort(ORDER);
+        Path run = newRun();
+        try (DataOutputStream out = openRun(run)) {
+            for (Record record : records) {
+                write(out, record);
+            }
+        }
+        records.clear();
+        runs.add(run);
+    }
+
+    /**
+     * Merge sorted runs, passing each record to an action in order.
+     */
+    private void merge(List<Path> group, Consumer<Record> action) throws IOException {
+        List<RunReader> readers = new ArrayList<>(group.size());
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, group.size()),
+                (first, second) -> ORDER.compare(first.head, second.head));
+        try {
+            for (Path run : group) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                action.accept(reader.head);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private Path newRun() throws IOException {
+        return Files.createTempFile(directory, "players", ".run");
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16));
+    }
+
+    private static void write(DataOutputStream out, Record record) throws IOException {
+        writeString(out, record.player);
+        out.writeLong(record.gameHash);
+        writeString(out, record.line);
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void delete(List<Path> group) throws IOException {
+        for (Path run : group) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    /**
+     * Reads the records of a run in turn.
+     */
+    private static final class RunReader {
+        private final DataInputStream in;
+        // The current record.
+        private Record head;
+
+        RunReader(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        /**
+         * Read the next record.
+         * @return false at the end of the run.
+         */
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            String player = readString(length);
+            long gameHash = in.readLong();
+            head = new Record(player, gameHash, readString(in.readInt()));
+            return true;
+        }
+
+        private String readString(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
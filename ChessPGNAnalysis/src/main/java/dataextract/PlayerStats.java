@@ -20,8 +20,6 @@ package dataextract;
  *  https://www.cs.kent.ac.uk/people/staff/djb/
  */
 
-import analyzerTools.Analyzer;
-
 /**
  * Provide details of a particular player in a particular game.
  * 
@@ -47,23 +45,26 @@ public class PlayerStats {
     private final String[] textDifferences;
     // Overall coincidence value of the moves.
     private final double CV;
+    // Confidence intervals for AE and CV, or null if not required.
+    private Bootstrap.Interval interval;
     
     /**
      * Record stats for a player in a game.
      * @param game The game.
      * @param playerName The player.
+     * @param isWhite Whether the player was white.
      * @param lowThreshold The low threshold for scores.
      * @param showFullScores Whether to show full scores or not.
      */
-    public PlayerStats(Game game, String playerName, double lowThreshold, boolean showFullScores) {
+    public PlayerStats(Game game, String playerName, boolean isWhite, double lowThreshold, boolean showFullScores) {
         this.game = game;
         this.playerName = playerName;
-        this.isWhite = game.getPlayer() == Analyzer.Player.WHITE;
+        this.isWhite = isWhite;
         this.lowThreshold = lowThreshold;
         this.showFullScores = showFullScores;
 
-        scores = game.getNonMateScores(playerName);
-        textDifferences = game.getScoresAsText(playerName);
+        scores = game.getNonMateScores(isWhite);
+        textDifferences = game.getScoresAsText(isWhite);
         CV = getPercentageWithinThreshold(scores, lowThreshold);
     }
 
@@ -131,6 +132,132 @@ public class PlayerStats {
         return ((double) sum) / scores.length;
     }
 
+    /**
+     * Return the standard deviation of the scores.
+     *
+     * @return The standard deviation.
+     */
+    public double getSD() {
+        return sd(getAE());
+    }
+
+    /**
+     * Return the confidence intervals for AE and CV.
+     * @return The intervals, or null if they were not required.
+     */
+    public Bootstrap.Interval getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the confidence intervals for AE and CV.
+     * @param interval The intervals.
+     */
+    public void setInterval(Bootstrap.Interval interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Return the name of the player, as given in the game's tags
+     * if possible.
+     * @return The player's name.
+     */
+    public String getPlayerName() {
+        String name = game.getTagValue(isWhite ? "White" : "Black");
+        return name.isEmpty() ? playerName : name;
+    }
+
+    /**
+     * Return whether the player was white.
+     * @return true if the player was white.
+     */
+    public boolean isWhite() {
+        return isWhite;
+    }
+
+    /**
+     * Return the game.
+     * @return The game.
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Build the ID of this player in this game:
+     * Date:Player:W/B:BD:EM
+     * @return The ID.
+     */
+    public String buildID() {
+        return buildID(game, getPlayerName(), isWhite, scores.length);
+    }
+
+    /**
+     * Build the ID of a player in a game:
+     * Date:Player:W/B:BD:EM
+     * @param game The game.
+     * @param name The player's name.
+     * @param isWhite Whether the player was white.
+     * @param moves The number of the player's moves evaluated.
+     * @return The ID.
+     */
+    static String buildID(Game game, String name, boolean isWhite, int moves) {
+        String date = game.getTagValue("Date");
+        String year = date.length() >= 4 ? date.substring(0, 4) : "????";
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH);
+        }
+        return String.format("%s:%-" + MAX_NAME_LENGTH + "s:%s:%3d:%3d",
+                year, name, isWhite ? "W" : "B", game.getBookDepth(), moves);
+    }
+
+    /**
+     * Format the stats of a player in a game:
+     * Date:Player:W/B:BD:EM:Depth:AE:sd:CV:Res:Hash:
+     * @param game The game.
+     * @param name The player's name.
+     * @param isWhite Whether the player was white.
+     * @param moves The number of the player's moves evaluated.
+     * @param AE The average error.
+     * @param sd The standard deviation of the errors.
+     * @param CV The coincidence value.
+     * @param result The game's result.
+     * @return The stats.
+     */
+    static String format(Game game, String name, boolean isWhite, int moves,
+                         double AE, double sd, double CV, String result) {
+        if (result.equals("1/2-1/2")) {
+            result = "1/2";
+        }
+        return buildID(game, name, isWhite, moves)
+                + String.format(":%2s:%8.2f:%6.1f:%5.2f:%3s:%8s:",
+                        game.getAnalysis().getSearchDepth(), AE, sd, CV, result,
+                        game.getTagValue("HashCode"));
+    }
+
+    /**
+     * Return the stats in the format:
+     * Date:Player:W/B:BD:EM:Depth:AE:sd:CV:Res:Hash:
+     * followed by AElo:AEhi:CVlo:CVhi: if there are confidence intervals,
+     * and the score differences if full scores are to be shown.
+     * @return The stats.
+     */
+    @Override
+    public String toString() {
+        double AE = getAE();
+        StringBuilder builder = new StringBuilder(format(game, getPlayerName(), isWhite, scores.length,
+                AE, sd(AE), CV, game.getTagValue("Result")));
+        if (interval != null) {
+            builder.append(interval).append(':');
+        }
+        if (showFullScores) {
+            for (String difference : textDifferences) {
+                builder.append(' ').append(difference);
+            }
+        }
+        return builder.toString();
+    }
+
     /**
      * Return the standard deviation of the scores.
      *
@@ -0,0 +1,120 @@
+package dataextract;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A weighted random sample of a fixed size, drawn in a single pass.
+ *
+ * Each item is given the key log(u) / weight, where u is a uniform random
+ * number between 0 and 1, and the sample is the items with the largest
+ * keys (Efraimidis and Spirakis' A-ES). Since the sample depends only on
+ * the keys, reservoirs filled by different threads can be merged into
+ * exactly the sample that a single reservoir would have drawn; when u is
+ * derived from the item itself rather than from a shared generator, the
+ * sample is the same in every run, whatever the number of threads or
+ * the order of the items.
+ *
+ * @param <T> The type of item.
+ */
+public class Reservoir<T> {
+    private static final Comparator<Entry<?>> ORDER =
+            Comparator.<Entry<?>>comparingDouble(entry -> entry.key).thenComparingLong(entry -> entry.tiebreak);
+
+    // The size of the sample.
+    private final int capacity;
+    // The sample, smallest key first.
+    private final PriorityQueue<Entry<T>> heap;
+
+    /**
+     * An item and its key.
+     */
+    private static final class Entry<T> {
+        private final T item;
+        private final double key;
+        private final long tiebreak;
+
+        Entry(T item, double key, long tiebreak) {
+            this.item = item;
+            this.key = key;
+            this.tiebreak = tiebreak;
+        }
+    }
+
+    /**
+     * Create an empty reservoir.
+     * @param capacity The size of the sample.
+     */
+    public Reservoir(int capacity) {
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<>(Math.max(1, capacity + 1), ORDER);
+    }
+
+    /**
+     * Offer an item for the sample.
+     * @param item The item.
+     * @param random A number that identifies the item, from which its
+     *               uniform random number is derived.
+     * @param weight The item's weight, which must be positive.
+     */
+    public void offer(T item, long random, double weight) {
+        long bits = mix(random);
+        // Uniform in (0, 1], so that its log is finite.
+        double uniform = ((bits >>> 11) + 1) * 0x1.0p-53;
+        add(new Entry<>(item, Math.log(uniform) / weight, bits));
+    }
+
+    /**
+     * Add the sample of another reservoir to this one, keeping the
+     * combined sample.
+     * @param other The other reservoir.
+     */
+    public void merge(Reservoir<T> other) {
+        for (Entry<T> entry : other.heap) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Return the sample, in order of decreasing key, which is a random
+     * order that is the same in every run.
+     * @return The sampled items.
+     */
+    public List<T> getItems() {
+        List<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(ORDER.reversed());
+        List<T> items = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * Return the number of items in the sample.
+     * @return The number of items.
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    private void add(Entry<T> entry) {
+        if (heap.size() < capacity) {
+            heap.add(entry);
+        } else if (capacity > 0 && ORDER.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * Spread the bits of a number (SplitMix64's finaliser).
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,864 @@
+package dataextract;
+
+import analyzerTools.GameHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of the stats of players in analysed games, so that
+ * results can be queried without analysing or parsing the games again.
+ *
+ * Each result is a fixed-width binary record holding the game's identity
+ * (Game.getIdentity) and the hash of its moves, the player's name and
+ * colour, AE, SD, CV, the number of evaluated moves, and the engine and
+ * depth of the analysis. Appended records are written by a single
+ * committer thread, which writes and forces everything queued while the
+ * previous batch was being forced, so that many appends share one disk
+ * flush. Reads use a memory map of the committed records, with in-memory
+ * hash tables by game and by player, so a lookup among millions of results
+ * touches only the matching records.
+ *
+ * Analysing a game again appends a new record for each player, which
+ * supersedes the earlier one with the same identity and colour. Different
+ * games with the same moves have different identities, so neither replaces
+ * the other. Once enough records have been superseded, the file is
+ * compacted in the background: live records are copied to a new file,
+ * which then replaces the old one.
+ *
+ * A log is shared by all users of the same file in a JVM; open and close
+ * count those users.
+ */
+public class ResultsLog implements AutoCloseable {
+    private static final int MAGIC = 0x52534c47;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 144;
+    // Offsets of the fields of a record.
+    private static final int GAME_HASH = 0;
+    private static final int YEAR = 8;
+    private static final int COLOUR = 12;
+    private static final int FLAGS = 13;
+    private static final int BOOK_DEPTH = 14;
+    private static final int MOVE_COUNT = 16;
+    private static final int DEPTH = 20;
+    private static final int AVERAGE_ERROR = 24;
+    private static final int STANDARD_DEVIATION = 32;
+    private static final int COINCIDENCE = 40;
+    private static final int RESULT = 48;
+    private static final int CHECKSUM = 52;
+    private static final int HASH_CODE = 56;
+    private static final int HASH_CODE_LENGTH = 8;
+    private static final int PLAYER = 64;
+    private static final int PLAYER_LENGTH = 40;
+    private static final int ENGINE = 104;
+    private static final int ENGINE_LENGTH = 24;
+    private static final int IDENTITY = 128;
+    // Flag bits.
+    private static final int PARTIAL = 1;
+    private static final String[] RESULTS = {"", "1-0", "0-1", "1/2", "*"};
+    // The most records waiting to be committed before append waits.
+    private static final int MAX_PENDING = 1 << 16;
+    // Compact once this many records, and this fraction of all records, have been superseded.
+    private static final int COMPACT_MIN_SUPERSEDED = 4096;
+    private static final double COMPACT_FRACTION = 0.25;
+
+    // Logs in use, by absolute file name.
+    private static final Map<Path, ResultsLog> OPEN = new HashMap<>();
+
+    private final Path path;
+    private int users;
+    // Guards the file: held while writing, forcing or replacing it.
+    private final Object fileLock = new Object();
+    private FileChannel channel;
+    // The committed records, mapped on demand.
+    private MappedByteBuffer map;
+    private int mappedCount;
+    // The number of committed records.
+    private int count;
+    // The number of committed records superseded by a later one.
+    private int superseded;
+    // Open-addressed table of the latest record, plus 1, for each game identity and colour; 0 for empty.
+    private int[] byGame;
+    // Open-addressed table of the latest record, plus 1, for each player; 0 for empty.
+    private int[] byPlayer;
+    // For each record, the previous record, plus 1, of the same player.
+    private int[] previousOfPlayer;
+
+    // Encoded records waiting for the committer.
+    private List<byte[]> pending = new ArrayList<>();
+    // The number of records ever appended and ever committed since opening.
+    private long appended;
+    private long committed;
+    private IOException failure;
+    private boolean closing;
+    private boolean compacting;
+    private final Thread committer;
+
+    /**
+     * A single stored result.
+     */
+    public static final class Result {
+        private final GameHash identity;
+        private final long gameHash;
+        private final int year;
+        private final boolean white;
+        private final boolean partial;
+        private final int bookDepth;
+        private final int moveCount;
+        private final int depth;
+        private final double AE;
+        private final double SD;
+        private final double CV;
+        private final String result;
+        private final String hashCode;
+        private final String playerName;
+        private final String engineID;
+
+        private Result(ByteBuffer records, int base) {
+            identity = new GameHash(records.getLong(base + IDENTITY), records.getLong(base + IDENTITY + 8));
+            gameHash = records.getLong(base + GAME_HASH);
+            year = records.getInt(base + YEAR);
+            white = records.get(base + COLOUR) == 0;
+            partial = (records.get(base + FLAGS) & PARTIAL) != 0;
+            bookDepth = records.getShort(base + BOOK_DEPTH);
+            moveCount = records.getInt(base + MOVE_COUNT);
+            depth = records.getInt(base + DEPTH);
+            AE = records.getDouble(base + AVERAGE_ERROR);
+            SD = records.getDouble(base + STANDARD_DEVIATION);
+            CV = records.getDouble(base + COINCIDENCE);
+            int code = records.get(base + RESULT);
+            result = code >= 0 && code < RESULTS.length ? RESULTS[code] : "";
+            hashCode = getString(records, base + HASH_CODE, HASH_CODE_LENGTH);
+            playerName = getString(records, base + PLAYER, PLAYER_LENGTH);
+            engineID = getString(records, base + ENGINE, ENGINE_LENGTH);
+        }
+
+        /**
+         * @return The identity of the game, from Game.getIdentity.
+         */
+        public GameHash getIdentity() {
+            return identity;
+        }
+
+        /**
+         * @return The hash of the game's moves, from Game.getMoveHash.
+         */
+        public long getGameHash() {
+            return gameHash;
+        }
+
+        /**
+         * @return The year of the game, or 0 if unknown.
+         */
+        public int getYear() {
+            return year;
+        }
+
+        /**
+         * @return true if the player was white.
+         */
+        public boolean isWhite() {
+            return white;
+        }
+
+        /**
+         * Whether the analysis was cut short by a time budget.
+         * @return true if the analysis was partial.
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        /**
+         * @return The book depth.
+         */
+        public int getBookDepth() {
+            return bookDepth;
+        }
+
+        /**
+         * @return The number of evaluated moves.
+         */
+        public int getMoveCount() {
+            return moveCount;
+        }
+
+        /**
+         * @return The search depth.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return The average error.
+         */
+        public double getAE() {
+            return AE;
+        }
+
+        /**
+         * @return The standard deviation of the errors.
+         */
+        public double getSD() {
+            return SD;
+        }
+
+        /**
+         * @return The coincidence value.
+         */
+        public double getCV() {
+            return CV;
+        }
+
+        /**
+         * @return The result, such as 1-0 or 1/2.
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * @return The HashCode tag of the game.
+         */
+        public String getHashCode() {
+            return hashCode;
+        }
+
+        /**
+         * @return The player's name.
+         */
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        /**
+         * @return The engine that analysed the game.
+         */
+        public String getEngineID() {
+            return engineID;
+        }
+
+        /**
+         * Return the result in the format of PlayerStats:
+         * Date:Player:W/B:BD:EM:Depth:AE:sd:CV:Res:Hash:
+         * @return The result.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s:%-30s:%s:%3d:%3d:%2d:%8.2f:%6.1f:%5.2f:%3s:%8s:",
+                    year > 0 ? String.valueOf(year) : "????", playerName, white ? "W" : "B",
+                    bookDepth, moveCount, depth, AE, SD, CV, result, hashCode);
+        }
+    }
+
+    /**
+     * Open a log, creating it if it does not exist. A record left
+     * incomplete by a crash is discarded.
+     *
+     * @param file The log file.
+     * @return The log, shared with other users of the same file.
+     * @throws IOException if the file cannot be opened or is not a log.
+     */
+    public static ResultsLog open(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            ResultsLog log = OPEN.get(key);
+            if (log == null) {
+                log = new ResultsLog(key);
+                OPEN.put(key, log);
+            }
+            log.users++;
+            return log;
+        }
+    }
+
+    private ResultsLog(Path path) throws IOException {
+        this.path = path;
+        channel = openChannel(path);
+        rebuildIndex();
+        committer = new Thread(this::commitLoop, "results-log-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Queue the stats of a player for writing to the log. The record is
+     * durable once sync returns.
+     *
+     * @param stats The stats.
+     * @throws IOException if an earlier write failed.
+     */
+    public void append(PlayerStats stats) throws IOException {
+        byte[] record = encode(stats);
+        synchronized (this) {
+            while (pending.size() >= MAX_PENDING && failure == null) {
+                waitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (closing) {
+                throw new IOException("Results log is closed: " + path);
+            }
+            pending.add(record);
+            appended++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until every record appended so far has been written and forced
+     * to disk.
+     *
+     * @throws IOException if a write failed.
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        while (committed < target && failure == null) {
+            waitUninterruptibly();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Return the number of current results, those not superseded.
+     *
+     * @return The number of results.
+     */
+    public synchronized int size() {
+        return count - superseded;
+    }
+
+    /**
+     * Return the current results of a player.
+     *
+     * @param playerName The player's name, as it appears in the game's tags.
+     * @return The player's results, most recent first.
+     * @throws IOException if the log cannot be mapped.
+     */
+    public synchronized List<Result> findPlayer(String playerName) throws IOException {
+        ByteBuffer records = mapped();
+        byte[] name = encodeString(playerName, PLAYER_LENGTH);
+        List<Result> results = new ArrayList<>();
+        int slot = findPlayerSlot(records, name, hashBytes(name));
+        for (int record = byPlayer[slot] - 1; record >= 0; record = previousOfPlayer[record] - 1) {
+            if (isLive(records, record)) {
+                results.add(new Result(records, base(record)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return the current results of both players in a game.
+     *
+     * @param identity The game's identity, from Game.getIdentity.
+     * @return The results, white first.
+     * @throws IOException if the log cannot be mapped.
+     */
+    public synchronized List<Result> findGame(GameHash identity) throws IOException {
+        ByteBuffer records = mapped();
+        List<Result> results = new ArrayList<>(2);
+        for (int colour = 0; colour < 2; colour++) {
+            int record = byGame[findGameSlot(records, identity.getHigh(), identity.getLow(), colour)] - 1;
+            if (record >= 0) {
+                results.add(new Result(records, base(record)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Pass every current result, in the order stored, to an action.
+     *
+     * @param action The action.
+     * @throws IOException if the log cannot be mapped.
+     */
+    public synchronized void forEach(Consumer<Result> action) throws IOException {
+        ByteBuffer records = mapped();
+        for (int record = 0; record < count; record++) {
+            if (isLive(records, record)) {
+                action.accept(new Result(records, base(record)));
+            }
+        }
+    }
+
+    /**
+     * Copy the current results to a new file that replaces the log,
+     * discarding superseded records.
+     *
+     * @throws IOException on failure to write the new file.
+     */
+    public void compact() throws IOException {
+        int copied;
+        ByteBuffer records;
+        synchronized (this) {
+            if (compacting || closing) {
+                return;
+            }
+            compacting = true;
+            copied = count;
+            records = mapped();
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel copy = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Records are never changed once written, so the bulk of the copy needs no lock.
+            copy.write(header(), 0);
+            ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            for (int record = 0; record < copied; record++) {
+                if (isLiveSnapshot(record)) {
+                    batch.put(records.slice(base(record), RECORD_SIZE));
+                    if (!batch.hasRemaining()) {
+                        writeFully(copy, batch);
+                    }
+                }
+            }
+            writeFully(copy, batch);
+            synchronized (fileLock) {
+                synchronized (this) {
+                    // Records committed during the copy; the index settles which are current.
+                    ByteBuffer latest = mapped();
+                    for (int record = copied; record < count; record++) {
+                        batch.put(latest.slice(base(record), RECORD_SIZE));
+                        if (!batch.hasRemaining()) {
+                            writeFully(copy, batch);
+                        }
+                    }
+                    writeFully(copy, batch);
+                    copy.force(true);
+                    channel.close();
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = openChannel(path);
+                    map = null;
+                    mappedCount = 0;
+                    rebuildIndex();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+            synchronized (this) {
+                compacting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stop using the log. The last user to close it waits for every
+     * appended record to be committed and closes the file.
+     *
+     * @throws IOException if a write failed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN) {
+            if (--users > 0) {
+                sync();
+                return;
+            }
+            OPEN.remove(path);
+        }
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            while (compacting) {
+                waitUninterruptibly();
+            }
+        }
+        synchronized (fileLock) {
+            channel.close();
+        }
+        synchronized (this) {
+            map = null;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Write each batch of pending records, force it to disk and add it
+     * to the index.
+     */
+    private void commitLoop() {
+        while (true) {
+            List<byte[]> batch;
+            synchronized (this) {
+                while (pending.isEmpty() && !closing) {
+                    waitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                notifyAll();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+            for (byte[] record : batch) {
+                buffer.put(record);
+            }
+            buffer.flip();
+            boolean compact;
+            synchronized (fileLock) {
+                try {
+                    long position = HEADER_SIZE + (long) count * RECORD_SIZE;
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    try {
+                        ensureCapacity(count + batch.size());
+                        int first = count;
+                        count += batch.size();
+                        ByteBuffer records = mapped();
+                        for (int record = first; record < count; record++) {
+                            addToIndex(records, record);
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                        notifyAll();
+                        return;
+                    }
+                    committed += batch.size();
+                    compact = !compacting && superseded >= COMPACT_MIN_SUPERSEDED
+                            && superseded >= count * COMPACT_FRACTION;
+                    notifyAll();
+                }
+            }
+            if (compact) {
+                Thread compactor = new Thread(() -> {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        System.err.println("Error compacting " + path + ": " + e.getMessage());
+                    }
+                }, "results-log-compactor");
+                compactor.setDaemon(true);
+                compactor.start();
+            }
+        }
+    }
+
+    /**
+     * Encode the stats of a player as a record.
+     */
+    private static byte[] encode(PlayerStats stats) {
+        Game game = stats.getGame();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        GameHash identity = game.getIdentity();
+        record.putLong(IDENTITY, identity.getHigh());
+        record.putLong(IDENTITY + 8, identity.getLow());
+        record.putLong(GAME_HASH, game.getMoveHash());
+        String date = game.getTagValue("Date");
+        record.putInt(YEAR, date.length() >= 4 ? parseNumber(date.substring(0, 4)) : 0);
+        record.put(COLOUR, (byte) (stats.isWhite() ? 0 : 1));
+        Analysis analysis = game.getAnalysis();
+        record.put(FLAGS, (byte) (analysis != null && analysis.isPartial() ? PARTIAL : 0));
+        record.putShort(BOOK_DEPTH, (short) game.getBookDepth());
+        record.putInt(MOVE_COUNT, stats.getNumScores());
+        record.putInt(DEPTH, analysis != null ? parseNumber(analysis.getSearchDepth()) : 0);
+        record.putDouble(AVERAGE_ERROR, stats.getAE());
+        record.putDouble(STANDARD_DEVIATION, stats.getSD());
+        record.putDouble(COINCIDENCE, stats.getCV());
+        String result = game.getTagValue("Result");
+        int code = Arrays.asList(RESULTS).indexOf(result.equals("1/2-1/2") ? "1/2" : result);
+        record.put(RESULT, (byte) Math.max(code, 0));
+        record.put(HASH_CODE, encodeString(game.getTagValue("HashCode"), HASH_CODE_LENGTH));
+        record.put(PLAYER, encodeString(stats.getPlayerName(), PLAYER_LENGTH));
+        record.put(ENGINE, encodeString(analysis != null ? analysis.getEngineID() : "", ENGINE_LENGTH));
+        record.putInt(CHECKSUM, checksum(record, 0));
+        return record.array();
+    }
+
+    /**
+     * Open the file, writing the header of a new log, checking the header
+     * of an existing one and discarding any incomplete last record.
+     */
+    private static FileChannel openChannel(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                channel.write(header(), 0);
+                channel.force(true);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Keep reading.
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a results log: " + path);
+            }
+            if (header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Results log of unsupported version " + header.getInt(4) + ": " + path);
+            }
+            long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * Index every record in the file, truncating it at the first record
+     * whose checksum fails.
+     */
+    private void rebuildIndex() throws IOException {
+        int records = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        count = 0;
+        superseded = 0;
+        byGame = new int[tableSize(records)];
+        byPlayer = new int[tableSize(records)];
+        previousOfPlayer = new int[Math.max(records, 16)];
+        ByteBuffer mapped = mapRecords(records);
+        for (int record = 0; record < records; record++) {
+            if (checksum(mapped, base(record)) != mapped.getInt(base(record) + CHECKSUM)) {
+                System.err.println("Discarding " + (records - record) + " damaged records from " + path);
+                channel.truncate(HEADER_SIZE + (long) record * RECORD_SIZE);
+                map = null;
+                mappedCount = 0;
+                return;
+            }
+            addToIndex(mapped, record);
+            count++;
+        }
+    }
+
+    /**
+     * Add a record to the tables by game and by player.
+     *
+     * @param records The mapped records, including this one.
+     * @param record The number of the record.
+     */
+    private void addToIndex(ByteBuffer records, int record) {
+        int base = base(record);
+        int gameSlot = findGameSlot(records, records.getLong(base + IDENTITY), records.getLong(base + IDENTITY + 8),
+                records.get(base + COLOUR));
+        if (byGame[gameSlot] != 0) {
+            superseded++;
+        }
+        byGame[gameSlot] = record + 1;
+
+        byte[] name = new byte[PLAYER_LENGTH];
+        records.get(base + PLAYER, name);
+        int playerSlot = findPlayerSlot(records, name, hashBytes(name));
+        previousOfPlayer[record] = byPlayer[playerSlot];
+        byPlayer[playerSlot] = record + 1;
+    }
+
+    private int findGameSlot(ByteBuffer records, long high, long low, int colour) {
+        int mask = byGame.length - 1;
+        int slot = (int) mix((high ^ low) * 2 + colour) & mask;
+        while (byGame[slot] != 0) {
+            int base = base(byGame[slot] - 1);
+            if (records.getLong(base + IDENTITY) == high && records.getLong(base + IDENTITY + 8) == low
+                    && records.get(base + COLOUR) == colour) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int findPlayerSlot(ByteBuffer records, byte[] name, long hash) {
+        int mask = byPlayer.length - 1;
+        int slot = (int) mix(hash) & mask;
+        while (byPlayer[slot] != 0) {
+            int base = base(byPlayer[slot] - 1) + PLAYER;
+            boolean same = true;
+            for (int index = 0; index < PLAYER_LENGTH && same; index++) {
+                same = records.get(base + index) == name[index];
+            }
+            if (same) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Is a record the latest for its game identity and colour?
+     */
+    private boolean isLive(ByteBuffer records, int record) {
+        int base = base(record);
+        return byGame[findGameSlot(records, records.getLong(base + IDENTITY), records.getLong(base + IDENTITY + 8),
+                records.get(base + COLOUR))] == record + 1;
+    }
+
+    /**
+     * As isLive, for use by compaction without holding the lock. A
+     * record wrongly taken to be live is only copied; the index of the
+     * new file still marks it as superseded.
+     */
+    private synchronized boolean isLiveSnapshot(int record) throws IOException {
+        return isLive(mapped(), record);
+    }
+
+    /**
+     * Make room in the tables for the given number of records, rebuilding
+     * the hash tables when they become more than half full.
+     */
+    private void ensureCapacity(int records) throws IOException {
+        if (records > previousOfPlayer.length) {
+            previousOfPlayer = Arrays.copyOf(previousOfPlayer, Math.max(records, previousOfPlayer.length * 2));
+        }
+        if (records * 2 > byGame.length) {
+            int oldCount = count;
+            byGame = new int[tableSize(records * 2)];
+            byPlayer = new int[byGame.length];
+            count = 0;
+            superseded = 0;
+            ByteBuffer mapped = mapped();
+            for (int record = 0; record < oldCount; record++) {
+                addToIndex(mapped, record);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Return the committed records, mapping any that are not yet mapped.
+     */
+    private ByteBuffer mapped() throws IOException {
+        if (map == null || mappedCount < count) {
+            mapRecords(count);
+        }
+        return map;
+    }
+
+    private ByteBuffer mapRecords(int records) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) records * RECORD_SIZE);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        mappedCount = records;
+        return map;
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, channel.size());
+        }
+        buffer.clear();
+    }
+
+    private static int base(int record) {
+        return record * RECORD_SIZE;
+    }
+
+    private static int tableSize(int records) {
+        int size = 64;
+        while (size < records * 2) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long hashBytes(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Return the CRC of a record, leaving out its checksum field.
+     */
+    private static int checksum(ByteBuffer records, int base) {
+        CRC32 crc = new CRC32();
+        crc.update(records.slice(base, CHECKSUM));
+        crc.update(records.slice(base + CHECKSUM + 4, RECORD_SIZE - CHECKSUM - 4));
+        return (int) crc.getValue();
+    }
+
+    private static int parseNumber(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Encode text as UTF-8, cut short or padded with zeros to the given
+     * length, without splitting a character.
+     */
+    private static byte[] encodeString(String text, int length) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int used = Math.min(bytes.length, length);
+        while (used < bytes.length && used > 0 && (bytes[used] & 0xc0) == 0x80) {
+            used--;
+        }
+        return Arrays.copyOf(Arrays.copyOf(bytes, used), length);
+    }
+
+    private static String getString(ByteBuffer records, int offset, int length) {
+        byte[] bytes = new byte[length];
+        records.get(offset, bytes);
+        int used = 0;
+        while (used < length && bytes[used] != 0) {
+            used++;
+        }
+        return new String(bytes, 0, used, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,217 @@
+package dataextract;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A sequence of processing stages connected by bounded queues.
+ * Each stage has its own worker threads. A stage whose output queue
+ * is full waits, so a slow stage throttles those before it rather
+ * than letting their output accumulate.
+ *
+ * With more than one thread in a stage, items may leave the stage
+ * in a different order from the one in which they entered it.
+ *
+ * An exception thrown by a stage skips the item. Anything worse, such
+ * as an Error, stops the pipeline: the remaining items are drained
+ * without being processed and the failure is thrown by run.
+ */
+public class StagedPipeline {
+
+    /**
+     * The work of a single stage.
+     *
+     * @param <I> The type of item taken by the stage.
+     * @param <O> The type of item passed to the next stage.
+     */
+    public interface Stage<I, O> {
+        /**
+         * Process an item.
+         *
+         * @param item The item.
+         * @param next Receives any number of items for the next stage.
+         * @throws Exception on failure to process the item, which is then skipped.
+         */
+        void process(I item, Consumer<O> next) throws Exception;
+    }
+
+    // Marks the end of the items in a queue.
+    private static final Object END = new Object();
+
+    private final int queueCapacity;
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> threadCounts = new ArrayList<>();
+    private final List<Stage<Object, Object>> stages = new ArrayList<>();
+    // The input queue of each stage.
+    private final List<BlockingQueue<Object>> queues = new ArrayList<>();
+
+    /**
+     * Create an empty pipeline.
+     *
+     * @param queueCapacity The capacity of the queue in front of each stage.
+     */
+    public StagedPipeline(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Add a stage to the end of the pipeline.
+     *
+     * @param name The stage's name, used in reports.
+     * @param threads The number of worker threads for the stage.
+     * @param stage The work of the stage.
+     * @param <I> The type of item taken by the stage.
+     * @param <O> The type of item passed to the next stage.
+     * @return This pipeline.
+     */
+    @SuppressWarnings("unchecked")
+    public <I, O> StagedPipeline addStage(String name, int threads, Stage<I, O> stage) {
+        names.add(name);
+        threadCounts.add(Math.max(1, threads));
+        stages.add((Stage<Object, Object>) stage);
+        queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        return this;
+    }
+
+    /**
+     * Pass every item from the source through the pipeline and wait
+     * until all stages have finished.
+     *
+     * @param source The items for the first stage.
+     * @param reportMillis How often to report the queue depths to
+     *                     standard error, or 0 for no reports.
+     * @return The number of items skipped because a stage threw an
+     *         exception.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws ExecutionException if a stage failed with an Error, which
+     *                            is the exception's cause.
+     */
+    public long run(Iterator<?> source, long reportMillis) throws InterruptedException, ExecutionException {
+        List<Thread> workers = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong skipped = new AtomicLong();
+        for (int index = 0; index < stages.size(); index++) {
+            BlockingQueue<Object> in = queues.get(index);
+            BlockingQueue<Object> out = index + 1 < queues.size() ? queues.get(index + 1) : null;
+            Stage<Object, Object> stage = stages.get(index);
+            String name = names.get(index);
+            int threads = threadCounts.get(index);
+            AtomicInteger running = new AtomicInteger(threads);
+            for (int thread = 0; thread < threads; thread++) {
+                Thread worker = new Thread(() -> work(name, stage, in, out, running, failure, skipped), name + "-" + thread);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+        }
+
+        ScheduledExecutorService reporter = null;
+        if (reportMillis > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pipeline-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.err.println("# queues: " + getQueueDepths()),
+                    reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            BlockingQueue<Object> first = queues.get(0);
+            while (failure.get() == null && source.hasNext()) {
+                first.put(source.next());
+            }
+            first.put(END);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+            }
+        }
+        if (failure.get() != null) {
+            throw new ExecutionException("Pipeline stopped by a failed stage", failure.get());
+        }
+        return skipped.get();
+    }
+
+    /**
+     * Return the number of items waiting in front of each stage.
+     *
+     * @return The queue depths, as name=depth pairs.
+     */
+    public String getQueueDepths() {
+        StringBuilder depths = new StringBuilder();
+        for (int index = 0; index < queues.size(); index++) {
+            if (index > 0) {
+                depths.append(' ');
+            }
+            depths.append(names.get(index)).append('=').append(queues.get(index).size())
+                    .append('/').append(queueCapacity);
+        }
+        return depths.toString();
+    }
+
+    /**
+     * The loop of a single worker thread. The last worker of a stage to
+     * finish passes the end marker on, however it finishes.
+     */
+    private static void work(String name, Stage<Object, Object> stage, BlockingQueue<Object> in,
+                             BlockingQueue<Object> out, AtomicInteger running, AtomicReference<Throwable> failure,
+                             AtomicLong skipped) {
+        Consumer<Object> next = item -> {
+            if (out != null) {
+                try {
+                    out.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted in stage " + name);
+                }
+            }
+        };
+        try {
+            while (true) {
+                Object item = in.take();
+                if (item == END) {
+                    // Leave the marker for the other workers of this stage.
+                    in.put(END);
+                    break;
+                }
+                if (failure.get() != null) {
+                    // Drain the queue so that earlier stages are not left waiting.
+                    continue;
+                }
+                try {
+                    stage.process(item, next);
+                } catch (Exception e) {
+                    System.err.println("Error in stage " + name + ": " + e);
+                    skipped.incrementAndGet();
+                } catch (Throwable e) {
+                    System.err.println("Failure in stage " + name + ": " + e);
+                    failure.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (running.decrementAndGet() == 0 && out != null) {
+                try {
+                    out.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package dataextract;
+
+import analyzerTools.AnalysisStore;
+import analyzerTools.CompressedInput;
+import analyzerTools.StockPGNAnalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measure the end-to-end throughput of DataExtract and StockPGNAnalyzer on a
+ * synthetic corpus from CorpusGenerator.
+ *
+ * A PGN database and its analysis XML are generated, then three phases are run
+ * and timed: DataExtract reading the analysis XML, DataExtract analysing the PGN
+ * itself, and StockPGNAnalyzer.analyzeGames on the same games. For each phase
+ * the harness reports games and plies per second, the time spent in garbage
+ * collection and the peak resident set size. The peak RSS is read from
+ * /proc/self/status, and is reset before each phase where the kernel allows;
+ * the peak heap is reported alongside it for systems without /proc.
+ *
+ * With an analysis store, games already analysed by an earlier run are not
+ * analysed again by StockPGNAnalyzer, so that the cost of a warm store can be
+ * compared with that of the engine.
+ */
+public class ThroughputHarness {
+    private static final List<String> HARNESS_OPTIONS = Arrays.asList("--games", "--plies", "--pliessd",
+            "--multipv", "--mates", "--players", "--book", "--seed", "--engine", "--depth", "--runs", "--dir", "--store");
+
+    private final CorpusGenerator generator = new CorpusGenerator();
+    private final PrintStream report;
+    private String engineCommand = StockPGNAnalyzer.BUILTIN_ENGINE;
+    private int depth;
+    private int runs = 1;
+    private int games = 1000;
+    // Where StockPGNAnalyzer stores the analysis of each game, or null for none.
+    private Path storeFile;
+    // Flags added to those of every DataExtract run.
+    private String[] extraFlags = new String[0];
+
+    /**
+     * Run the harness.
+     *
+     * @param args [--games N] [--plies N] [--pliessd N] [--multipv N] [--mates F]
+     *             [--players N] [--book N] [--seed S] [--engine command] [--depth D]
+     *             [--runs N] [--dir directory] [--store file] [DataExtract flags ...]
+     */
+    public static void main(String[] args) {
+        ThroughputHarness harness = new ThroughputHarness(System.out);
+        Path directory = null;
+        int argnum = 0;
+        try {
+            // Harness options come first; the remaining arguments are DataExtract flags.
+            while (argnum + 1 < args.length && HARNESS_OPTIONS.contains(args[argnum])) {
+                String value = args[argnum + 1];
+                switch (args[argnum]) {
+                    case "--games":
+                        harness.games = Integer.parseInt(value);
+                        harness.generator.setGames(harness.games);
+                        break;
+                    case "--plies":
+                        harness.generator.setMeanPlies(Double.parseDouble(value));
+                        break;
+                    case "--pliessd":
+                        harness.generator.setPliesSD(Double.parseDouble(value));
+                        break;
+                    case "--multipv":
+                        harness.generator.setMultiPV(Integer.parseInt(value));
+                        break;
+                    case "--mates":
+                        harness.generator.setMateFraction(Double.parseDouble(value));
+                        break;
+                    case "--players":
+                        harness.generator.setPlayers(Integer.parseInt(value));
+                        break;
+                    case "--book":
+                        harness.generator.setBookDepth(Integer.parseInt(value));
+                        break;
+                    case "--seed":
+                        harness.generator.setSeed(Long.parseLong(value));
+                        break;
+                    case "--engine":
+                        harness.engineCommand = value;
+                        break;
+                    case "--depth":
+                        harness.depth = Integer.parseInt(value);
+                        break;
+                    case "--runs":
+                        harness.runs = Integer.parseInt(value);
+                        break;
+                    case "--dir":
+                        directory = Paths.get(value);
+                        break;
+                    case "--store":
+                        harness.storeFile = Paths.get(value);
+                        break;
+                    default:
+                        break;
+                }
+                argnum += 2;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value after: " + args[argnum]);
+            usage();
+            return;
+        }
+        harness.extraFlags = Arrays.copyOfRange(args, argnum, args.length);
+
+        try {
+            boolean temporary = directory == null;
+            if (temporary) {
+                directory = Files.createTempDirectory("throughput");
+            }
+            try {
+                harness.run(directory);
+            } finally {
+                if (temporary) {
+                    delete(directory);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Fatal IO error: " + e.getMessage());
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: --throughput [--games N] [--plies N] [--pliessd N] [--multipv N] [--mates F] "
+                + "[--players N] [--book N] [--seed S] [--engine command] [--depth D] "
+                + "[--runs N] [--dir directory] [--store file] [flags ...]");
+    }
+
+    /**
+     * Create a harness.
+     *
+     * @param report Where to write the measurements.
+     */
+    public ThroughputHarness(PrintStream report) {
+        this.report = report;
+    }
+
+    /**
+     * Generate the corpus in a directory and measure each phase on it.
+     *
+     * @param directory Where to write the corpus.
+     * @throws IOException on error writing the corpus.
+     */
+    public void run(Path directory) throws IOException {
+        Path pgnFile = directory.resolve("corpus.pgn");
+        Path xmlFile = directory.resolve("corpus.xml");
+        Measurement generate = Measurement.start("generate");
+        generator.writePGN(pgnFile);
+        generator.writeXML(xmlFile);
+        long plies = generator.getPliesWritten();
+        generate.stop(2L * games, 2 * plies);
+        report.println(Measurement.HEADER);
+        report.println(generate);
+
+        String[] pgns = StockPGNAnalyzer.splitGames(CompressedInput.readAllLines(pgnFile)).toArray(new String[0]);
+        for (int run = 0; run < runs; run++) {
+            Measurement xml = Measurement.start("extract xml");
+            extract(new String[0], xmlFile);
+            report.println(xml.stop(games, plies));
+
+            List<String> engineFlags = new ArrayList<>(Arrays.asList("--engine", engineCommand));
+            if (depth > 0) {
+                engineFlags.add(isBuiltin() ? "--builtindepth" : "--depth");
+                engineFlags.add(Integer.toString(depth));
+            }
+            Measurement pgn = Measurement.start("extract pgn");
+            extract(engineFlags.toArray(new String[0]), pgnFile);
+            report.println(pgn.stop(games, plies));
+
+            Measurement analyse = Measurement.start("analyse");
+            try (StockPGNAnalyzer analyzer = new StockPGNAnalyzer();
+                 AnalysisStore store = storeFile == null ? null : AnalysisStore.open(storeFile, games)) {
+                analyzer.setEngineCommand(engineCommand);
+                analyzer.setAnalysisStore(store);
+                if (depth > 0) {
+                    if (isBuiltin()) {
+                        analyzer.setBuiltinDepth(depth);
+                    } else {
+                        analyzer.setSearchDepth(depth);
+                    }
+                }
+                analyzer.setThreads(Runtime.getRuntime().availableProcessors());
+                analyzer.analyzeGames(pgns);
+            }
+            report.println(analyse.stop(games, plies));
+        }
+    }
+
+    private boolean isBuiltin() {
+        return engineCommand.equals(StockPGNAnalyzer.BUILTIN_ENGINE);
+    }
+
+    /**
+     * Run DataExtract over a file for every player, discarding its output.
+     */
+    private void extract(String[] engineFlags, Path file) {
+        List<String> args = new ArrayList<>(Arrays.asList("--player", "<WhiteOrBlack>", "--minlength", "0"));
+        args.addAll(Arrays.asList(engineFlags));
+        args.addAll(Arrays.asList(extraFlags));
+        args.add(file.toString());
+        String[] flags = args.toArray(new String[0]);
+        DataExtract extractor = new DataExtract(new PrintStream(OutputStream.nullOutputStream()), false);
+        if (extractor.processFlags(flags) && extractor.getArgnum() < flags.length) {
+            extractor.processFiles(flags);
+        } else {
+            System.err.println("Invalid DataExtract flags: " + String.join(" ", extraFlags));
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * The time, garbage collection and memory used by one phase.
+     */
+    private static class Measurement {
+        static final String HEADER = String.format("%-12s %8s %10s %8s %10s %12s %8s %9s %9s",
+                "phase", "games", "plies", "seconds", "games/s", "plies/s", "gc ms", "rss MB", "heap MB");
+        private static final Path STATUS = Paths.get("/proc/self/status");
+        private static final Path CLEAR_REFS = Paths.get("/proc/self/clear_refs");
+
+        private final String phase;
+        private final long startNanos;
+        private final long startGCMillis;
+        private long games;
+        private long plies;
+        private double seconds;
+        private long gcMillis;
+        private long peakRSS;
+        private long peakHeap;
+
+        private Measurement(String phase) {
+            this.phase = phase;
+            resetPeaks();
+            startGCMillis = gcMillis();
+            startNanos = System.nanoTime();
+        }
+
+        static Measurement start(String phase) {
+            return new Measurement(phase);
+        }
+
+        Measurement stop(long games, long plies) {
+            seconds = (System.nanoTime() - startNanos) / 1e9;
+            this.games = games;
+            this.plies = plies;
+            gcMillis = gcMillis() - startGCMillis;
+            peakRSS = peakRSS();
+            peakHeap = peakHeap();
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %8d %10d %8.2f %10.1f %12.1f %8d %9s %9.1f",
+                    phase, games, plies, seconds, games / seconds, plies / seconds, gcMillis,
+                    peakRSS < 0 ? "n/a" : String.format("%.1f", peakRSS / 1048576.0), peakHeap / 1048576.0);
+        }
+
+        private static long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+            return total;
+        }
+
+        /**
+         * Reset the peak RSS, which Linux allows by writing 5 to clear_refs, and the peak use of each heap pool.
+         */
+        private static void resetPeaks() {
+            try {
+                Files.write(CLEAR_REFS, "5".getBytes());
+            } catch (IOException | UnsupportedOperationException e) {
+                // The peak then covers everything run so far.
+            }
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+
+        /**
+         * @return the peak resident set size in bytes, or -1 if it is not known
+         */
+        private static long peakRSS() {
+            try {
+                for (String line : Files.readAllLines(STATUS)) {
+                    if (line.startsWith("VmHWM:")) {
+                        String[] fields = line.trim().split("\\s+");
+                        return Long.parseLong(fields[1]) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Not Linux.
+            }
+            return -1;
+        }
+
+        /**
+         * @return the sum of the peak use of each heap pool, in bytes
+         */
+        private static long peakHeap() {
+            long total = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    total += pool.getPeakUsage().getUsed();
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package dataextract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The K largest keys seen, each with a reference to what it came from
+ * and the value it was computed from, held in a bounded min-heap so that
+ * offering a key allocates nothing.
+ *
+ * Of equal keys, the one with the smaller reference ranks higher, so
+ * the result does not depend on the order in which keys are offered;
+ * heaps filled by separate threads can be merged into exactly the result
+ * that a single heap would have held.
+ *
+ * @param <T> The type of the values.
+ */
+public class TopK<T> {
+    // The most entries kept.
+    private final int capacity;
+    // The heap, lowest ranked entry first.
+    private final double[] keys;
+    private final long[] references;
+    private final Object[] values;
+    private int size;
+
+    /**
+     * Create an empty heap.
+     * @param capacity The number of entries to keep.
+     */
+    public TopK(int capacity) {
+        this.capacity = capacity;
+        keys = new double[capacity];
+        references = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Offer a key, which is kept if it ranks among the K highest so far.
+     * NaN keys are ignored.
+     * @param key The key.
+     * @param reference What the key came from.
+     * @param value What the key was computed from.
+     */
+    public void offer(double key, long reference, T value) {
+        if (Double.isNaN(key) || capacity == 0) {
+            return;
+        }
+        if (size < capacity) {
+            keys[size] = key;
+            references[size] = reference;
+            values[size] = value;
+            siftUp(size++);
+        } else if (ranksAbove(key, reference, keys[0], references[0])) {
+            keys[0] = key;
+            references[0] = reference;
+            values[0] = value;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offer every entry of another heap to this one.
+     * @param other The other heap.
+     */
+    public void merge(TopK<T> other) {
+        for (int index = 0; index < other.size; index++) {
+            offer(other.keys[index], other.references[index], other.value(index));
+        }
+    }
+
+    /**
+     * Return the number of entries kept.
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the references of the entries kept, highest ranked first.
+     * @return The references.
+     */
+    public long[] getReferences() {
+        int[] order = order();
+        long[] ranked = new long[size];
+        for (int index = 0; index < size; index++) {
+            ranked[index] = references[order[index]];
+        }
+        return ranked;
+    }
+
+    /**
+     * Return the values of the entries kept, highest ranked first.
+     * @return The values.
+     */
+    public List<T> getValues() {
+        List<T> ranked = new ArrayList<>(size);
+        for (int index : order()) {
+            ranked.add(value(index));
+        }
+        return ranked;
+    }
+
+    /**
+     * Return the positions in the heap of the entries kept, highest ranked first.
+     */
+    private int[] order() {
+        Integer[] order = new Integer[size];
+        for (int index = 0; index < size; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (first, second) ->
+                ranksAbove(keys[first], references[first], keys[second], references[second]) ? -1
+                        : ranksAbove(keys[second], references[second], keys[first], references[first]) ? 1 : 0);
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(int index) {
+        return (T) values[index];
+    }
+
+    private static boolean ranksAbove(double key, long reference, double otherKey, long otherReference) {
+        return key > otherKey || (key == otherKey && reference < otherReference);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksAbove(keys[parent], references[parent], keys[index], references[index])) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int lowest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (ranksAbove(keys[lowest], references[lowest], keys[child], references[child])) {
+                    lowest = child;
+                }
+            }
+            if (lowest == index) {
+                return;
+            }
+            swap(index, lowest);
+            index = lowest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        double key = keys[first];
+        keys[first] = keys[second];
+        keys[second] = key;
+        long reference = references[first];
+        references[first] = references[second];
+        references[second] = reference;
+        Object value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+    }
+}
@@ -20,29 +20,37 @@ package dataextract;
  *  https://www.cs.kent.ac.uk/people/staff/djb/
  */
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import analyzerTools.Analyzer;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import analyzerTools.CompressedInput;
 
 /**
  * XML processor the files output by the analyser.
  *
+ * A processor holds no state of its own, so a single instance may read any
+ * number of files, from any number of threads at once. The files are read
+ * as a stream, game by game, rather than built into a document first. Each
+ * thread creates its parser factory once and reuses it for every file it
+ * reads.
+ *
+ * The tags and moves of a game are those of its game element, so a game
+ * without a tags element has no tags, as when the file was read into a
+ * document. In files without game elements, a game has the tags and
+ * moves last seen. Tags, evaluations and moves that lack a part are
+ * reported and skipped.
+ *
  * @author David J. Barnes (d.j.barnes@kent.ac.uk)
  */
 public class XMLProcessor {
@@ -51,7 +59,6 @@ public class XMLProcessor {
             ANALYSIS_TAG = "analysis",
             EVALUATION_TAG = "evaluation",
             GAME_TAG = "game",
-            GAMELIST_TAG = "gamelist",
             MOVE_TAG = "move",
             MOVES_TAG = "moves",
             PLAYED_TAG = "played",
@@ -60,227 +67,238 @@ public class XMLProcessor {
     private static final String SEARCH_DEPTH = "searchDepth";
     private static final String BOOK_DEPTH = "bookDepth";
     private static final String ENGINE = "engine";
-    // The list of nodes.
-    private NodeList nodeList;
-    // The list of games in the file.
-    private final List<Game> gameList;
+    private static final String PLAYER = "player";
+    // The attributes of a tag and of an evaluation.
+    private static final String NAME = "name";
+    private static final String VALUE = "value";
+    private static final String MOVE = "move";
+    // The parser factory of each thread.
+    private static final ThreadLocal<XMLInputFactory> FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Deliver each text as a single event.
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
 
     /**
      * Create a processor.
      */
     public XMLProcessor() {
-        nodeList = null;
-        gameList = new ArrayList<>();
     }
 
     /**
-     * Process the given XML file.
+     * Read the games of the given XML file, which may be gzip-compressed.
      *
      * @param filename The name of the file.
-     * @throws ParserConfigurationException on configuration error.
+     * @return The games.
      * @throws IOException on file-processing errors.
      */
-    public void processXMLFile(String filename) throws ParserConfigurationException, IOException {
-        File file = new File(filename);
-        // Configure the input source for UTF-8 encoding, just in case.
-        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
-            InputSource utf8Source = new InputSource(reader);
-            utf8Source.setEncoding("UTF-8");
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(utf8Source);
-            doc.getDocumentElement().normalize();
-            nodeList = doc.getElementsByTagName(GAMELIST_TAG);
-            processGameList(nodeList, 0);
-        } catch (SAXException e) {
-            System.err.println("Sax exception in " + filename + ": " + e);
-        } catch (IOException e) {
-            System.err.println("IOException in " + filename + ": " + e);
-        }
+    public List<Game> readGames(String filename) throws IOException {
+        List<Game> games = new ArrayList<>();
+        readGames(filename, games::add);
+        return games;
     }
 
     /**
-     * Return the list of games extracted.
+     * Pass each game of the given XML file, which may be gzip-compressed,
+     * to a consumer as soon as it has been read.
      *
-     * @return The list of games.
+     * @param filename The name of the file.
+     * @param consumer Receives the games, in order.
+     * @throws IOException on file-processing errors.
      */
-    public List<Game> getGameList() {
-        return gameList;
+    public void readGames(String filename, Consumer<Game> consumer) throws IOException {
+        try (InputStream in = CompressedInput.open(Paths.get(filename))) {
+            readGames(in, filename, consumer);
+        }
     }
 
     /**
-     * Process a list of nodes representing games.
+     * Read the games of XML read from the given stream.
+     * Errors in the XML are reported, and the games before them returned.
      *
-     * @param list The list of nodes.
-     * @param depth The current node depth.
+     * @param in The XML source.
+     * @param name The name of the source, for error messages.
+     * @return The games.
      */
-    private void processGameList(NodeList list, int depth) {
-        List<PGNTag> tagList = null;
-        String moves = null;
-        int listLength = list.getLength();
-        for (int n = 0; n < listLength; n++) {
-            Node node = list.item(n);
-            String value = node.getNodeValue();
-
-            switch (node.getNodeType()) {
-                case Node.ELEMENT_NODE:
-                    Element element = (Element) node;
-                    String eName = element.getNodeName();
-                    switch (eName) {
-                        case ANALYSIS_TAG:
-                            Analysis analysis = process_analysis_tag(node.getChildNodes());
-                            NamedNodeMap map = node.getAttributes();
-                            int mapLength = map.getLength();
-                            for (int index = 0; index < mapLength; index++) {
-                                String nodeName = map.item(index).getNodeName();
-                                if (nodeName.equalsIgnoreCase(SEARCH_DEPTH)) {
-                                    analysis.setSearchDepth(map.item(index).getNodeValue());
-                                } else if (nodeName.equalsIgnoreCase(BOOK_DEPTH)) {
-                                    analysis.setBookDepth(map.item(index).getNodeValue());
-                                } else if (nodeName.equalsIgnoreCase(ENGINE)) {
-                                    analysis.setEngineID(map.item(index).getNodeValue());
-                                }
-                            }
-                            gameList.add(new Game(Analyzer.Player.BLACK, moves, analysis));
-                            break;
-                        case MOVES_TAG:
-                            // Get the moves as the text of the single child node.
-                            if (node.hasChildNodes()) {
-                                NodeList children = node.getChildNodes();
-                                moves = children.item(0).getNodeValue();
-                            } else {
-                                moves = "??";
-                            }
-                            break;
-                        case TAGS_TAG:
-                            tagList = process_tag_list(node.getChildNodes());
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
-            }
-            if (node.hasChildNodes()) {
-                processGameList(node.getChildNodes(), depth + 1);
-            }
-        }
+    public List<Game> readGames(InputStream in, String name) {
+        List<Game> games = new ArrayList<>();
+        readGames(in, name, games::add);
+        return games;
     }
 
     /**
-     * Process a list of tags
+     * Pass each game of XML read from the given stream to a consumer as soon
+     * as it has been read. Errors in the XML are reported, and end the reading
+     * of the stream; the games before them will have been passed on. The
+     * stream is not closed.
      *
-     * @param childNodes Child nodes for the tags.
-     * @return The list of tags.
+     * @param in The XML source.
+     * @param name The name of the source, for error messages.
+     * @param consumer Receives the games, in order.
      */
-    private List<PGNTag> process_tag_list(NodeList childNodes) {
-        List<PGNTag> tagList = new ArrayList<>();
-        int listLength = childNodes.getLength();
-        for (int n = 0; n < listLength; n++) {
-            Node node = childNodes.item(n);
-            String value = node.getNodeValue();
-            if (node.getNodeType() == Node.ELEMENT_NODE
-                    && node.getNodeName().equals(TAG_TAG)) {
-                tagList.add(process_tag_tag(node));
+    public void readGames(InputStream in, String name, Consumer<Game> consumer) {
+        XMLStreamReader reader = null;
+        try {
+            // Read as UTF-8, just in case.
+            reader = FACTORIES.get().createXMLStreamReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            processGameList(reader, name, consumer);
+        } catch (XMLStreamException e) {
+            System.err.println("XML exception in " + name + ": " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing more to read.
+                }
             }
         }
-        return tagList;
-
     }
 
     /**
-     * Process a PGNTag node.
+     * Process the elements of the file, passing on a game for each analysis.
      *
-     * @param node The node for the PGN tag.
-     * @return A PGNTag.
+     * @param reader The reader, at the start of the file.
+     * @param name The name of the source, for error messages.
+     * @param consumer Receives the games.
+     * @throws XMLStreamException on an error in the XML.
      */
-    private PGNTag process_tag_tag(Node node) {
-        NamedNodeMap map = node.getAttributes();
-        Node eNode = map.item(0);
-        return new PGNTag(map.item(0).getNodeValue(), map.item(1).getNodeValue());
+    private void processGameList(XMLStreamReader reader, String name, Consumer<Game> consumer)
+            throws XMLStreamException {
+        List<PGNTag> tagList = null;
+        String moves = null;
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case GAME_TAG:
+                    tagList = null;
+                    moves = null;
+                    break;
+                case TAGS_TAG:
+                    tagList = new ArrayList<>();
+                    break;
+                case TAG_TAG:
+                    if (tagList != null) {
+                        String tagName = reader.getAttributeValue(null, NAME);
+                        String tagValue = reader.getAttributeValue(null, VALUE);
+                        if (tagName != null && tagValue != null) {
+                            tagList.add(new PGNTag(tagName, tagValue));
+                        } else {
+                            System.err.println("Tag without a name or value at line "
+                                    + reader.getLocation().getLineNumber() + " of " + name);
+                        }
+                    }
+                    break;
+                case MOVES_TAG:
+                    moves = reader.getElementText();
+                    if (moves.isEmpty()) {
+                        moves = "??";
+                    }
+                    break;
+                case ANALYSIS_TAG:
+                    Analysis analysis = new Analysis();
+                    for (int index = 0; index < reader.getAttributeCount(); index++) {
+                        String attrName = reader.getAttributeLocalName(index);
+                        if (attrName.equalsIgnoreCase(SEARCH_DEPTH)) {
+                            analysis.setSearchDepth(reader.getAttributeValue(index));
+                        } else if (attrName.equalsIgnoreCase(BOOK_DEPTH)) {
+                            analysis.setBookDepth(reader.getAttributeValue(index));
+                        } else if (attrName.equalsIgnoreCase(ENGINE)) {
+                            analysis.setEngineID(reader.getAttributeValue(index));
+                        }
+                    }
+                    process_analysis_tag(reader, name, analysis);
+                    consumer.accept(new Game(Analyzer.Player.BLACK, moves, analysis,
+                            tagList != null ? tagList : new ArrayList<>()));
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 
     /**
-     * Process the analysis node which contains the analysis of all the moves.
+     * Process the analysis element which contains the analysis of all the moves.
      *
-     * @param childNodes The nodes for the analysis.
-     * @return The analysis.
+     * @param reader The reader, at the start of the analysis element.
+     * @param name The name of the source, for error messages.
+     * @param analysis Receives the analysed moves.
+     * @throws XMLStreamException on an error in the XML.
      */
-    private Analysis process_analysis_tag(NodeList childNodes) {
+    private void process_analysis_tag(XMLStreamReader reader, String name, Analysis analysis)
+            throws XMLStreamException {
         // Assume a standard game, with white to move first.
         // NB: from version 2017.04.05 of the analyser, this is unnecessary
         // because who is making the move is encoded in the <move> element.
         boolean whiteToMove = true;
-        Analysis analysis = new Analysis();
-        int listLength = childNodes.getLength();
-        for (int n = 0; n < listLength; n++) {
-            Node node = childNodes.item(n);
-            String value = node.getNodeValue();
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                if (node.getNodeName().equals(MOVE_TAG)) {
-                    // Look for player = "white" or player = "black" as an attribute.
-                    NamedNodeMap map = node.getAttributes();
-                    int mapLength = map.getLength();
-                    for (int index = 0; index < mapLength; index++) {
-                        Node attrNode = map.item(index);
-                        String attrName = attrNode.getNodeName();
-                        if (attrName.equalsIgnoreCase("player")) {
-                            String attrValue = attrNode.getNodeValue();
-                            if(attrValue.equalsIgnoreCase("white")) {
-                                whiteToMove = true;
-                            }
-                            else if(attrValue.equalsIgnoreCase("black")) {
-                                whiteToMove = false;
-                            }
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT
+                || !reader.getLocalName().equals(ANALYSIS_TAG)) {
+            if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(MOVE_TAG)) {
+                // Look for player = "white" or player = "black" as an attribute.
+                for (int index = 0; index < reader.getAttributeCount(); index++) {
+                    if (reader.getAttributeLocalName(index).equalsIgnoreCase(PLAYER)) {
+                        String attrValue = reader.getAttributeValue(index);
+                        if (attrValue.equalsIgnoreCase("white")) {
+                            whiteToMove = true;
+                        } else if (attrValue.equalsIgnoreCase("black")) {
+                            whiteToMove = false;
                         }
                     }
-                    analysis.addAnalysedMove(process_move_tag(node.getChildNodes(), whiteToMove));
-                    // Legacy.
-                    whiteToMove = !whiteToMove;
                 }
+                int line = reader.getLocation().getLineNumber();
+                PlayedMove move = process_move_tag(reader, name, whiteToMove);
+                if (move != null) {
+                    analysis.addAnalysedMove(move);
+                } else {
+                    System.err.println("Move without a played move at line " + line + " of " + name);
+                }
+                // Legacy.
+                whiteToMove = !whiteToMove;
             }
         }
-        return analysis;
     }
 
     /**
-     * Process the nodes for a move.
+     * Process the elements of a move.
      *
-     * @param childNodes The nodes of the move.
+     * @param reader The reader, at the start of the move element.
+     * @param name The name of the source, for error messages.
      * @param whiteMove Whether it is white's move.
-     * @return The played move and its evaluations.
+     * @return The played move and its evaluations, or null if there is no played move.
+     * @throws XMLStreamException on an error in the XML.
      */
-    private PlayedMove process_move_tag(NodeList childNodes, boolean whiteMove) {
+    private PlayedMove process_move_tag(XMLStreamReader reader, String name, boolean whiteMove)
+            throws XMLStreamException {
         PlayedMove move = null;
-        int listLength = childNodes.getLength();
-        for (int n = 0; n < listLength; n++) {
-            Node node = childNodes.item(n);
-            String nodeName = node.getNodeName();
-            String value = node.getNodeValue();
-            switch (nodeName) {
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT
+                || !reader.getLocalName().equals(MOVE_TAG)) {
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
                 case PLAYED_TAG: {
-                    String moveText = "???";
-                    if (node.hasChildNodes()) {
-                        NodeList children = node.getChildNodes();
-                        if (children.getLength() == 1) {
-                            moveText = children.item(0).getNodeValue();
-                        }
-                    }
-                    move = new PlayedMove(moveText, whiteMove);
+                    String moveText = reader.getElementText();
+                    move = new PlayedMove(moveText.isEmpty() ? "???" : moveText, whiteMove);
                 }
                 break;
                 case EVALUATION_TAG: {
-                    NamedNodeMap map = node.getAttributes();
-                    int mapLength = map.getLength();
-                    if (mapLength == 2) {
-                        String moveText = map.item(0).getNodeValue();
-                        String evaluation = map.item(1).getNodeValue();
-                        if(move != null) {
+                    String moveText = reader.getAttributeValue(null, MOVE);
+                    String evaluation = reader.getAttributeValue(null, VALUE);
+                    if (moveText != null && evaluation != null) {
+                        if (move != null) {
                             move.addEvaluation(new Evaluation(moveText, evaluation));
-                        }
-                        else {
+                        } else {
                             System.err.println("No played move found for evaluation of " + moveText);
                         }
+                    } else {
+                        System.err.println("Evaluation without a move or value at line "
+                                + reader.getLocation().getLineNumber() + " of " + name);
                     }
                 }
                 break;
@@ -0,0 +1,119 @@
+import analyzerTools.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+public class AnalysisStoreTests {
+    static final String GAME = "[White \"Alpha\"]\n[Black \"Beta\"]\n[Result \"1-0\"]\n\n"
+            + "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 1-0\n";
+    static final String OTHER_GAME = "[White \"Gamma\"]\n[Black \"Delta\"]\n[Result \"0-1\"]\n\n"
+            + "1. d4 d5 2. c4 e6 3. Nc3 Nf6 4. Bg5 Be7 0-1\n";
+    static final String[] MOVES = {"e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5a4", "g8f6", "e1g1", "f8e7"};
+    Path file;
+
+    @BeforeEach
+    public void init() throws IOException {
+        file = Files.createTempFile("analysis", ".store");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    StockPGNAnalyzer analyzer(AnalysisStore store) {
+        StockPGNAnalyzer analyzer = new StockPGNAnalyzer();
+        analyzer.setEngineCommand(StockPGNAnalyzer.BUILTIN_ENGINE);
+        analyzer.setAnalysisStore(store);
+        return analyzer;
+    }
+
+    @Test
+    public void storeTest() throws IOException {
+        GameHash first = GameHash.of(MOVES);
+        GameHash second = GameHash.of(new String[] {"d2d4"});
+        try (AnalysisStore store = AnalysisStore.open(file, 10)) {
+            Assertions.assertNull(store.get(first));
+            store.put(first, new Analysis(0.25, 0.5, 12));
+            // Enough games to grow the table several times.
+            for (int index = 0; index < 100; index++) {
+                store.put(GameHash.of(new String[] {"a2a3", Integer.toString(index)}), new Analysis(index, 0, 1));
+            }
+            Assertions.assertEquals(101, store.size());
+        }
+        try (AnalysisStore store = AnalysisStore.open(file, 10)) {
+            Analysis stored = store.get(first);
+            Assertions.assertEquals(0.25, stored.getWhite());
+            Assertions.assertEquals(0.5, stored.getBlack());
+            Assertions.assertEquals(12, stored.getSearchDepth());
+            Assertions.assertNull(store.get(second));
+            Assertions.assertEquals(42.0, store.get(GameHash.of(new String[] {"a2a3", "42"})).getWhite());
+        }
+    }
+
+    @Test
+    public void corruptTest() throws IOException {
+        GameHash hash = GameHash.of(MOVES);
+        try (AnalysisStore store = AnalysisStore.open(file, 10)) {
+            store.put(hash, new Analysis(0.25, 0.5, 12));
+        }
+        // Damage the white CV of the only record, as a crash part way through writing it might.
+        byte[] bytes = Files.readAllBytes(file);
+        int record = 64;
+        while (bytes[record] == 0 && bytes[record + 8] == 0) {
+            record += 48;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) (bytes[record + 16] ^ 1)}), record + 16);
+        }
+        try (AnalysisStore store = AnalysisStore.open(file, 10);
+             StockPGNAnalyzer analyzer = analyzer(store)) {
+            Assertions.assertNull(store.get(hash));
+            // The game is analysed again and its record replaced.
+            Analysis analysis = analyzer.analyzeGames(new String[] {GAME}).get(0);
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertEquals(analysis.getWhite(), store.get(hash).getWhite());
+        }
+
+        // A file that is not a store is refused.
+        Files.write(file, new byte[100]);
+        Assertions.assertThrows(IOException.class, () -> AnalysisStore.open(file, 10));
+    }
+
+    @Test
+    public void hitTest() throws IOException {
+        try (AnalysisStore store = AnalysisStore.open(file, 10);
+             StockPGNAnalyzer analyzer = analyzer(store)) {
+            // Values no analysis would give, so that a hit is plain.
+            store.put(GameHash.of(MOVES), new Analysis(0.125, 0.875, 99));
+            Analysis analysis = analyzer.analyzeGames(new String[] {GAME}).get(0);
+            Assertions.assertEquals(0.125, analysis.getWhite());
+            Assertions.assertEquals(0.875, analysis.getBlack());
+            Assertions.assertEquals(99, analysis.getSearchDepth());
+            Assertions.assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void missTest() throws IOException {
+        try (AnalysisStore store = AnalysisStore.open(file, 10);
+             StockPGNAnalyzer analyzer = analyzer(store)) {
+            ArrayList<Analysis> results = analyzer.analyzeGames(new String[] {GAME, OTHER_GAME, GAME});
+            Assertions.assertEquals(2, store.size());
+            Analysis stored = store.get(GameHash.of(MOVES));
+            Assertions.assertEquals(results.get(0).getWhite(), stored.getWhite());
+            Assertions.assertEquals(results.get(0).getSearchDepth(), stored.getSearchDepth());
+            // A duplicate gets its own copy of the analysis.
+            Assertions.assertNotSame(results.get(0), results.get(2));
+            Assertions.assertEquals(results.get(0).getWhite(), results.get(2).getWhite());
+            Assertions.assertEquals(results.get(0).getBlack(), results.get(2).getBlack());
+        }
+    }
+}
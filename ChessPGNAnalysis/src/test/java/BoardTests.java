@@ -0,0 +1,114 @@
+import analyzerTools.*;
+import org.junit.jupiter.api.*;
+
+public class BoardTests {
+    Board play(String... moves) {
+        Board board = new Board();
+        for (String san : moves) {
+            int move = board.parseSAN(san);
+            Assertions.assertNotEquals(Board.NO_MOVE, move, san);
+            board.make(move);
+        }
+        return board;
+    }
+
+    long perft(Board board, int depth, int[] moves, int ply) {
+        int offset = ply * Board.MAX_MOVES;
+        int end = board.generateLegal(moves, offset);
+        if (depth == 1) {
+            return end - offset;
+        }
+        long count = 0;
+        for (int index = offset; index < end; index++) {
+            board.make(moves[index]);
+            count += perft(board, depth - 1, moves, ply + 1);
+            board.unmake(moves[index]);
+        }
+        return count;
+    }
+
+    // The squares in 0x88 form.
+    int square(String name) {
+        return (name.charAt(1) - '1') * 16 + (name.charAt(0) - 'a');
+    }
+
+    @Test
+    public void perftTest() {
+        int[] moves = new int[8 * Board.MAX_MOVES];
+        Assertions.assertEquals(20, perft(new Board(), 1, moves, 0));
+        Assertions.assertEquals(8902, perft(new Board(), 3, moves, 0));
+        Assertions.assertEquals(197281, perft(new Board(), 4, moves, 0));
+    }
+
+    @Test
+    public void specialMovesTest() {
+        Board board = play("e4", "d5", "e5", "f5");
+        int enPassant = board.parseSAN("exf6");
+        Assertions.assertEquals("e5f6", Board.toUCI(enPassant));
+        board.make(enPassant);
+        Assertions.assertEquals(Board.EMPTY, board.pieceAt(square("f5")));
+        board.unmake(enPassant);
+        Assertions.assertEquals(Board.PAWN | Board.BLACK, board.pieceAt(square("f5")));
+
+        board = play("e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5");
+        int castle = board.parseSAN("O-O");
+        Assertions.assertEquals("e1g1", Board.toUCI(castle));
+        Assertions.assertEquals(castle, board.parseUCI("e1g1"));
+        board.make(castle);
+        Assertions.assertEquals(Board.ROOK, board.pieceAt(square("f1")));
+        Assertions.assertEquals(Board.KING, board.pieceAt(square("g1")));
+
+        board = play("h4", "g5", "hxg5", "h6", "gxh6", "Nf6", "h7", "Rg8");
+        int promotion = board.parseSAN("hxg8=Q+");
+        Assertions.assertEquals("h7g8q", Board.toUCI(promotion));
+        board.make(promotion);
+        Assertions.assertEquals(Board.QUEEN, board.pieceAt(square("g8")));
+        board.unmake(promotion);
+        Assertions.assertEquals(Board.ROOK | Board.BLACK, board.pieceAt(square("g8")));
+        Assertions.assertEquals(Board.PAWN, board.pieceAt(square("h7")));
+    }
+
+    @Test
+    public void parseTest() {
+        Board board = play("Nf3", "Nf6", "Nc3", "Nc6", "Nd4", "Nd5");
+        // Both knights can reach b5.
+        Assertions.assertEquals(Board.NO_MOVE, board.parseSAN("Nb5"));
+        Assertions.assertEquals("c3b5", Board.toUCI(board.parseSAN("Ncb5")));
+        Assertions.assertEquals("d4b5", Board.toUCI(board.parseSAN("Ndb5!?")));
+
+        board = new Board();
+        Assertions.assertEquals(Board.NO_MOVE, board.parseSAN("e5"));
+        Assertions.assertEquals(Board.NO_MOVE, board.parseSAN("Ke2"));
+        Assertions.assertEquals(Board.NO_MOVE, board.parseUCI("e2e5"));
+        Assertions.assertFalse(board.inCheck());
+
+        board = play("e4", "f5", "Qh5+");
+        Assertions.assertTrue(board.inCheck());
+        Assertions.assertEquals(Board.NO_MOVE, board.parseSAN("Nf6"));
+        Assertions.assertEquals("g7g6", Board.toUCI(board.parseSAN("g6")));
+    }
+
+    @Test
+    public void sanTest() {
+        Board board = play("Nf3", "Nf6", "Nc3", "Nc6", "Nd4", "Nd5");
+        Assertions.assertEquals("Ncb5", board.toSAN(board.parseUCI("c3b5")));
+        Assertions.assertEquals("Nxd5", board.toSAN(board.parseUCI("c3d5")));
+        Assertions.assertEquals("e4", board.toSAN(board.parseUCI("e2e4")));
+
+        // Knights on the same file are told apart by rank.
+        board = play("Nf3", "a6", "Nd4", "a5", "d3", "h6", "Nd2", "h5");
+        Assertions.assertEquals("N2f3", board.toSAN(board.parseUCI("d2f3")));
+        Assertions.assertEquals("N4b3", board.toSAN(board.parseUCI("d4b3")));
+
+        board = play("e4", "e5", "Bc4", "Nc6", "Qh5", "Nf6");
+        Assertions.assertEquals("Qxf7#", board.toSAN(board.parseUCI("h5f7")));
+        Assertions.assertEquals("Bxf7+", board.toSAN(board.parseUCI("c4f7")));
+        // The position is left as it was.
+        Assertions.assertFalse(board.inCheck());
+
+        board = play("e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5");
+        Assertions.assertEquals("O-O", board.toSAN(board.parseUCI("e1g1")));
+        board = play("h4", "g5", "hxg5", "h6", "gxh6", "Nf6", "h7", "Rg8");
+        Assertions.assertEquals("hxg8=Q", board.toSAN(board.parseUCI("h7g8q")));
+    }
+}
@@ -0,0 +1,97 @@
+import dataextract.Bootstrap;
+import org.junit.jupiter.api.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BootstrapTests {
+    static int[] scores(int count) {
+        Random random = new Random(count);
+        int[] scores = new int[count];
+        for (int index = 0; index < count; index++) {
+            scores[index] = -random.nextInt(200);
+        }
+        return scores;
+    }
+
+    // Resample in a pool of some number of threads, which the parallel stream of resample runs in.
+    static Bootstrap.Interval resample(Bootstrap bootstrap, int[] scores, int threads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> bootstrap.resample(scores, -50)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void assertSame(Bootstrap.Interval expected, Bootstrap.Interval actual) {
+        Assertions.assertEquals(expected.getAELow(), actual.getAELow());
+        Assertions.assertEquals(expected.getAEHigh(), actual.getAEHigh());
+        Assertions.assertEquals(expected.getCVLow(), actual.getCVLow());
+        Assertions.assertEquals(expected.getCVHigh(), actual.getCVHigh());
+    }
+
+    @Test
+    public void threadsTest() throws Exception {
+        int[] scores = scores(300);
+        // Enough resamples for several chunks, the last of them partly filled.
+        Bootstrap bootstrap = new Bootstrap(2000, 42, 0.95);
+        Bootstrap.Interval single = resample(bootstrap, scores, 1);
+        assertSame(single, resample(bootstrap, scores, 8));
+        assertSame(single, bootstrap.resample(scores, -50));
+        assertSame(single, resample(new Bootstrap(2000, 42, 0.95), scores, 3));
+        // The intervals contain the AE and CV of the scores themselves.
+        double sum = 0;
+        int within = 0;
+        for (int score : scores) {
+            sum += score;
+            within += score >= -50 ? 1 : 0;
+        }
+        Assertions.assertTrue(single.getAELow() < sum / scores.length && sum / scores.length < single.getAEHigh());
+        double CV = (double) within / scores.length;
+        Assertions.assertTrue(single.getCVLow() < CV && CV < single.getCVHigh());
+        // Another seed gives other resamples.
+        Assertions.assertNotEquals(single.toString(), new Bootstrap(2000, 43, 0.95).resample(scores, -50).toString());
+    }
+
+    @Test
+    public void percentileTest() {
+        int[] scores = scores(100);
+        // With full coverage, the bounds are the lowest and highest of the two resamples.
+        Bootstrap.Interval full = new Bootstrap(2, 7, 1.0).resample(scores, -50);
+        double low = full.getAELow();
+        double high = full.getAEHigh();
+        Assertions.assertTrue(low < high);
+        // Narrower intervals are interpolated between them.
+        Bootstrap.Interval half = new Bootstrap(2, 7, 0.5).resample(scores, -50);
+        Assertions.assertEquals(low + 0.25 * (high - low), half.getAELow(), 1e-9);
+        Assertions.assertEquals(low + 0.75 * (high - low), half.getAEHigh(), 1e-9);
+        Bootstrap.Interval none = new Bootstrap(2, 7, 0).resample(scores, -50);
+        Assertions.assertEquals((low + high) / 2, none.getAELow(), 1e-9);
+        Assertions.assertEquals((low + high) / 2, none.getAEHigh(), 1e-9);
+        Assertions.assertEquals((full.getCVLow() + full.getCVHigh()) / 2, none.getCVLow(), 1e-9);
+    }
+
+    @Test
+    public void smallTest() {
+        Bootstrap bootstrap = new Bootstrap(500, 1, 0.95);
+        Bootstrap.Interval empty = bootstrap.resample(new int[0], -50);
+        Assertions.assertTrue(Double.isNaN(empty.getAELow()));
+        Assertions.assertTrue(Double.isNaN(empty.getAEHigh()));
+        Assertions.assertTrue(Double.isNaN(empty.getCVLow()));
+        Assertions.assertTrue(Double.isNaN(empty.getCVHigh()));
+        // Every resample of a single score is that score.
+        assertSame(bootstrap.resample(new int[] {-20}, -50), bootstrap.resample(new int[] {-20}, -50));
+        Bootstrap.Interval single = bootstrap.resample(new int[] {-20}, -50);
+        Assertions.assertEquals(-20.0, single.getAELow());
+        Assertions.assertEquals(-20.0, single.getAEHigh());
+        Assertions.assertEquals(1.0, single.getCVLow());
+        Assertions.assertEquals(1.0, single.getCVHigh());
+        Bootstrap.Interval outside = bootstrap.resample(new int[] {-80}, -50);
+        Assertions.assertEquals(0.0, outside.getCVLow());
+        Assertions.assertEquals(0.0, outside.getCVHigh());
+        // Fewer than one resample is taken as one.
+        Bootstrap.Interval one = new Bootstrap(0, 1, 0.95).resample(new int[] {-20, -40}, -50);
+        Assertions.assertEquals(one.getAELow(), one.getAEHigh());
+    }
+}
@@ -0,0 +1,202 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import dataextract.ColumnarExport.ColumnType;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ColumnarExportTests {
+    Path file;
+
+    @BeforeEach
+    public void init() throws IOException {
+        file = Files.createTempFile("export", ".pgnc");
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.delete(file);
+    }
+
+    // A move whose best move scored best and the played move, if different and scored, played.
+    static PlayedMove move(String move, boolean white, String bestMove, String best, String played) {
+        PlayedMove result = new PlayedMove(move, white);
+        result.addEvaluation(new Evaluation(bestMove, best));
+        if (!bestMove.equals(move) && played != null) {
+            result.addEvaluation(new Evaluation(move, played));
+        }
+        return result;
+    }
+
+    static Game game(int round, String white, String date) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        PlayedMove[] moves = {
+            move("e2e4", true, "e2e4", "30", null),
+            move("e7e5", false, "c7c5", "-20", "-" + (50 + round)),
+            // A missed mate.
+            move("g1f3", true, "d1h5", "mate 3", "80"),
+            // Not scored, as the played move has no evaluation.
+            move("b8c6", false, "g8f6", "-30", null)
+        };
+        StringBuilder text = new StringBuilder();
+        for (PlayedMove move : moves) {
+            analysis.addAnalysedMove(move);
+            text.append(move.getMove()).append(' ');
+        }
+        List<PGNTag> tags = new ArrayList<>(Arrays.asList(new PGNTag("White", white), new PGNTag("Black", "Beta"),
+                new PGNTag("Round", "" + round), new PGNTag("Result", round % 2 == 0 ? "1/2-1/2" : "1-0")));
+        if (date != null) {
+            tags.add(new PGNTag("Date", date));
+        }
+        return new Game(Analyzer.Player.BLACK, text + "*", analysis, tags);
+    }
+
+    // The rows of a table, as text in column order, and the sizes of its row groups.
+    static List<String> rows(ColumnarReader reader, String table, List<Integer> groupSizes) throws IOException {
+        List<String> rows = new ArrayList<>();
+        List<String> columns = reader.getColumnNames(table);
+        List<ColumnType> types = reader.getColumnTypes(table);
+        ColumnarReader.RowGroup group;
+        while ((group = reader.next()) != null) {
+            if (!group.getTable().equals(table)) {
+                continue;
+            }
+            groupSizes.add(group.getRowCount());
+            String[][] values = new String[columns.size()][];
+            for (int column = 0; column < columns.size(); column++) {
+                String name = columns.get(column);
+                switch (types.get(column)) {
+                    case FLOAT64:
+                        values[column] = Arrays.stream(group.getDoubles(name)).mapToObj(String::valueOf)
+                                .toArray(String[]::new);
+                        break;
+                    case STRING:
+                        values[column] = group.getStrings(name);
+                        break;
+                    default:
+                        values[column] = Arrays.stream(group.getInts(name)).mapToObj(String::valueOf)
+                                .toArray(String[]::new);
+                        break;
+                }
+            }
+            for (int row = 0; row < group.getRowCount(); row++) {
+                StringBuilder line = new StringBuilder();
+                for (String[] column : values) {
+                    line.append(column[row]).append('|');
+                }
+                rows.add(line.toString());
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        List<String> stats = new ArrayList<>();
+        List<String> moves = new ArrayList<>();
+        try (ColumnarExport export = new ColumnarExport(file, 3)) {
+            for (int round = 0; round < 5; round++) {
+                // A non-ASCII name, and a game without a date.
+                Game game = game(round, round == 1 ? "\u00c5ngstr\u00f6m" : "Alpha", round == 3 ? null : "2019.05.01");
+                List<PlayerStats> players = List.of(new PlayerStats(game, game.getTagValue("White"), true, 0, false),
+                        new PlayerStats(game, "Beta", false, 0, false));
+                export.add(game, players);
+                for (PlayerStats player : players) {
+                    stats.add(round + "|" + (round == 3 ? 0 : 2019) + "|" + player.getPlayerName() + "|"
+                            + (player.isWhite() ? 1 : 0) + "|0|" + player.getNumScores() + "|12|" + player.getAE()
+                            + "|" + player.getSD() + "|" + player.getCV() + "|" + (round % 2 == 0 ? "1/2" : "1-0")
+                            + "||");
+                }
+                int ply = 1;
+                for (PlayedMove played : game.getAnalysis().getAnalysedMoves()) {
+                    PlayedMoveScore score = null;
+                    try {
+                        score = game.getEvaluation(played);
+                    } catch (IllegalStateException e) {
+                        // Unscored.
+                    }
+                    moves.add(round + "|" + ply++ + "|" + (played.isWhiteMove() ? 1 : 0) + "|" + played.getMove()
+                            + "|" + played.getEvaluations().get(0).getMove() + "|"
+                            + (score == null ? 0 : score.getValue()) + "|"
+                            + (score != null && score.bestIsMate() ? 1 : 0) + "|"
+                            + (score != null && score.playedIsMate() ? 1 : 0) + "|" + (score == null ? 0 : 1) + "|");
+                }
+            }
+        }
+        Assertions.assertTrue(moves.get(2).endsWith("|1|0|1|"), moves.get(2));
+        Assertions.assertTrue(moves.get(3).endsWith("|0|0|0|0|"), moves.get(3));
+
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            // The schema.
+            Assertions.assertEquals(List.of("stats", "moves"), reader.getTableNames());
+            Assertions.assertEquals(List.of("game", "year", "player", "white", "bookdepth", "moves", "depth", "ae",
+                    "sd", "cv", "result", "hashcode"), reader.getColumnNames("stats"));
+            Assertions.assertEquals(List.of(ColumnType.INT32, ColumnType.INT16, ColumnType.STRING, ColumnType.INT8,
+                    ColumnType.INT16, ColumnType.INT16, ColumnType.INT16, ColumnType.FLOAT64, ColumnType.FLOAT64,
+                    ColumnType.FLOAT64, ColumnType.STRING, ColumnType.STRING), reader.getColumnTypes("stats"));
+            Assertions.assertEquals(List.of("game", "ply", "white", "played", "best", "delta", "bestmate",
+                    "playedmate", "scored"), reader.getColumnNames("moves"));
+            Assertions.assertEquals(List.of(ColumnType.INT32, ColumnType.INT16, ColumnType.INT8, ColumnType.STRING,
+                    ColumnType.STRING, ColumnType.INT32, ColumnType.INT8, ColumnType.INT8, ColumnType.INT8),
+                    reader.getColumnTypes("moves"));
+
+            // The rows, in row groups of at most three.
+            List<Integer> groupSizes = new ArrayList<>();
+            Assertions.assertEquals(stats, rows(reader, "stats", groupSizes));
+            Assertions.assertEquals(List.of(3, 3, 3, 1), groupSizes);
+            Assertions.assertNull(reader.next());
+        }
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            List<Integer> groupSizes = new ArrayList<>();
+            Assertions.assertEquals(moves, rows(reader, "moves", groupSizes));
+            Assertions.assertEquals(List.of(3, 3, 3, 3, 3, 3, 2), groupSizes);
+        }
+    }
+
+    @Test
+    public void columnTypeTest() throws IOException {
+        try (ColumnarExport export = new ColumnarExport(file, 100)) {
+            Game game = game(0, "Alpha", "2019.05.01");
+            export.add(game, List.of(new PlayerStats(game, "Alpha", true, 0, false)));
+        }
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            ColumnarReader.RowGroup group = reader.next();
+            Assertions.assertEquals("stats", group.getTable());
+            // Values are read only as their own type.
+            Assertions.assertThrows(IllegalArgumentException.class, () -> group.getDoubles("year"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> group.getInts("ae"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> group.getStrings("game"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> group.getLongs("game"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> group.getInts("nonesuch"));
+        }
+    }
+
+    @Test
+    public void incompleteTest() throws IOException {
+        try (ColumnarExport export = new ColumnarExport(file, 100)) {
+            Game game = game(0, "Alpha", "2019.05.01");
+            export.add(game, List.of(new PlayerStats(game, "Alpha", true, 0, false)));
+        }
+        // Without its end marker, the file is known to be incomplete.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            Assertions.assertEquals("stats", reader.next().getTable());
+            Assertions.assertEquals("moves", reader.next().getTable());
+            Assertions.assertThrows(IOException.class, reader::next);
+        }
+        Files.write(file, new byte[] {'[', 'E', 'v', 'e', 'n', 't'});
+        Assertions.assertThrows(IOException.class, () -> new ColumnarReader(file).close());
+    }
+}
@@ -0,0 +1,187 @@
+import analyzerTools.CompressedInput;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressedInputTests {
+    // The compressed bytes given to each parallel task by CompressedInput.
+    static final int SEGMENT_SIZE = 1 << 22;
+    // The most output a task holds.
+    static final int MAX_TASK_OUTPUT = 1 << 26;
+
+    Path file;
+
+    @BeforeEach
+    public void init() throws IOException {
+        file = Files.createTempFile("compressed", ".gz");
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.delete(file);
+    }
+
+    // A gzip member holding data, stored rather than compressed if stored is set.
+    static byte[] member(byte[] data, boolean stored) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(stored ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            }
+        }) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Random data that barely compresses.
+    static byte[] random(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    static byte[] concatenate(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.writeBytes(part);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] readAll(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            return in.readAllBytes();
+        }
+    }
+
+    // The file, inflated by GZIPInputStream and by CompressedInput with one thread and with several.
+    void assertInflated(byte[] compressed) throws IOException {
+        Files.write(file, compressed);
+        byte[] expected = readAll(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        byte[] single = readAll(CompressedInput.open(file, 1));
+        byte[] parallel = readAll(CompressedInput.open(file, 4));
+        Assertions.assertEquals(expected.length, single.length);
+        Assertions.assertArrayEquals(expected, single);
+        Assertions.assertEquals(expected.length, parallel.length);
+        Assertions.assertArrayEquals(expected, parallel);
+    }
+
+    @Test
+    public void plainTest() throws IOException {
+        byte[] text = "[Event \"?\"]\n\n1. e4 e5 *\n".getBytes(StandardCharsets.US_ASCII);
+        Files.write(file, text);
+        Assertions.assertFalse(CompressedInput.isCompressed(file));
+        Assertions.assertArrayEquals(text, readAll(CompressedInput.open(file, 4)));
+    }
+
+    @Test
+    public void concatenatedTest() throws IOException {
+        Random random = new Random(1);
+        // A few small members, read by a single thread whatever the number asked for.
+        assertInflated(concatenate(member("1. e4 ".getBytes(StandardCharsets.US_ASCII), false),
+                member(new byte[0], false), member("e5 *\n".getBytes(StandardCharsets.US_ASCII), false)));
+        Assertions.assertTrue(CompressedInput.isCompressed(file));
+
+        // Many members of varying sizes, some of them spanning the boundaries of the tasks' spans.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (bytes.size() < 3 * SEGMENT_SIZE) {
+            byte[] data = random(random, random.nextInt(SEGMENT_SIZE / 3));
+            bytes.writeBytes(member(data, random.nextBoolean()));
+        }
+        assertInflated(bytes.toByteArray());
+
+        // A single member larger than a span.
+        assertInflated(member(random(random, 2 * SEGMENT_SIZE + 12345), false));
+    }
+
+    @Test
+    public void oversizedTest() throws IOException {
+        Random random = new Random(2);
+        // The middle member inflates to more than a task may hold, so the read-ahead thread inflates it.
+        byte[] large = new byte[MAX_TASK_OUTPUT + 1000];
+        Arrays.fill(large, (byte) 'x');
+        assertInflated(concatenate(member(random(random, SEGMENT_SIZE + 100), false), member(large, false),
+                member(random(random, SEGMENT_SIZE), false), member(random(random, 1000), false)));
+    }
+
+    @Test
+    public void falseMagicTest() throws IOException {
+        Random random = new Random(3);
+        // A whole member stored inside another, starting in a later span than the member it is inside.
+        byte[] inner = member("a member inside a member".getBytes(StandardCharsets.US_ASCII), false);
+        byte[] outerData = concatenate(random(random, SEGMENT_SIZE + 500), inner, random(random, SEGMENT_SIZE / 2));
+        // The bare magic number, followed by nothing valid.
+        byte[] magic = concatenate(random(random, SEGMENT_SIZE / 2), new byte[] {0x1f, (byte) 0x8b, 8, 0, 1, 2},
+                random(random, SEGMENT_SIZE));
+        assertInflated(concatenate(member(outerData, true), member(magic, true), member(random(random, 100), false)));
+    }
+
+    @Test
+    public void trailingGarbageTest() throws IOException {
+        Random random = new Random(4);
+        byte[] garbage = "not a gzip member".getBytes(StandardCharsets.US_ASCII);
+        assertInflated(concatenate(member(random(random, 1000), false), garbage));
+        assertInflated(concatenate(member(random(random, SEGMENT_SIZE), false),
+                member(random(random, SEGMENT_SIZE), false), garbage));
+    }
+
+    @Test
+    public void corruptTest() throws IOException {
+        Random random = new Random(5);
+        byte[] first = member(random(random, SEGMENT_SIZE + 100), false);
+        byte[] second = member(random(random, SEGMENT_SIZE), false);
+        byte[] compressed = concatenate(first, second, member(random(random, SEGMENT_SIZE), false));
+        // Break the second member's CRC.
+        compressed[first.length + second.length - 6] ^= 1;
+        Files.write(file, compressed);
+        Assertions.assertThrows(IOException.class,
+                () -> readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        Assertions.assertThrows(IOException.class, () -> readAll(CompressedInput.open(file, 1)));
+        Assertions.assertThrows(IOException.class, () -> readAll(CompressedInput.open(file, 4)));
+    }
+
+    @Test
+    public void closeTest() throws Exception {
+        Random random = new Random(6);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int index = 0; index < 6; index++) {
+            bytes.writeBytes(member(random(random, SEGMENT_SIZE), false));
+        }
+        Files.write(file, bytes.toByteArray());
+        for (int threads : new int[] {1, 4}) {
+            InputStream in = CompressedInput.open(file, threads);
+            byte[] start = in.readNBytes(1000);
+            Assertions.assertEquals(1000, start.length);
+            // Closing the stream part way through stops the threads inflating it.
+            in.close();
+            Assertions.assertEquals(-1, in.read());
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (inflating() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertFalse(inflating(), "The inflating threads are still running");
+        }
+    }
+
+    // Are any of CompressedInput's threads running?
+    static boolean inflating() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("inflate") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CurveDataTests {
+    // A game whose played moves, alternately white's and black's, have the given evaluations.
+    static Game game(String result, String whiteElo, String blackElo, String... evaluations) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < evaluations.length; index++) {
+            String move = "a" + (index % 2 == 0 ? "2a3" : "7a6");
+            PlayedMove played = new PlayedMove(move, index % 2 == 0);
+            played.addEvaluation(new Evaluation(move, evaluations[index]));
+            analysis.addAnalysedMove(played);
+            text.append(move).append(' ');
+        }
+        List<PGNTag> tags = new ArrayList<>(List.of(new PGNTag("Result", result)));
+        if (whiteElo != null) {
+            tags.add(new PGNTag("WhiteElo", whiteElo));
+            tags.add(new PGNTag("BlackElo", blackElo));
+        }
+        return new Game(Analyzer.Player.BLACK, text + result, analysis, tags);
+    }
+
+    static List<String> write(CurveData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        data.write(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        return Arrays.asList(bytes.toString(StandardCharsets.UTF_8).split("\n"));
+    }
+
+    @Test
+    public void lookupTest() {
+        Assertions.assertEquals(0.5, CurveData.winProbability(0), 1e-12);
+        Assertions.assertEquals(1 / 1.1, CurveData.winProbability(400), 1e-12);
+        for (int centipawns = 0; centipawns <= 2000; centipawns += 37) {
+            Assertions.assertEquals(1 / (1 + Math.pow(10, -centipawns / 400.0)), CurveData.winProbability(centipawns),
+                    1e-12);
+            Assertions.assertEquals(1 - CurveData.winProbability(centipawns), CurveData.winProbability(-centipawns),
+                    1e-12);
+        }
+        // Evaluations are clamped to 2000 centipawns.
+        Assertions.assertEquals(CurveData.winProbability(2000), CurveData.winProbability(5000));
+        Assertions.assertEquals(CurveData.winProbability(-2000), CurveData.winProbability(Integer.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void binTest() {
+        CurveData data = new CurveData();
+        // Mean rating 1600; white's evaluation of 0 is in the middle bin, and black's of -400 is 400 for white.
+        data.add(game("1-0", "1500", "1700", "0", "-400"));
+        // Unknown ratings; mates count as 2000 centipawns, and evaluations that are not numbers are skipped.
+        data.add(game("1/2-1/2", null, null, "mate 3", "25 upperbound", "none"));
+        data.add(game("0-1", "1500", "", "mate -2"));
+        // Ratings above the highest band.
+        data.add(game("0-1", "3500", "3500", "0"));
+        // Games without a result are not counted.
+        data.add(game("*", "1500", "1700", "0"));
+        Assertions.assertEquals(4, data.getGameCount());
+        Assertions.assertEquals(List.of(
+                "# Games: 4",
+                "# Elo:P:Wins:Draws:Losses:Score",
+                "?:0.01:0:0:1:0.000",
+                "?:0.47:0:1:0:0.500",
+                "?:0.99:0:1:0:0.500",
+                "1600-1799:0.51:1:0:0:1.000",
+                "1600-1799:0.91:1:0:0:1.000",
+                "3200+:0.51:0:0:1:0.000"), write(data));
+    }
+
+    @Test
+    public void mergeTest() throws InterruptedException {
+        Random random = new Random(1);
+        String[] results = {"1-0", "1/2-1/2", "0-1", "*"};
+        List<Game> games = new ArrayList<>();
+        for (int index = 0; index < 400; index++) {
+            String[] evaluations = new String[1 + random.nextInt(30)];
+            for (int move = 0; move < evaluations.length; move++) {
+                evaluations[move] = random.nextInt(20) == 0 ? "mate " + (random.nextInt(9) - 4)
+                        : Integer.toString(random.nextInt(3000) - 1500);
+            }
+            boolean rated = random.nextInt(5) > 0;
+            games.add(game(results[random.nextInt(results.length)],
+                    rated ? Integer.toString(800 + random.nextInt(2200)) : null,
+                    Integer.toString(800 + random.nextInt(2200)), evaluations));
+        }
+        CurveData single = new CurveData();
+        for (Game game : games) {
+            single.add(game);
+        }
+
+        // Each thread fills its own histograms, which are merged at the end.
+        List<CurveData> parts = new ArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int thread = 0; thread < threads.length; thread++) {
+            CurveData part = new CurveData();
+            parts.add(part);
+            int first = thread;
+            threads[thread] = new Thread(() -> {
+                for (int index = first; index < games.size(); index += threads.length) {
+                    part.add(games.get(index));
+                }
+            });
+            threads[thread].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CurveData merged = CurveData.merge(parts);
+        Assertions.assertEquals(single.getGameCount(), merged.getGameCount());
+        Assertions.assertEquals(write(single), write(merged));
+        Assertions.assertTrue(write(single).size() > 100);
+    }
+}
@@ -0,0 +1,77 @@
+import dataextract.CorpusGenerator;
+import dataextract.DataExtract;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DataExtractTests {
+    Path xmlFile;
+
+    @BeforeEach
+    public void init() throws IOException {
+        xmlFile = Files.createTempFile("corpus", ".xml");
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.setGames(200);
+        generator.setSeed(7);
+        generator.writeXML(xmlFile);
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(xmlFile);
+    }
+
+    // The stats lines output by DataExtract with the given flags.
+    List<String> extract(String... flags) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(bytes));
+        try {
+            DataExtract.main(flags);
+        } finally {
+            System.setOut(out);
+        }
+        return Arrays.stream(bytes.toString().split("\n"))
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+    }
+
+    static double cv(String line) {
+        return Double.parseDouble(line.split(":")[8].trim());
+    }
+
+    // The fields of a stats line up to the hash code, leaving out any intervals.
+    static String stats(String line) {
+        return String.join(":", Arrays.asList(line.split(":")).subList(0, 11));
+    }
+
+    @Test
+    public void topTest() {
+        String file = xmlFile.toString();
+        List<String> all = extract("--player", "<WhiteOrBlack>", "--minlength", "0", file);
+        List<String> top = extract("--player", "<WhiteOrBlack>", "--minlength", "0", "--top", "5",
+                "--bootstrap", "100", file);
+        Assertions.assertEquals(5, top.size());
+        List<String> allStats = all.stream().map(DataExtractTests::stats).collect(Collectors.toList());
+        List<Double> ranked = new ArrayList<>();
+        for (String line : all) {
+            ranked.add(cv(line));
+        }
+        ranked.sort(Comparator.reverseOrder());
+        for (int index = 0; index < top.size(); index++) {
+            // The ranked stats are output as they were ranked, with their intervals.
+            Assertions.assertTrue(allStats.contains(stats(top.get(index))), top.get(index));
+            Assertions.assertEquals(ranked.get(index), cv(top.get(index)), 0);
+            Assertions.assertEquals(15, top.get(index).split(":").length);
+        }
+    }
+}
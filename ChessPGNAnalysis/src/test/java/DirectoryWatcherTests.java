@@ -0,0 +1,55 @@
+import dataextract.DirectoryWatcher;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class DirectoryWatcherTests {
+    Path directory;
+
+    @BeforeEach
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("watched");
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void ledgerTest() throws IOException {
+        Path first = Files.writeString(directory.resolve("first.pgn"), "1. e4 *\n");
+        try (DirectoryWatcher watcher = new DirectoryWatcher(directory, 10)) {
+            Assertions.assertTrue(watcher.hasNext());
+            Assertions.assertEquals(first.toString(), watcher.next());
+        }
+        // Returned but never reported as processed, so a later watcher returns it again.
+        try (DirectoryWatcher watcher = new DirectoryWatcher(directory, 10)) {
+            Assertions.assertTrue(watcher.hasNext());
+            Assertions.assertEquals(first.toString(), watcher.next());
+            watcher.markProcessed(first.toString());
+        }
+
+        Path second = Files.writeString(directory.resolve("second.pgn"), "1. d4 *\n");
+        Files.writeString(directory.resolve("notes.txt"), "not a game\n");
+        try (DirectoryWatcher watcher = new DirectoryWatcher(directory, 10)) {
+            Assertions.assertTrue(watcher.hasNext());
+            Assertions.assertEquals(second.toString(), watcher.next());
+            watcher.stop();
+            Assertions.assertFalse(watcher.hasNext());
+            // The ledger can still be written once watching has stopped.
+            watcher.markProcessed(second.toString());
+        }
+        Assertions.assertEquals(Arrays.asList("first.pgn", "second.pgn"),
+                Files.readAllLines(directory.resolve(".dataextract-processed")));
+    }
+}
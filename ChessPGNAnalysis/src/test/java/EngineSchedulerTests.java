@@ -0,0 +1,62 @@
+import analyzerTools.*;
+import dataextract.Analysis;
+import org.junit.jupiter.api.*;
+
+public class EngineSchedulerTests {
+    @Test
+    public void planTest() {
+        EngineScheduler scheduler = new EngineScheduler(8, 4096);
+        // A single game gets every core and the whole hash.
+        EngineScheduler.Plan single = scheduler.plan(1);
+        Assertions.assertEquals(1, single.getEngines());
+        Assertions.assertEquals(8, single.getThreads());
+        Assertions.assertEquals(4096, single.getHashMB());
+        // A big batch gets a single-threaded engine per core.
+        EngineScheduler.Plan batch = scheduler.plan(100);
+        Assertions.assertEquals(8, batch.getEngines());
+        Assertions.assertEquals(1, batch.getThreads());
+        Assertions.assertEquals(512, batch.getHashMB());
+        EngineScheduler.Plan some = scheduler.plan(3);
+        Assertions.assertEquals(3, some.getEngines());
+        Assertions.assertEquals(2, some.getThreads());
+    }
+
+    @Test
+    public void updateTest() {
+        EngineScheduler scheduler = new EngineScheduler(4, 1024);
+        Assertions.assertEquals(4, scheduler.update(4).getEngines());
+        // A brief fall in demand keeps the plan.
+        Assertions.assertEquals(4, scheduler.update(1).getEngines());
+        Assertions.assertEquals(4, scheduler.update(0).getEngines());
+    }
+
+    @Test
+    public void peakTest() throws InterruptedException {
+        EngineScheduler scheduler = new EngineScheduler(4, 1024, 50);
+        Assertions.assertEquals(4, scheduler.update(4).getEngines());
+        Thread.sleep(100);
+        // Once the peak is forgotten the plan follows the demand.
+        Assertions.assertEquals(1, scheduler.update(1).getEngines());
+        Assertions.assertEquals(1024, scheduler.update(1).getHashMB());
+    }
+
+    @Test
+    public void shrinkPoolTest() throws Exception {
+        try (StockPGNAnalyzer analyzer = new StockPGNAnalyzer()) {
+            analyzer.setEngineCommand(FakeUCIEngine.command());
+            analyzer.setScheduler(new EngineScheduler(4, 1024, 50));
+            analyzer.setThreads(4);
+            analyzer.setSearchDepth(1);
+            analyzer.start();
+            Assertions.assertEquals(4, analyzer.getRunningEngines());
+            Thread.sleep(100);
+
+            // A single game now gets one engine with the whole hash, and the idle engines are shut down.
+            Analysis analysis = new Analysis();
+            analysis.setBookDepth("0");
+            Assertions.assertEquals(2, analyzer.analyzeNewMoves(new String[] {"e2e4", "e7e5"}, analysis));
+            Assertions.assertEquals(1, analyzer.getRunningEngines());
+            Assertions.assertEquals(1024, analyzer.getEngineHashMB());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import analyzerTools.Board;
+import analyzerTools.OpeningTrie;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+
+/**
+ * Stands in for pgn-extract -Wuci in tests: reads a PGN game from standard input and writes its moves in UCI
+ * notation on a single line, ignoring its arguments.
+ */
+public class FakeMoveConverter {
+    /**
+     * @return the command that runs this converter in a new JVM
+     */
+    static String command() {
+        return System.getProperty("java.home") + "/bin/java -cp " + System.getProperty("java.class.path")
+                + " FakeMoveConverter";
+    }
+
+    public static void main(String[] args) throws IOException {
+        String pgn = new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+        Board board = new Board();
+        StringJoiner line = new StringJoiner(" ");
+        for (String san : OpeningTrie.getMoves(pgn)) {
+            int move = board.parseSAN(san);
+            line.add(Board.toUCI(move));
+            board.make(move);
+        }
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * A UCI engine for tests, which answers every search at once. Its best move is always e2e4, scored 10
+ * centipawns; any other move it is restricted to is scored -100. Started with a search time, it reports its
+ * score at once but gives its best move only when that time is up or it is sent "stop"; told to be deaf, it
+ * ignores "stop".
+ */
+public class FakeUCIEngine {
+    // The move of the search in progress, or null if none, and the number of searches started.
+    private static String pending;
+    private static long searches;
+
+    /**
+     * @return the command that starts this engine in a new JVM
+     */
+    static String command() {
+        return System.getProperty("java.home") + "/bin/java -cp " + System.getProperty("java.class.path")
+                + " FakeUCIEngine";
+    }
+
+    /**
+     * @param searchMillis how long each search takes, or 0 to search until stopped
+     * @param deaf whether the engine ignores "stop"
+     * @return the command that starts a slow engine in a new JVM
+     */
+    static String command(long searchMillis, boolean deaf) {
+        return command() + " " + searchMillis + (deaf ? " deaf" : "");
+    }
+
+    public static void main(String[] args) throws IOException {
+        long searchMillis = args.length > 0 ? Long.parseLong(args[0]) : -1;
+        boolean deaf = args.length > 1 && args[1].equals("deaf");
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("uci")) {
+                System.out.println("id name fake");
+                System.out.println("uciok");
+            } else if (line.equals("isready")) {
+                System.out.println("readyok");
+            } else if (line.startsWith("go")) {
+                int searchMoves = line.indexOf("searchmoves ");
+                String move = searchMoves < 0 ? "e2e4" : line.substring(searchMoves + "searchmoves ".length()).trim();
+                System.out.println("info depth 1 multipv 1 score cp " + (move.equals("e2e4") ? 10 : -100) + " pv " + move);
+                if (searchMillis < 0) {
+                    System.out.println("bestmove " + move);
+                } else {
+                    search(move, searchMillis);
+                }
+            } else if (line.equals("stop")) {
+                if (!deaf) {
+                    answer(searches);
+                }
+            } else if (line.equals("quit")) {
+                return;
+            }
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Start a search that gives its best move after some time, unless it is stopped first.
+     */
+    private static synchronized void search(String move, long searchMillis) {
+        pending = move;
+        long search = ++searches;
+        if (searchMillis > 0) {
+            Thread timer = new Thread(() -> {
+                try {
+                    Thread.sleep(searchMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                answer(search);
+            });
+            timer.setDaemon(true);
+            timer.start();
+        }
+    }
+
+    /**
+     * Give the best move of a search, if it is still in progress.
+     */
+    private static synchronized void answer(long search) {
+        if (pending != null && search == searches) {
+            System.out.println("bestmove " + pending);
+            System.out.flush();
+            pending = null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class GenStatsTests {
+    // A move whose best move scored best and the played move, if different, played.
+    static PlayedMove move(String move, boolean white, String bestMove, String best, String played) {
+        PlayedMove result = new PlayedMove(move, white);
+        result.addEvaluation(new Evaluation(bestMove, best));
+        if (!bestMove.equals(move)) {
+            result.addEvaluation(new Evaluation(move, played));
+        }
+        return result;
+    }
+
+    static Game game(String white, String black, String round, PlayedMove... moves) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        StringBuilder text = new StringBuilder();
+        for (PlayedMove move : moves) {
+            analysis.addAnalysedMove(move);
+            text.append(move.getMove()).append(' ');
+        }
+        return new Game(Analyzer.Player.BLACK, text + "*", analysis, Arrays.asList(new PGNTag("White", white),
+                new PGNTag("Black", black), new PGNTag("Round", round)));
+    }
+
+    // White plays the best move every time, Black never does.
+    static Game game(String white, String black, String round) {
+        return game(white, black, round,
+                move("e2e4", true, "e2e4", "30", null),
+                move("e7e5", false, "c7c5", "-20", "-50"),
+                move("g1f3", true, "g1f3", "40", null),
+                move("b8c6", false, "g8f6", "-30", "-60"));
+    }
+
+    @Test
+    public void sameNameTest() {
+        // Both sides have the same name, as in relays of unknown players or engine matches.
+        Game game = game("NN", "NN", "1");
+        GenStats stats = new GenStats();
+        stats.addPlayer("NN");
+        stats.setMinLength(0);
+        List<PlayerStats> ps = stats.getMatchingStats(game);
+        Assertions.assertEquals(2, ps.size());
+        PlayerStats white = ps.get(0);
+        PlayerStats black = ps.get(1);
+        Assertions.assertTrue(white.isWhite());
+        Assertions.assertFalse(black.isWhite());
+        Assertions.assertArrayEquals(new int[] {0, 0}, white.getScores());
+        Assertions.assertArrayEquals(new int[] {-30, -30}, black.getScores());
+        Assertions.assertEquals(0.0, white.getAE());
+        Assertions.assertEquals(-30.0, black.getAE());
+        Assertions.assertTrue(white.toString().contains(":W:"));
+        Assertions.assertTrue(black.toString().contains(":B:"));
+        Assertions.assertArrayEquals(black.getScores(), game.getNonMateScores(false));
+    }
+
+    // Games with the same moves, told apart by their rounds.
+    static List<Game> sameMoves(int count) {
+        List<Game> games = new ArrayList<>();
+        for (int round = 0; round < count; round++) {
+            games.add(game("Alpha", "Beta", Integer.toString(round)));
+        }
+        return games;
+    }
+
+    static GenStats sampler() {
+        GenStats stats = new GenStats();
+        stats.addPlayer("<WhiteOrBlack>");
+        stats.setMinLength(0);
+        // Neither player's AE reaches the threshold, so every player is offered to the sample.
+        stats.setLowAEThreshold(1);
+        stats.setSampleSize(5);
+        stats.setSeed(7);
+        return stats;
+    }
+
+    static List<String> describe(List<PlayerStats> sample) {
+        List<String> described = new ArrayList<>();
+        for (PlayerStats pstats : sample) {
+            described.add(pstats.getGame().getTagValue("Round") + (pstats.isWhite() ? "W" : "B"));
+        }
+        return described;
+    }
+
+    @Test
+    public void sampleTest() throws InterruptedException {
+        GenStats single = sampler();
+        for (Game game : sameMoves(60)) {
+            single.getMatchingStats(game);
+        }
+        List<String> expected = describe(single.getSample());
+        Assertions.assertEquals(5, expected.size());
+        Assertions.assertEquals(5, expected.stream().distinct().count());
+
+        // The same sample whatever the order of the games and the number of threads.
+        for (int trial = 0; trial < 3; trial++) {
+            List<Game> games = sameMoves(60);
+            Collections.shuffle(games, new Random(trial));
+            GenStats shared = sampler();
+            Thread[] threads = new Thread[4];
+            for (int thread = 0; thread < threads.length; thread++) {
+                int first = thread;
+                threads[thread] = new Thread(() -> {
+                    for (int index = first; index < games.size(); index += threads.length) {
+                        shared.getMatchingStats(games.get(index));
+                    }
+                });
+                threads[thread].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assertions.assertEquals(expected, describe(shared.getSample()));
+        }
+    }
+
+    @Test
+    public void randomMatchTest() {
+        GenStats stats = sampler();
+        stats.setSampleSize(0);
+        stats.setRandomThreshold(0.5);
+        List<String> matched = new ArrayList<>();
+        for (Game game : sameMoves(40)) {
+            matched.addAll(describe(stats.getMatchingStats(game)));
+        }
+        // Games with the same moves are chosen independently of each other.
+        Assertions.assertTrue(matched.size() > 10 && matched.size() < 70, "" + matched.size());
+        List<String> again = new ArrayList<>();
+        List<Game> games = sameMoves(40);
+        Collections.reverse(games);
+        for (Game game : games) {
+            again.addAll(describe(stats.getMatchingStats(game)));
+        }
+        again.sort(null);
+        matched.sort(null);
+        Assertions.assertEquals(matched, again);
+    }
+}
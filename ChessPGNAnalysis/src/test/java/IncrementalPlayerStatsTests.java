@@ -0,0 +1,100 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+
+public class IncrementalPlayerStatsTests {
+    static final double THRESHOLD = -10;
+
+    // A move whose best move scored best and the played move, if different, played.
+    PlayedMove move(String move, boolean white, String bestMove, String best, String played) {
+        PlayedMove result = new PlayedMove(move, white);
+        result.addEvaluation(new Evaluation(bestMove, best));
+        if (!bestMove.equals(move) && played != null) {
+            result.addEvaluation(new Evaluation(move, played));
+        }
+        return result;
+    }
+
+    Game game(PlayedMove... moves) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        StringBuilder text = new StringBuilder();
+        for (PlayedMove move : moves) {
+            analysis.addAnalysedMove(move);
+            text.append(move.getMove()).append(' ');
+        }
+        return new Game(Analyzer.Player.WHITE, text + "*", analysis,
+                Arrays.asList(new PGNTag("White", "Alpha"), new PGNTag("Black", "Beta")));
+    }
+
+    // The incremental stats of a player, added a move at a time as PGNTail does.
+    IncrementalPlayerStats incremental(Game game, boolean white) {
+        IncrementalPlayerStats stats = new IncrementalPlayerStats(THRESHOLD);
+        for (PlayedMove played : game.getAnalysis().getAnalysedMoves()) {
+            if (played.isWhiteMove() == white) {
+                try {
+                    stats.addMove(game.getEvaluation(played));
+                } catch (IllegalStateException e) {
+                    stats.invalidate();
+                }
+            }
+        }
+        return stats;
+    }
+
+    void assertSame(Game game, boolean white) {
+        PlayerStats expected = new PlayerStats(game, white ? "Alpha" : "Beta", white, THRESHOLD, false);
+        IncrementalPlayerStats.Snapshot actual = incremental(game, white).snapshot();
+        Assertions.assertEquals(expected.getNumScores(), actual.getCount());
+        if (actual.getCount() > 0) {
+            Assertions.assertEquals(expected.getAE(), actual.getAE(), 1e-9);
+            Assertions.assertEquals(expected.getSD(), actual.getSD(), 1e-9);
+            Assertions.assertEquals(expected.getCV(), actual.getCV(), 1e-9);
+        }
+    }
+
+    @Test
+    public void statsTest() {
+        Game game = game(
+                move("e2e4", true, "e2e4", "30", null),
+                move("e7e5", false, "c7c5", "-20", "-45"),
+                move("g1f3", true, "d2d4", "40", "35"),
+                move("b8c6", false, "b8c6", "-30", null),
+                // A missed mate is left out.
+                move("f1c4", true, "d1h5", "mate 3", "80"),
+                move("g8f6", false, "d7d6", "-50", "-90"));
+        assertSame(game, true);
+        assertSame(game, false);
+        Assertions.assertEquals(2, incremental(game, true).getCount());
+    }
+
+    @Test
+    public void invalidTest() {
+        // White's second move is missing from its evaluations.
+        Game game = game(
+                move("e2e4", true, "e2e4", "30", null),
+                move("e7e5", false, "c7c5", "-20", "-45"),
+                move("g1f3", true, "d2d4", "40", null),
+                move("b8c6", false, "b8c6", "-30", null),
+                move("f1c4", true, "f1c4", "50", null));
+        Assertions.assertEquals(0, game.getNonMateScores(true).length);
+        // Every score of the player is dropped, including those added before and after the error.
+        IncrementalPlayerStats white = incremental(game, true);
+        Assertions.assertTrue(white.isInvalid());
+        Assertions.assertEquals(0, white.getCount());
+        assertSame(game, true);
+        // The other player is unaffected.
+        assertSame(game, false);
+        Assertions.assertEquals(2, incremental(game, false).getCount());
+
+        // Clearing the stats lets them be built up again.
+        white.clear();
+        Assertions.assertFalse(white.isInvalid());
+        white.addScore(0);
+        Assertions.assertEquals(1, white.getCount());
+    }
+}
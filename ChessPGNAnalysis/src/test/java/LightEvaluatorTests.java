@@ -0,0 +1,68 @@
+import analyzerTools.*;
+import dataextract.Evaluation;
+import dataextract.PlayedMove;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+public class LightEvaluatorTests {
+    Board play(String... moves) {
+        Board board = new Board();
+        for (String san : moves) {
+            board.make(board.parseSAN(san));
+        }
+        return board;
+    }
+
+    @Test
+    public void mateTest() {
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] scores = new int[Board.MAX_MOVES];
+        LightEvaluator evaluator = new LightEvaluator();
+        Board board = play("e4", "e5", "Bc4", "Nc6", "Qh5", "Nf6");
+        evaluator.scoreMoves(board, 3, Board.NO_MOVE, moves, scores);
+        Assertions.assertEquals("h5f7", Board.toUCI(moves[0]));
+        Assertions.assertEquals("mate 1", LightEvaluator.format(scores[0]));
+
+        board = play("f3", "e5", "g4");
+        evaluator.scoreMoves(board, 3, Board.NO_MOVE, moves, scores);
+        Assertions.assertEquals("d8h4", Board.toUCI(moves[0]));
+        Assertions.assertEquals("mate 1", LightEvaluator.format(scores[0]));
+        // The position is left as it was.
+        Assertions.assertFalse(board.inCheck());
+    }
+
+    @Test
+    public void captureTest() {
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] scores = new int[Board.MAX_MOVES];
+        Board board = play("e4", "e5", "Qg4", "Qg5");
+        int count = new LightEvaluator().scoreMoves(board, 3, board.parseSAN("a3"), moves, scores);
+        Assertions.assertEquals("g4g5", Board.toUCI(moves[0]));
+        Assertions.assertTrue(scores[0] > 800);
+        for (int index = 1; index < count; index++) {
+            Assertions.assertTrue(scores[index] <= scores[index - 1]);
+        }
+    }
+
+    @Test
+    public void analyseTest() {
+        String[] moves = {"e2e4", "e7e5", "g1f3", "b8c6", "f1c4", "g8f6"};
+        dataextract.Analysis analysis = new dataextract.Analysis();
+        new LightEvaluator().analyse(moves, 2, 3, analysis);
+        List<PlayedMove> analysed = analysis.getAnalysedMoves();
+        Assertions.assertEquals(4, analysed.size());
+        Assertions.assertFalse(analysis.isPartial());
+        for (PlayedMove played : analysed) {
+            List<Evaluation> evaluations = played.getEvaluations();
+            Assertions.assertTrue(evaluations.size() == 3 || evaluations.size() == 4);
+            Assertions.assertNotNull(played.getEvaluationForMove());
+        }
+
+        // A move that is not legal ends the analysis.
+        analysis = new dataextract.Analysis();
+        new LightEvaluator().analyse(new String[] {"e2e4", "e2e4"}, 0, 3, analysis);
+        Assertions.assertEquals(1, analysis.getAnalysedMoves().size());
+        Assertions.assertTrue(analysis.isPartial());
+    }
+}
@@ -0,0 +1,37 @@
+import analyzerTools.*;
+import org.junit.jupiter.api.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class OpeningTrieTests {
+    final String OPENINGS = "[ECO \"C60\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 { Ruy Lopez } *\n\n"
+            + "[ECO \"B20\"]\n\n1. e4 c5 (1... e6 2. d4) 2. Nf3 *\n";
+    OpeningTrie trie;
+
+    @BeforeEach
+    public void init() throws Exception {
+        trie = OpeningTrie.build(new BufferedReader(new StringReader(OPENINGS)), 40);
+    }
+
+    @Test
+    public void bookDepthTest() {
+        Assertions.assertEquals(5, trie.getBookDepth(new String[] {"e4", "e5", "Nf3", "Nc6", "Bb5+", "a6"}));
+        Assertions.assertEquals(3, trie.getBookDepth(new String[] {"e4", "c5", "Nf3", "d6"}));
+        // Moves in variations are not book.
+        Assertions.assertEquals(1, trie.getBookDepth(new String[] {"e4", "e6", "d4"}));
+        Assertions.assertEquals(0, trie.getBookDepth(new String[] {"d4"}));
+    }
+
+    @Test
+    public void saveAndLoadTest() throws Exception {
+        Path saved = Files.createTempFile("openings", ".trie");
+        trie.save(saved);
+        OpeningTrie loaded = OpeningTrie.load(saved);
+        Assertions.assertEquals(trie.getNodeCount(), loaded.getNodeCount());
+        Assertions.assertEquals(5, loaded.getBookDepth(new String[] {"e4", "e5", "Nf3", "Nc6", "Bb5", "a6"}));
+        Files.delete(saved);
+    }
+}
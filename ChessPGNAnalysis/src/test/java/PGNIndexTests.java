@@ -0,0 +1,134 @@
+import analyzerTools.PGNIndex;
+import analyzerTools.PGNQuery;
+import analyzerTools.StockPGNAnalyzer;
+import dataextract.PGNTag;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PGNIndexTests {
+    Path file;
+    Path indexFile;
+
+    static final String[] GAMES = {
+            game("Alpha", "Beta", "2019.05.01", "1-0", "2100", "1900"),
+            game("Beta", "Gamma", "2020.06.12", "0-1", "1950", null),
+            game("Gamma", "Alpha", "2020.??.??", "1/2-1/2", "?", "2200"),
+            game("Alpha", "Alpha", "2021.01.30", "1-0", null, null),
+            game("Delta", "Beta", null, "*", "0", "1800"),
+    };
+
+    // A game with the given tags, leaving out those that are null.
+    static String game(String white, String black, String date, String result, String whiteElo, String blackElo) {
+        StringBuilder pgn = new StringBuilder();
+        String[] names = {"Event", "White", "Black", "Date", "Result", "WhiteElo", "BlackElo"};
+        String[] values = {"Test", white, black, date, result, whiteElo, blackElo};
+        for (int index = 0; index < names.length; index++) {
+            if (values[index] != null) {
+                pgn.append('[').append(names[index]).append(" \"").append(values[index]).append("\"]\n");
+            }
+        }
+        return pgn.append("\n1. e4 e5 2. Nf3 Nc6 ").append(result).append("\n\n").toString();
+    }
+
+    @BeforeEach
+    public void init() throws IOException {
+        file = Files.createTempFile("games", ".pgn");
+        indexFile = file.resolveSibling(file.getFileName() + PGNIndex.EXTENSION);
+        Files.write(file, String.join("", GAMES).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile);
+    }
+
+    // The numbers of the games that match a query, found by reading every game's tags.
+    int[] scan(PGNQuery query) throws IOException {
+        List<String> games = StockPGNAnalyzer.splitGames(Files.readAllLines(file));
+        List<Integer> matching = new ArrayList<>();
+        for (int game = 0; game < games.size(); game++) {
+            List<PGNTag> tags = StockPGNAnalyzer.getTags(games.get(game));
+            if (query.matches(name -> {
+                for (PGNTag tag : tags) {
+                    if (tag.getName().equals(name)) {
+                        return tag.getValue();
+                    }
+                }
+                return null;
+            })) {
+                matching.add(game);
+            }
+        }
+        return matching.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void findTest() throws IOException {
+        PGNIndex index = PGNIndex.forFile(file);
+        Assertions.assertEquals(GAMES.length, index.getGameCount());
+        String[][] queries = {
+                {"player=Alpha", "0", "2", "3"},
+                {"white=Alpha&black=Alpha", "3"},
+                {"year=2020", "1", "2"},
+                {"date>=2020.06&date<=2020.12", "1"},
+                {"date<=2019", "0", "4"},
+                {"result=1-0", "0", "3"},
+                {"event=Test&player=Beta", "0", "1", "4"},
+                // Games without a rating, or with an unknown one, match no rating term.
+                {"whiteelo<=2000", "1", "4"},
+                {"whiteelo>=0", "0", "1", "4"},
+                {"blackelo<=3000", "0", "2", "4"},
+                {"whiteelo=0", "4"},
+                {"player=Nobody"},
+        };
+        for (String[] query : queries) {
+            int[] expected = Arrays.stream(query, 1, query.length).mapToInt(Integer::parseInt).toArray();
+            PGNQuery parsed = PGNQuery.parse(query[0]);
+            Assertions.assertArrayEquals(expected, index.find(parsed));
+            Assertions.assertArrayEquals(expected, scan(parsed));
+        }
+    }
+
+    @Test
+    public void tagTest() throws IOException {
+        PGNIndex index = PGNIndex.forFile(file);
+        Assertions.assertEquals("2100", index.getTag(0, "WhiteElo"));
+        Assertions.assertEquals("", index.getTag(1, "BlackElo"));
+        Assertions.assertEquals("", index.getTag(2, "WhiteElo"));
+        Assertions.assertEquals("0", index.getTag(4, "WhiteElo"));
+        Assertions.assertEquals("2020.06.12", index.getTag(1, "Date"));
+        Assertions.assertNull(index.getTag(0, "Round"));
+        Assertions.assertEquals(Arrays.asList(GAMES[1], GAMES[3]), index.readGames(file, new int[] {1, 3}));
+    }
+
+    @Test
+    public void rebuildTest() throws IOException {
+        PGNIndex.forFile(file);
+        Assertions.assertTrue(Files.exists(indexFile));
+        // A file changed after it was indexed is indexed again.
+        Files.write(file, String.join("", GAMES[0], GAMES[1]).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        Assertions.assertEquals(2, PGNIndex.forFile(file).getGameCount());
+        // So is one whose index is damaged.
+        Files.write(indexFile, new byte[] {1, 2, 3});
+        PGNIndex index = PGNIndex.forFile(file);
+        Assertions.assertArrayEquals(new int[] {0}, index.find(PGNQuery.parse("whiteelo>=2000")));
+    }
+
+    @Test
+    public void parseTest() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PGNQuery.parse("colour=white"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PGNQuery.parse("player>=Alpha"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PGNQuery.parse("whiteelo>=high"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PGNQuery.parse("Alpha"));
+    }
+}
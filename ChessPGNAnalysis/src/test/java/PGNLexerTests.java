@@ -0,0 +1,64 @@
+import analyzerTools.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PGNLexerTests {
+    // A lichess-style export, with clock comments, a NAG, a variation and a move number split from its dots.
+    final String LICHESS = "[Event \"Rated Blitz game\"]\n[Annotator \"a \\\"quoted\\\" ] name\"]\n\n"
+            + "1. e4 { [%eval 0.17] [%clk 0:03:00] } 1... e5 $1 2. Nf3 (2. f4 exf4) 2 ... Nc6\n"
+            + "; to end of line\n3. Bb5+! a6 1/2-1/2\n";
+
+    private List<String> tokens(PGNLexer lexer) {
+        List<String> tokens = new ArrayList<>();
+        PGNLexer.Token token;
+        while ((token = lexer.next()) != PGNLexer.Token.END) {
+            tokens.add(token + ":" + lexer.getText());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void tokenTest() {
+        List<String> tokens = tokens(new PGNLexer(LICHESS));
+        Assertions.assertEquals(List.of("TAG:[Event \"Rated Blitz game\"]",
+                "TAG:[Annotator \"a \\\"quoted\\\" ] name\"]",
+                "MOVE_NUMBER:1.", "MOVE:e4", "COMMENT: [%eval 0.17] [%clk 0:03:00] ", "MOVE_NUMBER:1...", "MOVE:e5",
+                "NAG:$1", "MOVE_NUMBER:2.", "MOVE:Nf3", "VARIATION_START:(", "MOVE_NUMBER:2.", "MOVE:f4", "MOVE:exf4",
+                "VARIATION_END:)", "MOVE_NUMBER:2", "MOVE:Nc6", "COMMENT: to end of line", "MOVE_NUMBER:3.",
+                "MOVE:Bb5+!", "MOVE:a6", "RESULT:1/2-1/2"), tokens);
+    }
+
+    @Test
+    public void tagTest() {
+        PGNLexer lexer = new PGNLexer(LICHESS);
+        lexer.next();
+        lexer.next();
+        Assertions.assertEquals("Annotator", lexer.getTagName());
+        Assertions.assertEquals("a \"quoted\" ] name", lexer.getTagValue());
+    }
+
+    @Test
+    public void commentAcrossLinesTest() {
+        PGNLexer lexer = new PGNLexer("1. e4 { a long");
+        Assertions.assertEquals(List.of("MOVE_NUMBER:1.", "MOVE:e4", "COMMENT: a long"), tokens(lexer));
+        Assertions.assertTrue(lexer.isInComment());
+        lexer.reset("[not a tag] comment } e5 0-1");
+        Assertions.assertEquals(List.of("COMMENT:[not a tag] comment ", "MOVE:e5", "RESULT:0-1"), tokens(lexer));
+        Assertions.assertFalse(lexer.isInComment());
+    }
+
+    @Test
+    public void bytesTest() {
+        byte[] data = "xx1.e4 O-O-O 0-0 *".getBytes();
+        Assertions.assertEquals(List.of("MOVE_NUMBER:1.", "MOVE:e4", "MOVE:O-O-O", "MOVE:0-0", "RESULT:*"),
+                tokens(new PGNLexer(data, 2, data.length - 2)));
+    }
+
+    @Test
+    public void getMovesTest() {
+        Assertions.assertArrayEquals(new String[] {"e4", "e5", "Nf3", "Nc6", "Bb5", "a6"}, OpeningTrie.getMoves(LICHESS));
+        Assertions.assertEquals("a \"quoted\" ] name", StockPGNAnalyzer.getTags(LICHESS).get(1).getValue());
+    }
+}
@@ -0,0 +1,171 @@
+import analyzerTools.StockPGNAnalyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PGNTailTests {
+    // The bytes PGNTail reads at a time.
+    static final int READ_CHUNK = 1 << 20;
+    static final String TAGS = "[Event \"Live\"]\n[White \"Alpha\"]\n[Black \"Beta\"]\n[Result \"*\"]\n\n";
+
+    Path directory;
+    Path file;
+    StockPGNAnalyzer analyzer;
+    GenStats stats;
+    ByteArrayOutputStream bytes;
+    PGNTail tail;
+
+    @BeforeEach
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("tail");
+        file = directory.resolve("live.pgn");
+        analyzer = new StockPGNAnalyzer();
+        analyzer.setEngineCommand(FakeUCIEngine.command());
+        analyzer.setConverterCommand(FakeMoveConverter.command());
+        analyzer.setVariations(1);
+        analyzer.setSearchDepth(12);
+        stats = new GenStats();
+        stats.addPlayer("<WhiteOrBlack>");
+        bytes = new ByteArrayOutputStream();
+        tail = new PGNTail(file, analyzer, 2, stats, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        tail.close();
+        analyzer.close();
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    void write(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void append(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    // The lines output since the last call.
+    List<String> output() {
+        String text = bytes.toString(StandardCharsets.UTF_8);
+        bytes.reset();
+        return text.isEmpty() ? List.of() : Arrays.asList(text.split("\n"));
+    }
+
+    // The lines output for a game analysed in full, as the tail should output for it.
+    List<String> expected(String pgn) throws IOException {
+        Game game = analyzer.analyzeGameDetails(pgn);
+        List<String> lines = new ArrayList<>();
+        for (boolean white : new boolean[] {true, false}) {
+            PlayerStats player = new PlayerStats(game, white ? "Alpha" : "Beta", white, stats.getLowAEThreshold(), false);
+            if (player.getNumScores() > 0) {
+                lines.add(player.toString());
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void appendTest() throws Exception {
+        // Nothing is read of a line still being written.
+        write(TAGS + "1. e4 e5 2. Nf");
+        tail.read();
+        Assertions.assertEquals(List.of(), output());
+        append("3\n");
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. e4 e5 2. Nf3 *\n"), output());
+        // Only the moves added are analysed, and give the same stats as analysing the whole game.
+        append("Nc6 3. Bb5\n");
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. e4 e5 2. Nf3 Nc6 3. Bb5 *\n"), output());
+        // Nothing changes, so nothing is output.
+        tail.read();
+        Assertions.assertEquals(List.of(), output());
+    }
+
+    @Test
+    public void correctionTest() throws Exception {
+        write(TAGS + "1. e4 e5 2. Nf3 Nc6\n");
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. e4 e5 2. Nf3 Nc6 *\n"), output());
+        // The relay corrects White's first move, rewriting the file.
+        write(TAGS + "1. d4 e5 2. Nf3\n");
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. d4 e5 2. Nf3 *\n"), output());
+    }
+
+    @Test
+    public void rewrittenTest() throws Exception {
+        String first = TAGS + "1. e4 e5 2. Nf3 Nc6\n";
+        write(first);
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. e4 e5 2. Nf3 Nc6 *\n"), output());
+        // Truncated part way through the moves, which are left until their line is complete.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(first.length() - 3);
+        }
+        tail.read();
+        Assertions.assertEquals(List.of(), output());
+        append("c6 3. Bb5\n");
+        tail.read();
+        Assertions.assertEquals(expected(TAGS + "1. e4 e5 2. Nf3 Nc6 3. Bb5 *\n"), output());
+
+        // Emptied, then rewritten with another game after the first.
+        write("");
+        tail.read();
+        Assertions.assertEquals(List.of(), output());
+        String second = TAGS.replace("Live", "Other") + "1. e4 c5\n";
+        write(TAGS + "1. e4 e5 2. Nf3 Nc6 3. Bb5\n\n" + second);
+        tail.read();
+        // The first game carries on from where it was, and the second is new.
+        List<String> lines = new ArrayList<>(expected(TAGS + "1. e4 e5 2. Nf3 Nc6 3. Bb5 *\n"));
+        lines.addAll(expected(second + "*\n"));
+        Assertions.assertEquals(lines, output());
+    }
+
+    @Test
+    public void chunkTest() throws Exception {
+        // A game with a comment over many lines, longer than a chunk.
+        StringBuilder comment = new StringBuilder("{");
+        while (comment.length() < 2 * READ_CHUNK) {
+            comment.append(" [a line of a long comment, which is not a tag]\n");
+        }
+        comment.append("}");
+        String first = TAGS.replace("\"*\"", "\"1-0\"") + "1. e4 " + comment + " e5 2. Nf3 1-0\n\n";
+        // A game with a single line longer than a chunk.
+        String second = TAGS.replace("Live", "Other") + "1. d4 {" + "x".repeat(READ_CHUNK + READ_CHUNK / 2) + "} d5\n";
+        write(first + second);
+        tail.read();
+        List<String> lines = new ArrayList<>(expected(first));
+        lines.addAll(expected(second + "*\n"));
+        // Each game is output once, though the first was read over several chunks.
+        Assertions.assertEquals(lines, output());
+        append("2. c4\n");
+        tail.read();
+        Assertions.assertEquals(expected(second + "2. c4 *\n"), output());
+    }
+
+    @Test
+    public void boundaryTest() throws Exception {
+        // A file that ends exactly at the end of the first chunk.
+        String start = TAGS + "1. e4 e5 {";
+        String end = "} 2. Nf3\n";
+        String game = start + "x".repeat(READ_CHUNK - start.length() - end.length()) + end;
+        Assertions.assertEquals(READ_CHUNK, game.length());
+        write(game);
+        tail.read();
+        Assertions.assertEquals(expected(game + "*\n"), output());
+    }
+}
@@ -0,0 +1,99 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class PlayerGrouperTests {
+    Path directory;
+
+    @BeforeEach
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("grouper");
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // A one-move game between two players, with a distinct move for each round.
+    Game game(String white, String black, int year, int round) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        String move = "a2a" + (3 + round % 2);
+        PlayedMove played = new PlayedMove(move, true);
+        played.addEvaluation(new Evaluation(move, Integer.toString(round)));
+        analysis.addAnalysedMove(played);
+        return new Game(Analyzer.Player.WHITE, move + " *", analysis, Arrays.asList(new PGNTag("White", white),
+                new PGNTag("Black", black), new PGNTag("Date", year + ".01.01"), new PGNTag("Round", "" + round)));
+    }
+
+    @Test
+    public void groupTest() throws Exception {
+        String[] players = {"Delta", "Alpha", "Gamma", "Beta", "Epsilon"};
+        List<PlayerStats> added = new ArrayList<>();
+        for (int round = 0; round < 150; round++) {
+            Game game = game(players[round % 5], players[(round * 3 + 1) % 5], 2000 + (round * 7) % 20, round);
+            added.add(new PlayerStats(game, players[round % 5], true, 0, false));
+            added.add(new PlayerStats(game, players[(round * 3 + 1) % 5], false, 0, false));
+        }
+        // Runs of two records, added by several threads, need more than one merge pass.
+        PlayerGrouper grouper = new PlayerGrouper(directory, 2);
+        Thread[] threads = new Thread[3];
+        for (int thread = 0; thread < threads.length; thread++) {
+            int first = thread;
+            threads[thread] = new Thread(() -> {
+                try {
+                    for (int index = first; index < added.size(); index += threads.length) {
+                        grouper.add(added.get(index));
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[thread].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertTrue(files.count() > 64);
+        }
+        List<String> lines = new ArrayList<>();
+        grouper.finish(lines::add);
+
+        // Every line, grouped by player in order of name, then in order of the lines, which start with the year.
+        List<String> expected = new ArrayList<>();
+        String[] sorted = players.clone();
+        Arrays.sort(sorted);
+        for (String player : sorted) {
+            List<String> ofPlayer = new ArrayList<>();
+            for (PlayerStats stats : added) {
+                if (stats.getPlayerName().equals(player)) {
+                    ofPlayer.add(stats.toString());
+                }
+            }
+            ofPlayer.sort(null);
+            expected.addAll(ofPlayer);
+        }
+        Assertions.assertEquals(expected, lines);
+        // The run files are deleted.
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+}
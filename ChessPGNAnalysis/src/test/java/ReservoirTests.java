@@ -0,0 +1,81 @@
+import dataextract.Reservoir;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ReservoirTests {
+    @Test
+    public void weightTest() {
+        // An item nine times as heavy as the other is drawn about nine times in ten.
+        int heavy = 0;
+        int trials = 10000;
+        for (int trial = 0; trial < trials; trial++) {
+            Reservoir<String> reservoir = new Reservoir<>(1);
+            reservoir.offer("heavy", 2L * trial, 9);
+            reservoir.offer("light", 2L * trial + 1, 1);
+            if (reservoir.getItems().get(0).equals("heavy")) {
+                heavy++;
+            }
+        }
+        Assertions.assertEquals(0.9, (double) heavy / trials, 0.02);
+
+        // With equal weights, each of 10 items is in a sample of 3 about 3 times in 10.
+        int[] drawn = new int[10];
+        for (int trial = 0; trial < trials; trial++) {
+            Reservoir<Integer> reservoir = new Reservoir<>(3);
+            for (int item = 0; item < drawn.length; item++) {
+                reservoir.offer(item, trial * 100L + item, 1);
+            }
+            Assertions.assertEquals(3, reservoir.size());
+            for (int item : reservoir.getItems()) {
+                drawn[item]++;
+            }
+        }
+        for (int count : drawn) {
+            Assertions.assertEquals(0.3, (double) count / trials, 0.03);
+        }
+    }
+
+    @Test
+    public void mergeTest() {
+        List<Integer> items = new ArrayList<>();
+        for (int item = 0; item < 1000; item++) {
+            items.add(item);
+        }
+        Reservoir<Integer> single = new Reservoir<>(20);
+        for (int item : items) {
+            single.offer(item, item, 1 + item % 5);
+        }
+        // The same items offered in another order to several reservoirs give the same sample.
+        Collections.shuffle(items, new java.util.Random(1));
+        List<Reservoir<Integer>> parts = new ArrayList<>();
+        for (int part = 0; part < 3; part++) {
+            parts.add(new Reservoir<>(20));
+        }
+        for (int index = 0; index < items.size(); index++) {
+            int item = items.get(index);
+            parts.get(index % 3).offer(item, item, 1 + item % 5);
+        }
+        Reservoir<Integer> merged = new Reservoir<>(20);
+        for (Reservoir<Integer> part : parts) {
+            merged.merge(part);
+        }
+        Assertions.assertEquals(single.getItems(), merged.getItems());
+    }
+
+    @Test
+    public void smallTest() {
+        Reservoir<String> empty = new Reservoir<>(0);
+        empty.offer("item", 1, 1);
+        Assertions.assertEquals(0, empty.size());
+
+        // Fewer items than the sample size are all kept.
+        Reservoir<String> reservoir = new Reservoir<>(5);
+        reservoir.offer("first", 1, 1);
+        reservoir.offer("second", 2, 1);
+        Assertions.assertEquals(2, reservoir.size());
+        Assertions.assertTrue(reservoir.getItems().containsAll(List.of("first", "second")));
+    }
+}
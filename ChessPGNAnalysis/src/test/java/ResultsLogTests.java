@@ -0,0 +1,161 @@
+import analyzerTools.Analyzer;
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResultsLogTests {
+    Path file;
+
+    @BeforeEach
+    public void init() throws IOException {
+        file = Files.createTempFile("results", ".log");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    // A short game, analysed from the first move, with the given tags.
+    Game game(String white, String black, String date, String round, String... extraTags) {
+        Analysis analysis = new Analysis();
+        analysis.setSearchDepth("12");
+        analysis.setEngineID("test");
+        analysis.setBookDepth("0");
+        PlayedMove first = new PlayedMove("e2e4", true);
+        first.addEvaluation(new Evaluation("d2d4", "30"));
+        first.addEvaluation(new Evaluation("e2e4", "20"));
+        analysis.addAnalysedMove(first);
+        PlayedMove second = new PlayedMove("e7e5", false);
+        second.addEvaluation(new Evaluation("e7e5", "-20"));
+        analysis.addAnalysedMove(second);
+        List<PGNTag> tags = new ArrayList<>(Arrays.asList(new PGNTag("White", white), new PGNTag("Black", black),
+                new PGNTag("Date", date), new PGNTag("Round", round), new PGNTag("Result", "1/2-1/2")));
+        for (int index = 0; index + 1 < extraTags.length; index += 2) {
+            tags.add(new PGNTag(extraTags[index], extraTags[index + 1]));
+        }
+        return new Game(Analyzer.Player.WHITE, "e2e4 e7e5 1/2-1/2", analysis, tags);
+    }
+
+    void append(ResultsLog log, Game game) throws IOException {
+        log.append(new PlayerStats(game, game.getTagValue("White"), true, 0, false));
+        log.append(new PlayerStats(game, game.getTagValue("Black"), false, 0, false));
+    }
+
+    @Test
+    public void supersedeTest() throws IOException {
+        Game first = game("Alpha", "Beta", "2020.01.01", "1");
+        // The same moves played by other players on another date.
+        Game other = game("Gamma", "Delta", "2021.02.02", "3");
+        Assertions.assertEquals(first.getMoveHash(), other.getMoveHash());
+        Assertions.assertNotEquals(first.getIdentity(), other.getIdentity());
+        try (ResultsLog log = ResultsLog.open(file)) {
+            append(log, first);
+            append(log, other);
+            log.sync();
+            Assertions.assertEquals(4, log.size());
+            Assertions.assertEquals(1, log.findPlayer("Alpha").size());
+            Assertions.assertEquals(1, log.findPlayer("Gamma").size());
+
+            // Analysing the first game again replaces only its own results.
+            append(log, game("Alpha", "Beta", "2020.01.01", "1"));
+            log.sync();
+            Assertions.assertEquals(4, log.size());
+            List<ResultsLog.Result> results = log.findGame(first.getIdentity());
+            Assertions.assertEquals(2, results.size());
+            Assertions.assertEquals("Alpha", results.get(0).getPlayerName());
+            Assertions.assertTrue(results.get(0).isWhite());
+            Assertions.assertEquals("Beta", results.get(1).getPlayerName());
+            Assertions.assertEquals(2, log.findGame(other.getIdentity()).size());
+        }
+    }
+
+    @Test
+    public void hashCodeTest() throws IOException {
+        // The HashCode tag identifies a game whatever its other tags.
+        Game game = game("Alpha", "Beta", "2020.01.01", "1", "HashCode", "1a2b3c4d");
+        Game retagged = game("Alpha", "Beta", "2020.??.??", "?", "HashCode", "1a2b3c4d");
+        Assertions.assertEquals(game.getIdentity(), retagged.getIdentity());
+        try (ResultsLog log = ResultsLog.open(file)) {
+            append(log, game);
+            append(log, retagged);
+            log.sync();
+            Assertions.assertEquals(2, log.size());
+            Assertions.assertEquals("1a2b3c4d", log.findGame(game.getIdentity()).get(0).getHashCode());
+        }
+    }
+
+    @Test
+    public void tornTailTest() throws IOException {
+        try (ResultsLog log = ResultsLog.open(file)) {
+            append(log, game("Alpha", "Beta", "2020.01.01", "1"));
+            append(log, game("Gamma", "Delta", "2020.01.01", "2"));
+        }
+        long size = Files.size(file);
+        // A record cut short by a crash.
+        Files.write(file, new byte[50], StandardOpenOption.APPEND);
+        try (ResultsLog log = ResultsLog.open(file)) {
+            Assertions.assertEquals(4, log.size());
+            Assertions.assertEquals(size, Files.size(file));
+        }
+
+        // A damaged last record is discarded with everything after it.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), size - 20);
+        }
+        try (ResultsLog log = ResultsLog.open(file)) {
+            Assertions.assertEquals(3, log.size());
+            Assertions.assertEquals(0, log.findPlayer("Delta").size());
+            // The log can still be appended to.
+            append(log, game("Gamma", "Delta", "2020.01.01", "2"));
+            log.sync();
+            Assertions.assertEquals(4, log.size());
+        }
+        try (ResultsLog log = ResultsLog.open(file)) {
+            Assertions.assertEquals(4, log.size());
+            Assertions.assertEquals(1, log.findPlayer("Delta").size());
+        }
+    }
+
+    @Test
+    public void compactTest() throws IOException {
+        long before;
+        try (ResultsLog log = ResultsLog.open(file)) {
+            for (int round = 0; round < 10; round++) {
+                append(log, game("Alpha", "Beta", "2020.01.01", Integer.toString(round)));
+            }
+            // Analyse every game a second time.
+            for (int round = 0; round < 10; round++) {
+                append(log, game("Alpha", "Beta", "2020.01.01", Integer.toString(round)));
+            }
+            log.sync();
+            Assertions.assertEquals(20, log.size());
+            before = Files.size(file);
+            log.compact();
+            Assertions.assertEquals(20, log.size());
+            Assertions.assertTrue(Files.size(file) < before);
+            Assertions.assertEquals(10, log.findPlayer("Alpha").size());
+
+            // Appending after compaction still supersedes the copied records.
+            append(log, game("Alpha", "Beta", "2020.01.01", "0"));
+            log.sync();
+            Assertions.assertEquals(20, log.size());
+        }
+        try (ResultsLog log = ResultsLog.open(file)) {
+            Assertions.assertEquals(20, log.size());
+            List<String> rounds = new ArrayList<>();
+            log.forEach(result -> rounds.add(result.getPlayerName()));
+            Assertions.assertEquals(20, rounds.size());
+        }
+    }
+}
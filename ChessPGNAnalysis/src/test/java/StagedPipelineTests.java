@@ -0,0 +1,61 @@
+import dataextract.StagedPipeline;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class StagedPipelineTests {
+    List<Integer> numbers(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void runTest() throws Exception {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        new StagedPipeline(2)
+                .addStage("double", 3, (Integer item, Consumer<Integer> next) -> next.accept(item * 2))
+                .addStage("collect", 1, (Integer item, Consumer<Object> next) -> results.add(item))
+                .run(numbers(100).iterator(), 0);
+        Collections.sort(results);
+        Assertions.assertEquals(numbers(100).stream().map(item -> item * 2).collect(Collectors.toList()), results);
+    }
+
+    @Test
+    public void exceptionTest() throws Exception {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        long skipped = new StagedPipeline(2)
+                .addStage("odd", 1, (Integer item, Consumer<Integer> next) -> {
+                    if (item % 2 == 0) {
+                        throw new IllegalArgumentException("even");
+                    }
+                    next.accept(item);
+                })
+                .addStage("collect", 1, (Integer item, Consumer<Object> next) -> results.add(item))
+                .run(numbers(6).iterator(), 0);
+        // An exception skips only its own item.
+        Assertions.assertEquals(Arrays.asList(1, 3, 5), results);
+        Assertions.assertEquals(3, skipped);
+    }
+
+    @Test
+    public void errorTest() {
+        // An Error in the only worker of a stage, with more items than fit in the queues.
+        StagedPipeline pipeline = new StagedPipeline(2)
+                .addStage("fail", 1, (Integer item, Consumer<Integer> next) -> {
+                    if (item == 3) {
+                        throw new OutOfMemoryError("test");
+                    }
+                    next.accept(item);
+                })
+                .addStage("collect", 2, (Integer item, Consumer<Object> next) -> { });
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> pipeline.run(numbers(1000).iterator(), 0));
+        Assertions.assertTrue(failure.getCause() instanceof OutOfMemoryError);
+    }
+}
@@ -1,9 +1,20 @@
 import analyzerTools.*;
+import dataextract.GenStats;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StockPGNAnalyzerTests {
     final Path TEST_FILE = Paths.get("src/main/resources/chess_com_games_2020-12-20.pgn");
@@ -20,4 +31,203 @@ public class StockPGNAnalyzerTests {
         boolean condition = eval > 25 && eval < 50;
         Assertions.assertTrue(condition);
     }
+
+    /**
+     * An analyzer whose engine always prefers e2e4, so that White's CV in a game opening with e2e4 is one over
+     * the number of White's moves analysed, and every other CV is 0.
+     */
+    StockPGNAnalyzer fakeAnalyzer(double CVThreshold) {
+        StockPGNAnalyzer analyzer = new StockPGNAnalyzer();
+        analyzer.setEngineCommand(FakeUCIEngine.command());
+        analyzer.setConverterCommand(FakeMoveConverter.command());
+        analyzer.setVariations(1);
+        analyzer.setSearchDepth(12);
+        analyzer.setShallowDepth(4);
+        analyzer.setCVBand(0.1);
+        GenStats stats = new GenStats();
+        stats.setCVThresholdPercentage(CVThreshold);
+        analyzer.setStats(stats);
+        return analyzer;
+    }
+
+    @Test
+    public void tieredTest() throws Exception {
+        String crossing = "[White \"Alpha\"]\n[Black \"Beta\"]\n\n1. e4 e5 2. Nf3 Nc6 *\n";
+        String clear = "[White \"Gamma\"]\n[Black \"Delta\"]\n\n1. d4 d5 2. c4 e6 *\n";
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0.5)) {
+            // White's shallow CV of 0.5 is at the threshold, so the game is analysed again at full depth.
+            Assertions.assertEquals("12", analyzer.analyzeGameDetails(crossing).getAnalysis().getSearchDepth());
+            // Both CVs of 0 are well below it.
+            Assertions.assertEquals("4", analyzer.analyzeGameDetails(clear).getAnalysis().getSearchDepth());
+            ArrayList<Analysis> results = analyzer.analyzeGames(new String[] {crossing, clear});
+            Assertions.assertEquals(12, results.get(0).getSearchDepth());
+            Assertions.assertEquals(0.5, results.get(0).getWhite());
+            Assertions.assertEquals(4, results.get(1).getSearchDepth());
+            Assertions.assertEquals(12, analyzer.analyzeGameAsync(crossing).get().getSearchDepth());
+        }
+        // Without a threshold there is nothing to be close to, so every game is analysed at full depth.
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            Assertions.assertEquals("12", analyzer.analyzeGameDetails(clear).getAnalysis().getSearchDepth());
+        }
+    }
+
+    @Test
+    public void gameTimeTest() throws Exception {
+        String pgn = "[White \"Alpha\"]\n[Black \"Beta\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 *\n";
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            // Each search takes 200ms, and a played move other than e2e4 is searched again on its own, so the
+            // budget runs out part way through the game.
+            analyzer.setEngineCommand(FakeUCIEngine.command(200, false));
+            analyzer.setGameTime(1000);
+            dataextract.Analysis partial = analyzer.analyzeGameDetails(pgn).getAnalysis();
+            Assertions.assertTrue(partial.isPartial());
+            int analysed = partial.getAnalysedMoves().size();
+            Assertions.assertTrue(analysed > 0 && analysed < 8, "" + analysed);
+            // Without a budget the whole game is analysed.
+            analyzer.setGameTime(0);
+            dataextract.Analysis full = analyzer.analyzeGameDetails(pgn).getAnalysis();
+            Assertions.assertFalse(full.isPartial());
+            Assertions.assertEquals(8, full.getAnalysedMoves().size());
+        }
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            // An engine that ignores "stop" is killed, and the game is not analysed.
+            analyzer.setEngineCommand(FakeUCIEngine.command(0, true));
+            analyzer.setGameTime(100);
+            Assertions.assertThrows(IOException.class, () -> analyzer.analyzeGameDetails(pgn));
+        }
+    }
+
+    /**
+     * A subscriber that records what it is sent, and checks that it is never sent more than it has requested
+     * and that its calls never nest. It requests nothing by itself.
+     */
+    static class Recorder implements Flow.Subscriber<Analysis> {
+        final List<Analysis> received = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore arrived = new Semaphore(0);
+        final CountDownLatch complete = new CountDownLatch(1);
+        final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        final AtomicLong demand = new AtomicLong();
+        final AtomicBoolean inOnNext = new AtomicBoolean();
+        Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Analysis analysis) {
+            if (!inOnNext.compareAndSet(false, true)) {
+                violations.add("onNext called while in onNext");
+            }
+            received.add(analysis);
+            if (received.size() > demand.get()) {
+                violations.add("Sent " + received.size() + " results of " + demand.get() + " requested");
+            }
+            next(analysis);
+            inOnNext.set(false);
+            arrived.release();
+        }
+
+        // Called by onNext, for subscribers that act on their results.
+        void next(Analysis analysis) {
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            violations.add(error.toString());
+        }
+
+        @Override
+        public void onComplete() {
+            complete.countDown();
+        }
+
+        void request(long count) {
+            demand.addAndGet(count);
+            subscription.request(count);
+        }
+
+        // Wait for some results.
+        void await(int count) throws InterruptedException {
+            Assertions.assertTrue(arrived.tryAcquire(count, 30, TimeUnit.SECONDS), "Results not sent");
+        }
+    }
+
+    String[] games(int count) {
+        String[] openings = {"e4 e5", "d4 d5", "c4 c5", "Nf3 Nf6", "g3 g6", "b3 b6"};
+        String[] pgns = new String[count];
+        for (int index = 0; index < count; index++) {
+            pgns[index] = "[White \"Alpha\"]\n[Black \"Beta\"]\n\n1. " + openings[index] + " *\n";
+        }
+        return pgns;
+    }
+
+    @Test
+    public void publisherTest() throws Exception {
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            analyzer.setThreads(3);
+            Recorder recorder = new Recorder();
+            analyzer.analyzeGamesPublisher(games(6)).subscribe(recorder);
+            // No more than is requested is sent, which the recorder checks as results arrive.
+            recorder.request(2);
+            recorder.await(2);
+            Assertions.assertEquals(1, recorder.complete.getCount());
+            recorder.request(10);
+            Assertions.assertTrue(recorder.complete.await(30, TimeUnit.SECONDS));
+            List<Integer> indexes = new ArrayList<>();
+            for (Analysis analysis : recorder.received) {
+                indexes.add(analysis.getIndex());
+            }
+            Collections.sort(indexes);
+            Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 5), indexes);
+            Assertions.assertEquals(List.of(), recorder.violations);
+        }
+    }
+
+    @Test
+    public void requestFromOnNextTest() throws Exception {
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            analyzer.setThreads(2);
+            // A subscriber that asks for one result at a time, from onNext.
+            Recorder recorder = new Recorder() {
+                @Override
+                void next(Analysis analysis) {
+                    request(1);
+                }
+            };
+            analyzer.analyzeGamesPublisher(games(6)).subscribe(recorder);
+            recorder.request(1);
+            Assertions.assertTrue(recorder.complete.await(30, TimeUnit.SECONDS));
+            Assertions.assertEquals(6, recorder.received.size());
+            Assertions.assertEquals(List.of(), recorder.violations);
+        }
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        try (StockPGNAnalyzer analyzer = fakeAnalyzer(0)) {
+            analyzer.setThreads(2);
+            // A subscriber that cancels on its first result, with more requested and in progress.
+            Recorder recorder = new Recorder() {
+                @Override
+                void next(Analysis analysis) {
+                    subscription.cancel();
+                    // Once cancelled, nothing more is sent, whatever is requested.
+                    request(5);
+                }
+            };
+            analyzer.analyzeGamesPublisher(games(6)).subscribe(recorder);
+            recorder.request(3);
+            recorder.await(1);
+            // The games of a later batch start once those of the cancelled one have finished or been cancelled.
+            Recorder later = new Recorder();
+            analyzer.analyzeGamesPublisher(games(2)).subscribe(later);
+            later.request(2);
+            Assertions.assertTrue(later.complete.await(30, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, recorder.received.size());
+            Assertions.assertEquals(1, recorder.complete.getCount());
+            Assertions.assertEquals(List.of(), recorder.violations);
+        }
+    }
 }
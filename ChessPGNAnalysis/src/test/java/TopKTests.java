@@ -0,0 +1,47 @@
+import dataextract.TopK;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+public class TopKTests {
+    @Test
+    public void orderTest() {
+        TopK<String> heap = new TopK<>(3);
+        double[] keys = {0.5, 0.9, Double.NaN, 0.1, 0.7, 0.9, 0.3};
+        for (int index = 0; index < keys.length; index++) {
+            heap.offer(keys[index], index, "game " + index);
+        }
+        Assertions.assertEquals(3, heap.size());
+        // Highest first; of equal keys, the smaller reference first. NaN is ignored.
+        Assertions.assertArrayEquals(new long[] {1, 5, 4}, heap.getReferences());
+        Assertions.assertEquals(List.of("game 1", "game 5", "game 4"), heap.getValues());
+
+        TopK<String> none = new TopK<>(0);
+        none.offer(1, 0, "game");
+        Assertions.assertEquals(0, none.size());
+    }
+
+    @Test
+    public void mergeTest() {
+        TopK<Long> single = new TopK<>(10);
+        TopK<Long> merged = new TopK<>(10);
+        List<TopK<Long>> parts = List.of(new TopK<>(10), new TopK<>(10), new TopK<>(10));
+        for (long reference = 0; reference < 500; reference++) {
+            // Few distinct keys, so that many are equal.
+            double key = (reference * 37) % 11;
+            single.offer(key, reference, reference);
+            parts.get((int) (reference % 3)).offer(key, reference, reference);
+        }
+        // Heaps filled separately merge into exactly the heap filled at once, whatever the order of merging.
+        for (int part = parts.size() - 1; part >= 0; part--) {
+            merged.merge(parts.get(part));
+        }
+        Assertions.assertArrayEquals(single.getReferences(), merged.getReferences());
+        Assertions.assertEquals(single.getValues(), merged.getValues());
+        long[] references = single.getReferences();
+        for (int index = 0; index < references.length; index++) {
+            Assertions.assertEquals(10.0, (references[index] * 37) % 11, 0);
+            Assertions.assertEquals(references[index], (long) single.getValues().get(index));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import analyzerTools.UCIEngine;
+import dataextract.Evaluation;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.util.List;
+
+public class UCIEngineTests {
+    static final String[] MOVES = {"e2e4", "e7e5"};
+
+    @Test
+    public void stopTest() throws IOException {
+        try (UCIEngine engine = new UCIEngine(FakeUCIEngine.command(0, false))) {
+            // A search that would never end is stopped, and gives the evaluations reached so far.
+            List<Evaluation> evaluations = engine.evaluate(MOVES, 2, 12, null, 100);
+            Assertions.assertTrue(engine.wasStopped());
+            Assertions.assertEquals(1, evaluations.size());
+            Assertions.assertEquals("e2e4", evaluations.get(0).getMove());
+            Assertions.assertEquals("10", evaluations.get(0).getEvaluation());
+            // The engine is still usable.
+            evaluations = engine.evaluate(MOVES, 1, 12, "e7e5", 100);
+            Assertions.assertTrue(engine.wasStopped());
+            Assertions.assertEquals("-100", evaluations.get(0).getEvaluation());
+        }
+        try (UCIEngine engine = new UCIEngine(FakeUCIEngine.command(50, false))) {
+            // A search that ends within its limit is not stopped.
+            Assertions.assertEquals(1, engine.evaluate(MOVES, 2, 12, null, 30000).size());
+            Assertions.assertFalse(engine.wasStopped());
+        }
+    }
+
+    @Test
+    public void killTest() throws IOException {
+        try (UCIEngine engine = new UCIEngine(FakeUCIEngine.command(0, true))) {
+            long start = System.nanoTime();
+            // An engine that ignores "stop" is killed once its grace runs out.
+            IOException e = Assertions.assertThrows(IOException.class,
+                    () -> engine.evaluate(MOVES, 2, 12, null, 100));
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            Assertions.assertEquals("Engine did not stop in time", e.getMessage());
+            Assertions.assertTrue(engine.wasStopped());
+            Assertions.assertTrue(elapsed >= 100 + UCIEngine.STOP_GRACE_MILLIS, "" + elapsed);
+            Assertions.assertTrue(elapsed < 100 + UCIEngine.STOP_GRACE_MILLIS + 10000, "" + elapsed);
+            // Nothing more can be asked of it.
+            Assertions.assertThrows(IOException.class, () -> engine.evaluate(MOVES, 2, 12, null, 100));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import analyzerTools.*;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class UCIInfoParserTests {
+    UCIInfoParser parser(String output) {
+        return new UCIInfoParser(new ByteArrayInputStream(output.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void variationTest() throws Exception {
+        UCIInfoParser parser = parser("info depth 22 seldepth 30 multipv 3 score cp -45 upperbound nodes 100 pv e2e4 e7e5\n"
+                + "info depth 22 multipv 1 score mate 4 pv d1h5 g7g6\r\n");
+        Assertions.assertTrue(parser.next());
+        Assertions.assertTrue(parser.isVariation());
+        Assertions.assertEquals(22, parser.getDepth());
+        Assertions.assertEquals(3, parser.getMultiPV());
+        Assertions.assertFalse(parser.isMate());
+        Assertions.assertEquals(-45, parser.getScore());
+        Assertions.assertEquals(UCIInfoParser.UPPER_BOUND, parser.getBound());
+        byte[] move = new byte[8];
+        Assertions.assertEquals("e2e4", new String(move, 0, parser.copyMove(move), StandardCharsets.US_ASCII));
+        Assertions.assertTrue(parser.next());
+        Assertions.assertTrue(parser.isMate());
+        Assertions.assertEquals(4, parser.getScore());
+        Assertions.assertEquals(UCIInfoParser.EXACT, parser.getBound());
+        Assertions.assertFalse(parser.next());
+    }
+
+    @Test
+    public void otherLinesTest() throws Exception {
+        UCIInfoParser parser = parser("info string score cp 10 pv e2e4\ninfo depth 5 currmove e2e4\n"
+                + "  readyok \nbestmove e2e4 ponder e7e5");
+        Assertions.assertTrue(parser.next());
+        Assertions.assertFalse(parser.isVariation());
+        Assertions.assertTrue(parser.next());
+        Assertions.assertFalse(parser.isVariation());
+        Assertions.assertTrue(parser.next());
+        Assertions.assertTrue(parser.lineEquals("readyok"));
+        // A last line need not end with a newline.
+        Assertions.assertTrue(parser.next());
+        Assertions.assertTrue(parser.lineStartsWith("bestmove"));
+        Assertions.assertEquals("bestmove e2e4 ponder e7e5", parser.getLine());
+        Assertions.assertFalse(parser.next());
+    }
+}
@@ -0,0 +1,82 @@
+import dataextract.*;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+public class XMLProcessorTests {
+    final Path TEST_FILE = Paths.get("src/test/resources/analysis.xml");
+    XMLProcessor processor;
+
+    @BeforeEach
+    public void init() {
+        processor = new XMLProcessor();
+    }
+
+    @Test
+    public void readTest() throws IOException {
+        List<Game> games = processor.readGames(TEST_FILE.toString());
+        Assertions.assertEquals(3, games.size());
+        Game first = games.get(0);
+        Assertions.assertEquals("Alpha", first.getTagValue("White"));
+        Assertions.assertEquals("1-0", first.getTagValue("Result"));
+        Assertions.assertEquals(4, first.getAnalysis().getAnalysedMoves().size());
+        Assertions.assertEquals("12", first.getAnalysis().getSearchDepth());
+        Assertions.assertArrayEquals(new int[] {0, -5}, first.getNonMateScores(true));
+
+        // The same games are read from a stream.
+        try (InputStream in = Files.newInputStream(TEST_FILE)) {
+            List<Game> streamed = processor.readGames(in, TEST_FILE.toString());
+            Assertions.assertEquals(3, streamed.size());
+            Assertions.assertEquals(first.getIdentity(), streamed.get(0).getIdentity());
+        }
+    }
+
+    @Test
+    public void missingAttributeTest() throws IOException {
+        List<Game> games = processor.readGames(TEST_FILE.toString());
+        // Tags without a name or value are skipped, so looking a tag up is safe.
+        Game second = games.get(1);
+        Assertions.assertEquals(1, second.getTags().size());
+        Assertions.assertEquals("Gamma", second.getTagValue("White"));
+        Assertions.assertEquals("", second.getTagValue("Black"));
+        Assertions.assertEquals("", second.getTagValue("Date"));
+        // So are evaluations without a value and moves without a played move.
+        List<PlayedMove> moves = second.getAnalysis().getAnalysedMoves();
+        Assertions.assertEquals(1, moves.size());
+        Assertions.assertEquals(1, moves.get(0).getEvaluations().size());
+        Assertions.assertArrayEquals(new int[] {0}, second.getNonMateScores(true));
+
+        // A game without tags of its own has none, rather than those of the game before it.
+        Game third = games.get(2);
+        Assertions.assertEquals(0, third.getTags().size());
+        Assertions.assertEquals("", third.getTagValue("White"));
+        Assertions.assertEquals(2, third.getAnalysis().getAnalysedMoves().size());
+    }
+
+    @Test
+    public void truncatedTest() throws IOException {
+        byte[] bytes = Files.readAllBytes(TEST_FILE);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        // Cut the file off in the middle of the second game's analysis.
+        int end = text.indexOf("<move player=\"black\"><evaluation");
+        Path truncated = Files.createTempFile("truncated", ".xml");
+        try {
+            Files.write(truncated, Arrays.copyOf(bytes, end));
+            // The games before the end are read, and the one cut short is not.
+            List<Game> games = processor.readGames(truncated.toString());
+            Assertions.assertEquals(1, games.size());
+            Assertions.assertEquals("Alpha", games.get(0).getTagValue("White"));
+        } finally {
+            Files.delete(truncated);
+        }
+        Assertions.assertEquals(0, processor.readGames(new ByteArrayInputStream(new byte[0]), "empty").size());
+    }
+}